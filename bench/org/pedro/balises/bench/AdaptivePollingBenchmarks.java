@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises.bench;
+
+import java.util.Random;
+
+import org.pedro.balises.UpdateRhythm;
+
+/**
+ * Simulation (temps virtuel) de la scrutation d'un flux publie a intervalle regulier (avec gigue) : intervalle fixe
+ * contre scrutation adaptative ({@link UpdateRhythm}).<br/>
+ * Mesures : nombre de requetes, requetes inutiles (aucune donnee nouvelle), retard moyen des donnees du client sur
+ * celles du serveur.<br/>
+ * Usage : AdaptivePollingBenchmarks [heures] [periode de publication (min)] [gigue (s)] [intervalle fixe (min)]
+ *
+ * @author pedro.m
+ */
+public final class AdaptivePollingBenchmarks
+{
+  private static final int  DEFAULT_HOURS         = 72;
+  private static final int  DEFAULT_PERIOD        = 10;
+  private static final int  DEFAULT_JITTER        = 45;
+  private static final int  DEFAULT_FIXED         = 20;
+  private static final long MILLIS_SECONDE        = 1000;
+  private static final long MILLIS_MINUTE         = 60 * MILLIS_SECONDE;
+  private static final long DATA_LATENCY          = 2 * MILLIS_MINUTE;
+  private static final long START                 = 1340280000000L;
+
+  private static final int  MODE_FIXED            = 0;
+  private static final int  MODE_ADAPTIVE_RELEVES = 1;
+  private static final int  MODE_ADAPTIVE_PUBLISH = 2;
+
+  /**
+   *
+   * @param args
+   * @param index
+   * @param defaultValue
+   * @return
+   */
+  private static int getIntArg(final String[] args, final int index, final int defaultValue)
+  {
+    return (args.length > index ? Integer.parseInt(args[index], 10) : defaultValue);
+  }
+
+  /**
+   *
+   * @param hours
+   * @param period
+   * @param jitter
+   * @return les dates de publication
+   */
+  private static long[] generatePublications(final int hours, final long period, final long jitter)
+  {
+    final Random random = new Random(42);
+    final int count = (int)(hours * 60 * MILLIS_MINUTE / period);
+    final long[] publications = new long[count];
+    for (int i = 0; i < count; i++)
+    {
+      publications[i] = START + i * period + (long)(random.nextGaussian() * jitter);
+      if ((i > 0) && (publications[i] <= publications[i - 1]))
+      {
+        publications[i] = publications[i - 1] + MILLIS_SECONDE;
+      }
+    }
+
+    return publications;
+  }
+
+  /**
+   *
+   * @param name
+   * @param publications
+   * @param mode
+   * @param fixedInterval
+   */
+  private static void simulate(final String name, final long[] publications, final int mode, final long fixedInterval)
+  {
+    // Initialisations
+    final UpdateRhythm rhythm = new UpdateRhythm();
+    final long end = publications[publications.length - 1];
+    int polls = 0;
+    int emptyPolls = 0;
+    int fetched = -1;
+    double totalLag = 0;
+    long lastTime = START;
+
+    long now = START;
+    while (now <= end)
+    {
+      // Derniere publication disponible
+      int available = fetched;
+      while ((available + 1 < publications.length) && (publications[available + 1] <= now))
+      {
+        available++;
+      }
+
+      // Retard cumule depuis la requete precedente (premiere publication non recuperee)
+      if (fetched + 1 < publications.length)
+      {
+        final long firstMissing = Math.max(lastTime, publications[fetched + 1]);
+        if (firstMissing < now)
+        {
+          totalLag += (double)(now - firstMissing) * (now - firstMissing) / 2;
+        }
+      }
+      lastTime = now;
+
+      // Requete
+      polls++;
+      if (available == fetched)
+      {
+        emptyPolls++;
+        rhythm.observePoll(now, false);
+      }
+      else
+      {
+        final long previousData = (fetched < 0 ? -1 : publications[fetched] - DATA_LATENCY);
+        fetched = available;
+        rhythm.observeReleve(publications[fetched] - DATA_LATENCY, previousData);
+        if (mode == MODE_ADAPTIVE_PUBLISH)
+        {
+          rhythm.observePublish(publications[fetched]);
+        }
+        rhythm.observePoll(now, true);
+      }
+
+      // Requete suivante
+      now += (mode == MODE_FIXED ? fixedInterval : rhythm.getNextPollDelay(now, fixedInterval));
+    }
+
+    final double meanLag = totalLag / (lastTime - START) / MILLIS_SECONDE;
+    System.out.println(String.format("%-36s %8d %8d %10.1f", name, Integer.valueOf(polls), Integer.valueOf(emptyPolls), Double.valueOf(meanLag)));
+  }
+
+  /**
+   *
+   * @param args
+   */
+  public static void main(final String[] args)
+  {
+    final int hours = getIntArg(args, 0, DEFAULT_HOURS);
+    final long period = getIntArg(args, 1, DEFAULT_PERIOD) * MILLIS_MINUTE;
+    final long jitter = getIntArg(args, 2, DEFAULT_JITTER) * MILLIS_SECONDE;
+    final long fixed = getIntArg(args, 3, DEFAULT_FIXED) * MILLIS_MINUTE;
+
+    final long[] publications = generatePublications(hours, period, jitter);
+    System.out.println(publications.length + " publications");
+    System.out.println(String.format("%-36s %8s %8s %10s", "strategie", "requetes", "inutiles", "retard (s)"));
+    simulate("fixe " + (fixed / MILLIS_MINUTE) + " min", publications, MODE_FIXED, fixed);
+    simulate("fixe " + (period / MILLIS_MINUTE) + " min", publications, MODE_FIXED, period);
+    simulate("adaptatif (releves)", publications, MODE_ADAPTIVE_RELEVES, fixed);
+    simulate("adaptatif (releves + lastupdate)", publications, MODE_ADAPTIVE_PUBLISH, fixed);
+  }
+}
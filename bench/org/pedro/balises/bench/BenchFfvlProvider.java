@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.pedro.balises.ffvl.FfvlProvider;
+import org.xml.sax.InputSource;
+
+/**
+ * FfvlProvider alimente par des fixtures locales au lieu du reseau.
+ *
+ * @author pedro.m
+ */
+public final class BenchFfvlProvider extends FfvlProvider
+{
+  /**
+   *
+   */
+  public BenchFfvlProvider()
+  {
+    super("bench", "FR", "bench", false);
+  }
+
+  /**
+   *
+   * @param input
+   * @return nombre de releves analyses
+   * @throws IOException
+   */
+  public int parseReleves(final InputStream input) throws IOException
+  {
+    try
+    {
+      updatedReleves.clear();
+      parseReleves(new InputSource(input));
+      return getRelevesMap().size();
+    }
+    finally
+    {
+      input.close();
+    }
+  }
+
+  /**
+   *
+   * @param input
+   * @return nombre de balises analysees
+   * @throws IOException
+   */
+  public int parseBalises(final InputStream input) throws IOException
+  {
+    try
+    {
+      return parseBalisesMap(new InputSource(input)).size();
+    }
+    finally
+    {
+      input.close();
+    }
+  }
+
+  /**
+   *
+   * @param input
+   * @return nombre de dates analysees
+   * @throws IOException
+   */
+  public int parseUpdateDates(final InputStream input) throws IOException
+  {
+    try
+    {
+      return parseUpdateDatesMap(new InputSource(input)).size();
+    }
+    finally
+    {
+      input.close();
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises.bench;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Execution des {@link Benchmark} : debit, percentiles de latence et octets alloues par station.
+ *
+ * @author pedro.m
+ */
+public final class BenchmarkRunner
+{
+  private static final String                   FORMAT_HEADER = "%-32s %12s %10s %10s %10s %10s %14s%n";
+  private static final String                   FORMAT_LINE   = "%-32s %12.1f %10.1f %10.1f %10.1f %10.1f %14.1f%n";
+
+  private final com.sun.management.ThreadMXBean threadBean;
+  private final int                             warmupIterations;
+  private final int                             iterations;
+  private final PrintStream                     out;
+
+  /**
+   *
+   * @param warmupIterations
+   * @param iterations
+   * @param out
+   */
+  public BenchmarkRunner(final int warmupIterations, final int iterations, final PrintStream out)
+  {
+    this.warmupIterations = warmupIterations;
+    this.iterations = iterations;
+    this.out = out;
+
+    // Mesure des allocations (JVM HotSpot uniquement)
+    final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if ((bean instanceof com.sun.management.ThreadMXBean) && ((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemorySupported())
+    {
+      threadBean = (com.sun.management.ThreadMXBean)bean;
+      threadBean.setThreadAllocatedMemoryEnabled(true);
+    }
+    else
+    {
+      threadBean = null;
+    }
+  }
+
+  /**
+   *
+   */
+  public void printHeader()
+  {
+    out.printf(FORMAT_HEADER, "benchmark", "ops/s", "p50 (us)", "p90 (us)", "p99 (us)", "max (us)", "B/station");
+  }
+
+  /**
+   *
+   * @param benchmark
+   * @throws Exception
+   */
+  public void run(final Benchmark benchmark) throws Exception
+  {
+    // Chauffe
+    for (int i = 0; i < warmupIterations; i++)
+    {
+      benchmark.run();
+    }
+
+    // Mesure
+    final long threadId = Thread.currentThread().getId();
+    final long[] durations = new long[iterations];
+    long stations = 0;
+    final long allocatedBefore = getAllocatedBytes(threadId);
+    final long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++)
+    {
+      final long opStart = System.nanoTime();
+      stations += benchmark.run();
+      durations[i] = System.nanoTime() - opStart;
+    }
+    final long total = System.nanoTime() - start;
+    final long allocated = getAllocatedBytes(threadId) - allocatedBefore;
+
+    // Resultats
+    Arrays.sort(durations);
+    final double opsPerSecond = iterations * 1e9 / total;
+    final double bytesPerStation = ((threadBean == null) || (stations == 0) ? Double.NaN : (double)allocated / stations);
+    out.printf(FORMAT_LINE, benchmark.getName(), Double.valueOf(opsPerSecond), Double.valueOf(percentile(durations, 0.50)), Double.valueOf(percentile(durations, 0.90)), Double.valueOf(percentile(durations, 0.99)),
+        Double.valueOf(durations[durations.length - 1] / 1e3), Double.valueOf(bytesPerStation));
+  }
+
+  /**
+   *
+   * @param threadId
+   * @return
+   */
+  private long getAllocatedBytes(final long threadId)
+  {
+    return (threadBean == null ? 0 : threadBean.getThreadAllocatedBytes(threadId));
+  }
+
+  /**
+   *
+   * @param sortedDurations
+   * @param quantile
+   * @return percentile en microsecondes
+   */
+  private static double percentile(final long[] sortedDurations, final double quantile)
+  {
+    final int index = (int)Math.ceil(quantile * sortedDurations.length) - 1;
+    return sortedDurations[Math.max(0, Math.min(index, sortedDurations.length - 1))] / 1e3;
+  }
+}
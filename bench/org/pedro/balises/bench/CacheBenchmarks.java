@@ -0,0 +1,375 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises.bench;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.pedro.balises.BaliseSaveableCache;
+import org.pedro.balises.CachedProvider;
+import org.pedro.balises.Releve;
+
+/**
+ * Sauvegarde et restauration des releves par le cache : ancien format (enregistrements Saveable lus et ecrits champ par
+ * champ sur le fichier) contre instantane binaire (ecrit d'un bloc, relu par mappage du fichier), ecriture atomique
+ * (fichier temporaire synchronise puis renomme), sauvegarde des seuls releves modifies dans le journal (compactages
+ * compris), et restauration differee de l'instantane suivie de quelques lectures.<br/>
+ * Usage : CacheBenchmarks [iterations chauffe] [iterations mesure] [stations]
+ *
+ * @author pedro.m
+ */
+public final class CacheBenchmarks
+{
+  private static final int    DEFAULT_WARMUP     = 50;
+  private static final int    DEFAULT_ITERATIONS = 200;
+  private static final int    DEFAULT_STATIONS   = 5000;
+
+  private static final String KEY_LEGACY         = "legacy";
+  private static final String KEY_SNAPSHOT       = "snapshot";
+  private static final String KEY_ATOMIC         = "atomic";
+  private static final String KEY_JOURNAL        = "journal";
+  private static final String RELEVES_SUFFIX     = ".releves";
+  private static final int    LAZY_READS         = 10;
+  private static final int    UPDATED_RELEVES    = 50;
+
+  /**
+   * Cache sur des fichiers d'un repertoire.
+   *
+   * @author pedro.m
+   */
+  private static final class FileCache extends BaliseSaveableCache
+  {
+    private final File    directory;
+    private final boolean journal;
+    private final boolean rename;
+
+    /**
+     *
+     * @param directory
+     * @param journal
+     * @param rename
+     */
+    FileCache(final File directory, final boolean journal, final boolean rename)
+    {
+      this.directory = directory;
+      this.journal = journal;
+      this.rename = rename;
+    }
+
+    /**
+     *
+     * @param key
+     * @return
+     */
+    File getFile(final String key)
+    {
+      return new File(directory, key);
+    }
+
+    @Override
+    public OutputStream getCacheOutputStream(final String key) throws IOException
+    {
+      return new FileOutputStream(getFile(key));
+    }
+
+    @Override
+    protected boolean isJournalSupported()
+    {
+      return journal;
+    }
+
+    @Override
+    protected OutputStream getCacheAppendOutputStream(final String key) throws IOException
+    {
+      return new FileOutputStream(getFile(key), true);
+    }
+
+    @Override
+    protected boolean isRenameSupported()
+    {
+      return rename;
+    }
+
+    @Override
+    protected void renameCache(final String fromKey, final String toKey) throws IOException
+    {
+      moveFile(getFile(fromKey), getFile(toKey));
+    }
+
+    @Override
+    public InputStream getCacheInputStream(final String key) throws IOException
+    {
+      return new FileInputStream(getFile(key));
+    }
+
+    @Override
+    public boolean clearCache(final String key)
+    {
+      return getFile(key).delete();
+    }
+
+    @Override
+    public long getCacheTimestamp(final String key)
+    {
+      return getFile(key).lastModified();
+    }
+
+    @Override
+    public void setCacheTimestamp(final String key, final long stamp)
+    {
+      getFile(key).setLastModified(stamp);
+    }
+
+    @Override
+    public void onShutdown()
+    {
+      // Rien
+    }
+  }
+
+  /**
+   *
+   * @param args
+   * @param index
+   * @param defaultValue
+   * @return
+   */
+  private static int getIntArg(final String[] args, final int index, final int defaultValue)
+  {
+    return (args.length > index ? Integer.parseInt(args[index], 10) : defaultValue);
+  }
+
+  /**
+   * Ancienne sauvegarde : DataOutputStream non bufferise sur le fichier.
+   *
+   * @param file
+   * @param releves
+   * @throws IOException
+   */
+  static void saveLegacy(final File file, final Map<String, Releve> releves) throws IOException
+  {
+    final DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+    try
+    {
+      for (final Releve releve : releves.values())
+      {
+        releve.saveSaveable(out);
+      }
+    }
+    finally
+    {
+      out.close();
+    }
+  }
+
+  /**
+   * Ancienne restauration : DataInputStream non bufferise sur le fichier, fin detectee par available().
+   *
+   * @param file
+   * @return
+   * @throws IOException
+   */
+  static Map<String, Releve> loadLegacy(final File file) throws IOException
+  {
+    final Map<String, Releve> releves = new HashMap<String, Releve>();
+    final DataInputStream in = new DataInputStream(new FileInputStream(file));
+    try
+    {
+      while (in.available() > 0)
+      {
+        final Releve releve = new Releve();
+        releve.loadSaveable(in);
+        releves.put(releve.id, releve);
+      }
+    }
+    finally
+    {
+      in.close();
+    }
+
+    return releves;
+  }
+
+  /**
+   *
+   * @param args
+   * @throws Exception
+   */
+  public static void main(final String[] args) throws Exception
+  {
+    final int warmup = getIntArg(args, 0, DEFAULT_WARMUP);
+    final int iterations = getIntArg(args, 1, DEFAULT_ITERATIONS);
+    final int stations = getIntArg(args, 2, DEFAULT_STATIONS);
+
+    // Donnees
+    final Map<String, Releve> releves = new HashMap<String, Releve>(stations);
+    for (int i = 0; i < stations; i++)
+    {
+      final Releve releve = new Releve();
+      releve.setId(String.valueOf(i));
+      releve.date = new Date(1340280000000L + i * 1000L);
+      releve.ventMoyen = i % 37;
+      releve.ventMaxi = (i % 11 == 0 ? Double.NaN : i % 61);
+      releve.directionMoyenne = (i * 23) % 360;
+      releve.temperature = i % 30 - 5;
+      releve.luminosite = (i % 2 == 0 ? "jour" : "nuit");
+      releves.put(releve.id, releve);
+    }
+
+    // Cache
+    final File directory = File.createTempFile("balises", "cache");
+    directory.delete();
+    directory.mkdirs();
+    final FileCache cache = new FileCache(directory, false, false);
+    final FileCache lazyCache = new FileCache(directory, false, false);
+    lazyCache.setLazyRestore(true);
+    final FileCache atomicCache = new FileCache(directory, false, true);
+    final FileCache journalCache = new FileCache(directory, true, true);
+    final CachedProvider legacyProvider = new CachedProvider(KEY_LEGACY, new BenchFfvlProvider(), null, cache);
+    final CachedProvider snapshotProvider = new CachedProvider(KEY_SNAPSHOT, new BenchFfvlProvider(), null, cache);
+    final File legacyFile = cache.getFile(KEY_LEGACY + RELEVES_SUFFIX);
+    final int[] sink = new int[1];
+    final List<Releve> updated = new ArrayList<Releve>(UPDATED_RELEVES);
+    for (int i = 0; i < UPDATED_RELEVES; i++)
+    {
+      updated.add(releves.get(String.valueOf(i * stations / UPDATED_RELEVES)));
+    }
+
+    try
+    {
+      final BenchmarkRunner runner = new BenchmarkRunner(warmup, iterations, System.out);
+      runner.printHeader();
+
+      runner.run(new Benchmark("store releves (Saveable)")
+      {
+        @Override
+        public int run() throws IOException
+        {
+          saveLegacy(legacyFile, releves);
+          return stations;
+        }
+      });
+
+      runner.run(new Benchmark("store releves (instantane)")
+      {
+        @Override
+        public int run() throws IOException
+        {
+          cache.storeReleves(KEY_SNAPSHOT + RELEVES_SUFFIX, releves);
+          return stations;
+        }
+      });
+
+      runner.run(new Benchmark("store releves (atomique)")
+      {
+        @Override
+        public int run() throws IOException
+        {
+          atomicCache.storeReleves(KEY_ATOMIC + RELEVES_SUFFIX, releves);
+          return stations;
+        }
+      });
+
+      journalCache.storeReleves(KEY_JOURNAL + RELEVES_SUFFIX, releves);
+      runner.run(new Benchmark("store releves (journal, " + UPDATED_RELEVES + " maj)")
+      {
+        @Override
+        public int run() throws IOException
+        {
+          if (!journalCache.appendReleves(KEY_JOURNAL + RELEVES_SUFFIX, updated))
+          {
+            journalCache.storeReleves(KEY_JOURNAL + RELEVES_SUFFIX, releves);
+          }
+          return stations;
+        }
+      });
+
+      runner.run(new Benchmark("restore releves (Saveable)")
+      {
+        @Override
+        public int run() throws IOException
+        {
+          sink[0] += loadLegacy(legacyFile).size();
+          return stations;
+        }
+      });
+
+      runner.run(new Benchmark("restore releves (Saveable, cache)")
+      {
+        @Override
+        public int run() throws IOException
+        {
+          sink[0] += cache.restoreReleves(KEY_LEGACY + RELEVES_SUFFIX, legacyProvider).size();
+          return stations;
+        }
+      });
+
+      runner.run(new Benchmark("restore releves (instantane)")
+      {
+        @Override
+        public int run() throws IOException
+        {
+          sink[0] += cache.restoreReleves(KEY_SNAPSHOT + RELEVES_SUFFIX, snapshotProvider).size();
+          return stations;
+        }
+      });
+
+      runner.run(new Benchmark("restore releves (differe, " + LAZY_READS + " get)")
+      {
+        @Override
+        public int run() throws IOException
+        {
+          final Map<String, Releve> restored = lazyCache.restoreReleves(KEY_SNAPSHOT + RELEVES_SUFFIX, snapshotProvider);
+          for (int i = 0; i < LAZY_READS; i++)
+          {
+            sink[0] += restored.get(String.valueOf(i * stations / LAZY_READS)).directionMoyenne;
+          }
+          return stations;
+        }
+      });
+    }
+    finally
+    {
+      for (final File file : directory.listFiles())
+      {
+        file.delete();
+      }
+      directory.delete();
+    }
+
+    // Pour eviter l'elimination du code par le JIT
+    System.out.println("(sink " + sink[0] + ")");
+  }
+}
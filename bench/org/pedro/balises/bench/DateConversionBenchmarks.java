@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises.bench;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.pedro.balises.Utils;
+
+/**
+ * Comparaison des conversions UTC : ancienne implementation (Calendar) contre la table des decalages, sur des dates
+ * encadrant le dernier changement d'heure du fuseau Europe/Paris.<br/>
+ * Usage : DateConversionBenchmarks [iterations chauffe] [iterations mesure]
+ * 
+ * @author pedro.m
+ */
+public final class DateConversionBenchmarks
+{
+  private static final int      DEFAULT_WARMUP     = 2000;
+  private static final int      DEFAULT_ITERATIONS = 10000;
+  private static final int      NB_DATES           = 48;
+  private static final long     MILLIS_HEURE       = 3600 * 1000;
+  private static final TimeZone SOURCE_TIME_ZONE   = TimeZone.getTimeZone("Europe/Paris");
+
+  /**
+   * Conversion telle qu'effectuee avant la table des decalages
+   * 
+   * @param date
+   * @param sourceTimeZone
+   */
+  private static void calendarToUTC(final Date date, final TimeZone sourceTimeZone)
+  {
+    final Calendar cal = Calendar.getInstance();
+    cal.setTime(date);
+    final int sourceOffset = sourceTimeZone.getOffset(cal.getTimeInMillis());
+    cal.add(Calendar.MILLISECOND, -sourceOffset);
+
+    date.setTime(cal.getTime().getTime());
+  }
+
+  /**
+   * 
+   * @return les dates (une par quart d'heure) encadrant le dernier changement d'heure
+   */
+  private static long[] getDates()
+  {
+    // Recherche du dernier changement d'heure
+    long transition = System.currentTimeMillis();
+    final int offset = SOURCE_TIME_ZONE.getOffset(transition);
+    while (SOURCE_TIME_ZONE.getOffset(transition - MILLIS_HEURE) == offset)
+    {
+      transition -= MILLIS_HEURE;
+    }
+
+    // Dates
+    final long[] dates = new long[NB_DATES];
+    for (int i = 0; i < NB_DATES; i++)
+    {
+      dates[i] = transition + (i - NB_DATES / 2) * MILLIS_HEURE / 4;
+    }
+
+    return dates;
+  }
+
+  /**
+   * 
+   * @param args
+   * @throws Exception
+   */
+  public static void main(final String[] args) throws Exception
+  {
+    final int warmup = (args.length > 0 ? Integer.parseInt(args[0], 10) : DEFAULT_WARMUP);
+    final int iterations = (args.length > 1 ? Integer.parseInt(args[1], 10) : DEFAULT_ITERATIONS);
+    final long[] dates = getDates();
+    final Date date = new Date();
+    final long[] sink = new long[1];
+
+    // Verification
+    for (final long millis : dates)
+    {
+      date.setTime(millis);
+      calendarToUTC(date, SOURCE_TIME_ZONE);
+      if (date.getTime() != Utils.toUTC(millis, SOURCE_TIME_ZONE))
+      {
+        throw new IllegalStateException("Conversion differente pour " + millis);
+      }
+    }
+
+    final BenchmarkRunner runner = new BenchmarkRunner(warmup, iterations, System.out);
+    runner.printHeader();
+
+    runner.run(new Benchmark("toUTC(Date) Calendar")
+    {
+      @Override
+      public int run()
+      {
+        for (final long millis : dates)
+        {
+          date.setTime(millis);
+          calendarToUTC(date, SOURCE_TIME_ZONE);
+          sink[0] += date.getTime();
+        }
+        return dates.length;
+      }
+    });
+
+    runner.run(new Benchmark("toUTC(Date) table")
+    {
+      @Override
+      public int run()
+      {
+        for (final long millis : dates)
+        {
+          date.setTime(millis);
+          Utils.toUTC(date, SOURCE_TIME_ZONE);
+          sink[0] += date.getTime();
+        }
+        return dates.length;
+      }
+    });
+
+    runner.run(new Benchmark("toUTC(long) table")
+    {
+      @Override
+      public int run()
+      {
+        for (final long millis : dates)
+        {
+          sink[0] += Utils.toUTC(millis, SOURCE_TIME_ZONE);
+        }
+        return dates.length;
+      }
+    });
+
+    // Pour eviter l'elimination du code par le JIT
+    System.out.println("(sink " + sink[0] + ")");
+  }
+}
@@ -0,0 +1,301 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Flux enregistres rejoues par les benchmarks.<br/>
+ * Chaque fichier est lu depuis le repertoire des fixtures s'il existe (relevemeteo.xml, balise_list.xml, lastupdate.xml,
+ * releves_romma.xml et leurs variantes .gz), sinon un flux synthetique equivalent est genere.
+ *
+ * @author pedro.m
+ */
+public final class Fixtures
+{
+  public static final String    FFVL_RELEVES     = "relevemeteo.xml";
+  public static final String    FFVL_BALISES     = "balise_list.xml";
+  public static final String    FFVL_LAST_UPDATE = "lastupdate.xml";
+  public static final String    ROMMA_RELEVES    = "releves_romma.xml";
+
+  private static final String   SUFFIXE_GZIP     = ".gz";
+  private static final String   ENCODING         = "UTF-8";
+  private static final int      READ_BUFFER_SIZE = 8192;
+  private static final String[] DIRECTIONS       = { "N", "NNE", "NE", "ENE", "E", "ESE", "SE", "SSE", "S", "SSO", "SO", "OSO", "O", "ONO", "NO", "NNO" };
+
+  private final File            directory;
+  private final int             syntheticStations;
+
+  /**
+   *
+   * @param directory repertoire des fixtures (peut etre null)
+   * @param syntheticStations nombre de stations des flux synthetiques
+   */
+  public Fixtures(final File directory, final int syntheticStations)
+  {
+    this.directory = directory;
+    this.syntheticStations = syntheticStations;
+  }
+
+  /**
+   *
+   * @param name
+   * @return le contenu brut (non compresse) du flux
+   * @throws IOException
+   */
+  public byte[] getPlain(final String name) throws IOException
+  {
+    final File file = getFile(name);
+    if (file != null)
+    {
+      return readFully(new FileInputStream(file));
+    }
+
+    final File gzFile = getFile(name + SUFFIXE_GZIP);
+    if (gzFile != null)
+    {
+      return readFully(new GZIPInputStream(new FileInputStream(gzFile)));
+    }
+
+    return generate(name);
+  }
+
+  /**
+   *
+   * @param name
+   * @return le contenu gzip du flux
+   * @throws IOException
+   */
+  public byte[] getZipped(final String name) throws IOException
+  {
+    final File gzFile = getFile(name + SUFFIXE_GZIP);
+    if (gzFile != null)
+    {
+      return readFully(new FileInputStream(gzFile));
+    }
+
+    final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    final GZIPOutputStream gos = new GZIPOutputStream(bos);
+    try
+    {
+      gos.write(getPlain(name));
+    }
+    finally
+    {
+      gos.close();
+    }
+
+    return bos.toByteArray();
+  }
+
+  /**
+   *
+   * @param data
+   * @param zipped
+   * @return
+   * @throws IOException
+   */
+  public static InputStream open(final byte[] data, final boolean zipped) throws IOException
+  {
+    final InputStream is = new ByteArrayInputStream(data);
+    return (zipped ? new GZIPInputStream(is) : is);
+  }
+
+  /**
+   *
+   * @param name
+   * @return
+   */
+  private File getFile(final String name)
+  {
+    if (directory == null)
+    {
+      return null;
+    }
+
+    final File file = new File(directory, name);
+    return (file.isFile() ? file : null);
+  }
+
+  /**
+   *
+   * @param is
+   * @return
+   * @throws IOException
+   */
+  private static byte[] readFully(final InputStream is) throws IOException
+  {
+    try
+    {
+      final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[READ_BUFFER_SIZE];
+      int read = is.read(buffer);
+      while (read >= 0)
+      {
+        bos.write(buffer, 0, read);
+        read = is.read(buffer);
+      }
+
+      return bos.toByteArray();
+    }
+    finally
+    {
+      is.close();
+    }
+  }
+
+  /**
+   *
+   * @param name
+   * @return
+   * @throws UnsupportedEncodingException
+   */
+  private byte[] generate(final String name) throws UnsupportedEncodingException
+  {
+    final StringBuilder buffer = new StringBuilder(syntheticStations * 512);
+    buffer.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+
+    if (FFVL_RELEVES.equals(name))
+    {
+      generateFfvlReleves(buffer);
+    }
+    else if (FFVL_BALISES.equals(name))
+    {
+      generateFfvlBalises(buffer);
+    }
+    else if (FFVL_LAST_UPDATE.equals(name))
+    {
+      generateFfvlLastUpdate(buffer);
+    }
+    else if (ROMMA_RELEVES.equals(name))
+    {
+      generateRommaReleves(buffer);
+    }
+    else
+    {
+      throw new IllegalArgumentException(name);
+    }
+
+    return buffer.toString().getBytes(ENCODING);
+  }
+
+  /**
+   *
+   * @param buffer
+   */
+  private void generateFfvlReleves(final StringBuilder buffer)
+  {
+    buffer.append("<releves>\n");
+    for (int i = 0; i < syntheticStations; i++)
+    {
+      buffer.append("<releve>");
+      buffer.append("<idbalise>").append(i + 1).append("</idbalise>");
+      buffer.append("<date>2012-06-21 14:").append(i % 6).append("0:00</date>");
+      buffer.append("<vitesseVentMoy>").append(i % 40).append("</vitesseVentMoy>");
+      buffer.append("<vitesseVentMax>").append(i % 40 + 8).append(".5</vitesseVentMax>");
+      buffer.append("<vitesseVentMin>").append(i % 10).append("</vitesseVentMin>");
+      buffer.append("<directVentMoy>").append((i * 23) % 360).append("</directVentMoy>");
+      buffer.append("<directVentInst>").append((i * 29) % 360).append("</directVentInst>");
+      buffer.append("<temperature>").append(i % 30 - 5).append(".2</temperature>");
+      buffer.append("<hydrometrie>").append(i % 3).append("</hydrometrie>");
+      buffer.append("<pression>").append(1000 + i % 30).append("</pression>");
+      buffer.append("<luminosite>").append(i % 2 == 0 ? "jour" : "nuit").append("</luminosite>");
+      buffer.append("</releve>\n");
+    }
+    buffer.append("</releves>\n");
+  }
+
+  /**
+   *
+   * @param buffer
+   */
+  private void generateFfvlBalises(final StringBuilder buffer)
+  {
+    buffer.append("<balises>\n");
+    for (int i = 0; i < syntheticStations; i++)
+    {
+      buffer.append("<balise>");
+      buffer.append("<idBalise>").append(i + 1).append("</idBalise>");
+      buffer.append("<nom>Balise ").append(i + 1).append("</nom>");
+      buffer.append("<altitude value=\"").append(200 + (i * 37) % 2500).append("\"/>");
+      buffer.append("<coord lat=\"").append(43 + (i % 70) / 10.0).append("\" lon=\"").append(-1 + (i % 80) / 10.0).append("\"/>");
+      buffer.append("<departement value=\"").append(1 + i % 95).append("\"/>");
+      buffer.append("<description>Description de la balise ").append(i + 1).append("</description>");
+      buffer.append("<remarques>RAS</remarques>");
+      buffer.append("<url value=\"http://www.balisemeteo.com/balise.php?idBalise=").append(i + 1).append("\"/>");
+      buffer.append("<urlHisto value=\"http://www.balisemeteo.com/balise_histo.php?idBalise=").append(i + 1).append("\"/>");
+      buffer.append("<active>").append(i % 7 == 0 ? 0 : 1).append("</active>");
+      buffer.append("<forKyte>").append(i % 5 == 0 ? 1 : 0).append("</forKyte>");
+      buffer.append("</balise>\n");
+    }
+    buffer.append("</balises>\n");
+  }
+
+  /**
+   *
+   * @param buffer
+   */
+  private static void generateFfvlLastUpdate(final StringBuilder buffer)
+  {
+    buffer.append("<lastupdate>\n");
+    buffer.append("<infos value=\"2012-06-21 08:00:00\"/>\n");
+    buffer.append("<decollages value=\"2012-06-20 22:15:00\"/>\n");
+    buffer.append("<atterrissages value=\"2012-06-20 22:15:00\"/>\n");
+    buffer.append("<balises value=\"2012-06-19 10:30:00\"/>\n");
+    buffer.append("<releves_meteo value=\"2012-06-21 14:50:00\"/>\n");
+    buffer.append("<spots_kite value=\"2012-06-18 09:00:00\"/>\n");
+    buffer.append("</lastupdate>\n");
+  }
+
+  /**
+   *
+   * @param buffer
+   */
+  private void generateRommaReleves(final StringBuilder buffer)
+  {
+    buffer.append("<releves>\n");
+    for (int i = 0; i < syntheticStations; i++)
+    {
+      final boolean missing = (i % 11 == 0);
+      buffer.append("<releve>");
+      buffer.append("<stationID>").append(i + 1).append("</stationID>");
+      buffer.append("<date>21-06-2012 14:").append(i % 6).append("0</date>");
+      buffer.append("<vitesseVentMoy10min>").append(missing ? "--.-" : String.valueOf(i % 40 + 0.4)).append("</vitesseVentMoy10min>");
+      buffer.append("<directionVentInst>").append(DIRECTIONS[i % DIRECTIONS.length]).append("</directionVentInst>");
+      buffer.append("<temperature>").append(missing ? "--" : String.valueOf(i % 30 - 5 + 0.3)).append("</temperature>");
+      buffer.append("<RafaleMaxi>").append(i % 40 + 12).append(".1</RafaleMaxi>");
+      buffer.append("<RafaleMaxiHeure>1").append(i % 4).append(":").append(i % 6).append("5</RafaleMaxiHeure>");
+      buffer.append("</releve>\n");
+    }
+    buffer.append("</releves>\n");
+  }
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises.bench;
+
+import org.pedro.balises.Utils;
+
+/**
+ * Comparaison de l'analyse des valeurs numeriques : chemin String (creation de chaine + Utils.parsePrimitiveXxx(String))
+ * contre l'analyse directe des caracteres.<br/>
+ * Usage : NumberParsingBenchmarks [iterations chauffe] [iterations mesure]
+ *
+ * @author pedro.m
+ */
+public final class NumberParsingBenchmarks
+{
+  private static final int      DEFAULT_WARMUP     = 2000;
+  private static final int      DEFAULT_ITERATIONS = 10000;
+  private static final String[] DOUBLES            = { "12.5", "0", "37", "-3.2", "1013.25", "98", "4.75", "21.0", "150", "0.4" };
+  private static final String[] INTEGERS           = { "0", "45", "180", "359", "270", "22", "1", "315" };
+
+  /**
+   *
+   * @param values
+   * @return
+   */
+  private static char[][] toChars(final String[] values)
+  {
+    final char[][] retour = new char[values.length][];
+    for (int i = 0; i < values.length; i++)
+    {
+      retour[i] = values[i].toCharArray();
+    }
+
+    return retour;
+  }
+
+  /**
+   *
+   * @param args
+   * @throws Exception
+   */
+  public static void main(final String[] args) throws Exception
+  {
+    final int warmup = (args.length > 0 ? Integer.parseInt(args[0], 10) : DEFAULT_WARMUP);
+    final int iterations = (args.length > 1 ? Integer.parseInt(args[1], 10) : DEFAULT_ITERATIONS);
+    final char[][] doubles = toChars(DOUBLES);
+    final char[][] integers = toChars(INTEGERS);
+    final double[] doubleSink = new double[1];
+    final int[] intSink = new int[1];
+
+    final BenchmarkRunner runner = new BenchmarkRunner(warmup, iterations, System.out);
+    runner.printHeader();
+
+    runner.run(new Benchmark("parsePrimitiveDouble(String)")
+    {
+      @Override
+      public int run()
+      {
+        for (final char[] value : doubles)
+        {
+          doubleSink[0] += Utils.parsePrimitiveDouble(new String(value, 0, value.length));
+        }
+        return doubles.length;
+      }
+    });
+
+    runner.run(new Benchmark("parsePrimitiveDouble(char[])")
+    {
+      @Override
+      public int run()
+      {
+        for (final char[] value : doubles)
+        {
+          doubleSink[0] += Utils.parsePrimitiveDouble(value, 0, value.length);
+        }
+        return doubles.length;
+      }
+    });
+
+    runner.run(new Benchmark("parsePrimitiveInteger(String)")
+    {
+      @Override
+      public int run()
+      {
+        for (final char[] value : integers)
+        {
+          intSink[0] += Utils.parsePrimitiveInteger(new String(value, 0, value.length));
+        }
+        return integers.length;
+      }
+    });
+
+    runner.run(new Benchmark("parsePrimitiveInteger(char[])")
+    {
+      @Override
+      public int run()
+      {
+        for (final char[] value : integers)
+        {
+          intSink[0] += Utils.parsePrimitiveInteger(value, 0, value.length);
+        }
+        return integers.length;
+      }
+    });
+
+    // Pour eviter l'elimination du code par le JIT
+    System.out.println("(sink " + doubleSink[0] + " " + intSink[0] + ")");
+  }
+}
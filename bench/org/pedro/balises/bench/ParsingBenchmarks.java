@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks des analyses SAX FFVL et ROMMA (et StAX pour les releves FFVL).<br/>
+ * Usage : ParsingBenchmarks [repertoire fixtures] [iterations chauffe] [iterations mesure] [stations synthetiques]<br/>
+ * Les releves sont analyses en regime etabli (releves deja connus), comme lors d'un poll sans nouveautes.
+ *
+ * @author pedro.m
+ */
+public final class ParsingBenchmarks
+{
+  private static final int DEFAULT_WARMUP     = 200;
+  private static final int DEFAULT_ITERATIONS = 1000;
+  private static final int DEFAULT_STATIONS   = 500;
+
+  /**
+   *
+   * @param fixtures
+   * @return
+   * @throws Exception
+   */
+  public static List<Benchmark> createBenchmarks(final Fixtures fixtures) throws Exception
+  {
+    final List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+    final BenchFfvlProvider ffvl = new BenchFfvlProvider();
+    final BenchFfvlProvider ffvlStax = new BenchFfvlProvider();
+    ffvlStax.setStaxReleveParser(true);
+    final BenchRommaProvider romma = new BenchRommaProvider();
+
+    for (final boolean zipped : new boolean[] { false, true })
+    {
+      final String suffixe = (zipped ? " (gz)" : "");
+
+      final byte[] ffvlReleves = (zipped ? fixtures.getZipped(Fixtures.FFVL_RELEVES) : fixtures.getPlain(Fixtures.FFVL_RELEVES));
+      benchmarks.add(new Benchmark("ffvl.parseReleves" + suffixe)
+      {
+        @Override
+        public int run() throws Exception
+        {
+          return ffvl.parseReleves(Fixtures.open(ffvlReleves, zipped));
+        }
+      });
+
+      benchmarks.add(new Benchmark("ffvl.parseReleves StAX" + suffixe)
+      {
+        @Override
+        public int run() throws Exception
+        {
+          return ffvlStax.parseReleves(Fixtures.open(ffvlReleves, zipped));
+        }
+      });
+
+      final byte[] ffvlBalises = (zipped ? fixtures.getZipped(Fixtures.FFVL_BALISES) : fixtures.getPlain(Fixtures.FFVL_BALISES));
+      benchmarks.add(new Benchmark("ffvl.parseBalisesMap" + suffixe)
+      {
+        @Override
+        public int run() throws Exception
+        {
+          return ffvl.parseBalises(Fixtures.open(ffvlBalises, zipped));
+        }
+      });
+
+      final byte[] ffvlLastUpdate = (zipped ? fixtures.getZipped(Fixtures.FFVL_LAST_UPDATE) : fixtures.getPlain(Fixtures.FFVL_LAST_UPDATE));
+      benchmarks.add(new Benchmark("ffvl.parseUpdateDatesMap" + suffixe)
+      {
+        @Override
+        public int run() throws Exception
+        {
+          return ffvl.parseUpdateDates(Fixtures.open(ffvlLastUpdate, zipped));
+        }
+      });
+
+      final byte[] rommaReleves = (zipped ? fixtures.getZipped(Fixtures.ROMMA_RELEVES) : fixtures.getPlain(Fixtures.ROMMA_RELEVES));
+      benchmarks.add(new Benchmark("romma.parseReleves" + suffixe)
+      {
+        @Override
+        public int run() throws Exception
+        {
+          return romma.parseReleves(Fixtures.open(rommaReleves, zipped));
+        }
+      });
+    }
+
+    return benchmarks;
+  }
+
+  /**
+   *
+   * @param args
+   * @param index
+   * @param defaultValue
+   * @return
+   */
+  private static int getIntArg(final String[] args, final int index, final int defaultValue)
+  {
+    return (args.length > index ? Integer.parseInt(args[index], 10) : defaultValue);
+  }
+
+  /**
+   *
+   * @param args
+   * @throws Exception
+   */
+  public static void main(final String[] args) throws Exception
+  {
+    final File directory = (args.length > 0 ? new File(args[0]) : null);
+    final int warmup = getIntArg(args, 1, DEFAULT_WARMUP);
+    final int iterations = getIntArg(args, 2, DEFAULT_ITERATIONS);
+    final int stations = getIntArg(args, 3, DEFAULT_STATIONS);
+
+    final BenchmarkRunner runner = new BenchmarkRunner(warmup, iterations, System.out);
+    runner.printHeader();
+    for (final Benchmark benchmark : createBenchmarks(new Fixtures(directory, stations)))
+    {
+      runner.run(benchmark);
+    }
+  }
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises.bench;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.pedro.balises.Releve;
+import org.pedro.balises.ReleveStore;
+
+/**
+ * Comparaison d'un parcours "toutes les stations avec ventMaxi > X" : Map de Releve contre ReleveStore (sur le tas et hors
+ * du tas).<br/>
+ * Usage : ReleveStoreBenchmarks [iterations chauffe] [iterations mesure] [stations]
+ * 
+ * @author pedro.m
+ */
+public final class ReleveStoreBenchmarks
+{
+  private static final int    DEFAULT_WARMUP     = 500;
+  private static final int    DEFAULT_ITERATIONS = 2000;
+  private static final int    DEFAULT_STATIONS   = 20000;
+  private static final double SEUIL_VENT_MAXI    = 40;
+
+  /**
+   * 
+   * @param args
+   * @param index
+   * @param defaultValue
+   * @return
+   */
+  private static int getIntArg(final String[] args, final int index, final int defaultValue)
+  {
+    return (args.length > index ? Integer.parseInt(args[index], 10) : defaultValue);
+  }
+
+  /**
+   * 
+   * @param args
+   * @throws Exception
+   */
+  public static void main(final String[] args) throws Exception
+  {
+    final int warmup = getIntArg(args, 0, DEFAULT_WARMUP);
+    final int iterations = getIntArg(args, 1, DEFAULT_ITERATIONS);
+    final int stations = getIntArg(args, 2, DEFAULT_STATIONS);
+
+    // Donnees
+    final Map<String, Releve> map = new HashMap<String, Releve>(stations);
+    final ReleveStore heapStore = new ReleveStore(stations, false);
+    final ReleveStore offHeapStore = new ReleveStore(stations, true);
+    for (int i = 0; i < stations; i++)
+    {
+      final Releve releve = new Releve();
+      releve.setId(String.valueOf(i));
+      releve.date = new Date(1340280000000L + i * 1000L);
+      releve.ventMoyen = i % 37;
+      releve.ventMaxi = (i % 11 == 0 ? Double.NaN : i % 61);
+      releve.directionMoyenne = (i * 23) % 360;
+      releve.temperature = i % 30 - 5;
+      map.put(releve.id, releve);
+      heapStore.put(releve);
+      offHeapStore.put(releve);
+    }
+    final int[] result = new int[stations];
+    final int[] sink = new int[1];
+
+    final BenchmarkRunner runner = new BenchmarkRunner(warmup, iterations, System.out);
+    runner.printHeader();
+
+    runner.run(new Benchmark("scan Map<Releve>")
+    {
+      @Override
+      public int run()
+      {
+        int count = 0;
+        for (final Releve releve : map.values())
+        {
+          if (releve.ventMaxi > SEUIL_VENT_MAXI)
+          {
+            result[count++] = releve.hashCode();
+          }
+        }
+        sink[0] += count;
+        return stations;
+      }
+    });
+
+    runner.run(new Benchmark("scan ReleveStore (tas)")
+    {
+      @Override
+      public int run()
+      {
+        sink[0] += heapStore.findGreaterThan(ReleveStore.VENT_MAXI, SEUIL_VENT_MAXI, result);
+        return stations;
+      }
+    });
+
+    runner.run(new Benchmark("scan ReleveStore (hors tas)")
+    {
+      @Override
+      public int run()
+      {
+        sink[0] += offHeapStore.findGreaterThan(ReleveStore.VENT_MAXI, SEUIL_VENT_MAXI, result);
+        return stations;
+      }
+    });
+
+    // Pour eviter l'elimination du code par le JIT
+    System.out.println("(sink " + sink[0] + ")");
+  }
+}
@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.pedro.balises.FeedTransport;
+import org.pedro.balises.FeedValidators;
+import org.pedro.balises.UrlConnectionTransport;
+import org.pedro.balises.Utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Recuperation de N flux sur un serveur HTTP local simulant une latence : transport sequentiel contre pool de threads
+ * (connexions keep-alive), avec et sans requetes conditionnelles.<br/>
+ * Usage : TransportBenchmarks [iterations chauffe] [iterations mesure] [flux] [latence ms] [threads]
+ *
+ * @author pedro.m
+ */
+public final class TransportBenchmarks
+{
+  private static final int    DEFAULT_WARMUP     = 3;
+  private static final int    DEFAULT_ITERATIONS = 10;
+  private static final int    DEFAULT_FEEDS      = 24;
+  private static final int    DEFAULT_LATENCY    = 20;
+  private static final int    DEFAULT_THREADS    = 8;
+  private static final int    BODY_SIZE          = 32 * 1024;
+  private static final String ETAG               = "\"v1\"";
+
+  /**
+   *
+   * @param args
+   * @param index
+   * @param defaultValue
+   * @return
+   */
+  private static int getIntArg(final String[] args, final int index, final int defaultValue)
+  {
+    return (args.length > index ? Integer.parseInt(args[index], 10) : defaultValue);
+  }
+
+  /**
+   * Serveur local : reponse de BODY_SIZE octets apres latency ms, ou 304 si l'ETag correspond.
+   *
+   * @param latency
+   * @param executor
+   * @return
+   * @throws IOException
+   */
+  private static HttpServer startServer(final int latency, final ExecutorService executor) throws IOException
+  {
+    final byte[] body = new byte[BODY_SIZE];
+    final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.setExecutor(executor);
+    server.createContext("/", new HttpHandler()
+    {
+      @Override
+      public void handle(final HttpExchange exchange) throws IOException
+      {
+        try
+        {
+          Thread.sleep(latency);
+        }
+        catch (final InterruptedException ie)
+        {
+          Thread.currentThread().interrupt();
+        }
+
+        if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match")))
+        {
+          exchange.sendResponseHeaders(304, -1);
+        }
+        else
+        {
+          exchange.getResponseHeaders().add("ETag", ETAG);
+          exchange.sendResponseHeaders(200, body.length);
+          final OutputStream os = exchange.getResponseBody();
+          os.write(body);
+          os.close();
+        }
+        exchange.close();
+      }
+    });
+    server.start();
+
+    return server;
+  }
+
+  /**
+   *
+   * @param input
+   * @return
+   * @throws IOException
+   */
+  private static int drain(final InputStream input) throws IOException
+  {
+    if (input == null)
+    {
+      return 0;
+    }
+
+    try
+    {
+      final byte[] buffer = new byte[Utils.READ_BUFFER_SIZE];
+      int total = 0;
+      int read = input.read(buffer);
+      while (read > 0)
+      {
+        total += read;
+        read = input.read(buffer);
+      }
+      return total;
+    }
+    finally
+    {
+      input.close();
+    }
+  }
+
+  /**
+   *
+   * @param transport
+   * @param urls
+   * @param validators
+   * @return
+   * @throws Exception
+   */
+  private static int fetchAll(final FeedTransport transport, final List<String> urls, final FeedValidators validators) throws Exception
+  {
+    final List<Future<InputStream>> futures = new ArrayList<Future<InputStream>>(urls.size());
+    for (final String url : urls)
+    {
+      futures.add(transport.openAsync(url, null, validators, true));
+    }
+
+    int total = 0;
+    for (final Future<InputStream> future : futures)
+    {
+      total += drain(future.get());
+    }
+
+    return total;
+  }
+
+  /**
+   *
+   * @param args
+   * @throws Exception
+   */
+  public static void main(final String[] args) throws Exception
+  {
+    final int warmup = getIntArg(args, 0, DEFAULT_WARMUP);
+    final int iterations = getIntArg(args, 1, DEFAULT_ITERATIONS);
+    final int feeds = getIntArg(args, 2, DEFAULT_FEEDS);
+    final int latency = getIntArg(args, 3, DEFAULT_LATENCY);
+    final int threads = getIntArg(args, 4, DEFAULT_THREADS);
+
+    // Serveur et URLs
+    final ExecutorService serverExecutor = Executors.newCachedThreadPool();
+    final HttpServer server = startServer(latency, serverExecutor);
+    final List<String> urls = new ArrayList<String>(feeds);
+    for (int i = 0; i < feeds; i++)
+    {
+      urls.add("http://127.0.0.1:" + server.getAddress().getPort() + "/feed" + i + ".xml");
+    }
+    final UrlConnectionTransport pooled = new UrlConnectionTransport(Utils.CONNECT_TIMEOUT, Utils.READ_TIMEOUT, threads);
+    final FeedValidators validators = new FeedValidators();
+    final int[] sink = new int[1];
+
+    try
+    {
+      final BenchmarkRunner runner = new BenchmarkRunner(warmup, iterations, System.out);
+      runner.printHeader();
+
+      runner.run(new Benchmark("sequentiel")
+      {
+        @Override
+        public int run() throws Exception
+        {
+          sink[0] += fetchAll(UrlConnectionTransport.DEFAULT, urls, null);
+          return feeds;
+        }
+      });
+
+      runner.run(new Benchmark("pool " + threads + " threads")
+      {
+        @Override
+        public int run() throws Exception
+        {
+          sink[0] += fetchAll(pooled, urls, null);
+          return feeds;
+        }
+      });
+
+      runner.run(new Benchmark("pool " + threads + " threads (304)")
+      {
+        @Override
+        public int run() throws Exception
+        {
+          sink[0] += fetchAll(pooled, urls, validators);
+          return feeds;
+        }
+      });
+    }
+    finally
+    {
+      pooled.shutdown();
+      server.stop(0);
+      serverExecutor.shutdown();
+    }
+
+    // Pour eviter l'elimination du code par le JIT
+    System.out.println("(sink " + sink[0] + ")");
+  }
+}
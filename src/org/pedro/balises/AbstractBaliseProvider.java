@@ -23,25 +23,50 @@
  ******************************************************************************/
 package org.pedro.balises;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import org.pedro.balises.history.ReleveHistory;
+
 /**
+ * Base des providers.<br/>
+ * Les balises et les releves sont publies par generations : chaque mise a jour construit a part une nouvelle Map
+ * (copie superficielle, les releves modifies etant de nouvelles instances) puis la publie d'un bloc. Les lectures
+ * (getBalises(), getReleves(), getReleveById()...) ne prennent aucun verrou et voient toujours une generation complete,
+ * sans copie par lecteur. Avec un {@link ReleveStore}, les releves sont mis a jour en place dans le stock, dont les
+ * lectures sans verrou voient toujours des releves complets. Les mises a jour d'un meme provider ne doivent pas etre
+ * concurrentes (cf. {@link ProviderRefreshScheduler}).
  * 
  * @author pedro.m
  */
 public abstract class AbstractBaliseProvider implements BaliseProvider, ReleveParserListener
 {
-  protected static final String       REQUEST_PROPERTY_ACCEPT_ENCODING          = "Accept-Encoding";
-  protected static final String       REQUEST_PROPERTY_ACCEPT_ENCODING_IDENTITY = "identity";
+  protected static final String              REQUEST_PROPERTY_ACCEPT_ENCODING          = "Accept-Encoding";
+  protected static final String              REQUEST_PROPERTY_ACCEPT_ENCODING_IDENTITY = "identity";
+  protected static final Map<String, String> ZIPPED_REQUEST_PROPERTIES                 = Collections.singletonMap(REQUEST_PROPERTY_ACCEPT_ENCODING, REQUEST_PROPERTY_ACCEPT_ENCODING_IDENTITY);
 
-  private final String                name;
-  protected final String              country;
-  protected final String              region;
-  private Map<String, Balise>         balises;
-  private Map<String, Releve>         releves;
-  protected final Map<String, Releve> updatedReleves                            = new HashMap<String, Releve>();
+  private final String                       name;
+  protected final String                     country;
+  protected final String                     region;
+  private volatile Map<String, Balise>       balises;
+  private volatile BaliseSpatialIndex        spatialIndex                              = BaliseSpatialIndex.empty();
+  private final Object                       spatialIndexLock                          = new Object();
+  private volatile Map<String, Releve>       releves;
+  private Map<String, Releve>                nextReleves;
+  private volatile ReleveStore               releveStore;
+  private ReleveHistory                      releveHistory;
+  private final FeedValidators               feedValidators                            = new FeedValidators();
+  private final UpdateRhythm                 updateRhythm                              = new UpdateRhythm();
+  private final ReleveChangeFeed             changeFeed;
+  private final RelevePublisher              relevePublisher;
+  private FeedTransport                      feedTransport                             = UrlConnectionTransport.DEFAULT;
+  protected final Map<String, Releve>        updatedReleves                            = new HashMap<String, Releve>();
 
   /**
    * 
@@ -55,8 +80,10 @@ public abstract class AbstractBaliseProvider implements BaliseProvider, RelevePa
     this.name = name;
     this.country = country.toUpperCase();
     this.region = (region == null ? null : region.toUpperCase());
-    balises = new HashMap<String, Balise>(balisesSize);
-    releves = new HashMap<String, Releve>(balisesSize);
+    balises = Collections.unmodifiableMap(new HashMap<String, Balise>(balisesSize));
+    releves = Collections.emptyMap();
+    changeFeed = new ReleveChangeFeed(Math.max(ReleveChangeFeed.DEFAULT_CAPACITY, 4 * balisesSize));
+    relevePublisher = new RelevePublisher(this, null);
   }
 
   @Override
@@ -72,7 +99,68 @@ public abstract class AbstractBaliseProvider implements BaliseProvider, RelevePa
   }
 
   /**
-   * @return the balises
+   * 
+   * @param latitude
+   * @param longitude
+   * @param k
+   * @return les k balises les plus proches du point, triees par distance croissante
+   */
+  public final List<Balise> findNearest(final double latitude, final double longitude, final int k)
+  {
+    return getSpatialIndex().findNearest(latitude, longitude, k);
+  }
+
+  /**
+   * 
+   * @param minLatitude
+   * @param minLongitude
+   * @param maxLatitude
+   * @param maxLongitude
+   * @return les balises situees dans le rectangle (bornes incluses)
+   */
+  public final List<Balise> findInBox(final double minLatitude, final double minLongitude, final double maxLatitude, final double maxLongitude)
+  {
+    return getSpatialIndex().findInBox(minLatitude, minLongitude, maxLatitude, maxLongitude);
+  }
+
+  /**
+   * 
+   * @return l'index spatial, construit a la premiere recherche qui suit la publication des balises (une restauration
+   *         differee du cache ne decode donc pas toutes les balises)
+   */
+  private BaliseSpatialIndex getSpatialIndex()
+  {
+    final BaliseSpatialIndex index = spatialIndex;
+    if (index != null)
+    {
+      return index;
+    }
+
+    synchronized (spatialIndexLock)
+    {
+      if (spatialIndex == null)
+      {
+        spatialIndex = new BaliseSpatialIndex(balises.values());
+      }
+
+      return spatialIndex;
+    }
+  }
+
+  /**
+   * Reconstruction de l'index spatial, a appeler apres modification des coordonnees des balises (ex : corrections).<br/>
+   * Le nouvel index sera construit a part a la prochaine recherche : les recherches en cours continuent sur l'ancien.
+   */
+  public final void rebuildSpatialIndex()
+  {
+    synchronized (spatialIndexLock)
+    {
+      spatialIndex = null;
+    }
+  }
+
+  /**
+   * @return the balises (generation publiee, non modifiable)
    */
   protected final Map<String, Balise> getBalisesMap()
   {
@@ -80,46 +168,361 @@ public abstract class AbstractBaliseProvider implements BaliseProvider, RelevePa
   }
 
   /**
-   * @param balises the balises to set
+   * @param balises the balises to set (publiees telles quelles : la Map ne doit plus etre modifiee)
    */
   protected final void setBalisesMap(final Map<String, Balise> balises)
   {
-    this.balises = balises;
+    this.balises = Collections.unmodifiableMap(balises);
+    rebuildSpatialIndex();
   }
 
   @Override
   public final Collection<Releve> getReleves()
   {
+    final ReleveStore store = releveStore;
+    if (store != null)
+    {
+      return store.getReleves(this);
+    }
+
     return releves.values();
   }
 
   @Override
   public final Releve getReleveById(final String id)
   {
+    final ReleveStore store = releveStore;
+    if (store != null)
+    {
+      return store.getReleve(id, this);
+    }
+
     return releves.get(id);
   }
 
   /**
-   * @return the releves
+   * 
+   * @return true si des releves sont disponibles en memoire
+   */
+  protected final boolean hasReleves()
+  {
+    final ReleveStore store = releveStore;
+    if (store != null)
+    {
+      return store.size() > 0;
+    }
+
+    return !releves.isEmpty();
+  }
+
+  /**
+   * 
+   * @return les validateurs HTTP (ETag/Last-Modified) des flux du provider
+   */
+  public final FeedValidators getFeedValidators()
+  {
+    return feedValidators;
+  }
+
+  /**
+   * 
+   * @return le rythme de publication observe des releves
+   */
+  public final UpdateRhythm getUpdateRhythm()
+  {
+    return updateRhythm;
+  }
+
+  /**
+   * 
+   * @return
+   */
+  public final FeedTransport getFeedTransport()
+  {
+    return feedTransport;
+  }
+
+  /**
+   * 
+   * @param feedTransport le transport, null pour le transport par defaut
+   */
+  public final void setFeedTransport(final FeedTransport feedTransport)
+  {
+    this.feedTransport = (feedTransport == null ? UrlConnectionTransport.DEFAULT : feedTransport);
+  }
+
+  /**
+   * @return the releves (generation publiee, non modifiable)
    */
   protected final Map<String, Releve> getRelevesMap()
   {
+    final ReleveStore store = releveStore;
+    if (store != null)
+    {
+      final Map<String, Releve> map = new HashMap<String, Releve>(store.size());
+      for (final Releve releve : store.getReleves(this))
+      {
+        map.put(releve.id, releve);
+      }
+      return map;
+    }
+
     return releves;
   }
 
   /**
-   * @param releves the releves to set
+   * Remplacement de tous les releves (ex : restauration du cache) : l'historique du flux des modifications est abandonne
+   * (les clients de getChangesSince() repartent de l'etat complet) et les nouveaux releves sont transmis aux abonnes.
+   * 
+   * @param releves the releves to set (publies tels quels : la Map ne doit plus etre modifiee)
    */
   protected final void setRelevesMap(final Map<String, Releve> releves)
   {
-    this.releves = releves;
+    if (releveStore != null)
+    {
+      releveStore.replaceAll(releves.values());
+    }
+    else
+    {
+      nextReleves = null;
+      this.releves = Collections.unmodifiableMap(releves);
+    }
+    changeFeed.invalidate();
+
+    // Abonnes
+    if (relevePublisher.getSubscriptionCount() > 0)
+    {
+      relevePublisher.publish(new ArrayList<Releve>(getReleves()));
+    }
+  }
+
+  /**
+   * Publication d'un bloc des releves analyses depuis la publication precedente (nouvelle generation, flux des
+   * modifications et abonnes), a appeler en fin d'analyse des releves (meme en erreur : chaque releve publie est
+   * complet). Les blocs en cours de l'historique sont ecrits si l'intervalle de flush est ecoule.
+   */
+  protected final void publishReleves()
+  {
+    if (nextReleves != null)
+    {
+      releves = Collections.unmodifiableMap(nextReleves);
+      nextReleves = null;
+    }
+    relevePublisher.publish(changeFeed.publish());
+    flushHistory();
+  }
+
+  /**
+   * 
+   */
+  private void flushHistory()
+  {
+    if (releveHistory == null)
+    {
+      return;
+    }
+
+    try
+    {
+      releveHistory.flushIfDue();
+    }
+    catch (final IOException ioe)
+    {
+      System.err.println("Error flushing releves history (" + ioe.getMessage() + ")");
+    }
+  }
+
+  /**
+   * Stockage optionnel des releves en colonnes (pour un grand nombre de stations).<br/>
+   * Les releves deja connus sont transferes dans le stock avant qu'il ne soit publie ; getReleves() et getReleveById()
+   * renvoient alors des copies.
+   * 
+   * @param releveStore le stock, null pour revenir a la Map de releves
+   */
+  public final void setReleveStore(final ReleveStore releveStore)
+  {
+    if (releveStore == this.releveStore)
+    {
+      return;
+    }
+
+    // Transfert des releves connus, puis publication
+    final Map<String, Releve> current = getRelevesMap();
+    nextReleves = null;
+    if (releveStore == null)
+    {
+      releves = Collections.unmodifiableMap(current);
+      this.releveStore = null;
+    }
+    else
+    {
+      releveStore.replaceAll(current.values());
+      this.releveStore = releveStore;
+      releves = Collections.emptyMap();
+    }
+  }
+
+  /**
+   * 
+   * @return le stock des releves, null si les releves sont conserves dans une Map
+   */
+  public final ReleveStore getReleveStore()
+  {
+    return releveStore;
+  }
+
+  /**
+   * Historique local optionnel : chaque nouveau releve y est ajoute.
+   * 
+   * @param releveHistory l'historique, null pour aucun
+   */
+  public final void setReleveHistory(final ReleveHistory releveHistory)
+  {
+    this.releveHistory = releveHistory;
+  }
+
+  /**
+   * 
+   * @return l'historique local des releves, null si aucun
+   */
+  public final ReleveHistory getReleveHistory()
+  {
+    return releveHistory;
+  }
+
+  /**
+   * 
+   * @param releve
+   */
+  private void appendToHistory(final Releve releve)
+  {
+    if (releveHistory == null)
+    {
+      return;
+    }
+
+    try
+    {
+      releveHistory.append(releve);
+    }
+    catch (final IOException ioe)
+    {
+      System.err.println("Error appending releve " + releve.id + " to history (" + ioe.getMessage() + ")");
+    }
+  }
+
+  /**
+   * 
+   * @param nouveau
+   * @param oldStamp
+   * @param ancienVentMini
+   * @param ancienVentMoyen
+   * @param ancienVentMaxi
+   * @return true si les tendances ont ete calculees
+   */
+  private static boolean calculateTendances(final Releve nouveau, final long oldStamp, final double ancienVentMini, final double ancienVentMoyen, final double ancienVentMaxi)
+  {
+    // Date releve precedent fournie par le serveur
+    final long prevStamp = (nouveau.dateRelevePrecedent == null ? -1 : nouveau.dateRelevePrecedent.getTime());
+
+    // Si les anciennes donnees locales sont plus fraiches que les anciennes donnees du serveur => calcul des tendances
+    // Sinon on ne touche pas aux tendances fournies par le serveur
+    if (oldStamp <= prevStamp)
+    {
+      return false;
+    }
+
+    // Vent mini
+    if (!Double.isNaN(nouveau.ventMini) && !Double.isNaN(ancienVentMini))
+    {
+      nouveau.ventMiniTendance = nouveau.ventMini - ancienVentMini;
+    }
+
+    // Vent moyen
+    if (!Double.isNaN(nouveau.ventMoyen) && !Double.isNaN(ancienVentMoyen))
+    {
+      nouveau.ventMoyenTendance = nouveau.ventMoyen - ancienVentMoyen;
+    }
+
+    // Vent maxi
+    if (!Double.isNaN(nouveau.ventMaxi) && !Double.isNaN(ancienVentMaxi))
+    {
+      nouveau.ventMaxiTendance = nouveau.ventMaxi - ancienVentMaxi;
+    }
+
+    return true;
+  }
+
+  /**
+   * 
+   * @param nouveau
+   */
+  private void onReleveParsedInStore(final Releve nouveau)
+  {
+    // Recherche dans les anciens
+    final int index = releveStore.indexOf(nouveau.id);
+    final boolean updated;
+
+    // Nouveau releve
+    if (index < 0)
+    {
+      updated = true;
+    }
+    // Ancien releve existant, comparaison de la date et calcul des tendances
+    else
+    {
+      // Comparaison date
+      final long ancienneDate = releveStore.getLong(ReleveStore.DATE, index);
+      final long newStamp = (nouveau.date == null ? -1 : nouveau.date.getTime());
+      final long oldStamp = (ancienneDate == CompactReleve.DATE_NULL ? -1 : ancienneDate);
+      updated = (newStamp > oldStamp);
+
+      // Calcul des tendances
+      if (updated && (nouveau.date != null) && (ancienneDate != CompactReleve.DATE_NULL)
+          && calculateTendances(nouveau, oldStamp, releveStore.getDouble(ReleveStore.VENT_MINI, index), releveStore.getDouble(ReleveStore.VENT_MOYEN, index), releveStore.getDouble(ReleveStore.VENT_MAXI, index)))
+      {
+        nouveau.dateRelevePrecedent = new Date(ancienneDate);
+      }
+    }
+
+    // Sauvegarde
+    if (updated)
+    {
+      observeRhythm(nouveau, index < 0 ? CompactReleve.DATE_NULL : releveStore.getLong(ReleveStore.DATE, index));
+      final int newIndex = releveStore.put(nouveau);
+      final Releve toSave = newReleve();
+      releveStore.copyTo(newIndex, toSave);
+      updatedReleves.put(toSave.id, toSave);
+      changeFeed.add(toSave);
+      appendToHistory(toSave);
+    }
+  }
+
+  /**
+   * 
+   * @param nouveau
+   * @param ancienneDate date du releve precedent, CompactReleve.DATE_NULL si inconnue
+   */
+  private void observeRhythm(final Releve nouveau, final long ancienneDate)
+  {
+    if (nouveau.date != null)
+    {
+      updateRhythm.observeReleve(nouveau.date.getTime(), ancienneDate == CompactReleve.DATE_NULL ? -1 : ancienneDate);
+    }
   }
 
   @Override
   public void onReleveParsed(final Releve nouveau)
   {
-    // Recherche dans les anciens
-    final Releve ancien = releves.get(nouveau.id);
+    // Stockage en colonnes
+    if (releveStore != null)
+    {
+      onReleveParsedInStore(nouveau);
+      return;
+    }
+
+    // Recherche dans les anciens (generation en construction, sinon generation publiee)
+    final Releve ancien = (nextReleves == null ? releves : nextReleves).get(nouveau.id);
     final boolean updated;
 
     // Nouveau releve
@@ -136,56 +539,32 @@ public abstract class AbstractBaliseProvider implements BaliseProvider, RelevePa
       updated = (newStamp > oldStamp);
 
       // Calcul des tendances
-      if (updated && (nouveau.date != null) && (ancien.date != null))
+      if (updated && (nouveau.date != null) && (ancien.date != null) && calculateTendances(nouveau, oldStamp, ancien.ventMini, ancien.ventMoyen, ancien.ventMaxi))
       {
-        // Date releve precedent fournie par le serveur
-        final long prevStamp = (nouveau.dateRelevePrecedent == null ? -1 : nouveau.dateRelevePrecedent.getTime());
-
-        // Si les anciennes donnees locales sont plus fraiches que les anciennes donnees du serveur => calcul des tendances
-        // Sinon on ne touche pas aux tendances fournies par le serveur
-        if (oldStamp > prevStamp)
-        {
-          // Anciennete
-          nouveau.dateRelevePrecedent = ancien.date;
-
-          // Vent mini
-          if (!Double.isNaN(nouveau.ventMini) && !Double.isNaN(ancien.ventMini))
-          {
-            nouveau.ventMiniTendance = nouveau.ventMini - ancien.ventMini;
-          }
-
-          // Vent moyen
-          if (!Double.isNaN(nouveau.ventMoyen) && !Double.isNaN(ancien.ventMoyen))
-          {
-            nouveau.ventMoyenTendance = nouveau.ventMoyen - ancien.ventMoyen;
-          }
-
-          // Vent maxi
-          if (!Double.isNaN(nouveau.ventMaxi) && !Double.isNaN(ancien.ventMaxi))
-          {
-            nouveau.ventMaxiTendance = nouveau.ventMaxi - ancien.ventMaxi;
-          }
-        }
+        // Anciennete
+        nouveau.dateRelevePrecedent = ancien.date;
       }
     }
 
     // Sauvegarde
     if (updated)
     {
-      // Allocation si besoin (le parser ne travaille que sur une seule instance de Releve !),
-      // si non on reprend l'ancienne instance
-      final Releve toSave = (ancien == null) ? newReleve() : ancien;
+      observeRhythm(nouveau, (ancien == null) || (ancien.date == null) ? CompactReleve.DATE_NULL : ancien.date.getTime());
 
-      // Copie des valeurs
+      // Nouvelle instance (le parser ne travaille que sur une seule instance de Releve !),
+      // l'ancienne instance peut etre en cours de lecture et n'est jamais modifiee
+      final Releve toSave = newReleve();
       toSave.copyFrom(nouveau);
 
-      // Sauvegarde
-      updatedReleves.put(toSave.id, toSave);
-      if (ancien == null)
+      // Sauvegarde dans la generation suivante (copiee de la generation publiee au premier releve modifie)
+      if (nextReleves == null)
       {
-        // Dans la table des releves (necessaire seulement si l'ancien releve n'existait pas)
-        releves.put(toSave.id, toSave);
+        nextReleves = new HashMap<String, Releve>(releves);
       }
+      nextReleves.put(toSave.id, toSave);
+      updatedReleves.put(toSave.id, toSave);
+      changeFeed.add(toSave);
+      appendToHistory(toSave);
     }
   }
 
@@ -213,6 +592,47 @@ public abstract class AbstractBaliseProvider implements BaliseProvider, RelevePa
     return updatedReleves.values();
   }
 
+  /**
+   * Modifications des releves depuis une sequence, sans parcourir getReleves() : chaque releve mis a jour recoit un
+   * numero de sequence croissant.<br/>
+   * Un client commence avec la sequence 0 puis repasse a chaque appel celle du resultat precedent ; les modifications
+   * manquees entre deux appels ne sont pas perdues tant qu'elles restent dans l'historique.
+   * 
+   * @param sequence derniere sequence connue
+   * @return
+   */
+  public final ReleveChanges getChangesSince(final long sequence)
+  {
+    // Depuis l'historique
+    final ReleveChanges changes = changeFeed.getChangesSince(sequence);
+    if (changes != null)
+    {
+      return changes;
+    }
+
+    // Etat complet (sequence lue avant les releves : au pire des releves renvoyes une seconde fois au prochain appel)
+    final long current = changeFeed.getSequence();
+    return new ReleveChanges(current, false, Collections.unmodifiableList(new ArrayList<Releve>(getReleves())));
+  }
+
+  /**
+   * 
+   * @return le flux des modifications de releves
+   */
+  public final ReleveChangeFeed getChangeFeed()
+  {
+    return changeFeed;
+  }
+
+  /**
+   * 
+   * @return la diffusion des releves mis a jour aux abonnes
+   */
+  public final RelevePublisher getRelevePublisher()
+  {
+    return relevePublisher;
+  }
+
   @Override
   public Class<? extends BaliseProvider> getBaliseProviderClass()
   {
@@ -24,216 +24,765 @@
 package org.pedro.balises;
 
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectStreamConstants;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
-import org.pedro.saveable.Saveable;
-
 /**
+ * Cache au format {@link CacheSnapshot} (instantane binaire, relu par mappage du fichier quand c'est possible).<br/>
+ * Les anciens formats (suite d'enregistrements Saveable, serialisation java) sont encore relus, le decodeur etant
+ * choisi d'apres l'entete du cache ; ils sont remplaces par un instantane a la sauvegarde suivante, ou en bloc par
+ * {@link #migrateLegacyCaches(Collection, Executor)}.<br/>
+ * En restauration differee ({@link #setLazyRestore(boolean)}), un instantane n'est pas decode : la Map restituee
+ * n'indexe que les identifiants, chaque balise ou releve est decode a son premier acces (getBaliseById(),
+ * getReleveById()). Les sommes de controle des enregistrements sont toutefois verifiees a la restauration : un
+ * instantane altere y est signale comme en restauration complete.<br/>
+ * Si le cache sait ajouter en fin de fichier ({@link #isJournalSupported()}), les releves modifies sont ajoutes a un
+ * journal ({@link #appendReleves(String, Collection)}) plutot que de reecrire tous les releves : le journal est
+ * fusionne a la restauration, et compacte (reecriture complete) quand il atteint la taille de l'instantane.<br/>
+ * Les ecritures sont synchronisees sur disque (FileOutputStream) ; si le cache sait renommer une cle
+ * ({@link #isRenameSupported()}), chaque instantane est ecrit sous une cle temporaire puis renomme : un arret pendant
+ * l'ecriture laisse l'ancien instantane intact.
  * 
  * @author pedro.m
  */
 public abstract class BaliseSaveableCache extends BaliseSerializableCache
 {
-  private static final boolean ZIPPED = false;
+  private static final boolean            ZIPPED                 = false;
+  private static final String             JOURNAL_KEY_SUFFIX     = ".journal";
+  private static final String             TEMP_KEY_SUFFIX        = ".tmp";
+  private static final int                MIN_COMPACTION_RECORDS = 256;
 
-  @Override
-  @SuppressWarnings("unchecked")
-  public Map<String, Balise> restoreBalises(final String key, final CachedProvider provider) throws IOException
+  private volatile boolean                lazyRestore;
+  private final Map<String, JournalState> journals               = new HashMap<String, JournalState>();
+  private final Map<String, Object>       keyLocks               = new HashMap<String, Object>();
+
+  /**
+   * Etat du journal d'une cle : taille de l'instantane et nombre de releves ajoutes depuis.
+   * 
+   * @author pedro.m
+   */
+  private static final class JournalState
   {
-    final InputStream is = getCacheInputStream(key);
-    final InputStream fis = (ZIPPED ? new GZIPInputStream(is) : is);
+    final int baseSize;
+    final int records;
 
-    try
+    /**
+     * 
+     * @param baseSize
+     * @param records
+     */
+    JournalState(final int baseSize, final int records)
     {
-      // Nouvelle version
-      return loadBalises(fis, provider);
+      this.baseSize = baseSize;
+      this.records = records;
     }
-    catch (final IOException ioe)
+  }
+
+  /**
+   * Balises d'un instantane, decodees a la demande.
+   * 
+   * @author pedro.m
+   */
+  private static final class LazyBalises extends LazySnapshotMap<Balise>
+  {
+    private final CachedProvider provider;
+
+    /**
+     * 
+     * @param snapshot
+     * @param provider
+     */
+    LazyBalises(final CacheSnapshot snapshot, final CachedProvider provider)
     {
-      // Plantage, essai avec l'ancienne version
-      final Map<String, Balise> balises = (Map<String, Balise>)deserializeObject(fis);
-      saveBalises(getCacheOutputStream(key), balises);
-      return balises;
+      super(snapshot, Collections.<String, Balise> emptyMap());
+      this.provider = provider;
     }
-    finally
+
+    @Override
+    protected Balise read(final int index) throws IOException
     {
-      is.close();
-      fis.close();
+      return snapshot.readBalise(index, provider.newBalise());
     }
   }
 
-  @Override
-  public void storeBalises(final String key, final Map<String, Balise> balises) throws IOException
+  /**
+   * Releves d'un instantane, decodes a la demande.
+   * 
+   * @author pedro.m
+   */
+  private static final class LazyReleves extends LazySnapshotMap<Releve>
   {
-    final OutputStream os = getCacheOutputStream(key);
-    final OutputStream fos = (ZIPPED ? new GZIPOutputStream(os) : os);
+    private final CachedProvider provider;
 
-    try
+    /**
+     * 
+     * @param snapshot
+     * @param provider
+     * @param journal releves du journal, prioritaires sur ceux de l'instantane
+     */
+    LazyReleves(final CacheSnapshot snapshot, final CachedProvider provider, final Map<String, Releve> journal)
     {
-      saveBalises(fos, balises);
+      super(snapshot, journal);
+      this.provider = provider;
     }
-    finally
+
+    @Override
+    protected Releve read(final int index) throws IOException
     {
-      os.close();
-      fos.close();
+      return snapshot.readReleve(index, provider.newReleve());
     }
   }
 
-  @Override
-  @SuppressWarnings("unchecked")
-  public Map<String, Releve> restoreReleves(final String key, final CachedProvider provider) throws IOException
+  /**
+   * 
+   * @return true si les instantanes sont restaures sans decodage
+   */
+  public boolean isLazyRestore()
   {
-    final InputStream is = getCacheInputStream(key);
-    final InputStream fis = (ZIPPED ? new GZIPInputStream(is) : is);
+    return lazyRestore;
+  }
 
+  /**
+   * Restauration differee : les instantanes ne sont decodes qu'enregistrement par enregistrement, au premier acces. Le
+   * fichier est alors copie en memoire plutot que mappe (il peut etre reecrit pendant que la Map restituee est
+   * utilisee), sauf si le cache renomme ses instantanes (un fichier remplace reste lisible par son mappage).
+   * 
+   * @param lazyRestore
+   */
+  public void setLazyRestore(final boolean lazyRestore)
+  {
+    this.lazyRestore = lazyRestore;
+  }
+
+  /**
+   * A redefinir (avec {@link #getCacheAppendOutputStream(String)}) par les caches qui savent ajouter en fin de fichier.
+   * 
+   * @return true si les releves modifies peuvent etre journalises
+   */
+  protected boolean isJournalSupported()
+  {
+    return false;
+  }
+
+  /**
+   * 
+   * @param key
+   * @return un flux d'ajout en fin de cache
+   * @throws IOException
+   */
+  protected OutputStream getCacheAppendOutputStream(final String key) throws IOException
+  {
+    throw new IOException("Append not supported (" + key + ")");
+  }
+
+  /**
+   * A redefinir (avec {@link #renameCache(String, String)}) par les caches qui savent remplacer une cle par une autre
+   * de facon atomique et durable (ex : {@link #moveFile(File, File)} sur un systeme de fichiers POSIX).
+   * 
+   * @return true si les instantanes peuvent etre ecrits sous une cle temporaire puis renommes
+   */
+  protected boolean isRenameSupported()
+  {
+    return false;
+  }
+
+  /**
+   * Remplacement atomique et durable du contenu de toKey par celui de fromKey (qui disparait).<br/>
+   * Pour un cache sur fichiers : Files.move(..., ATOMIC_MOVE), puis synchronisation du repertoire parent
+   * (FileChannel.open(repertoire, READ).force(true)), sans laquelle le renommage peut etre perdu en cas d'arret
+   * brutal ; c'est ce que fait {@link #moveFile(File, File)}. File.renameTo() ne convient pas.
+   * 
+   * @param fromKey
+   * @param toKey
+   * @throws IOException
+   */
+  protected void renameCache(final String fromKey, final String toKey) throws IOException
+  {
+    throw new IOException("Rename not supported (" + fromKey + ")");
+  }
+
+  /**
+   * Remplacement atomique d'un fichier par un autre du meme repertoire, rendu durable par la synchronisation du
+   * repertoire.
+   * 
+   * @param from
+   * @param to
+   * @throws IOException
+   */
+  protected static void moveFile(final File from, final File to) throws IOException
+  {
+    Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+    final FileChannel directory = FileChannel.open(to.getAbsoluteFile().getParentFile().toPath(), StandardOpenOption.READ);
     try
     {
-      // Nouvelle version
-      return loadReleves(fis, provider);
+      directory.force(true);
     }
-    catch (final IOException ioe)
+    finally
     {
-      // Plantage, essai avec l'ancienne version
-      final Map<String, Releve> releves = (Map<String, Releve>)deserializeObject(fis);
-      saveReleves(getCacheOutputStream(key), releves);
-      return releves;
+      directory.close();
     }
-    finally
+  }
+
+  /**
+   * Synchronisation sur disque d'un flux de fichier (sans effet sur les autres flux).
+   * 
+   * @param os
+   * @throws IOException
+   */
+  private static void sync(final OutputStream os) throws IOException
+  {
+    if (os instanceof FileOutputStream)
     {
-      is.close();
-      fis.close();
+      ((FileOutputStream)os).getFD().sync();
     }
   }
 
-  @Override
-  public void storeReleves(final String key, final Map<String, Releve> releves) throws IOException
+  /**
+   * Ecriture d'un instantane de balises ou de releves : sous une cle temporaire renommee a la fin si le cache le
+   * permet, directement sous la cle sinon.
+   * 
+   * @param key
+   * @param balises les balises, null pour des releves
+   * @param releves les releves, null pour des balises
+   * @throws IOException
+   */
+  private void writeSnapshot(final String key, final Collection<Balise> balises, final Collection<Releve> releves) throws IOException
   {
-    final OutputStream os = getCacheOutputStream(key);
+    final boolean rename = isRenameSupported();
+    final String writtenKey = (rename ? key.concat(TEMP_KEY_SUFFIX) : key);
+    final OutputStream os = getCacheOutputStream(writtenKey);
     final OutputStream fos = (ZIPPED ? new GZIPOutputStream(os) : os);
+    boolean written = false;
 
     try
     {
-      saveReleves(fos, releves);
+      if (balises != null)
+      {
+        CacheSnapshot.writeBalises(fos, balises);
+      }
+      else
+      {
+        CacheSnapshot.writeReleves(fos, releves);
+      }
+      if (fos != os)
+      {
+        ((GZIPOutputStream)fos).finish();
+      }
+      sync(os);
+      written = true;
     }
     finally
     {
-      os.close();
       fos.close();
+      os.close();
+      if (!written && rename)
+      {
+        clearCache(writtenKey);
+      }
+    }
+
+    // Remplacement de l'ancien instantane
+    if (rename)
+    {
+      renameCache(writtenKey, key);
     }
   }
 
   /**
    * 
-   * @param os
-   * @param balises
+   * @param key
+   * @return le verrou des sauvegardes completes et de la migration de la cle
+   */
+  private Object getKeyLock(final String key)
+  {
+    synchronized (keyLocks)
+    {
+      Object lock = keyLocks.get(key);
+      if (lock == null)
+      {
+        lock = new Object();
+        keyLocks.put(key, lock);
+      }
+
+      return lock;
+    }
+  }
+
+  /**
+   * 
+   * @param buffer
+   * @return true si le buffer commence par l'entete d'un flux de serialisation java
+   */
+  private static boolean isSerialized(final ByteBuffer buffer)
+  {
+    return (buffer.remaining() >= 4) && (buffer.getShort(buffer.position()) == ObjectStreamConstants.STREAM_MAGIC) && (buffer.getShort(buffer.position() + 2) == ObjectStreamConstants.STREAM_VERSION);
+  }
+
+  /**
+   * 
+   * @param buffer contenu du cache a un ancien format
+   * @param provider
+   * @return
    * @throws IOException
    */
-  private static void saveBalises(final OutputStream os, final Map<String, Balise> balises) throws IOException
+  @SuppressWarnings("unchecked")
+  private static Map<String, Balise> loadLegacyBalises(final ByteBuffer buffer, final CachedProvider provider) throws IOException
   {
-    DataOutputStream out = null;
+    if (isSerialized(buffer))
+    {
+      return (Map<String, Balise>)deserializeObject(new ByteBufferInputStream(buffer.duplicate()));
+    }
 
-    try
+    return loadBalises(new ByteBufferInputStream(buffer.duplicate()), provider);
+  }
+
+  /**
+   * 
+   * @param buffer contenu du cache a un ancien format
+   * @param provider
+   * @return
+   * @throws IOException
+   */
+  @SuppressWarnings("unchecked")
+  private static Map<String, Releve> loadLegacyReleves(final ByteBuffer buffer, final CachedProvider provider) throws IOException
+  {
+    if (isSerialized(buffer))
     {
-      out = new DataOutputStream(os);
-      for (final Saveable saveable : balises.values())
+      return (Map<String, Releve>)deserializeObject(new ByteBufferInputStream(buffer.duplicate()));
+    }
+
+    return loadReleves(new ByteBufferInputStream(buffer.duplicate()), provider);
+  }
+
+  /**
+   * Migration en bloc des caches (balises et releves) encore aux anciens formats vers des instantanes : a appeler
+   * depuis une tache de fond, par exemple au demarrage, pour que les restaurations suivantes prennent le chemin rapide.
+   * Les erreurs sont signalees par cle, sans interrompre la migration.
+   * 
+   * @param providers
+   * @return le nombre de cles migrees
+   */
+  public int migrateLegacyCaches(final Collection<CachedProvider> providers)
+  {
+    int migrated = 0;
+    for (final CachedProvider provider : providers)
+    {
+      if (migrateLegacyCache(provider.getBalisesCacheKey(), provider, true))
       {
-        saveable.saveSaveable(out);
+        migrated++;
+      }
+      if (migrateLegacyCache(provider.getRelevesCacheKey(), provider, false))
+      {
+        migrated++;
       }
     }
-    catch (final IOException ioe)
+
+    return migrated;
+  }
+
+  /**
+   * Migration en bloc, en tache de fond sur l'executor.
+   * 
+   * @param providers
+   * @param executor
+   * @see #migrateLegacyCaches(Collection)
+   */
+  public void migrateLegacyCaches(final Collection<CachedProvider> providers, final Executor executor)
+  {
+    final List<CachedProvider> copy = new ArrayList<CachedProvider>(providers);
+    executor.execute(new Runnable()
     {
-      throw ioe;
+      @Override
+      public void run()
+      {
+        migrateLegacyCaches(copy);
+      }
+    });
+  }
+
+  /**
+   * 
+   * @param key
+   * @param provider
+   * @param balises true pour une cle de balises, false pour une cle de releves
+   * @return true si la cle etait a un ancien format et a ete migree
+   */
+  private boolean migrateLegacyCache(final String key, final CachedProvider provider, final boolean balises)
+  {
+    synchronized (getKeyLock(key))
+    {
+      try
+      {
+        // Cache absent ou deja migre
+        final ByteBuffer buffer;
+        try
+        {
+          buffer = readCache(key);
+        }
+        catch (final FileNotFoundException fnfe)
+        {
+          return false;
+        }
+        if (CacheSnapshot.isSnapshot(buffer))
+        {
+          return false;
+        }
+
+        // Migration
+        if (balises)
+        {
+          storeBalises(key, loadLegacyBalises(buffer, provider));
+        }
+        else
+        {
+          storeReleves(key, loadLegacyReleves(buffer, provider));
+        }
+
+        return true;
+      }
+      catch (final IOException ioe)
+      {
+        System.err.println("Cache " + key + " not migrated (" + ioe.getMessage() + ")");
+        return false;
+      }
     }
-    catch (final Throwable th)
+  }
+
+  /**
+   * 
+   * @param key
+   * @return l'etat du journal, null s'il n'est pas connu (la prochaine sauvegarde sera complete)
+   */
+  private JournalState getJournalState(final String key)
+  {
+    synchronized (journals)
     {
-      final IOException ioe = new IOException(th.getMessage());
-      ioe.setStackTrace(th.getStackTrace());
-      throw ioe;
+      return journals.get(key);
     }
-    finally
+  }
+
+  /**
+   * 
+   * @param key
+   * @param state null si le journal n'est pas utilisable en l'etat
+   */
+  private void setJournalState(final String key, final JournalState state)
+  {
+    synchronized (journals)
     {
-      if (out != null)
+      if (state == null)
       {
-        out.close();
+        journals.remove(key);
       }
-      if (os != null)
+      else
       {
-        os.close();
+        journals.put(key, state);
       }
     }
   }
 
   /**
    * 
-   * @param is
-   * @param provider
-   * @return
+   * @param snapshot
+   * @return true si l'instantane est a restaurer sans decodage, ses enregistrements ayant ete verifies (un instantane
+   *         de version 1, sans sommes de controle, est restaure completement)
+   * @throws IOException si un enregistrement est altere
+   */
+  private boolean isLazyRestore(final CacheSnapshot snapshot) throws IOException
+  {
+    if (!lazyRestore || !snapshot.hasRecordChecksums())
+    {
+      return false;
+    }
+
+    snapshot.verifyRecords();
+    return true;
+  }
+
+  /**
+   * 
+   * @param key
+   * @return le contenu du cache
    * @throws IOException
    */
-  private static Map<String, Balise> loadBalises(final InputStream is, final CachedProvider provider) throws IOException
+  private ByteBuffer readCache(final String key) throws IOException
   {
-    final Map<String, Balise> retour = new HashMap<String, Balise>();
-    DataInputStream in = null;
+    final InputStream is = getCacheInputStream(key);
 
     try
     {
-      in = new DataInputStream(is);
-      while (in.available() > 0)
+      return CacheSnapshot.readBuffer(ZIPPED ? new GZIPInputStream(is) : is, !lazyRestore || isRenameSupported());
+    }
+    finally
+    {
+      is.close();
+    }
+  }
+
+  @Override
+  public Map<String, Balise> restoreBalises(final String key, final CachedProvider provider) throws IOException
+  {
+    final ByteBuffer buffer = readCache(key);
+
+    // Instantane
+    if (CacheSnapshot.isSnapshot(buffer))
+    {
+      final CacheSnapshot snapshot = CacheSnapshot.open(buffer);
+      return (isLazyRestore(snapshot) ? new LazyBalises(snapshot, provider) : loadBalises(snapshot, provider));
+    }
+
+    // Anciens formats (migres a la prochaine sauvegarde)
+    return loadLegacyBalises(buffer, provider);
+  }
+
+  @Override
+  public void storeBalises(final String key, final Map<String, Balise> balises) throws IOException
+  {
+    synchronized (getKeyLock(key))
+    {
+      writeSnapshot(key, balises.values(), null);
+    }
+  }
+
+  @Override
+  public Map<String, Releve> restoreReleves(final String key, final CachedProvider provider) throws IOException
+  {
+    // Instantane et journal lus ensemble (une sauvegarde concurrente ne peut pas vider le journal entre les deux, ni
+    // voir son etat du journal remplace par celui de l'ancien instantane)
+    final CacheSnapshot snapshot;
+    final Map<String, Releve> journal = new HashMap<String, Releve>();
+    synchronized (getKeyLock(key))
+    {
+      final ByteBuffer buffer = readCache(key);
+
+      // Anciens formats, sans journal (migres a la prochaine sauvegarde)
+      if (!CacheSnapshot.isSnapshot(buffer))
       {
-        final Balise balise = provider.newBalise();
-        balise.loadSaveable(in);
-        retour.put(balise.id, balise);
+        setJournalState(key, null);
+        return loadLegacyReleves(buffer, provider);
       }
 
-      return retour;
+      snapshot = CacheSnapshot.open(buffer);
+      final int records = (isJournalSupported() ? readJournal(key, provider, journal) : 0);
+      setJournalState(key, records < 0 ? null : new JournalState(snapshot.size(), records));
     }
-    catch (final IOException ioe)
+
+    // Decodage
+    if (isLazyRestore(snapshot))
     {
-      throw ioe;
+      return new LazyReleves(snapshot, provider, journal);
     }
-    catch (final Throwable th)
+
+    final Map<String, Releve> releves = loadReleves(snapshot, provider);
+    releves.putAll(journal);
+    return releves;
+  }
+
+  @Override
+  public void storeReleves(final String key, final Map<String, Releve> releves) throws IOException
+  {
+    synchronized (getKeyLock(key))
     {
-      final IOException ioe = new IOException(th.getMessage());
-      ioe.setStackTrace(th.getStackTrace());
-      throw ioe;
+      // Journal vide d'abord : en cas d'arret avant la fin, d'anciens ajouts ne pourront pas recouvrir l'instantane
+      setJournalState(key, null);
+      if (isJournalSupported())
+      {
+        final OutputStream os = getCacheOutputStream(key.concat(JOURNAL_KEY_SUFFIX));
+        try
+        {
+          sync(os);
+        }
+        finally
+        {
+          os.close();
+        }
+      }
+
+      writeSnapshot(key, null, releves.values());
+      setJournalState(key, new JournalState(releves.size(), 0));
     }
-    finally
+  }
+
+  /**
+   * Sauvegarde des releves modifies depuis la derniere sauvegarde (ou restauration) de la cle par ce cache : ajout au
+   * journal, sous le meme verrou que les sauvegardes completes et la migration de la cle.
+   * 
+   * @param key
+   * @param updatedReleves les releves modifies
+   * @return false si rien n'a ete ecrit car le journal n'est pas utilisable ou doit etre compacte : une sauvegarde
+   *         complete ({@link #storeReleves(String, Map)}) est alors necessaire
+   * @throws IOException
+   */
+  public boolean appendReleves(final String key, final Collection<Releve> updatedReleves) throws IOException
+  {
+    synchronized (getKeyLock(key))
     {
-      if (in != null)
+      // Sauvegarde complete necessaire (compactage)
+      final JournalState state = getJournalState(key);
+      if (!isJournalSupported() || (state == null) || (state.records + updatedReleves.size() > Math.max(MIN_COMPACTION_RECORDS, state.baseSize)))
       {
-        in.close();
+        return false;
       }
-      if (is != null)
+
+      // Rien de modifie
+      if (updatedReleves.isEmpty())
       {
-        is.close();
+        return true;
       }
+
+      // Ajout au journal (un echec laisse peut-etre un bloc incomplet : compactage a la prochaine sauvegarde)
+      setJournalState(key, null);
+      final OutputStream os = getCacheAppendOutputStream(key.concat(JOURNAL_KEY_SUFFIX));
+      try
+      {
+        CacheSnapshot.writeReleves(os, updatedReleves);
+        sync(os);
+      }
+      finally
+      {
+        os.close();
+      }
+
+      setJournalState(key, new JournalState(state.baseSize, state.records + updatedReleves.size()));
+      return true;
     }
   }
 
   /**
+   * Lecture du journal des releves : instantanes des releves modifies, ajoutes bout a bout.
    * 
-   * @param os
-   * @param releves
+   * @param key
+   * @param provider
+   * @param releves les releves lus (le plus recent pour chaque balise)
+   * @return le nombre de releves lus, -1 si le journal se termine par un bloc incomplet ou altere (arret pendant un
+   *         ajout) : seuls les blocs precedents sont lus
    * @throws IOException
    */
-  private static void saveReleves(final OutputStream os, final Map<String, Releve> releves) throws IOException
+  private int readJournal(final String key, final CachedProvider provider, final Map<String, Releve> releves) throws IOException
   {
-    DataOutputStream out = null;
+    // Pas encore de journal
+    final ByteBuffer buffer;
+    try
+    {
+      buffer = readCache(key.concat(JOURNAL_KEY_SUFFIX));
+    }
+    catch (final FileNotFoundException fnfe)
+    {
+      return 0;
+    }
+
+    // Blocs (chacun lu entierement avant d'etre retenu)
+    int records = 0;
+    final Map<String, Releve> block = new HashMap<String, Releve>();
+    while (buffer.hasRemaining())
+    {
+      try
+      {
+        final CacheSnapshot snapshot = CacheSnapshot.openNext(buffer);
+        for (int i = 0; i < snapshot.size(); i++)
+        {
+          final Releve releve = snapshot.readReleve(i, provider.newReleve());
+          block.put(releve.id, releve);
+        }
+      }
+      catch (final IOException ioe)
+      {
+        System.err.println("Cache journal " + key + " truncated (" + ioe.getMessage() + ")");
+        return -1;
+      }
+
+      releves.putAll(block);
+      records += block.size();
+      block.clear();
+    }
+
+    return records;
+  }
+
+  /**
+   * 
+   * @param snapshot
+   * @param provider
+   * @return
+   * @throws IOException
+   */
+  private static Map<String, Balise> loadBalises(final CacheSnapshot snapshot, final CachedProvider provider) throws IOException
+  {
+    final int size = snapshot.size();
+    final Map<String, Balise> retour = new HashMap<String, Balise>(size * 4 / 3 + 1);
+    for (int i = 0; i < size; i++)
+    {
+      final Balise balise = snapshot.readBalise(i, provider.newBalise());
+      retour.put(balise.id, balise);
+    }
+
+    return retour;
+  }
+
+  /**
+   * 
+   * @param snapshot
+   * @param provider
+   * @return
+   * @throws IOException
+   */
+  private static Map<String, Releve> loadReleves(final CacheSnapshot snapshot, final CachedProvider provider) throws IOException
+  {
+    final int size = snapshot.size();
+    final Map<String, Releve> retour = new HashMap<String, Releve>(size * 4 / 3 + 1);
+    for (int i = 0; i < size; i++)
+    {
+      final Releve releve = snapshot.readReleve(i, provider.newReleve());
+      retour.put(releve.id, releve);
+    }
+
+    return retour;
+  }
+
+  /**
+   * Ancien format : suite d'enregistrements Saveable.
+   * 
+   * @param is
+   * @param provider
+   * @return
+   * @throws IOException
+   */
+  private static Map<String, Balise> loadBalises(final InputStream is, final CachedProvider provider) throws IOException
+  {
+    final Map<String, Balise> retour = new HashMap<String, Balise>();
+    DataInputStream in = null;
 
     try
     {
-      out = new DataOutputStream(os);
-      for (final Saveable saveable : releves.values())
+      in = new DataInputStream(is);
+      while (in.available() > 0)
       {
-        saveable.saveSaveable(out);
+        final Balise balise = provider.newBalise();
+        balise.loadSaveable(in);
+        retour.put(balise.id, balise);
       }
+
+      return retour;
     }
     catch (final IOException ioe)
     {
@@ -247,18 +796,19 @@ public abstract class BaliseSaveableCache extends BaliseSerializableCache
     }
     finally
     {
-      if (out != null)
+      if (in != null)
       {
-        out.close();
+        in.close();
       }
-      if (os != null)
+      if (is != null)
       {
-        os.close();
+        is.close();
       }
     }
   }
 
   /**
+   * Ancien format : suite d'enregistrements Saveable.
    * 
    * @param is
    * @param provider
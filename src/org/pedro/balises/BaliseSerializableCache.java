@@ -64,6 +64,47 @@ public abstract class BaliseSerializableCache implements BaliseCache
     serializeObject(getCacheOutputStream(key), releves);
   }
 
+  /**
+   * Sauvegarde des validateurs HTTP des flux d'un provider.
+   * 
+   * @param key
+   * @param validators
+   * @throws IOException
+   */
+  public void storeValidators(final String key, final FeedValidators validators) throws IOException
+  {
+    final OutputStream os = getCacheOutputStream(key);
+
+    try
+    {
+      validators.save(new BufferedOutputStream(os, 4096));
+    }
+    finally
+    {
+      os.close();
+    }
+  }
+
+  /**
+   * 
+   * @param key
+   * @param validators validateurs a remplir
+   * @throws IOException
+   */
+  public void restoreValidators(final String key, final FeedValidators validators) throws IOException
+  {
+    final InputStream is = getCacheInputStream(key);
+
+    try
+    {
+      validators.load(new BufferedInputStream(is, 4096));
+    }
+    finally
+    {
+      is.close();
+    }
+  }
+
   /**
    * 
    * @param os
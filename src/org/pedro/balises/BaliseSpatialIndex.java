@@ -0,0 +1,427 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Index spatial des balises : grille creuse de cellules de cellSize degres (cles de cellules triees, balises rangees
+ * par cellule).<br/>
+ * Immuable : toute modification des balises (liste ou coordonnees) passe par la construction d'un nouvel index, qui peut
+ * ainsi etre publie et lu sans synchronisation.<br/>
+ * Les balises sans coordonnees (NaN) ne sont pas indexees.
+ * 
+ * @author pedro.m
+ */
+public final class BaliseSpatialIndex
+{
+  public static final double              DEFAULT_CELL_SIZE = 0.5;
+  private static final double             MIN_CELL_SIZE     = 0.01;
+  public static final double              RAYON_TERRE_KM    = 6371.0088;
+
+  private static final BaliseSpatialIndex EMPTY             = new BaliseSpatialIndex(Collections.<Balise> emptyList(), DEFAULT_CELL_SIZE);
+
+  private final double                    cellSize;
+  private final int                       size;
+  private final Balise[]                  balises;
+  private final double[]                  latitudes;
+  private final double[]                  longitudes;
+  private final int                       nbCols;
+  private final long[]                    cellKeys;
+  private final int[]                     cellStarts;
+  private final int                       minRow;
+  private final int                       maxRow;
+  private final int                       minCol;
+  private final int                       maxCol;
+  private final double                    maxAbsLatitude;
+
+  /**
+   * 
+   * @param inBalises
+   */
+  public BaliseSpatialIndex(final Collection<Balise> inBalises)
+  {
+    this(inBalises, DEFAULT_CELL_SIZE);
+  }
+
+  /**
+   * 
+   * @param inBalises
+   * @param cellSize taille des cellules en degres
+   */
+  public BaliseSpatialIndex(final Collection<Balise> inBalises, final double cellSize)
+  {
+    // Cellules (la cle de cellule doit tenir sur 32 bits)
+    if (!(cellSize >= MIN_CELL_SIZE))
+    {
+      throw new IllegalArgumentException("Invalid cell size (" + cellSize + ")");
+    }
+
+    // Initialisations
+    this.cellSize = cellSize;
+    nbCols = (int)Math.ceil(360 / cellSize) + 1;
+
+    // Balises localisees
+    final List<Balise> localisees = new ArrayList<Balise>(inBalises.size());
+    for (final Balise balise : inBalises)
+    {
+      if (isLocalisee(balise))
+      {
+        localisees.add(balise);
+      }
+    }
+    size = localisees.size();
+
+    // Tri par cellule
+    final long[] sortKeys = new long[size];
+    for (int i = 0; i < size; i++)
+    {
+      final Balise balise = localisees.get(i);
+      // Cle de cellule sur les 32 bits de poids fort, index dans la liste sur les 32 bits de poids faible
+      sortKeys[i] = (cellKey(getRow(balise.latitude), getCol(balise.longitude)) << 32) | i;
+    }
+    Arrays.sort(sortKeys);
+
+    // Rangement
+    balises = new Balise[size];
+    latitudes = new double[size];
+    longitudes = new double[size];
+    final long[] keys = new long[size];
+    final int[] starts = new int[size + 1];
+    int nbCells = 0;
+    long previousKey = -1;
+    int rowMin = Integer.MAX_VALUE;
+    int rowMax = Integer.MIN_VALUE;
+    int colMin = Integer.MAX_VALUE;
+    int colMax = Integer.MIN_VALUE;
+    double absLatMax = 0;
+    for (int i = 0; i < size; i++)
+    {
+      final long key = sortKeys[i] >>> 32;
+      final Balise balise = localisees.get((int)(sortKeys[i] & 0xFFFFFFFFL));
+      balises[i] = balise;
+      latitudes[i] = balise.latitude;
+      longitudes[i] = balise.longitude;
+
+      if (key != previousKey)
+      {
+        keys[nbCells] = key;
+        starts[nbCells] = i;
+        nbCells++;
+        previousKey = key;
+      }
+
+      final int row = (int)(key / nbCols);
+      final int col = (int)(key % nbCols);
+      rowMin = Math.min(rowMin, row);
+      rowMax = Math.max(rowMax, row);
+      colMin = Math.min(colMin, col);
+      colMax = Math.max(colMax, col);
+      absLatMax = Math.max(absLatMax, Math.abs(balise.latitude));
+    }
+    starts[nbCells] = size;
+
+    cellKeys = Arrays.copyOf(keys, nbCells);
+    cellStarts = Arrays.copyOf(starts, nbCells + 1);
+    minRow = rowMin;
+    maxRow = rowMax;
+    minCol = colMin;
+    maxCol = colMax;
+    maxAbsLatitude = absLatMax;
+  }
+
+  /**
+   * 
+   * @return un index vide
+   */
+  public static BaliseSpatialIndex empty()
+  {
+    return EMPTY;
+  }
+
+  /**
+   * 
+   * @param balise
+   * @return
+   */
+  private static boolean isLocalisee(final Balise balise)
+  {
+    return !Double.isNaN(balise.latitude) && !Double.isNaN(balise.longitude) && (balise.latitude >= -90) && (balise.latitude <= 90) && (balise.longitude >= -180) && (balise.longitude <= 180);
+  }
+
+  /**
+   * 
+   * @param latitude
+   * @return
+   */
+  private int getRow(final double latitude)
+  {
+    return (int)Math.floor((latitude + 90) / cellSize);
+  }
+
+  /**
+   * 
+   * @param longitude
+   * @return
+   */
+  private int getCol(final double longitude)
+  {
+    return (int)Math.floor((longitude + 180) / cellSize);
+  }
+
+  /**
+   * 
+   * @param row
+   * @param col
+   * @return
+   */
+  private long cellKey(final int row, final int col)
+  {
+    return (long)row * nbCols + col;
+  }
+
+  /**
+   * 
+   * @return le nombre de balises indexees
+   */
+  public int size()
+  {
+    return size;
+  }
+
+  /**
+   * Recherche des balises situees dans le rectangle donne (bornes incluses).<br/>
+   * Si minLongitude > maxLongitude, le rectangle est considere comme traversant l'antimeridien.
+   * 
+   * @param minLatitude
+   * @param minLongitude
+   * @param maxLatitude
+   * @param maxLongitude
+   * @return
+   */
+  public List<Balise> findInBox(final double minLatitude, final double minLongitude, final double maxLatitude, final double maxLongitude)
+  {
+    // Initialisations
+    final List<Balise> result = new ArrayList<Balise>();
+
+    // Rectangle traversant l'antimeridien
+    if (minLongitude > maxLongitude)
+    {
+      findInBox(minLatitude, minLongitude, maxLatitude, 180, result);
+      findInBox(minLatitude, -180, maxLatitude, maxLongitude, result);
+    }
+    else
+    {
+      findInBox(minLatitude, minLongitude, maxLatitude, maxLongitude, result);
+    }
+
+    return result;
+  }
+
+  /**
+   * 
+   * @param minLatitude
+   * @param minLongitude
+   * @param maxLatitude
+   * @param maxLongitude
+   * @param result
+   */
+  private void findInBox(final double minLatitude, final double minLongitude, final double maxLatitude, final double maxLongitude, final List<Balise> result)
+  {
+    if ((size == 0) || (minLatitude > maxLatitude))
+    {
+      return;
+    }
+
+    final int rowFrom = Math.max(minRow, getRow(minLatitude));
+    final int rowTo = Math.min(maxRow, getRow(maxLatitude));
+    final int colFrom = Math.max(minCol, getCol(minLongitude));
+    final int colTo = Math.min(maxCol, getCol(maxLongitude));
+    for (int row = rowFrom; row <= rowTo; row++)
+    {
+      final int from = findCell(cellKey(row, colFrom));
+      final long lastKey = cellKey(row, colTo);
+      for (int cell = from; (cell < cellKeys.length) && (cellKeys[cell] <= lastKey); cell++)
+      {
+        for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++)
+        {
+          if ((latitudes[i] >= minLatitude) && (latitudes[i] <= maxLatitude) && (longitudes[i] >= minLongitude) && (longitudes[i] <= maxLongitude))
+          {
+            result.add(balises[i]);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * 
+   * @param key
+   * @return l'index de la premiere cellule de cle >= key
+   */
+  private int findCell(final long key)
+  {
+    final int index = Arrays.binarySearch(cellKeys, key);
+    return (index >= 0 ? index : -index - 1);
+  }
+
+  /**
+   * Recherche des k balises les plus proches du point donne, triees par distance croissante.<br/>
+   * La recherche parcourt les cellules par anneaux concentriques et s'arrete des que la distance minimale possible de
+   * l'anneau suivant depasse celle de la k-ieme balise trouvee.
+   * 
+   * @param latitude
+   * @param longitude
+   * @param k
+   * @return
+   */
+  public List<Balise> findNearest(final double latitude, final double longitude, final int k)
+  {
+    if ((size == 0) || (k <= 0) || Double.isNaN(latitude) || Double.isNaN(longitude))
+    {
+      return new ArrayList<Balise>(0);
+    }
+
+    // Initialisations
+    final int nb = Math.min(k, size);
+    final int[] bestIndexes = new int[nb];
+    final double[] bestDistances = new double[nb];
+    int found = 0;
+    final int row = getRow(latitude);
+    final int col = getCol(longitude);
+    final double cosLatMax = Math.cos(Math.toRadians(Math.max(Math.abs(latitude), maxAbsLatitude)));
+    final int maxRing = Math.max(Math.max(Math.abs(row - minRow), Math.abs(row - maxRow)), Math.max(Math.abs(col - minCol), Math.abs(col - maxCol)));
+
+    // Parcours par anneaux
+    for (int ring = 0; ring <= maxRing; ring++)
+    {
+      // Arret si l'anneau ne peut plus rien ameliorer
+      if ((found == nb) && (getMinDistance(latitude, longitude, row, col, ring, cosLatMax) > bestDistances[nb - 1]))
+      {
+        break;
+      }
+
+      for (int r = Math.max(minRow, row - ring); r <= Math.min(maxRow, row + ring); r++)
+      {
+        final boolean bord = (r == row - ring) || (r == row + ring);
+        final int step = (bord || (ring == 0) ? 1 : 2 * ring);
+        for (int c = col - ring; c <= col + ring; c += step)
+        {
+          if ((c < minCol) || (c > maxCol))
+          {
+            continue;
+          }
+
+          final int cell = Arrays.binarySearch(cellKeys, cellKey(r, c));
+          if (cell < 0)
+          {
+            continue;
+          }
+
+          // Insertion triee des balises de la cellule
+          for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++)
+          {
+            final double distance = distance(latitude, longitude, latitudes[i], longitudes[i]);
+            if ((found < nb) || (distance < bestDistances[found - 1]))
+            {
+              int pos = (found < nb ? found++ : nb - 1);
+              while ((pos > 0) && (bestDistances[pos - 1] > distance))
+              {
+                bestDistances[pos] = bestDistances[pos - 1];
+                bestIndexes[pos] = bestIndexes[pos - 1];
+                pos--;
+              }
+              bestDistances[pos] = distance;
+              bestIndexes[pos] = i;
+            }
+          }
+        }
+      }
+    }
+
+    // Fin
+    final List<Balise> result = new ArrayList<Balise>(found);
+    for (int i = 0; i < found; i++)
+    {
+      result.add(balises[bestIndexes[i]]);
+    }
+
+    return result;
+  }
+
+  /**
+   * Minorant de la distance entre le point et toute balise situee hors du carre de cellules de demi-cote ring centre sur
+   * (row, col).
+   * 
+   * @param latitude
+   * @param longitude
+   * @param row
+   * @param col
+   * @param ring
+   * @param cosLatMax cosinus de la plus grande latitude (en valeur absolue) possible
+   * @return
+   */
+  private double getMinDistance(final double latitude, final double longitude, final int row, final int col, final int ring, final double cosLatMax)
+  {
+    // Ecart minimal en latitude
+    final double latSouth = (row - ring + 1) * cellSize - 90;
+    final double latNorth = (row + ring) * cellSize - 90;
+    final double deltaLat = Math.max(0, Math.min(latitude - latSouth, latNorth - latitude));
+
+    // Ecart minimal en longitude (en tenant compte du passage par l'antimeridien)
+    final double lonWest = (col - ring + 1) * cellSize - 180;
+    final double lonEast = (col + ring) * cellSize - 180;
+    final double maxSpan = Math.max(longitude + 180, 180 - longitude);
+    final double deltaLon = Math.max(0, Math.min(Math.min(longitude - lonWest, lonEast - longitude), 360 - maxSpan));
+
+    // Minorants (haversine)
+    final double sinLat = Math.sin(Math.toRadians(deltaLat) / 2);
+    final double sinLon = cosLatMax * Math.sin(Math.toRadians(Math.min(deltaLon, 180)) / 2);
+    final double minSin = Math.min(sinLat, sinLon);
+
+    return 2 * RAYON_TERRE_KM * Math.asin(Math.min(1, minSin));
+  }
+
+  /**
+   * Distance orthodromique (formule de haversine).
+   * 
+   * @param latitude1
+   * @param longitude1
+   * @param latitude2
+   * @param longitude2
+   * @return la distance en km
+   */
+  public static double distance(final double latitude1, final double longitude1, final double latitude2, final double longitude2)
+  {
+    final double sinLat = Math.sin(Math.toRadians(latitude2 - latitude1) / 2);
+    final double sinLon = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+    final double a = sinLat * sinLat + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2)) * sinLon * sinLon;
+
+    return 2 * RAYON_TERRE_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+  }
+}
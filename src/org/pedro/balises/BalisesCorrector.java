@@ -26,7 +26,6 @@ package org.pedro.balises;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
-import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
@@ -47,6 +46,7 @@ public final class BalisesCorrector
 
   private final URL           url;
   protected final Properties  properties;
+  private FeedTransport       transport   = UrlConnectionTransport.DEFAULT;
 
   /**
    * 
@@ -65,6 +65,15 @@ public final class BalisesCorrector
     }
   }
 
+  /**
+   * 
+   * @param transport le transport, null pour le transport par defaut
+   */
+  public void setFeedTransport(final FeedTransport transport)
+  {
+    this.transport = (transport == null ? UrlConnectionTransport.DEFAULT : transport);
+  }
+
   /**
    * 
    * @throws IOException
@@ -78,10 +87,7 @@ public final class BalisesCorrector
     try
     {
       // Ouveture du flux
-      final URLConnection cnx = url.openConnection();
-      cnx.setConnectTimeout(Utils.CONNECT_TIMEOUT);
-      cnx.setReadTimeout(Utils.READ_TIMEOUT);
-      input = cnx.getInputStream();
+      input = transport.open(url.toString(), null, null, false);
 
       // Chargement des properties
       properties.clear();
@@ -108,6 +114,7 @@ public final class BalisesCorrector
   {
     // Initialisations
     final List<String> balisesInconnues = new ArrayList<String>();
+    boolean coordonnees = false;
 
     // Pour chaque ligne
     for (final Object object : properties.keySet())
@@ -135,10 +142,12 @@ public final class BalisesCorrector
           else if (LATITUDE.equalsIgnoreCase(property))
           {
             balise.latitude = Utils.parsePrimitiveDouble(value);
+            coordonnees = true;
           }
           else if (LONGITUDE.equalsIgnoreCase(property))
           {
             balise.longitude = Utils.parsePrimitiveDouble(value);
+            coordonnees = true;
           }
           else if (ALTITUDE.equalsIgnoreCase(property))
           {
@@ -156,6 +165,12 @@ public final class BalisesCorrector
       }
     }
 
+    // Coordonnees modifiees : reconstruction de l'index spatial
+    if (coordonnees && (provider instanceof AbstractBaliseProvider))
+    {
+      ((AbstractBaliseProvider)provider).rebuildSpatialIndex();
+    }
+
     return balisesInconnues;
   }
 }
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Flux de lecture sur un {@link ByteBuffer} (tas, direct ou fichier mappe) : pas d'appel systeme, et available() donne
+ * exactement le nombre d'octets restants.
+ * 
+ * @author pedro.m
+ */
+final class ByteBufferInputStream extends InputStream
+{
+  private final ByteBuffer buffer;
+
+  /**
+   * 
+   * @param buffer lu de sa position a sa limite (la position avance)
+   */
+  ByteBufferInputStream(final ByteBuffer buffer)
+  {
+    this.buffer = buffer;
+  }
+
+  @Override
+  public int read()
+  {
+    return (buffer.hasRemaining() ? buffer.get() & 0xFF : -1);
+  }
+
+  @Override
+  public int read(final byte[] bytes, final int offset, final int length)
+  {
+    if (length == 0)
+    {
+      return 0;
+    }
+    if (!buffer.hasRemaining())
+    {
+      return -1;
+    }
+
+    final int nb = Math.min(length, buffer.remaining());
+    buffer.get(bytes, offset, nb);
+    return nb;
+  }
+
+  @Override
+  public long skip(final long n)
+  {
+    final int nb = (int)Math.max(0, Math.min(n, buffer.remaining()));
+    buffer.position(buffer.position() + nb);
+    return nb;
+  }
+
+  @Override
+  public int available()
+  {
+    return buffer.remaining();
+  }
+}
@@ -0,0 +1,881 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Instantane binaire des balises ou des releves d'un cache ({@link BaliseSaveableCache}).<br/>
+ * Format (big-endian) :
+ * <ul>
+ * <li>entete : magique, version, type, indicateurs, nombre d'enregistrements, positions des tables, longueur totale,
+ * somme de controle (CRC32 de l'entete, des chaines et de l'index)</li>
+ * <li>table des chaines (identifiants, luminosites) : nombre, puis longueur et octets UTF-8 de chacune</li>
+ * <li>index : pour chaque enregistrement, chaine de l'identifiant, position, longueur et CRC32 de l'enregistrement
+ * (trie par identifiant si l'indicateur FLAG_SORTED_INDEX est present)</li>
+ * <li>enregistrements : releves a taille fixe (lus par acces direct, sans flux), balises au format Saveable</li>
+ * </ul>
+ * La somme de controle de l'entete est verifiee a l'ouverture, celle de chaque enregistrement a son decodage : un
+ * instantane tronque ou altere est detecte sans tout relire. La version 1 (sans sommes de controle) est encore lue.
+ * L'instantane est ecrit d'un bloc via un canal, et relu depuis un fichier mappe en memoire quand le cache fournit un
+ * FileInputStream (sinon depuis une copie en memoire) : l'ouverture ne decode que l'entete et la position des chaines,
+ * chaque chaine et chaque enregistrement est decode a la demande.
+ * 
+ * @author pedro.m
+ */
+public final class CacheSnapshot
+{
+  public static final int      MAGIC              = 0x424C5353;
+  public static final byte     VERSION            = 2;
+  public static final byte     TYPE_BALISES       = 1;
+  public static final byte     TYPE_RELEVES       = 2;
+  public static final short    FLAG_SORTED_INDEX  = 1;
+
+  private static final int     HEADER_SIZE        = 32;
+  private static final byte    VERSION_1          = 1;
+  private static final int     INDEX_ENTRY_SIZE   = 16;
+  private static final int     INDEX_ENTRY_SIZE_1 = 12;
+  private static final int     CHECKSUM_OFFSET    = 28;
+  private static final int     CHECKSUM_CHUNK     = 8192;
+  private static final int     RELEVE_RECORD_SIZE = 144;
+  private static final int     NO_STRING          = -1;
+  private static final int     READ_BUFFER_SIZE   = 16384;
+  private static final Charset UTF_8              = Charset.forName("UTF-8");
+
+  private final ByteBuffer     buffer;
+  private final byte           version;
+  private final byte           type;
+  private final short          flags;
+  private final int            count;
+  private final int            indexOffset;
+  private final int            indexEntrySize;
+  private final int            dataOffset;
+  private final int[]          stringOffsets;
+  private final String[]       strings;
+
+  /**
+   * Table des chaines en cours d'ecriture.
+   * 
+   * @author pedro.m
+   */
+  private static final class StringTable
+  {
+    final Map<String, Integer> indexes = new HashMap<String, Integer>();
+    final List<byte[]>         bytes   = new ArrayList<byte[]>();
+    int                        size    = 4;
+
+    /**
+     * 
+     */
+    StringTable()
+    {
+      super();
+    }
+
+    /**
+     * 
+     * @param string
+     * @return l'index de la chaine (ajoutee si besoin), NO_STRING si null
+     */
+    int add(final String string)
+    {
+      if (string == null)
+      {
+        return NO_STRING;
+      }
+
+      final Integer index = indexes.get(string);
+      if (index != null)
+      {
+        return index.intValue();
+      }
+
+      final byte[] encoded = string.getBytes(UTF_8);
+      indexes.put(string, Integer.valueOf(bytes.size()));
+      bytes.add(encoded);
+      size += 4 + encoded.length;
+
+      return bytes.size() - 1;
+    }
+
+    /**
+     * 
+     * @param buffer
+     */
+    void write(final ByteBuffer buffer)
+    {
+      buffer.putInt(bytes.size());
+      for (final byte[] encoded : bytes)
+      {
+        buffer.putInt(encoded.length);
+        buffer.put(encoded);
+      }
+    }
+  }
+
+  /**
+   * Entree d'index en cours d'ecriture.
+   * 
+   * @author pedro.m
+   */
+  private static final class IndexEntry implements Comparable<IndexEntry>
+  {
+    final String id;
+    final int    stringIndex;
+    final int    offset;
+    final int    length;
+
+    /**
+     * 
+     * @param id
+     * @param stringIndex
+     * @param offset
+     * @param length
+     */
+    IndexEntry(final String id, final int stringIndex, final int offset, final int length)
+    {
+      this.id = id;
+      this.stringIndex = stringIndex;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    @Override
+    public int compareTo(final IndexEntry other)
+    {
+      return id.compareTo(other.id);
+    }
+  }
+
+  /**
+   * 
+   * @param buffer
+   * @throws IOException
+   */
+  private CacheSnapshot(final ByteBuffer buffer) throws IOException
+  {
+    // Entete
+    this.buffer = buffer.slice();
+    if (this.buffer.remaining() < HEADER_SIZE)
+    {
+      throw new IOException("Truncated snapshot (" + this.buffer.remaining() + " bytes)");
+    }
+    if (this.buffer.getInt(0) != MAGIC)
+    {
+      throw new IOException("Not a snapshot");
+    }
+    version = this.buffer.get(4);
+    if ((version != VERSION) && (version != VERSION_1))
+    {
+      throw new IOException("Unsupported snapshot version (" + version + ")");
+    }
+    type = this.buffer.get(5);
+    flags = this.buffer.getShort(6);
+    count = this.buffer.getInt(8);
+    final int stringsOffset = this.buffer.getInt(12);
+    indexOffset = this.buffer.getInt(16);
+    indexEntrySize = (version == VERSION_1 ? INDEX_ENTRY_SIZE_1 : INDEX_ENTRY_SIZE);
+    dataOffset = this.buffer.getInt(20);
+    final int length = this.buffer.getInt(24);
+    if ((length != this.buffer.remaining()) || (count < 0) || (stringsOffset < HEADER_SIZE) || (indexOffset < stringsOffset) || ((long)indexOffset + (long)count * indexEntrySize > dataOffset) || (dataOffset > length))
+    {
+      throw new IOException("Corrupted snapshot (length " + this.buffer.remaining() + ", expected " + length + ")");
+    }
+
+    // Somme de controle de l'entete, des chaines et de l'index
+    if (version != VERSION_1)
+    {
+      final CRC32 crc = new CRC32();
+      update(crc, this.buffer, 0, CHECKSUM_OFFSET);
+      update(crc, this.buffer, stringsOffset, dataOffset - stringsOffset);
+      if ((int)crc.getValue() != this.buffer.getInt(CHECKSUM_OFFSET))
+      {
+        throw new IOException("Corrupted snapshot (header checksum)");
+      }
+    }
+
+    // Chaines : positions seulement (decodage a la demande)
+    try
+    {
+      final ByteBuffer reader = this.buffer.duplicate();
+      reader.position(stringsOffset);
+      reader.limit(indexOffset);
+      stringOffsets = new int[reader.getInt()];
+      for (int i = 0; i < stringOffsets.length; i++)
+      {
+        stringOffsets[i] = reader.position();
+        reader.position(reader.position() + 4 + reader.getInt(reader.position()));
+      }
+      strings = new String[stringOffsets.length];
+    }
+    catch (final RuntimeException re)
+    {
+      final IOException ioe = new IOException("Corrupted snapshot strings (" + re.getClass().getSimpleName() + ")");
+      ioe.setStackTrace(re.getStackTrace());
+      throw ioe;
+    }
+  }
+
+  /**
+   * 
+   * @param crc
+   * @param buffer
+   * @param offset
+   * @param length
+   */
+  private static void update(final CRC32 crc, final ByteBuffer buffer, final int offset, final int length)
+  {
+    // Buffer sur tableau
+    if (buffer.hasArray())
+    {
+      crc.update(buffer.array(), buffer.arrayOffset() + offset, length);
+      return;
+    }
+
+    // Buffer direct ou mappe : par morceaux
+    final ByteBuffer reader = buffer.duplicate();
+    reader.position(offset);
+    final byte[] chunk = new byte[Math.min(length, CHECKSUM_CHUNK)];
+    int remaining = length;
+    while (remaining > 0)
+    {
+      final int nb = Math.min(remaining, chunk.length);
+      reader.get(chunk, 0, nb);
+      crc.update(chunk, 0, nb);
+      remaining -= nb;
+    }
+  }
+
+  /**
+   * 
+   * @param buffer
+   * @return true si le buffer (a partir de sa position) commence par l'entete d'un instantane
+   */
+  public static boolean isSnapshot(final ByteBuffer buffer)
+  {
+    return (buffer.remaining() >= HEADER_SIZE) && (buffer.getInt(buffer.position()) == MAGIC);
+  }
+
+  /**
+   * 
+   * @param buffer
+   * @return
+   * @throws IOException si le buffer n'est pas un instantane complet
+   */
+  public static CacheSnapshot open(final ByteBuffer buffer) throws IOException
+  {
+    return new CacheSnapshot(buffer);
+  }
+
+  /**
+   * Ouverture du prochain instantane d'une suite d'instantanes mis bout a bout (ex : journal).
+   * 
+   * @param buffer la position avance apres l'instantane
+   * @return
+   * @throws IOException si le buffer ne commence pas par un instantane complet (position inchangee)
+   */
+  public static CacheSnapshot openNext(final ByteBuffer buffer) throws IOException
+  {
+    if (!isSnapshot(buffer))
+    {
+      throw new IOException("Not a snapshot");
+    }
+    final int length = buffer.getInt(buffer.position() + 24);
+    if ((length < HEADER_SIZE) || (length > buffer.remaining()))
+    {
+      throw new IOException("Truncated snapshot (length " + buffer.remaining() + ", expected " + length + ")");
+    }
+
+    final ByteBuffer slice = buffer.slice();
+    slice.limit(length);
+    final CacheSnapshot snapshot = new CacheSnapshot(slice);
+    buffer.position(buffer.position() + length);
+
+    return snapshot;
+  }
+
+  /**
+   * Contenu restant d'un flux de cache : fichier mappe en memoire pour un FileInputStream, copie en memoire sinon.
+   * 
+   * @param is
+   * @return
+   * @throws IOException
+   */
+  public static ByteBuffer readBuffer(final InputStream is) throws IOException
+  {
+    return readBuffer(is, true);
+  }
+
+  /**
+   * Contenu restant d'un flux de cache.
+   * 
+   * @param is
+   * @param mapped true pour mapper un FileInputStream en memoire, false pour le copier (d'une seule lecture) : a
+   *          preferer si le buffer est conserve alors que le fichier peut etre reecrit
+   * @return
+   * @throws IOException
+   */
+  public static ByteBuffer readBuffer(final InputStream is, final boolean mapped) throws IOException
+  {
+    // Fichier
+    if (is instanceof FileInputStream)
+    {
+      final FileChannel channel = ((FileInputStream)is).getChannel();
+      final long position = channel.position();
+      final long size = channel.size() - position;
+      if (size > Integer.MAX_VALUE)
+      {
+        throw new IOException("Cache file too large (" + size + ")");
+      }
+      if (mapped)
+      {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+      }
+
+      final ByteBuffer buffer = ByteBuffer.allocate((int)size);
+      int nb = 0;
+      while (buffer.hasRemaining() && (nb != -1))
+      {
+        nb = channel.read(buffer);
+      }
+      buffer.flip();
+      return buffer;
+    }
+
+    // Autre flux
+    byte[] bytes = new byte[READ_BUFFER_SIZE];
+    int length = 0;
+    int nb = is.read(bytes, 0, bytes.length);
+    while (nb != -1)
+    {
+      length += nb;
+      if (length == bytes.length)
+      {
+        final byte[] newBytes = new byte[bytes.length << 1];
+        System.arraycopy(bytes, 0, newBytes, 0, length);
+        bytes = newBytes;
+      }
+      nb = is.read(bytes, length, bytes.length - length);
+    }
+
+    return ByteBuffer.wrap(bytes, 0, length).slice();
+  }
+
+  /**
+   * 
+   * @return TYPE_BALISES ou TYPE_RELEVES
+   */
+  public byte getType()
+  {
+    return type;
+  }
+
+  /**
+   * 
+   * @return le nombre d'enregistrements
+   */
+  public int size()
+  {
+    return count;
+  }
+
+  /**
+   * 
+   * @param index
+   * @return l'identifiant de l'enregistrement
+   */
+  public String getId(final int index)
+  {
+    return getString(buffer.getInt(indexEntry(index)));
+  }
+
+  /**
+   * 
+   * @return true si l'index est trie par identifiant (indexOf() par dichotomie)
+   */
+  public boolean isSortedIndex()
+  {
+    return (flags & FLAG_SORTED_INDEX) != 0;
+  }
+
+  /**
+   * 
+   * @param id
+   * @return l'index de l'enregistrement, -1 s'il est absent (recherche dichotomique si l'index est trie, sequentielle
+   *         sinon)
+   */
+  public int indexOf(final String id)
+  {
+    // Index non trie
+    if (!isSortedIndex())
+    {
+      for (int i = 0; i < count; i++)
+      {
+        if (getId(i).equals(id))
+        {
+          return i;
+        }
+      }
+
+      return -1;
+    }
+
+    // Dichotomie
+    int low = 0;
+    int high = count - 1;
+    while (low <= high)
+    {
+      final int middle = (low + high) >>> 1;
+      final int comparison = getId(middle).compareTo(id);
+      if (comparison < 0)
+      {
+        low = middle + 1;
+      }
+      else if (comparison > 0)
+      {
+        high = middle - 1;
+      }
+      else
+      {
+        return middle;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * 
+   * @param index
+   * @return
+   */
+  private int indexEntry(final int index)
+  {
+    if ((index < 0) || (index >= count))
+    {
+      throw new IndexOutOfBoundsException(index + " (size " + count + ")");
+    }
+
+    return indexOffset + index * indexEntrySize;
+  }
+
+  /**
+   * 
+   * @param entry
+   * @return la position de l'enregistrement, apres verification de ses limites et de sa somme de controle
+   * @throws IOException
+   */
+  private int recordOffset(final int entry) throws IOException
+  {
+    final int offset = buffer.getInt(entry + 4);
+    final int length = buffer.getInt(entry + 8);
+    if ((offset < dataOffset) || (length < 0) || ((long)offset + length > buffer.limit()))
+    {
+      throw new IOException("Corrupted snapshot record (offset " + offset + ", length " + length + ")");
+    }
+
+    if (version != VERSION_1)
+    {
+      final CRC32 crc = new CRC32();
+      update(crc, buffer, offset, length);
+      if ((int)crc.getValue() != buffer.getInt(entry + 12))
+      {
+        throw new IOException("Corrupted snapshot record " + getString(buffer.getInt(entry)) + " (checksum)");
+      }
+    }
+
+    return offset;
+  }
+
+  /**
+   * 
+   * @return true si chaque enregistrement a sa somme de controle (version 2)
+   */
+  public boolean hasRecordChecksums()
+  {
+    return version != VERSION_1;
+  }
+
+  /**
+   * Verification des limites et de la somme de controle de tous les enregistrements, sans les decoder (ex : avant une
+   * restauration differee, pour qu'un instantane altere soit signale a l'ouverture et non au premier acces).
+   * 
+   * @throws IOException
+   */
+  public void verifyRecords() throws IOException
+  {
+    for (int i = 0; i < count; i++)
+    {
+      final int entry = indexEntry(i);
+      if ((type == TYPE_RELEVES) && (buffer.getInt(entry + 8) != RELEVE_RECORD_SIZE))
+      {
+        throw new IOException("Corrupted snapshot record (length " + buffer.getInt(entry + 8) + ")");
+      }
+      recordOffset(entry);
+    }
+  }
+
+  /**
+   * 
+   * @param stringIndex
+   * @return
+   */
+  private String getString(final int stringIndex)
+  {
+    if (stringIndex == NO_STRING)
+    {
+      return null;
+    }
+
+    // Decodage au premier acces (une chaine decodee deux fois par des threads concurrents est sans consequence)
+    String string = strings[stringIndex];
+    if (string == null)
+    {
+      final int offset = stringOffsets[stringIndex];
+      final byte[] encoded = new byte[buffer.getInt(offset)];
+      final ByteBuffer reader = buffer.duplicate();
+      reader.position(offset + 4);
+      reader.get(encoded);
+      string = new String(encoded, UTF_8);
+      strings[stringIndex] = string;
+    }
+
+    return string;
+  }
+
+  /**
+   * 
+   * @param millis
+   * @return
+   */
+  private static Date toDate(final long millis)
+  {
+    return (millis == CompactReleve.DATE_NULL ? null : new Date(millis));
+  }
+
+  /**
+   * 
+   * @param date
+   * @return
+   */
+  private static long toMillis(final Date date)
+  {
+    return (date == null ? CompactReleve.DATE_NULL : date.getTime());
+  }
+
+  /**
+   * Decodage d'un releve (acces direct au buffer, sans flux).
+   * 
+   * @param index
+   * @param releve le releve a remplir
+   * @return releve
+   * @throws IOException
+   */
+  public Releve readReleve(final int index, final Releve releve) throws IOException
+  {
+    if (type != TYPE_RELEVES)
+    {
+      throw new IOException("Not a releves snapshot (" + type + ")");
+    }
+
+    final int entry = indexEntry(index);
+    if (buffer.getInt(entry + 8) != RELEVE_RECORD_SIZE)
+    {
+      throw new IOException("Corrupted snapshot record (length " + buffer.getInt(entry + 8) + ")");
+    }
+    int offset = recordOffset(entry);
+    releve.setId(getString(buffer.getInt(entry)));
+
+    releve.date = toDate(buffer.getLong(offset));
+    releve.dateRelevePrecedent = toDate(buffer.getLong(offset + 8));
+    releve.dateHeureVentMaxi = toDate(buffer.getLong(offset + 16));
+    offset += 24;
+
+    releve.ventMoyen = buffer.getDouble(offset);
+    releve.ventMoyenTendance = buffer.getDouble(offset + 8);
+    releve.ventMini = buffer.getDouble(offset + 16);
+    releve.ventMiniTendance = buffer.getDouble(offset + 24);
+    releve.ventMaxi = buffer.getDouble(offset + 32);
+    releve.ventMaxiTendance = buffer.getDouble(offset + 40);
+    releve.temperature = buffer.getDouble(offset + 48);
+    releve.pointRosee = buffer.getDouble(offset + 56);
+    releve.hydrometrie = buffer.getDouble(offset + 64);
+    releve.pression = buffer.getDouble(offset + 72);
+    offset += 80;
+
+    releve.directionMoyenne = buffer.getInt(offset);
+    releve.directionInstantanee = buffer.getInt(offset + 4);
+    releve.directionVentVariation1 = buffer.getInt(offset + 8);
+    releve.directionVentVariation2 = buffer.getInt(offset + 12);
+    releve.pluie = buffer.getInt(offset + 16);
+    releve.nuages = buffer.getInt(offset + 20);
+    releve.plafondNuages = buffer.getInt(offset + 24);
+    releve.nuagesBourgeonnants = buffer.getInt(offset + 28);
+    releve.humidite = buffer.getInt(offset + 32);
+    releve.luminosite = getString(buffer.getInt(offset + 36));
+
+    return releve;
+  }
+
+  /**
+   * Decodage d'une balise (format Saveable de la balise).
+   * 
+   * @param index
+   * @param balise la balise a remplir
+   * @return balise
+   * @throws IOException
+   */
+  public Balise readBalise(final int index, final Balise balise) throws IOException
+  {
+    if (type != TYPE_BALISES)
+    {
+      throw new IOException("Not a balises snapshot (" + type + ")");
+    }
+
+    final int entry = indexEntry(index);
+    final ByteBuffer record = buffer.duplicate();
+    record.position(recordOffset(entry));
+    record.limit(record.position() + buffer.getInt(entry + 8));
+    balise.loadSaveable(new DataInputStream(new ByteBufferInputStream(record)));
+
+    return balise;
+  }
+
+  /**
+   * 
+   * @param type
+   * @param count
+   * @param strings
+   * @param dataSize
+   * @return le buffer, entete, chaines ecrits et positionne au debut de l'index
+   * @throws IOException
+   */
+  private static ByteBuffer allocate(final byte type, final int count, final StringTable strings, final long dataSize) throws IOException
+  {
+    final long length = HEADER_SIZE + strings.size + (long)count * INDEX_ENTRY_SIZE + dataSize;
+    if (length > Integer.MAX_VALUE)
+    {
+      throw new IOException("Snapshot too large (" + length + ")");
+    }
+
+    final ByteBuffer buffer = ByteBuffer.allocate((int)length);
+    buffer.putInt(MAGIC);
+    buffer.put(VERSION);
+    buffer.put(type);
+    buffer.putShort(FLAG_SORTED_INDEX);
+    buffer.putInt(count);
+    buffer.putInt(HEADER_SIZE);
+    buffer.putInt(HEADER_SIZE + strings.size);
+    buffer.putInt(HEADER_SIZE + strings.size + count * INDEX_ENTRY_SIZE);
+    buffer.putInt((int)length);
+    buffer.putInt(0);
+    strings.write(buffer);
+
+    return buffer;
+  }
+
+  /**
+   * Ecriture de l'index, trie par identifiant.
+   * 
+   * @param buffer
+   * @param entries
+   */
+  private static void writeIndex(final ByteBuffer buffer, final IndexEntry[] entries)
+  {
+    Arrays.sort(entries);
+    for (final IndexEntry entry : entries)
+    {
+      buffer.putInt(entry.stringIndex);
+      buffer.putInt(entry.offset);
+      buffer.putInt(entry.length);
+      buffer.putInt(0);
+    }
+  }
+
+  /**
+   * Sommes de controle des enregistrements (dans l'index) puis de l'entete, des chaines et de l'index.
+   * 
+   * @param buffer le buffer complet
+   * @param entries les entrees de l'index, dans l'ordre de l'index
+   */
+  private static void seal(final ByteBuffer buffer, final IndexEntry[] entries)
+  {
+    final CRC32 crc = new CRC32();
+    final int indexOffset = buffer.getInt(16);
+    for (int i = 0; i < entries.length; i++)
+    {
+      crc.reset();
+      update(crc, buffer, entries[i].offset, entries[i].length);
+      buffer.putInt(indexOffset + i * INDEX_ENTRY_SIZE + 12, (int)crc.getValue());
+    }
+
+    crc.reset();
+    update(crc, buffer, 0, CHECKSUM_OFFSET);
+    update(crc, buffer, HEADER_SIZE, buffer.getInt(20) - HEADER_SIZE);
+    buffer.putInt(CHECKSUM_OFFSET, (int)crc.getValue());
+  }
+
+  /**
+   * Ecriture du buffer d'un bloc.
+   * 
+   * @param os
+   * @param buffer
+   * @throws IOException
+   */
+  private static void write(final OutputStream os, final ByteBuffer buffer) throws IOException
+  {
+    buffer.flip();
+    final WritableByteChannel channel = Channels.newChannel(os);
+    while (buffer.hasRemaining())
+    {
+      channel.write(buffer);
+    }
+    os.flush();
+  }
+
+  /**
+   * 
+   * @param os
+   * @param releves
+   * @throws IOException
+   */
+  public static void writeReleves(final OutputStream os, final Collection<? extends Releve> releves) throws IOException
+  {
+    // Chaines
+    final StringTable strings = new StringTable();
+    for (final Releve releve : releves)
+    {
+      strings.add(releve.id);
+      strings.add(releve.luminosite);
+    }
+
+    // Entete, chaines et index
+    final int count = releves.size();
+    final ByteBuffer buffer = allocate(TYPE_RELEVES, count, strings, (long)count * RELEVE_RECORD_SIZE);
+    final IndexEntry[] entries = new IndexEntry[count];
+    int offset = buffer.position() + count * INDEX_ENTRY_SIZE;
+    int i = 0;
+    for (final Releve releve : releves)
+    {
+      entries[i++] = new IndexEntry(releve.id, strings.add(releve.id), offset, RELEVE_RECORD_SIZE);
+      offset += RELEVE_RECORD_SIZE;
+    }
+    writeIndex(buffer, entries);
+
+    // Enregistrements
+    for (final Releve releve : releves)
+    {
+      buffer.putLong(toMillis(releve.date));
+      buffer.putLong(toMillis(releve.dateRelevePrecedent));
+      buffer.putLong(toMillis(releve.dateHeureVentMaxi));
+
+      buffer.putDouble(releve.ventMoyen);
+      buffer.putDouble(releve.ventMoyenTendance);
+      buffer.putDouble(releve.ventMini);
+      buffer.putDouble(releve.ventMiniTendance);
+      buffer.putDouble(releve.ventMaxi);
+      buffer.putDouble(releve.ventMaxiTendance);
+      buffer.putDouble(releve.temperature);
+      buffer.putDouble(releve.pointRosee);
+      buffer.putDouble(releve.hydrometrie);
+      buffer.putDouble(releve.pression);
+
+      buffer.putInt(releve.directionMoyenne);
+      buffer.putInt(releve.directionInstantanee);
+      buffer.putInt(releve.directionVentVariation1);
+      buffer.putInt(releve.directionVentVariation2);
+      buffer.putInt(releve.pluie);
+      buffer.putInt(releve.nuages);
+      buffer.putInt(releve.plafondNuages);
+      buffer.putInt(releve.nuagesBourgeonnants);
+      buffer.putInt(releve.humidite);
+      buffer.putInt(strings.add(releve.luminosite));
+    }
+    seal(buffer, entries);
+
+    write(os, buffer);
+  }
+
+  /**
+   * 
+   * @param os
+   * @param balises
+   * @throws IOException
+   */
+  public static void writeBalises(final OutputStream os, final Collection<? extends Balise> balises) throws IOException
+  {
+    // Enregistrements (format Saveable) et chaines
+    final StringTable strings = new StringTable();
+    final ByteArrayOutputStream records = new ByteArrayOutputStream(balises.size() * 128);
+    final DataOutputStream out = new DataOutputStream(records);
+    final int[] lengths = new int[balises.size()];
+    int i = 0;
+    for (final Balise balise : balises)
+    {
+      strings.add(balise.id);
+      final int start = out.size();
+      balise.saveSaveable(out);
+      lengths[i++] = out.size() - start;
+    }
+    out.flush();
+
+    // Entete, chaines et index
+    final int count = balises.size();
+    final ByteBuffer buffer = allocate(TYPE_BALISES, count, strings, records.size());
+    final IndexEntry[] entries = new IndexEntry[count];
+    int offset = buffer.position() + count * INDEX_ENTRY_SIZE;
+    i = 0;
+    for (final Balise balise : balises)
+    {
+      entries[i] = new IndexEntry(balise.id, strings.add(balise.id), offset, lengths[i]);
+      offset += lengths[i++];
+    }
+    writeIndex(buffer, entries);
+
+    // Enregistrements
+    buffer.put(records.toByteArray());
+    seal(buffer, entries);
+
+    write(os, buffer);
+  }
+}
@@ -33,8 +33,9 @@ import java.util.List;
  */
 public class CachedProvider implements BaliseProvider
 {
-  private static final String          BALISES_KEY_SUFFIX = ".balises";
-  private static final String          RELEVES_KEY_SUFFIX = ".releves";
+  private static final String          BALISES_KEY_SUFFIX    = ".balises";
+  private static final String          RELEVES_KEY_SUFFIX    = ".releves";
+  private static final String          VALIDATORS_KEY_SUFFIX = ".validators";
 
   private final AbstractBaliseProvider provider;
   private final BalisesCorrector       corrector;
@@ -42,8 +43,10 @@ public class CachedProvider implements BaliseProvider
 
   private final String                 balisesKey;
   private final String                 relevesKey;
+  private final String                 validatorsKey;
 
-  private boolean                      available          = true;
+  private boolean                      available             = true;
+  private long                         relevesStoredSequence = -1;
 
   /**
    * 
@@ -60,6 +63,7 @@ public class CachedProvider implements BaliseProvider
 
     balisesKey = key.concat(BALISES_KEY_SUFFIX);
     relevesKey = key.concat(RELEVES_KEY_SUFFIX);
+    validatorsKey = key.concat(VALIDATORS_KEY_SUFFIX);
   }
 
   /**
@@ -97,12 +101,34 @@ public class CachedProvider implements BaliseProvider
   }
 
   /**
+   * Sauvegarde des releves : seuls les releves modifies depuis la sauvegarde (ou la restauration) precedente sont
+   * ajoutes au journal d'un {@link BaliseSaveableCache}, selon le flux des modifications du provider ; sauvegarde
+   * complete sinon (la Map de tous les releves n'est construite que dans ce cas).
    * 
    * @throws IOException
    */
   public void storeReleves() throws IOException
   {
+    // Modifications seulement
+    if ((cache instanceof BaliseSaveableCache) && (relevesStoredSequence >= 0))
+    {
+      final ReleveChanges changes = provider.getChangesSince(relevesStoredSequence);
+      if (changes.isIncremental())
+      {
+        relevesStoredSequence = -1;
+        if (((BaliseSaveableCache)cache).appendReleves(relevesKey, changes.getReleves()))
+        {
+          relevesStoredSequence = changes.getSequence();
+          return;
+        }
+      }
+    }
+
+    // Sauvegarde complete (dont compactage du journal)
+    final long sequence = provider.getChangeFeed().getSequence();
+    relevesStoredSequence = -1;
     cache.storeReleves(relevesKey, provider.getRelevesMap());
+    relevesStoredSequence = sequence;
   }
 
   /**
@@ -111,7 +137,53 @@ public class CachedProvider implements BaliseProvider
    */
   public void restoreReleves() throws IOException
   {
+    relevesStoredSequence = -1;
     provider.setRelevesMap(cache.restoreReleves(relevesKey, this));
+    relevesStoredSequence = provider.getChangeFeed().getSequence();
+  }
+
+  /**
+   * Sauvegarde des validateurs HTTP des flux (sans effet si le cache n'est pas un {@link BaliseSerializableCache}).
+   * 
+   * @throws IOException
+   */
+  public void storeValidators() throws IOException
+  {
+    if (cache instanceof BaliseSerializableCache)
+    {
+      ((BaliseSerializableCache)cache).storeValidators(validatorsKey, provider.getFeedValidators());
+    }
+  }
+
+  /**
+   * Restauration des validateurs HTTP des flux (sans effet si le cache n'est pas un {@link BaliseSerializableCache}).
+   * 
+   * @throws IOException
+   */
+  public void restoreValidators() throws IOException
+  {
+    if (cache instanceof BaliseSerializableCache)
+    {
+      ((BaliseSerializableCache)cache).restoreValidators(validatorsKey, provider.getFeedValidators());
+    }
+  }
+
+  /**
+   * 
+   * @return
+   */
+  public UpdateRhythm getUpdateRhythm()
+  {
+    return provider.getUpdateRhythm();
+  }
+
+  /**
+   * 
+   * @return
+   */
+  public RelevePublisher getRelevePublisher()
+  {
+    return provider.getRelevePublisher();
   }
 
   @Override
@@ -120,6 +192,31 @@ public class CachedProvider implements BaliseProvider
     return provider.getBaliseById(id);
   }
 
+  /**
+   * 
+   * @param latitude
+   * @param longitude
+   * @param k
+   * @return les k balises les plus proches du point, triees par distance croissante
+   */
+  public List<Balise> findNearest(final double latitude, final double longitude, final int k)
+  {
+    return provider.findNearest(latitude, longitude, k);
+  }
+
+  /**
+   * 
+   * @param minLatitude
+   * @param minLongitude
+   * @param maxLatitude
+   * @param maxLongitude
+   * @return les balises situees dans le rectangle (bornes incluses)
+   */
+  public List<Balise> findInBox(final double minLatitude, final double minLongitude, final double maxLatitude, final double maxLongitude)
+  {
+    return provider.findInBox(minLatitude, minLongitude, maxLatitude, maxLongitude);
+  }
+
   @Override
   public String getBaliseDetailUrl(final String id)
   {
@@ -248,6 +345,14 @@ public class CachedProvider implements BaliseProvider
     return relevesKey;
   }
 
+  /**
+   * @return the validatorsKey
+   */
+  public String getValidatorsCacheKey()
+  {
+    return validatorsKey;
+  }
+
   @Override
   public Balise newBalise()
   {
@@ -290,6 +395,20 @@ public class CachedProvider implements BaliseProvider
     return provider.getUpdatedReleves();
   }
 
+  /**
+   * Modifications des releves depuis une sequence, sans parcourir getReleves() : chaque releve mis a jour recoit un
+   * numero de sequence croissant.<br/>
+   * Un client commence avec la sequence 0 puis repasse a chaque appel celle du resultat precedent ; les modifications
+   * manquees entre deux appels ne sont pas perdues tant qu'elles restent dans l'historique.
+   * 
+   * @param sequence derniere sequence connue
+   * @return
+   */
+  public ReleveChanges getChangesSince(final long sequence)
+  {
+    return provider.getChangesSince(sequence);
+  }
+
   @Override
   public Class<? extends BaliseProvider> getBaliseProviderClass()
   {
@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises;
+
+/**
+ * Accumulateur de caracteres reutilisable pour les ContentHandler SAX.<br/>
+ * Les valeurs numeriques sont analysees directement depuis le buffer, et les chaines ne sont creees que pour les champs
+ * conserves (un cache evite de recreer les memes chaines a chaque analyse).
+ *
+ * @author pedro.m
+ */
+public final class CharAccumulator implements CharSequence
+{
+  private static final int DEFAULT_CAPACITY  = 64;
+  private static final int STRING_CACHE_SIZE = 1024;
+  private static final int MAX_CACHED_LENGTH = 64;
+
+  private char[]           chars;
+  private int              length;
+  private final String[]   stringCache       = new String[STRING_CACHE_SIZE];
+
+  /**
+   *
+   */
+  public CharAccumulator()
+  {
+    chars = new char[DEFAULT_CAPACITY];
+  }
+
+  /**
+   *
+   * @param ch
+   * @param start
+   * @param len
+   */
+  public void append(final char[] ch, final int start, final int len)
+  {
+    final int newLength = length + len;
+    if (newLength > chars.length)
+    {
+      final char[] newChars = new char[Math.max(newLength, chars.length << 1)];
+      System.arraycopy(chars, 0, newChars, 0, length);
+      chars = newChars;
+    }
+    System.arraycopy(ch, start, chars, length, len);
+    length = newLength;
+  }
+
+  /**
+   *
+   */
+  public void reset()
+  {
+    length = 0;
+  }
+
+  @Override
+  public int length()
+  {
+    return length;
+  }
+
+  @Override
+  public char charAt(final int index)
+  {
+    if ((index < 0) || (index >= length))
+    {
+      throw new IndexOutOfBoundsException(String.valueOf(index));
+    }
+
+    return chars[index];
+  }
+
+  @Override
+  public CharSequence subSequence(final int start, final int end)
+  {
+    return new String(chars, start, end - start);
+  }
+
+  @Override
+  public String toString()
+  {
+    return new String(chars, 0, length);
+  }
+
+  /**
+   * Renvoie une chaine egale au contenu, reprise du cache si une chaine identique a deja ete creee.
+   *
+   * @return
+   */
+  public String toCachedString()
+  {
+    if (length > MAX_CACHED_LENGTH)
+    {
+      return toString();
+    }
+
+    // Hash du contenu (identique a String.hashCode())
+    int hash = 0;
+    for (int i = 0; i < length; i++)
+    {
+      hash = 31 * hash + chars[i];
+    }
+
+    // Recherche dans le cache
+    final int index = (hash ^ (hash >>> 16)) & (STRING_CACHE_SIZE - 1);
+    final String cached = stringCache[index];
+    if ((cached != null) && (cached.hashCode() == hash) && contentEquals(cached))
+    {
+      return cached;
+    }
+
+    // Creation
+    final String retour = toString();
+    stringCache[index] = retour;
+
+    return retour;
+  }
+
+  /**
+   *
+   * @return true si le contenu est vide ou ne contient que des espaces
+   */
+  public boolean isBlank()
+  {
+    return (firstNonBlank() >= length);
+  }
+
+  /**
+   *
+   * @param string
+   * @return
+   */
+  public boolean contentEquals(final String string)
+  {
+    if (string.length() != length)
+    {
+      return false;
+    }
+
+    for (int i = 0; i < length; i++)
+    {
+      if (chars[i] != string.charAt(i))
+      {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   *
+   * @param string
+   * @return
+   */
+  public boolean contentEqualsIgnoreCase(final String string)
+  {
+    return (string.length() == length) && regionMatchesIgnoreCase(string);
+  }
+
+  /**
+   *
+   * @param string
+   * @return
+   */
+  private boolean regionMatchesIgnoreCase(final String string)
+  {
+    for (int i = 0; i < length; i++)
+    {
+      final char c1 = chars[i];
+      final char c2 = string.charAt(i);
+      if ((c1 != c2) && (Character.toUpperCase(c1) != Character.toUpperCase(c2)) && (Character.toLowerCase(c1) != Character.toLowerCase(c2)))
+      {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   *
+   * @return
+   */
+  private int firstNonBlank()
+  {
+    int index = 0;
+    while ((index < length) && (chars[index] <= ' '))
+    {
+      index++;
+    }
+
+    return index;
+  }
+
+  /**
+   * Equivalent de {@link Utils#parsePrimitiveInteger(String)} sans creation de chaine.
+   *
+   * @return
+   */
+  public int parsePrimitiveInteger()
+  {
+    return Utils.parsePrimitiveInteger(chars, 0, length);
+  }
+
+  /**
+   * Equivalent de {@link Utils#parsePrimitiveDouble(String)} sans creation de chaine.
+   *
+   * @return
+   */
+  public double parsePrimitiveDouble()
+  {
+    return Utils.parsePrimitiveDouble(chars, 0, length);
+  }
+
+  /**
+   * Equivalent de {@link Utils#parsePrimitiveBoolean(String)} sans creation de chaine.
+   *
+   * @return
+   */
+  public int parsePrimitiveBoolean()
+  {
+    return Utils.parsePrimitiveBoolean(chars, 0, length);
+  }
+}
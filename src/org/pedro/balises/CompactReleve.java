@@ -0,0 +1,436 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.pedro.saveable.Saveable;
+import org.pedro.saveable.SaveableUtils;
+
+/**
+ * Forme compacte d'un {@link Releve} : uniquement des champs primitifs.<br/>
+ * Les dates sont des timestamps (millisecondes, {@link #DATE_NULL} si absente) et la luminosite est codee par un entier
+ * (table partagee des valeurs rencontrees). La copie ne partage donc aucune reference mutable.
+ * 
+ * @author pedro.m
+ */
+public final class CompactReleve implements Serializable, Saveable
+{
+  private static final long                 serialVersionUID        = -2364187559302474163L;
+
+  public static final long                  DATE_NULL               = Long.MIN_VALUE;
+  public static final int                   LUMINOSITE_NULL         = -1;
+
+  private static final Map<String, Integer> codesLuminosite         = new HashMap<String, Integer>();
+  private static volatile String[]          luminosites             = new String[0];
+
+  public String                             id;
+  public long                               date                    = DATE_NULL;
+  public long                               dateRelevePrecedent     = DATE_NULL;
+  public double                             ventMoyen               = Double.NaN;
+  public double                             ventMoyenTendance       = Double.NaN;
+  public double                             ventMini                = Double.NaN;
+  public double                             ventMiniTendance        = Double.NaN;
+  public double                             ventMaxi                = Double.NaN;
+  public double                             ventMaxiTendance        = Double.NaN;
+  public long                               dateHeureVentMaxi       = DATE_NULL;
+  public int                                directionMoyenne        = Integer.MIN_VALUE;
+  public int                                directionInstantanee    = Integer.MIN_VALUE;
+  public int                                directionVentVariation1 = Integer.MIN_VALUE;
+  public int                                directionVentVariation2 = Integer.MIN_VALUE;
+  public double                             temperature             = Double.NaN;
+  public double                             pointRosee              = Double.NaN;
+  public int                                pluie                   = Integer.MIN_VALUE;
+  public double                             hydrometrie             = Double.NaN;
+  public int                                nuages                  = Integer.MIN_VALUE;
+  public int                                plafondNuages           = Integer.MIN_VALUE;
+  public int                                nuagesBourgeonnants     = Utils.BOOLEAN_NULL;
+  public double                             pression                = Double.NaN;
+  public int                                luminosite              = LUMINOSITE_NULL;
+  public int                                humidite                = Integer.MIN_VALUE;
+
+  /**
+   * 
+   */
+  public CompactReleve()
+  {
+    super();
+  }
+
+  /**
+   * 
+   * @param releve
+   */
+  public CompactReleve(final Releve releve)
+  {
+    copyFrom(releve);
+  }
+
+  /**
+   * 
+   */
+  public void clear()
+  {
+    id = null;
+    date = DATE_NULL;
+    dateRelevePrecedent = DATE_NULL;
+    ventMoyen = Double.NaN;
+    ventMoyenTendance = Double.NaN;
+    ventMini = Double.NaN;
+    ventMiniTendance = Double.NaN;
+    ventMaxi = Double.NaN;
+    ventMaxiTendance = Double.NaN;
+    dateHeureVentMaxi = DATE_NULL;
+    directionMoyenne = Integer.MIN_VALUE;
+    directionInstantanee = Integer.MIN_VALUE;
+    directionVentVariation1 = Integer.MIN_VALUE;
+    directionVentVariation2 = Integer.MIN_VALUE;
+    temperature = Double.NaN;
+    pointRosee = Double.NaN;
+    pluie = Integer.MIN_VALUE;
+    hydrometrie = Double.NaN;
+    nuages = Integer.MIN_VALUE;
+    plafondNuages = Integer.MIN_VALUE;
+    nuagesBourgeonnants = Utils.BOOLEAN_NULL;
+    pression = Double.NaN;
+    luminosite = LUMINOSITE_NULL;
+    humidite = Integer.MIN_VALUE;
+  }
+
+  /**
+   * 
+   * @param luminosite
+   * @return le code de la luminosite, {@link #LUMINOSITE_NULL} si null
+   */
+  public static int encodeLuminosite(final String luminosite)
+  {
+    if (luminosite == null)
+    {
+      return LUMINOSITE_NULL;
+    }
+
+    // Valeur deja connue ?
+    final String[] current = luminosites;
+    for (int i = 0; i < current.length; i++)
+    {
+      if (luminosite.equals(current[i]))
+      {
+        return i;
+      }
+    }
+
+    // Nouvelle valeur
+    synchronized (codesLuminosite)
+    {
+      final Integer code = codesLuminosite.get(luminosite);
+      if (code != null)
+      {
+        return code.intValue();
+      }
+
+      final String[] newLuminosites = new String[luminosites.length + 1];
+      System.arraycopy(luminosites, 0, newLuminosites, 0, luminosites.length);
+      newLuminosites[luminosites.length] = luminosite;
+      codesLuminosite.put(luminosite, Integer.valueOf(luminosites.length));
+      luminosites = newLuminosites;
+
+      return newLuminosites.length - 1;
+    }
+  }
+
+  /**
+   * 
+   * @param code
+   * @return la luminosite correspondant au code, null pour {@link #LUMINOSITE_NULL}
+   */
+  public static String decodeLuminosite(final int code)
+  {
+    return (code == LUMINOSITE_NULL ? null : luminosites[code]);
+  }
+
+  /**
+   * 
+   * @return
+   */
+  public String getLuminosite()
+  {
+    return decodeLuminosite(luminosite);
+  }
+
+  /**
+   * 
+   * @param date
+   * @return
+   */
+  private static long toMillis(final Date date)
+  {
+    return (date == null ? DATE_NULL : date.getTime());
+  }
+
+  /**
+   * 
+   * @param millis
+   * @return
+   */
+  private static Date toDate(final long millis)
+  {
+    return (millis == DATE_NULL ? null : new Date(millis));
+  }
+
+  /**
+   * 
+   * @param releve
+   */
+  public void copyFrom(final Releve releve)
+  {
+    id = releve.id;
+    date = toMillis(releve.date);
+    dateRelevePrecedent = toMillis(releve.dateRelevePrecedent);
+    ventMoyen = releve.ventMoyen;
+    ventMoyenTendance = releve.ventMoyenTendance;
+    ventMini = releve.ventMini;
+    ventMiniTendance = releve.ventMiniTendance;
+    ventMaxi = releve.ventMaxi;
+    ventMaxiTendance = releve.ventMaxiTendance;
+    dateHeureVentMaxi = toMillis(releve.dateHeureVentMaxi);
+    directionMoyenne = releve.directionMoyenne;
+    directionInstantanee = releve.directionInstantanee;
+    directionVentVariation1 = releve.directionVentVariation1;
+    directionVentVariation2 = releve.directionVentVariation2;
+    temperature = releve.temperature;
+    pointRosee = releve.pointRosee;
+    pluie = releve.pluie;
+    hydrometrie = releve.hydrometrie;
+    nuages = releve.nuages;
+    plafondNuages = releve.plafondNuages;
+    nuagesBourgeonnants = releve.nuagesBourgeonnants;
+    pression = releve.pression;
+    luminosite = encodeLuminosite(releve.luminosite);
+    humidite = releve.humidite;
+  }
+
+  /**
+   * 
+   * @param releve
+   */
+  public void copyFrom(final CompactReleve releve)
+  {
+    id = releve.id;
+    date = releve.date;
+    dateRelevePrecedent = releve.dateRelevePrecedent;
+    ventMoyen = releve.ventMoyen;
+    ventMoyenTendance = releve.ventMoyenTendance;
+    ventMini = releve.ventMini;
+    ventMiniTendance = releve.ventMiniTendance;
+    ventMaxi = releve.ventMaxi;
+    ventMaxiTendance = releve.ventMaxiTendance;
+    dateHeureVentMaxi = releve.dateHeureVentMaxi;
+    directionMoyenne = releve.directionMoyenne;
+    directionInstantanee = releve.directionInstantanee;
+    directionVentVariation1 = releve.directionVentVariation1;
+    directionVentVariation2 = releve.directionVentVariation2;
+    temperature = releve.temperature;
+    pointRosee = releve.pointRosee;
+    pluie = releve.pluie;
+    hydrometrie = releve.hydrometrie;
+    nuages = releve.nuages;
+    plafondNuages = releve.plafondNuages;
+    nuagesBourgeonnants = releve.nuagesBourgeonnants;
+    pression = releve.pression;
+    luminosite = releve.luminosite;
+    humidite = releve.humidite;
+  }
+
+  /**
+   * Copie vers un Releve (les dates sont de nouvelles instances).
+   * 
+   * @param releve
+   */
+  public void copyTo(final Releve releve)
+  {
+    releve.setId(id);
+    releve.date = toDate(date);
+    releve.dateRelevePrecedent = toDate(dateRelevePrecedent);
+    releve.ventMoyen = ventMoyen;
+    releve.ventMoyenTendance = ventMoyenTendance;
+    releve.ventMini = ventMini;
+    releve.ventMiniTendance = ventMiniTendance;
+    releve.ventMaxi = ventMaxi;
+    releve.ventMaxiTendance = ventMaxiTendance;
+    releve.dateHeureVentMaxi = toDate(dateHeureVentMaxi);
+    releve.directionMoyenne = directionMoyenne;
+    releve.directionInstantanee = directionInstantanee;
+    releve.directionVentVariation1 = directionVentVariation1;
+    releve.directionVentVariation2 = directionVentVariation2;
+    releve.temperature = temperature;
+    releve.pointRosee = pointRosee;
+    releve.pluie = pluie;
+    releve.hydrometrie = hydrometrie;
+    releve.nuages = nuages;
+    releve.plafondNuages = plafondNuages;
+    releve.nuagesBourgeonnants = nuagesBourgeonnants;
+    releve.pression = pression;
+    releve.luminosite = decodeLuminosite(luminosite);
+    releve.humidite = humidite;
+  }
+
+  /**
+   * 
+   * @return un nouveau Releve equivalent
+   */
+  public Releve toReleve()
+  {
+    final Releve releve = new Releve();
+    copyTo(releve);
+
+    return releve;
+  }
+
+  @Override
+  public long getSerialUID()
+  {
+    return serialVersionUID;
+  }
+
+  @Override
+  public void loadSaveable(final DataInputStream in) throws IOException
+  {
+    SaveableUtils.checkSerialUID(in, this);
+
+    id = SaveableUtils.readString(in);
+    date = in.readLong();
+    dateRelevePrecedent = in.readLong();
+    ventMoyen = in.readDouble();
+    ventMoyenTendance = in.readDouble();
+    ventMini = in.readDouble();
+    ventMiniTendance = in.readDouble();
+    ventMaxi = in.readDouble();
+    ventMaxiTendance = in.readDouble();
+    dateHeureVentMaxi = in.readLong();
+    directionMoyenne = in.readInt();
+    directionInstantanee = in.readInt();
+    directionVentVariation1 = in.readInt();
+    directionVentVariation2 = in.readInt();
+    temperature = in.readDouble();
+    pointRosee = in.readDouble();
+    pluie = in.readInt();
+    nuages = in.readInt();
+    plafondNuages = in.readInt();
+    nuagesBourgeonnants = in.readInt();
+    hydrometrie = in.readDouble();
+    pression = in.readDouble();
+    luminosite = encodeLuminosite(SaveableUtils.readString(in));
+    humidite = in.readInt();
+  }
+
+  @Override
+  public void saveSaveable(final DataOutputStream out) throws IOException
+  {
+    SaveableUtils.saveSerialUID(out, this);
+    SaveableUtils.writeString(out, id);
+    out.writeLong(date);
+    out.writeLong(dateRelevePrecedent);
+    out.writeDouble(ventMoyen);
+    out.writeDouble(ventMoyenTendance);
+    out.writeDouble(ventMini);
+    out.writeDouble(ventMiniTendance);
+    out.writeDouble(ventMaxi);
+    out.writeDouble(ventMaxiTendance);
+    out.writeLong(dateHeureVentMaxi);
+    out.writeInt(directionMoyenne);
+    out.writeInt(directionInstantanee);
+    out.writeInt(directionVentVariation1);
+    out.writeInt(directionVentVariation2);
+    out.writeDouble(temperature);
+    out.writeDouble(pointRosee);
+    out.writeInt(pluie);
+    out.writeInt(nuages);
+    out.writeInt(plafondNuages);
+    out.writeInt(nuagesBourgeonnants);
+    out.writeDouble(hydrometrie);
+    out.writeDouble(pression);
+    SaveableUtils.writeString(out, getLuminosite());
+    out.writeInt(humidite);
+  }
+
+  /**
+   * Les codes de luminosite sont propres a la JVM : la valeur est serialisee en clair.
+   * 
+   * @param out
+   * @throws IOException
+   */
+  private void writeObject(final ObjectOutputStream out) throws IOException
+  {
+    final int code = luminosite;
+    out.defaultWriteObject();
+    out.writeObject(decodeLuminosite(code));
+  }
+
+  /**
+   * 
+   * @param in
+   * @throws IOException
+   * @throws ClassNotFoundException
+   */
+  private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException
+  {
+    in.defaultReadObject();
+    luminosite = encodeLuminosite((String)in.readObject());
+  }
+
+  @Override
+  public String toString()
+  {
+    return "id=" + id + ", date=" + date + ", dateRelPrec=" + dateRelevePrecedent + ", moy=" + ventMoyen + ", moyTend=" + ventMoyenTendance + ", maxi=" + ventMaxi + ", maxiTend=" + ventMaxiTendance + ", dateHeureVentMaxi="
+        + dateHeureVentMaxi + ", mini=" + ventMini + ", miniTend=" + ventMiniTendance + ", dirMoy=" + directionMoyenne + ", dirInst=" + directionInstantanee + ", dirVar1=" + directionVentVariation1 + ", dirVar2=" + directionVentVariation2
+        + ", temp=" + temperature + ", rosee=" + pointRosee + ", pluie=" + pluie + ", nuages=" + nuages + ", plafondNuages=" + plafondNuages + ", cum/cb=" + nuagesBourgeonnants + ", hydro=" + hydrometrie + ", pression=" + pression;
+  }
+
+  @Override
+  public boolean equals(final Object object)
+  {
+    if (!(object instanceof CompactReleve))
+    {
+      return false;
+    }
+
+    final CompactReleve releve = (CompactReleve)object;
+
+    return (id != null) && id.equals(releve.id) && ((date == DATE_NULL) || (date == releve.date));
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return (id == null ? 0 : id.hashCode());
+  }
+}
@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fabrique de threads demons nommes (prefixe + numero).
+ * 
+ * @author pedro.m
+ */
+final class DaemonThreadFactory implements ThreadFactory
+{
+  private final String        prefix;
+  private final AtomicInteger count = new AtomicInteger();
+
+  /**
+   * 
+   * @param prefix
+   */
+  DaemonThreadFactory(final String prefix)
+  {
+    this.prefix = prefix;
+  }
+
+  @Override
+  public Thread newThread(final Runnable runnable)
+  {
+    final Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+  }
+}
@@ -0,0 +1,369 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises;
+
+import java.text.ParseException;
+import java.util.TimeZone;
+
+/**
+ * Analyse des dates des flux a format fixe ("dd-MM-yyyy HH:mm", "yyyy-MM-dd HH:mm:ss"...).<br/>
+ * Contrairement a SimpleDateFormat, une instance peut etre partagee entre plusieurs threads. Les dates deja analysees sont
+ * memorisees : dans un flux, la plupart des releves partagent quelques heures de releve seulement.
+ * 
+ * @author pedro.m
+ */
+public final class FeedDateParser
+{
+  private static final int      CACHE_SIZE     = 64;
+  private static final long     MILLIS_SECONDE = 1000;
+  private static final long     MILLIS_MINUTE  = 60 * MILLIS_SECONDE;
+  private static final long     MILLIS_HEURE   = 60 * MILLIS_MINUTE;
+  public static final long      MILLIS_JOUR    = 24 * MILLIS_HEURE;
+
+  private static final char     CHAR_ANNEE     = 'y';
+  private static final char     CHAR_MOIS      = 'M';
+  private static final char     CHAR_JOUR      = 'd';
+  private static final char     CHAR_HEURE     = 'H';
+  private static final char     CHAR_MINUTE    = 'm';
+  private static final char     CHAR_SECONDE   = 's';
+
+  private final String          pattern;
+  private final char[]          fields;
+  private final int[]           widths;
+  private final ZoneOffsetTable sourceOffsets;
+  private final CacheEntry[]    cache          = new CacheEntry[CACHE_SIZE];
+
+  /**
+   * Date deja analysee (immuable, donc publiable sans synchronisation)
+   */
+  private static final class CacheEntry
+  {
+    final String text;
+    final int    hash;
+    final long   wall;
+    final long   instant;
+
+    /**
+     * 
+     * @param text
+     * @param hash
+     * @param wall
+     * @param instant
+     */
+    CacheEntry(final String text, final int hash, final long wall, final long instant)
+    {
+      this.text = text;
+      this.hash = hash;
+      this.wall = wall;
+      this.instant = instant;
+    }
+  }
+
+  /**
+   * 
+   * @param pattern format (champs y, M, d, H, m, s et separateurs)
+   * @param sourceTimeZone fuseau horaire des dates du flux
+   */
+  public FeedDateParser(final String pattern, final TimeZone sourceTimeZone)
+  {
+    this.pattern = pattern;
+    this.sourceOffsets = ZoneOffsetTable.getTable(sourceTimeZone);
+
+    // Decoupage du format en champs
+    final char[] tmpFields = new char[pattern.length()];
+    final int[] tmpWidths = new int[pattern.length()];
+    int count = 0;
+    for (int i = 0; i < pattern.length();)
+    {
+      final char c = pattern.charAt(i);
+      int width = 1;
+      while ((i + width < pattern.length()) && (pattern.charAt(i + width) == c) && isField(c))
+      {
+        width++;
+      }
+      tmpFields[count] = c;
+      tmpWidths[count] = width;
+      count++;
+      i += width;
+    }
+
+    fields = new char[count];
+    widths = new int[count];
+    System.arraycopy(tmpFields, 0, fields, 0, count);
+    System.arraycopy(tmpWidths, 0, widths, 0, count);
+  }
+
+  /**
+   * 
+   * @param c
+   * @return
+   */
+  private static boolean isField(final char c)
+  {
+    return (c == CHAR_ANNEE) || (c == CHAR_MOIS) || (c == CHAR_JOUR) || (c == CHAR_HEURE) || (c == CHAR_MINUTE) || (c == CHAR_SECONDE);
+  }
+
+  /**
+   * Analyse d'une date du flux.
+   * 
+   * @param text
+   * @return le timestamp (millisecondes depuis epoch) de la date exprimee dans le fuseau horaire source
+   * @throws ParseException
+   */
+  public long parse(final CharSequence text) throws ParseException
+  {
+    return getEntry(text).instant;
+  }
+
+  /**
+   * Analyse d'une date du flux, sans conversion de fuseau horaire.
+   * 
+   * @param text
+   * @return les champs de la date, exprimes en millisecondes comme s'ils etaient en UTC
+   * @throws ParseException
+   */
+  public long parseWall(final CharSequence text) throws ParseException
+  {
+    return getEntry(text).wall;
+  }
+
+  /**
+   * 
+   * @param wall champs de date exprimes en millisecondes comme s'ils etaient en UTC
+   * @return le timestamp de cette date dans le fuseau horaire source
+   */
+  public long toInstant(final long wall)
+  {
+    // Decalage a l'heure locale estimee, puis verification (passage heure d'ete / heure d'hiver)
+    final int offset = sourceOffsets.getOffset(wall - sourceOffsets.getRawOffset());
+    final int checkOffset = sourceOffsets.getOffset(wall - offset);
+
+    return wall - (offset == checkOffset ? offset : checkOffset);
+  }
+
+  /**
+   * 
+   * @param text
+   * @return
+   * @throws ParseException
+   */
+  private CacheEntry getEntry(final CharSequence text) throws ParseException
+  {
+    // Recherche dans le cache
+    final int hash = hash(text);
+    final int index = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+    final CacheEntry entry = cache[index];
+    if ((entry != null) && (entry.hash == hash) && contentEquals(entry.text, text))
+    {
+      return entry;
+    }
+
+    // Analyse et memorisation
+    final long wall = parseFields(text);
+    final CacheEntry newEntry = new CacheEntry(text.toString(), hash, wall, toInstant(wall));
+    cache[index] = newEntry;
+
+    return newEntry;
+  }
+
+  /**
+   * 
+   * @param text
+   * @return
+   * @throws ParseException
+   */
+  private long parseFields(final CharSequence text) throws ParseException
+  {
+    // Suppression des espaces
+    int start = 0;
+    int end = text.length();
+    while ((start < end) && (text.charAt(start) <= ' '))
+    {
+      start++;
+    }
+    while ((end > start) && (text.charAt(end - 1) <= ' '))
+    {
+      end--;
+    }
+
+    // Champs
+    int annee = 1970;
+    int mois = 1;
+    int jour = 1;
+    int heure = 0;
+    int minute = 0;
+    int seconde = 0;
+    int index = start;
+    for (int i = 0; i < fields.length; i++)
+    {
+      final char field = fields[i];
+      if (!isField(field))
+      {
+        if ((index >= end) || (text.charAt(index) != field))
+        {
+          throw new ParseException("Unparseable date: \"" + text + "\" (" + pattern + ")", index);
+        }
+        index++;
+        continue;
+      }
+
+      // Nombre : au plus la largeur du champ si le champ suivant est accole, sinon jusqu'au separateur
+      final boolean accole = (i + 1 < fields.length) && isField(fields[i + 1]);
+      final int maxEnd = (accole ? Math.min(end, index + widths[i]) : end);
+      int value = 0;
+      final int digitsStart = index;
+      while ((index < maxEnd) && (text.charAt(index) >= '0') && (text.charAt(index) <= '9'))
+      {
+        value = value * 10 + (text.charAt(index) - '0');
+        index++;
+      }
+      if ((index == digitsStart) || (index - digitsStart > 9))
+      {
+        throw new ParseException("Unparseable date: \"" + text + "\" (" + pattern + ")", index);
+      }
+
+      switch (field)
+      {
+        case CHAR_ANNEE:
+          annee = value;
+          break;
+        case CHAR_MOIS:
+          mois = value;
+          break;
+        case CHAR_JOUR:
+          jour = value;
+          break;
+        case CHAR_HEURE:
+          heure = value;
+          break;
+        case CHAR_MINUTE:
+          minute = value;
+          break;
+        default:
+          seconde = value;
+          break;
+      }
+    }
+
+    // Verification
+    if ((mois < 1) || (mois > 12) || (jour < 1) || (jour > 31) || (heure > 23) || (minute > 59) || (seconde > 59))
+    {
+      throw new ParseException("Invalid date: \"" + text + "\" (" + pattern + ")", start);
+    }
+
+    return daysFromCivil(annee, mois, jour) * MILLIS_JOUR + heure * MILLIS_HEURE + minute * MILLIS_MINUTE + seconde * MILLIS_SECONDE;
+  }
+
+  /**
+   * Analyse d'une heure "H:mm" ou "HH:mm"
+   * 
+   * @param text
+   * @return le nombre de millisecondes depuis minuit, -1 si le texte n'est pas une heure
+   */
+  public static long parseHeureMinute(final CharSequence text)
+  {
+    final int length = text.length();
+    int index = 0;
+    int heure = 0;
+    while ((index < length) && (text.charAt(index) >= '0') && (text.charAt(index) <= '9') && (index < 2))
+    {
+      heure = heure * 10 + (text.charAt(index) - '0');
+      index++;
+    }
+    if ((index == 0) || (index >= length) || (text.charAt(index) != ':') || (length - index - 1 != 2))
+    {
+      return -1;
+    }
+
+    final int dizaines = text.charAt(index + 1) - '0';
+    final int unites = text.charAt(index + 2) - '0';
+    if ((dizaines < 0) || (dizaines > 5) || (unites < 0) || (unites > 9) || (heure > 23))
+    {
+      return -1;
+    }
+
+    return heure * MILLIS_HEURE + (dizaines * 10 + unites) * MILLIS_MINUTE;
+  }
+
+  /**
+   * Nombre de jours depuis le 01/01/1970 (calendrier gregorien)
+   * 
+   * @param annee
+   * @param mois
+   * @param jour
+   * @return
+   */
+  private static long daysFromCivil(final int annee, final int mois, final int jour)
+  {
+    final int y = (mois <= 2 ? annee - 1 : annee);
+    final int era = (y >= 0 ? y : y - 399) / 400;
+    final int yoe = y - era * 400;
+    final int doy = (153 * (mois + (mois > 2 ? -3 : 9)) + 2) / 5 + jour - 1;
+    final int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+
+    return era * 146097L + doe - 719468;
+  }
+
+  /**
+   * 
+   * @param text
+   * @return
+   */
+  private static int hash(final CharSequence text)
+  {
+    int hash = 0;
+    final int length = text.length();
+    for (int i = 0; i < length; i++)
+    {
+      hash = 31 * hash + text.charAt(i);
+    }
+
+    return hash;
+  }
+
+  /**
+   * 
+   * @param string
+   * @param text
+   * @return
+   */
+  private static boolean contentEquals(final String string, final CharSequence text)
+  {
+    final int length = string.length();
+    if (length != text.length())
+    {
+      return false;
+    }
+
+    for (int i = 0; i < length; i++)
+    {
+      if (string.charAt(i) != text.charAt(i))
+      {
+        return false;
+      }
+    }
+
+    return true;
+  }
+}
@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Lecture en flux d'un InputStream (ex : reseau) avec decodage incremental du charset.<br/>
+ * Les octets transitent par un unique ByteBuffer de taille fixe (eventuellement direct) : la memoire utilisee ne depend
+ * pas de la taille du flux, et un caractere multi-octets a cheval sur deux lectures est correctement decode.
+ * 
+ * @author pedro.m
+ */
+public final class FeedReader extends Reader
+{
+  public static final int           DEFAULT_BUFFER_SIZE = 8192;
+
+  private final ReadableByteChannel channel;
+  private final ByteBuffer          bytes;
+  private final CharsetDecoder      decoder;
+  private boolean                   endOfInput;
+  private boolean                   flushed;
+  private long                      byteCount;
+  private final char[]              pair                = new char[2];
+  private boolean                   hasLeftover;
+  private char                      leftover;
+
+  /**
+   * 
+   * @param input
+   * @param charset
+   */
+  public FeedReader(final InputStream input, final Charset charset)
+  {
+    this(input, charset, DEFAULT_BUFFER_SIZE, false);
+  }
+
+  /**
+   * 
+   * @param input
+   * @param charset
+   * @param bufferSize taille du buffer d'octets
+   * @param direct true pour un buffer hors du tas
+   */
+  public FeedReader(final InputStream input, final Charset charset, final int bufferSize, final boolean direct)
+  {
+    this.channel = Channels.newChannel(input);
+    this.bytes = (direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize));
+    this.bytes.flip();
+    this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+  }
+
+  @Override
+  public int read(final char[] cbuf, final int off, final int len) throws IOException
+  {
+    if (len == 0)
+    {
+      return 0;
+    }
+
+    // Second caractere d'une paire decodee lors de l'appel precedent
+    if (hasLeftover)
+    {
+      cbuf[off] = leftover;
+      hasLeftover = false;
+      return 1;
+    }
+
+    // Un seul caractere demande : decodage d'une eventuelle paire de surrogates dans un buffer de 2
+    if (len == 1)
+    {
+      final int read = read(pair, 0, 2);
+      if (read > 0)
+      {
+        cbuf[off] = pair[0];
+      }
+      if (read == 2)
+      {
+        leftover = pair[1];
+        hasLeftover = true;
+      }
+      return (read < 0 ? -1 : 1);
+    }
+
+    final CharBuffer chars = CharBuffer.wrap(cbuf, off, len);
+    while (chars.position() == off)
+    {
+      // Fin du flux
+      if (flushed)
+      {
+        return -1;
+      }
+
+      // Decodage des octets disponibles
+      final CoderResult result = decoder.decode(bytes, chars, endOfInput);
+      if (result.isError())
+      {
+        result.throwException();
+      }
+      if (chars.position() > off)
+      {
+        break;
+      }
+
+      // Fin : vidage du decodeur
+      if (endOfInput)
+      {
+        decoder.flush(chars);
+        flushed = true;
+        continue;
+      }
+
+      // Lecture d'octets supplementaires (les octets non decodes d'un caractere incomplet sont conserves)
+      bytes.compact();
+      final int read = channel.read(bytes);
+      bytes.flip();
+      if (read < 0)
+      {
+        endOfInput = true;
+      }
+      else
+      {
+        byteCount += read;
+      }
+    }
+
+    return chars.position() - off;
+  }
+
+  /**
+   * 
+   * @return le nombre d'octets lus sur le flux
+   */
+  public long getByteCount()
+  {
+    return byteCount;
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    channel.close();
+  }
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Transport des flux (balises, releves, corrections...) : ouverture des connexions et execution asynchrone des mises a
+ * jour.
+ * 
+ * @author pedro.m
+ */
+public interface FeedTransport
+{
+  /**
+   * Ouverture bloquante d'un flux.
+   * 
+   * @param url
+   * @param requestProperties entetes de la requete, null pour aucun
+   * @param validators validateurs HTTP, null pour une requete non conditionnelle
+   * @param conditional false pour forcer le telechargement meme si des validateurs sont connus
+   * @return le flux, null si le serveur a repondu 304 (Not Modified)
+   * @throws IOException
+   */
+  public InputStream open(String url, Map<String, String> requestProperties, FeedValidators validators, boolean conditional) throws IOException;
+
+  /**
+   * Ouverture asynchrone d'un flux (cf. {@link #open(String, Map, FeedValidators, boolean)}).
+   * 
+   * @param url
+   * @param requestProperties
+   * @param validators
+   * @param conditional
+   * @return
+   */
+  public Future<InputStream> openAsync(String url, Map<String, String> requestProperties, FeedValidators validators, boolean conditional);
+
+  /**
+   * Execution asynchrone d'une tache (ex : updateReleves() d'un provider).
+   * 
+   * @param task
+   * @return
+   */
+  public <T> Future<T> submit(Callable<T> task);
+
+  /**
+   * 
+   */
+  public void shutdown();
+}
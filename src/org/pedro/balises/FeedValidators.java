@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URLConnection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Validateurs HTTP (ETag / Last-Modified) des flux, par URL, pour les requetes conditionnelles.<br/>
+ * Sur reponse 304 (Not Modified), le flux n'est ni telecharge ni analyse.
+ * 
+ * @author pedro.m
+ */
+public final class FeedValidators
+{
+  private static final String          HEADER_ETAG              = "ETag";
+  private static final String          HEADER_LAST_MODIFIED     = "Last-Modified";
+  private static final String          HEADER_IF_NONE_MATCH     = "If-None-Match";
+  private static final String          HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+  private static final int             VERSION                  = 1;
+
+  private final Map<String, Validator> validators               = new ConcurrentHashMap<String, Validator>();
+
+  /**
+   * 
+   * @author pedro.m
+   */
+  private static final class Validator
+  {
+    final String etag;
+    final String lastModified;
+
+    /**
+     * 
+     * @param etag
+     * @param lastModified
+     */
+    Validator(final String etag, final String lastModified)
+    {
+      this.etag = etag;
+      this.lastModified = lastModified;
+    }
+  }
+
+  /**
+   * Ajout des entetes conditionnels a une connexion non encore ouverte, si des validateurs sont connus pour l'URL.
+   * 
+   * @param cnx
+   * @param conditional false pour forcer le telechargement (ex : aucune donnee en memoire)
+   */
+  public void prepare(final URLConnection cnx, final boolean conditional)
+  {
+    final Validator validator = validators.get(cnx.getURL().toString());
+    if (conditional && (validator != null))
+    {
+      if (validator.etag != null)
+      {
+        cnx.setRequestProperty(HEADER_IF_NONE_MATCH, validator.etag);
+      }
+      if (validator.lastModified != null)
+      {
+        cnx.setRequestProperty(HEADER_IF_MODIFIED_SINCE, validator.lastModified);
+      }
+    }
+  }
+
+  /**
+   * Analyse de la reponse : 304 ou memorisation des nouveaux validateurs.
+   * 
+   * @param cnx
+   * @return true si le serveur a repondu 304 (Not Modified)
+   * @throws IOException
+   */
+  public boolean isNotModified(final URLConnection cnx) throws IOException
+  {
+    // Initialisations
+    final String url = cnx.getURL().toString();
+
+    // Reponse HTTP
+    if (cnx instanceof HttpURLConnection)
+    {
+      final HttpURLConnection http = (HttpURLConnection)cnx;
+      if (http.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED)
+      {
+        // Corps vide lu et ferme : la connexion retourne au cache keep-alive du JDK (disconnect() fermerait la socket)
+        http.getInputStream().close();
+        return true;
+      }
+    }
+
+    // Nouveaux validateurs
+    final String etag = cnx.getHeaderField(HEADER_ETAG);
+    final String lastModified = cnx.getHeaderField(HEADER_LAST_MODIFIED);
+    if ((etag == null) && (lastModified == null))
+    {
+      validators.remove(url);
+    }
+    else
+    {
+      validators.put(url, new Validator(etag, lastModified));
+    }
+
+    return false;
+  }
+
+  /**
+   * A appeler quand le contenu recu d'une URL n'a pas pu etre exploite : le prochain telechargement de cette URL ne
+   * sera pas conditionnel (les validateurs des autres URL sont conserves).
+   * 
+   * @param url
+   */
+  public void clear(final String url)
+  {
+    validators.remove(url);
+  }
+
+  /**
+   * 
+   * @return
+   */
+  public int size()
+  {
+    return validators.size();
+  }
+
+  /**
+   * 
+   * @param os
+   * @throws IOException
+   */
+  public void save(final OutputStream os) throws IOException
+  {
+    final DataOutputStream out = new DataOutputStream(os);
+    out.writeInt(VERSION);
+    final Map<String, Validator> copy = new HashMap<String, Validator>(validators);
+    out.writeInt(copy.size());
+    for (final Map.Entry<String, Validator> entry : copy.entrySet())
+    {
+      out.writeUTF(entry.getKey());
+      writeNullableString(out, entry.getValue().etag);
+      writeNullableString(out, entry.getValue().lastModified);
+    }
+    out.flush();
+  }
+
+  /**
+   * 
+   * @param is
+   * @throws IOException
+   */
+  public void load(final InputStream is) throws IOException
+  {
+    final DataInputStream in = new DataInputStream(is);
+    final int version = in.readInt();
+    if (version != VERSION)
+    {
+      throw new IOException("Unknown validators version (" + version + ")");
+    }
+
+    final int count = in.readInt();
+    final Map<String, Validator> loaded = new HashMap<String, Validator>(count);
+    for (int i = 0; i < count; i++)
+    {
+      final String url = in.readUTF();
+      final String etag = readNullableString(in);
+      final String lastModified = readNullableString(in);
+      loaded.put(url, new Validator(etag, lastModified));
+    }
+
+    validators.clear();
+    validators.putAll(loaded);
+  }
+
+  /**
+   * 
+   * @param out
+   * @param value
+   * @throws IOException
+   */
+  private static void writeNullableString(final DataOutputStream out, final String value) throws IOException
+  {
+    out.writeBoolean(value != null);
+    if (value != null)
+    {
+      out.writeUTF(value);
+    }
+  }
+
+  /**
+   * 
+   * @param in
+   * @return
+   * @throws IOException
+   */
+  private static String readNullableString(final DataInputStream in) throws IOException
+  {
+    return (in.readBoolean() ? in.readUTF() : null);
+  }
+}
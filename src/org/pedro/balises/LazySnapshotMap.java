@@ -0,0 +1,367 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Map en lecture seule sur un {@link CacheSnapshot} : rien n'est decode a l'ouverture si l'index de l'instantane est
+ * trie (recherche dichotomique), sinon seuls les identifiants le sont (index identifiant -> enregistrement). Chaque
+ * valeur est decodee a son premier acces puis conservee.<br/>
+ * Des valeurs deja decodees (ex : journal du cache) peuvent recouvrir celles de l'instantane.<br/>
+ * Les lectures concurrentes sont possibles : si deux threads decodent la meme valeur, une seule instance est retenue.
+ * Le parcours (values(), entrySet()) decode toutes les valeurs.<br/>
+ * Les enregistrements de l'instantane doivent avoir ete verifies ({@link CacheSnapshot#verifyRecords()}) : la Map ne
+ * contient jamais de valeur null, un enregistrement illisible au decodage est une erreur (IllegalStateException).
+ * 
+ * @author pedro.m
+ */
+abstract class LazySnapshotMap<V> extends AbstractMap<String, V>
+{
+  protected final CacheSnapshot         snapshot;
+  private final Map<String, Integer>    indexes;
+  private final AtomicReferenceArray<V> values;
+  private final Map<String, V>          overlay;
+  private final List<String>            added;
+  private Set<String>                   keySet;
+  private Set<Map.Entry<String, V>>     entrySet;
+
+  /**
+   * Parcours des identifiants dans l'ordre de l'instantane (sans decodage des valeurs).
+   * 
+   * @author pedro.m
+   */
+  private final class KeyIterator implements Iterator<String>
+  {
+    private int index;
+
+    /**
+     * 
+     */
+    KeyIterator()
+    {
+      super();
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+      return index < size();
+    }
+
+    @Override
+    public String next()
+    {
+      if (!hasNext())
+      {
+        throw new NoSuchElementException();
+      }
+
+      return keyAt(index++);
+    }
+
+    @Override
+    public void remove()
+    {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /**
+   * Parcours des entrees dans l'ordre de l'instantane.
+   * 
+   * @author pedro.m
+   */
+  private final class EntryIterator implements Iterator<Map.Entry<String, V>>
+  {
+    private int index;
+
+    /**
+     * 
+     */
+    EntryIterator()
+    {
+      super();
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+      return index < size();
+    }
+
+    @Override
+    public Map.Entry<String, V> next()
+    {
+      if (!hasNext())
+      {
+        throw new NoSuchElementException();
+      }
+
+      final int current = index++;
+      return new AbstractMap.SimpleImmutableEntry<String, V>(keyAt(current), valueAt(current));
+    }
+
+    @Override
+    public void remove()
+    {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /**
+   * 
+   * @author pedro.m
+   */
+  private final class KeySet extends AbstractSet<String>
+  {
+    /**
+     * 
+     */
+    KeySet()
+    {
+      super();
+    }
+
+    @Override
+    public Iterator<String> iterator()
+    {
+      return new KeyIterator();
+    }
+
+    @Override
+    public int size()
+    {
+      return LazySnapshotMap.this.size();
+    }
+
+    @Override
+    public boolean contains(final Object key)
+    {
+      return containsKey(key);
+    }
+  }
+
+  /**
+   * 
+   * @author pedro.m
+   */
+  private final class EntrySet extends AbstractSet<Map.Entry<String, V>>
+  {
+    /**
+     * 
+     */
+    EntrySet()
+    {
+      super();
+    }
+
+    @Override
+    public Iterator<Map.Entry<String, V>> iterator()
+    {
+      return new EntryIterator();
+    }
+
+    @Override
+    public int size()
+    {
+      return LazySnapshotMap.this.size();
+    }
+  }
+
+  /**
+   * 
+   * @param snapshot
+   * @param overlay valeurs prioritaires sur celles de l'instantane (non modifiee ensuite)
+   */
+  LazySnapshotMap(final CacheSnapshot snapshot, final Map<String, V> overlay)
+  {
+    // Initialisations
+    this.snapshot = snapshot;
+    this.overlay = overlay;
+    final int size = snapshot.size();
+    values = new AtomicReferenceArray<V>(size);
+
+    // Index des identifiants (sauf index trie : recherche dans l'instantane)
+    if (snapshot.isSortedIndex())
+    {
+      indexes = null;
+    }
+    else
+    {
+      indexes = new HashMap<String, Integer>(size * 4 / 3 + 1);
+      for (int i = 0; i < size; i++)
+      {
+        indexes.put(snapshot.getId(i), Integer.valueOf(i));
+      }
+    }
+
+    // Valeurs absentes de l'instantane
+    added = new ArrayList<String>();
+    for (final String key : overlay.keySet())
+    {
+      if (indexOf(key) < 0)
+      {
+        added.add(key);
+      }
+    }
+  }
+
+  /**
+   * 
+   * @param key
+   * @return l'index de l'enregistrement, -1 si absent
+   */
+  private int indexOf(final Object key)
+  {
+    if (!(key instanceof String))
+    {
+      return -1;
+    }
+    if (indexes == null)
+    {
+      return snapshot.indexOf((String)key);
+    }
+
+    final Integer index = indexes.get(key);
+    return (index == null ? -1 : index.intValue());
+  }
+
+  /**
+   * Decodage d'un enregistrement.
+   * 
+   * @param index
+   * @return
+   * @throws IOException
+   */
+  protected abstract V read(final int index) throws IOException;
+
+  /**
+   * 
+   * @param index
+   * @return la valeur de l'enregistrement, decodee au premier acces
+   * @throws IllegalStateException si l'enregistrement est illisible (instantane non verifie ou modifie depuis)
+   */
+  V materialize(final int index)
+  {
+    final V value = values.get(index);
+    if (value != null)
+    {
+      return value;
+    }
+
+    try
+    {
+      final V read = read(index);
+      return (values.compareAndSet(index, null, read) ? read : values.get(index));
+    }
+    catch (final IOException ioe)
+    {
+      throw new IllegalStateException("Cache record " + snapshot.getId(index) + " not readable", ioe);
+    }
+  }
+
+  /**
+   * 
+   * @param position position dans le parcours (instantane puis valeurs ajoutees)
+   * @return
+   */
+  String keyAt(final int position)
+  {
+    return (position < values.length() ? snapshot.getId(position) : added.get(position - values.length()));
+  }
+
+  /**
+   * 
+   * @param position position dans le parcours (instantane puis valeurs ajoutees)
+   * @return
+   */
+  V valueAt(final int position)
+  {
+    if (position >= values.length())
+    {
+      return overlay.get(added.get(position - values.length()));
+    }
+
+    final V value = (overlay.isEmpty() ? null : overlay.get(snapshot.getId(position)));
+    return (value == null ? materialize(position) : value);
+  }
+
+  @Override
+  public int size()
+  {
+    return values.length() + added.size();
+  }
+
+  @Override
+  public boolean containsKey(final Object key)
+  {
+    return overlay.containsKey(key) || (indexOf(key) >= 0);
+  }
+
+  @Override
+  public V get(final Object key)
+  {
+    final V value = overlay.get(key);
+    if (value != null)
+    {
+      return value;
+    }
+
+    final int index = indexOf(key);
+    return (index < 0 ? null : materialize(index));
+  }
+
+  @Override
+  public Set<String> keySet()
+  {
+    if (keySet == null)
+    {
+      keySet = new KeySet();
+    }
+
+    return keySet;
+  }
+
+  @Override
+  public Set<Map.Entry<String, V>> entrySet()
+  {
+    if (entrySet == null)
+    {
+      entrySet = new EntrySet();
+    }
+
+    return entrySet;
+  }
+}
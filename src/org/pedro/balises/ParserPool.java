@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Reserve thread-safe d'analyseurs (XMLReader et ContentHandler associes), partagee par toutes les instances d'un
+ * provider : chaque analyse emprunte son propre jeu, des mises a jour concurrentes peuvent donc s'executer en
+ * parallele, et le cout de creation d'un analyseur n'est paye qu'une fois par jeu.<br/>
+ * Au-dela de maxIdle jeux inactifs, les jeux rendus sont abandonnes.
+ * 
+ * @author pedro.m
+ */
+public abstract class ParserPool<T>
+{
+  public static final int                DEFAULT_MAX_IDLE = 8;
+
+  private static final SAXParserFactory  SAX_FACTORY      = SAXParserFactory.newInstance();
+
+  private final ConcurrentLinkedQueue<T> idle             = new ConcurrentLinkedQueue<T>();
+  private final AtomicInteger            idleCount        = new AtomicInteger();
+  private final int                      maxIdle;
+
+  /**
+   * 
+   */
+  protected ParserPool()
+  {
+    this(DEFAULT_MAX_IDLE);
+  }
+
+  /**
+   * 
+   * @param maxIdle nombre maximum de jeux inactifs conserves
+   */
+  protected ParserPool(final int maxIdle)
+  {
+    this.maxIdle = maxIdle;
+  }
+
+  /**
+   * Creation d'un nouveau jeu.
+   * 
+   * @return
+   */
+  protected abstract T create();
+
+  /**
+   * Nouvel XMLReader SAX (la fabrique, non thread-safe, est partagee).
+   * 
+   * @return
+   */
+  public static XMLReader newXMLReader()
+  {
+    try
+    {
+      synchronized (SAX_FACTORY)
+      {
+        return SAX_FACTORY.newSAXParser().getXMLReader();
+      }
+    }
+    catch (final SAXException se)
+    {
+      throw new RuntimeException(se);
+    }
+    catch (final ParserConfigurationException pce)
+    {
+      throw new RuntimeException(pce);
+    }
+  }
+
+  /**
+   * Emprunt d'un jeu, a rendre par {@link #release(Object)}.
+   * 
+   * @return
+   */
+  public final T acquire()
+  {
+    final T pooled = idle.poll();
+    if (pooled == null)
+    {
+      return create();
+    }
+
+    idleCount.decrementAndGet();
+    return pooled;
+  }
+
+  /**
+   * Restitution d'un jeu emprunte.
+   * 
+   * @param pooled
+   */
+  public final void release(final T pooled)
+  {
+    if (idleCount.incrementAndGet() > maxIdle)
+    {
+      idleCount.decrementAndGet();
+      return;
+    }
+
+    idle.offer(pooled);
+  }
+
+  /**
+   * 
+   * @return le nombre de jeux inactifs
+   */
+  public int getIdleCount()
+  {
+    return idleCount.get();
+  }
+}
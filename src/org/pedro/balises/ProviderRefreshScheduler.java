@@ -0,0 +1,448 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rafraichissement periodique et parallele de plusieurs providers.<br/>
+ * Chaque provider est rafraichi a son propre rythme (par defaut {@link BaliseProvider#getDefaultDeltaReleves()}) par un
+ * pool de threads borne : un serveur lent ne retarde que son propre provider. Les demandes de rafraichissement qui
+ * s'accumulent pour un provider (deja en attente ou en cours) sont fusionnees en une seule execution.<br/>
+ * Sequence d'un rafraichissement : dates de mise a jour des balises, balises (puis stockage en cache) si la date a
+ * change, dates de mise a jour des releves, releves (puis stockage en cache) si la date a change.<br/>
+ * En mode adaptatif ({@link #scheduleAdaptive(CachedProvider)}), la date du rafraichissement suivant est deduite du
+ * rythme de publication observe ({@link UpdateRhythm}) au lieu d'un intervalle fixe.
+ * 
+ * @author pedro.m
+ */
+public final class ProviderRefreshScheduler
+{
+  private static final String                 THREAD_NAME     = "ProviderRefresh-";
+  private static final long                   MILLIS_MINUTE   = 60000;
+
+  // Etats d'un provider
+  private static final int                    IDLE            = 0;
+  private static final int                    QUEUED          = 1;
+  private static final int                    RUNNING         = 2;
+  private static final int                    RUNNING_PENDING = 3;
+
+  private final ScheduledExecutorService      executor;
+  private final Map<CachedProvider, Entry>    entries         = new ConcurrentHashMap<CachedProvider, Entry>();
+  private final List<ProviderRefreshListener> listeners       = new CopyOnWriteArrayList<ProviderRefreshListener>();
+
+  /**
+   * 
+   * @param nbThreads nombre maximum de rafraichissements simultanes
+   */
+  public ProviderRefreshScheduler(final int nbThreads)
+  {
+    // Les rafraichissements planifies (adaptatifs compris) ne sont plus executes apres shutdown(), et ceux annules
+    // sont retires de la file aussitot
+    final ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(nbThreads, new DaemonThreadFactory(THREAD_NAME));
+    pool.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    pool.setRemoveOnCancelPolicy(true);
+    executor = pool;
+  }
+
+  /**
+   * Etat de rafraichissement d'un provider.
+   * 
+   * @author pedro.m
+   */
+  private final class Entry implements Runnable
+  {
+    final CachedProvider        provider;
+    private final boolean       adaptive;
+    private final long          defaultInterval;
+    private final AtomicInteger state             = new AtomicInteger(IDLE);
+    private long                lastBalisesUpdate = Long.MIN_VALUE;
+    private long                lastRelevesUpdate = Long.MIN_VALUE;
+    volatile ScheduledFuture<?> ticks;
+    final Runnable              tick;
+
+    /**
+     * 
+     * @param provider
+     * @param adaptive
+     * @param defaultInterval
+     */
+    Entry(final CachedProvider provider, final boolean adaptive, final long defaultInterval)
+    {
+      this.provider = provider;
+      this.adaptive = adaptive;
+      this.defaultInterval = defaultInterval;
+      this.tick = new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          // Sauf provider retire entre-temps
+          if (entries.get(provider) == Entry.this)
+          {
+            trigger();
+          }
+        }
+      };
+    }
+
+    /**
+     * Planification du prochain rafraichissement adaptatif, a la place de celui deja planifie (ex : rafraichissement
+     * anticipe par refreshNow()) : un seul est en attente par provider.
+     */
+    synchronized void scheduleNextTick()
+    {
+      if (ticks != null)
+      {
+        ticks.cancel(false);
+      }
+
+      final long now = Utils.toUTC(System.currentTimeMillis());
+      final long delay = provider.getUpdateRhythm().getNextPollDelay(now, defaultInterval);
+      try
+      {
+        ticks = executor.schedule(tick, delay, TimeUnit.MILLISECONDS);
+      }
+      catch (final RejectedExecutionException ree)
+      {
+        // Arret en cours
+      }
+    }
+
+    /**
+     * Demande de rafraichissement.
+     * 
+     * @return false si la demande a ete fusionnee avec une execution deja en attente
+     */
+    boolean trigger()
+    {
+      while (true)
+      {
+        final int current = state.get();
+        switch (current)
+        {
+          case IDLE:
+            if (state.compareAndSet(IDLE, QUEUED))
+            {
+              return submit();
+            }
+            break;
+
+          case RUNNING:
+            if (state.compareAndSet(RUNNING, RUNNING_PENDING))
+            {
+              return true;
+            }
+            break;
+
+          default:
+            return false;
+        }
+      }
+    }
+
+    /**
+     * 
+     * @return false si l'executeur est arrete
+     */
+    private boolean submit()
+    {
+      try
+      {
+        executor.execute(this);
+        return true;
+      }
+      catch (final RejectedExecutionException ree)
+      {
+        state.set(IDLE);
+        return false;
+      }
+    }
+
+    @Override
+    public void run()
+    {
+      state.set(RUNNING);
+      try
+      {
+        refresh();
+      }
+      finally
+      {
+        // Prochain rafraichissement adaptatif
+        if (state.compareAndSet(RUNNING, IDLE))
+        {
+          if (adaptive && (entries.get(provider) == this))
+          {
+            scheduleNextTick();
+          }
+        }
+
+        // Nouvelle demande arrivee pendant l'execution (sauf provider retire entre-temps)
+        else
+        {
+          if (entries.get(provider) == this)
+          {
+            state.set(QUEUED);
+            submit();
+          }
+          else
+          {
+            state.set(IDLE);
+          }
+        }
+      }
+    }
+
+    /**
+     * 
+     */
+    private void refresh()
+    {
+      boolean balisesUpdated = false;
+      boolean relevesUpdated = false;
+      try
+      {
+        // Balises
+        if (provider.updateBalisesUpdateDate())
+        {
+          final long balisesUpdate = provider.getBalisesUpdateDate();
+          if ((balisesUpdate != lastBalisesUpdate) || provider.getBalises().isEmpty())
+          {
+            balisesUpdated = provider.updateBalises();
+            if (balisesUpdated)
+            {
+              provider.storeBalises();
+            }
+            lastBalisesUpdate = balisesUpdate;
+          }
+        }
+
+        // Releves
+        if (provider.updateRelevesUpdateDate())
+        {
+          final long relevesUpdate = provider.getRelevesUpdateDate();
+          if (relevesUpdate != lastRelevesUpdate)
+          {
+            relevesUpdated = provider.updateReleves();
+            if (relevesUpdated)
+            {
+              provider.storeReleves();
+            }
+            lastRelevesUpdate = relevesUpdate;
+          }
+        }
+
+        // Rythme de publication
+        provider.getUpdateRhythm().observePoll(Utils.toUTC(System.currentTimeMillis()), relevesUpdated);
+
+        // Validateurs HTTP
+        if (balisesUpdated || relevesUpdated)
+        {
+          provider.storeValidators();
+        }
+
+      }
+      catch (final Throwable th)
+      {
+        fireRefreshFailed(provider, th);
+        return;
+      }
+
+      // Notification
+      fireRefreshDone(provider, balisesUpdated, relevesUpdated);
+    }
+  }
+
+  /**
+   * 
+   * @param provider
+   * @param balisesUpdated
+   * @param relevesUpdated
+   */
+  private void fireRefreshDone(final CachedProvider provider, final boolean balisesUpdated, final boolean relevesUpdated)
+  {
+    for (final ProviderRefreshListener listener : listeners)
+    {
+      try
+      {
+        listener.onRefreshDone(provider, balisesUpdated, relevesUpdated);
+      }
+      catch (final Throwable th)
+      {
+        System.err.println("Error notifying refresh of " + provider.getName() + " (" + th.getClass().getSimpleName() + ")");
+      }
+    }
+  }
+
+  /**
+   * 
+   * @param provider
+   * @param th
+   */
+  private void fireRefreshFailed(final CachedProvider provider, final Throwable th)
+  {
+    for (final ProviderRefreshListener listener : listeners)
+    {
+      try
+      {
+        listener.onRefreshFailed(provider, th);
+      }
+      catch (final Throwable lth)
+      {
+        System.err.println("Error notifying refresh failure of " + provider.getName() + " (" + lth.getClass().getSimpleName() + ")");
+      }
+    }
+  }
+
+  /**
+   * 
+   * @param listener
+   */
+  public void addListener(final ProviderRefreshListener listener)
+  {
+    listeners.add(listener);
+  }
+
+  /**
+   * 
+   * @param listener
+   */
+  public void removeListener(final ProviderRefreshListener listener)
+  {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Rafraichissement periodique au rythme par defaut du provider ({@link BaliseProvider#getDefaultDeltaReleves()}).
+   * 
+   * @param provider
+   */
+  public void schedule(final CachedProvider provider)
+  {
+    schedule(provider, provider.getDefaultDeltaReleves() * MILLIS_MINUTE);
+  }
+
+  /**
+   * Rafraichissement periodique, le premier etant immediat. Un provider deja planifie est replanifie.
+   * 
+   * @param provider
+   * @param periodMillis
+   */
+  public void schedule(final CachedProvider provider, final long periodMillis)
+  {
+    // Initialisations
+    final Entry entry = new Entry(provider, false, periodMillis);
+    unschedule(provider);
+    entries.put(provider, entry);
+
+    // Planification
+    entry.ticks = executor.scheduleAtFixedRate(entry.tick, 0, periodMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Rafraichissement adaptatif, le premier etant immediat : chaque rafraichissement est programme juste apres la
+   * prochaine publication attendue d'apres {@link CachedProvider#getUpdateRhythm()}, le rythme par defaut du provider
+   * etant utilise tant qu'aucune observation n'est disponible. Un provider deja planifie est replanifie.
+   * 
+   * @param provider
+   */
+  public void scheduleAdaptive(final CachedProvider provider)
+  {
+    // Initialisations
+    final Entry entry = new Entry(provider, true, provider.getDefaultDeltaReleves() * MILLIS_MINUTE);
+    unschedule(provider);
+    entries.put(provider, entry);
+
+    // Premier rafraichissement
+    entry.trigger();
+  }
+
+  /**
+   * Arret du rafraichissement periodique (un rafraichissement en cours se termine normalement).
+   * 
+   * @param provider
+   */
+  public void unschedule(final CachedProvider provider)
+  {
+    final Entry entry = entries.remove(provider);
+    if ((entry != null) && (entry.ticks != null))
+    {
+      entry.ticks.cancel(false);
+    }
+  }
+
+  /**
+   * Rafraichissement immediat d'un provider planifie.
+   * 
+   * @param provider
+   * @return false si la demande a ete fusionnee avec un rafraichissement deja en attente ou si le provider n'est pas
+   *         planifie
+   */
+  public boolean refreshNow(final CachedProvider provider)
+  {
+    final Entry entry = entries.get(provider);
+    return (entry != null) && entry.trigger();
+  }
+
+  /**
+   * 
+   * @param provider
+   * @return
+   */
+  public boolean isScheduled(final CachedProvider provider)
+  {
+    return entries.containsKey(provider);
+  }
+
+  /**
+   * Arret : plus aucun rafraichissement n'est planifie, ceux deja lances se terminent normalement.
+   */
+  public void shutdown()
+  {
+    entries.clear();
+    executor.shutdown();
+  }
+
+  /**
+   * Attente de la fin des rafraichissements en cours apres {@link #shutdown()}.
+   * 
+   * @param timeoutMillis
+   * @return true si tous les rafraichissements sont termines
+   * @throws InterruptedException
+   */
+  public boolean awaitTermination(final long timeoutMillis) throws InterruptedException
+  {
+    return executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+  }
+}
@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Flux des modifications de releves d'un provider : chaque releve mis a jour recoit un numero de sequence croissant.
+ * <br/>
+ * Les modifications sont ajoutees par le thread de mise a jour puis publiees d'un bloc avec la generation de releves
+ * correspondante ; les dernieres sont conservees dans un tampon circulaire borne. Un client qui a perdu le fil (sequence
+ * sortie du tampon, ou inconnue) est invite a repartir de l'etat complet.
+ * 
+ * @author pedro.m
+ */
+public final class ReleveChangeFeed
+{
+  public static final int DEFAULT_CAPACITY = 4096;
+
+  private final Releve[]  ring;
+  private int             head;
+  private int             count;
+  private long            sequence;
+  private List<Releve>    pending          = new ArrayList<Releve>();
+
+  /**
+   * 
+   * @param capacity nombre de modifications conservees
+   */
+  public ReleveChangeFeed(final int capacity)
+  {
+    if (capacity <= 0)
+    {
+      throw new IllegalArgumentException("Invalid capacity (" + capacity + ")");
+    }
+
+    ring = new Releve[capacity];
+  }
+
+  /**
+   * Ajout d'une modification, visible apres le prochain publish() (thread de mise a jour uniquement).
+   * 
+   * @param releve le releve modifie (ne doit plus etre modifie)
+   */
+  void add(final Releve releve)
+  {
+    pending.add(releve);
+  }
+
+  /**
+   * Publication des modifications ajoutees depuis la publication precedente (thread de mise a jour uniquement).
+   * 
+   * @return les releves publies
+   */
+  List<Releve> publish()
+  {
+    if (pending.isEmpty())
+    {
+      return Collections.emptyList();
+    }
+
+    synchronized (this)
+    {
+      for (final Releve releve : pending)
+      {
+        ring[(head + count) % ring.length] = releve;
+        if (count < ring.length)
+        {
+          count++;
+        }
+        else
+        {
+          head = (head + 1) % ring.length;
+        }
+        sequence++;
+      }
+    }
+
+    final List<Releve> published = pending;
+    pending = new ArrayList<Releve>();
+    return published;
+  }
+
+  /**
+   * Abandon de l'historique (ex : releves remplaces par ceux du cache) : les clients repartiront de l'etat complet.
+   */
+  synchronized void invalidate()
+  {
+    pending.clear();
+    for (int i = 0; i < count; i++)
+    {
+      ring[(head + i) % ring.length] = null;
+    }
+    head = 0;
+    count = 0;
+    sequence++;
+  }
+
+  /**
+   * 
+   * @return la sequence de la derniere modification publiee
+   */
+  public synchronized long getSequence()
+  {
+    return sequence;
+  }
+
+  /**
+   * 
+   * @param since derniere sequence connue du client
+   * @return les releves modifies apres since (derniere version de chacun), null si l'historique ne permet pas de
+   *         repondre (since trop ancienne ou inconnue)
+   */
+  public synchronized ReleveChanges getChangesSince(final long since)
+  {
+    // Sequence hors historique
+    if ((since > sequence) || (since < sequence - count))
+    {
+      return null;
+    }
+
+    // A jour
+    final int nb = (int)(sequence - since);
+    if (nb == 0)
+    {
+      return new ReleveChanges(sequence, true, Collections.<Releve> emptyList());
+    }
+
+    // Parcours du plus recent au plus ancien, une seule version par releve
+    final Set<String> ids = new HashSet<String>(nb * 2);
+    final List<Releve> releves = new ArrayList<Releve>(nb);
+    for (int i = count - 1; i >= count - nb; i--)
+    {
+      final Releve releve = ring[(head + i) % ring.length];
+      if (ids.add(releve.id))
+      {
+        releves.add(releve);
+      }
+    }
+    Collections.reverse(releves);
+
+    return new ReleveChanges(sequence, true, Collections.unmodifiableList(releves));
+  }
+
+  /**
+   * 
+   * @return
+   */
+  public int getCapacity()
+  {
+    return ring.length;
+  }
+}
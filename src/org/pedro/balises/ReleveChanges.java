@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises;
+
+import java.util.List;
+
+/**
+ * Resultat de {@link AbstractBaliseProvider#getChangesSince(long)} : releves modifies depuis une sequence donnee.
+ * 
+ * @author pedro.m
+ */
+public final class ReleveChanges
+{
+  private final long         sequence;
+  private final boolean      incremental;
+  private final List<Releve> releves;
+
+  /**
+   * 
+   * @param sequence
+   * @param incremental
+   * @param releves
+   */
+  ReleveChanges(final long sequence, final boolean incremental, final List<Releve> releves)
+  {
+    this.sequence = sequence;
+    this.incremental = incremental;
+    this.releves = releves;
+  }
+
+  /**
+   * 
+   * @return la sequence a repasser au prochain appel de getChangesSince()
+   */
+  public long getSequence()
+  {
+    return sequence;
+  }
+
+  /**
+   * 
+   * @return true si getReleves() ne contient que les modifications demandees, false si la sequence demandee n'est plus
+   *         (ou pas) dans l'historique : getReleves() contient alors tous les releves et remplace l'etat du client
+   */
+  public boolean isIncremental()
+  {
+    return incremental;
+  }
+
+  /**
+   * 
+   * @return les releves (derniere version de chacun, dans l'ordre des modifications), non modifiable
+   */
+  public List<Releve> getReleves()
+  {
+    return releves;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "ReleveChanges[sequence=" + sequence + ", incremental=" + incremental + ", size=" + releves.size() + "]";
+  }
+}
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Filtres usuels des abonnements aux releves : par balise, par zone, par seuil.
+ * 
+ * @author pedro.m
+ */
+public abstract class ReleveFilters
+{
+  public static final ReleveFilter ALL = new AllFilter();
+
+  /**
+   * Filtre acceptant tous les releves.
+   * 
+   * @author pedro.m
+   */
+  private static final class AllFilter implements ReleveFilter
+  {
+    /**
+     * 
+     */
+    AllFilter()
+    {
+      super();
+    }
+
+    @Override
+    public boolean accept(final BaliseProvider provider, final Releve releve)
+    {
+      return true;
+    }
+  }
+
+  /**
+   * 
+   * @param ids identifiants des balises
+   * @return
+   */
+  public static ReleveFilter byIds(final String... ids)
+  {
+    final Set<String> set = new HashSet<String>(Arrays.asList(ids));
+    return new ReleveFilter()
+    {
+      @Override
+      public boolean accept(final BaliseProvider provider, final Releve releve)
+      {
+        return set.contains(releve.id);
+      }
+    };
+  }
+
+  /**
+   * Releves des balises situees dans une zone (bornes incluses).
+   * 
+   * @param minLatitude
+   * @param minLongitude
+   * @param maxLatitude
+   * @param maxLongitude
+   * @return
+   */
+  public static ReleveFilter inBox(final double minLatitude, final double minLongitude, final double maxLatitude, final double maxLongitude)
+  {
+    return new ReleveFilter()
+    {
+      @Override
+      public boolean accept(final BaliseProvider provider, final Releve releve)
+      {
+        final Balise balise = provider.getBaliseById(releve.id);
+        return (balise != null) && (balise.latitude >= minLatitude) && (balise.latitude <= maxLatitude) && (balise.longitude >= minLongitude) && (balise.longitude <= maxLongitude);
+      }
+    };
+  }
+
+  /**
+   * 
+   * @param threshold vent maxi (km/h)
+   * @return les releves dont le vent maxi est strictement superieur au seuil
+   */
+  public static ReleveFilter ventMaxiAbove(final double threshold)
+  {
+    return new ReleveFilter()
+    {
+      @Override
+      public boolean accept(final BaliseProvider provider, final Releve releve)
+      {
+        return !Double.isNaN(releve.ventMaxi) && (releve.ventMaxi > threshold);
+      }
+    };
+  }
+
+  /**
+   * 
+   * @param threshold vent moyen (km/h)
+   * @return les releves dont le vent moyen est strictement superieur au seuil
+   */
+  public static ReleveFilter ventMoyenAbove(final double threshold)
+  {
+    return new ReleveFilter()
+    {
+      @Override
+      public boolean accept(final BaliseProvider provider, final Releve releve)
+      {
+        return !Double.isNaN(releve.ventMoyen) && (releve.ventMoyen > threshold);
+      }
+    };
+  }
+
+  /**
+   * 
+   * @param filters
+   * @return les releves acceptes par tous les filtres
+   */
+  public static ReleveFilter and(final ReleveFilter... filters)
+  {
+    final ReleveFilter[] copy = filters.clone();
+    return new ReleveFilter()
+    {
+      @Override
+      public boolean accept(final BaliseProvider provider, final Releve releve)
+      {
+        for (final ReleveFilter filter : copy)
+        {
+          if (!filter.accept(provider, releve))
+          {
+            return false;
+          }
+        }
+
+        return true;
+      }
+    };
+  }
+}
@@ -0,0 +1,463 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Diffusion des releves mis a jour d'un provider a des abonnes ({@link ReleveSubscriber}), filtres par balise, zone ou
+ * seuil ({@link ReleveFilters}), avec demande explicite des abonnes et regroupement par lots.<br/>
+ * A chaque publication d'une generation de releves, le thread de mise a jour ne fait que mettre le lot dans la file de
+ * chaque abonnement, dans l'ordre des publications : filtrage et notifications sont faits par l'executor, abonnement
+ * par abonnement (un releve plus ancien ne peut donc pas remplacer un plus recent). Tant qu'un abonne n'a pas de
+ * demande, ses releves en attente sont fusionnes (le plus recent par balise) : la memoire par abonne reste bornee par
+ * le nombre de balises, quel que soit son retard.
+ * 
+ * @author pedro.m
+ */
+public final class RelevePublisher
+{
+  public static final int              DEFAULT_MAX_BATCH_SIZE = 256;
+
+  private static final String          THREAD_NAME            = "RelevePublisher-";
+
+  private final BaliseProvider         provider;
+  private volatile Executor            executor;
+  private final List<SubscriptionImpl> subscriptions          = new CopyOnWriteArrayList<SubscriptionImpl>();
+  private volatile boolean             closed;
+
+  /**
+   * Executor par defaut, partage par les publishers et cree au premier usage.
+   * 
+   * @author pedro.m
+   */
+  private static final class DefaultExecutor
+  {
+    static final ExecutorService INSTANCE = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new DaemonThreadFactory(THREAD_NAME));
+
+    /**
+     * 
+     */
+    private DefaultExecutor()
+    {
+      super();
+    }
+  }
+
+  /**
+   * Abonnement : les releves publies sont mis en file par le publisher, puis filtres, fusionnes et transmis par une
+   * seule tache a la fois (drain) sur l'executor.
+   * 
+   * @author pedro.m
+   */
+  private final class SubscriptionImpl implements ReleveSubscription, Runnable
+  {
+    private final ReleveFilter         filter;
+    private final ReleveSubscriber     subscriber;
+    private final int                  maxBatchSize;
+    private final Queue<List<Releve>>  incoming = new ConcurrentLinkedQueue<List<Releve>>();
+    private final Map<String, Releve>  pending  = new LinkedHashMap<String, Releve>();
+    private final AtomicLong           demand   = new AtomicLong();
+    private final AtomicInteger        wip      = new AtomicInteger();
+    private volatile boolean           cancelled;
+    private volatile boolean           done;
+    private volatile Throwable         error;
+    private boolean                    subscribed;
+
+    /**
+     * 
+     * @param filter
+     * @param subscriber
+     * @param maxBatchSize
+     */
+    SubscriptionImpl(final ReleveFilter filter, final ReleveSubscriber subscriber, final int maxBatchSize)
+    {
+      this.filter = filter;
+      this.subscriber = subscriber;
+      this.maxBatchSize = maxBatchSize;
+    }
+
+    @Override
+    public void request(final long n)
+    {
+      if (n <= 0)
+      {
+        error = new IllegalArgumentException("Invalid request (" + n + ")");
+      }
+      else
+      {
+        long current;
+        long next;
+        do
+        {
+          current = demand.get();
+          next = (current + n < 0 ? Long.MAX_VALUE : current + n);
+        }
+        while (!demand.compareAndSet(current, next));
+      }
+
+      schedule();
+    }
+
+    @Override
+    public void cancel()
+    {
+      cancelled = true;
+      subscriptions.remove(this);
+      schedule();
+    }
+
+    /**
+     * 
+     * @param releves
+     */
+    void offer(final List<Releve> releves)
+    {
+      if (!cancelled)
+      {
+        incoming.offer(releves);
+        schedule();
+      }
+    }
+
+    /**
+     * Fermeture du publisher.
+     */
+    void complete()
+    {
+      done = true;
+      schedule();
+    }
+
+    /**
+     * Lancement du drain s'il n'est pas deja en cours (sinon il refera un tour).
+     */
+    void schedule()
+    {
+      if (wip.getAndIncrement() == 0)
+      {
+        try
+        {
+          getExecutor().execute(this);
+        }
+        catch (final RejectedExecutionException ree)
+        {
+          reject(ree);
+        }
+      }
+    }
+
+    /**
+     * Drain refuse par l'executor (ex : executor arrete) : l'abonnement echoue depuis le thread appelant, sinon wip
+     * resterait positif (plus aucun drain lance) et les releves publies s'accumuleraient sans limite.
+     * 
+     * @param ree
+     */
+    private void reject(final RejectedExecutionException ree)
+    {
+      if (cancelled)
+      {
+        incoming.clear();
+        pending.clear();
+      }
+      else
+      {
+        if (!subscribed)
+        {
+          subscribed = true;
+          try
+          {
+            subscriber.onSubscribe(this);
+          }
+          catch (final Throwable th)
+          {
+            System.err.println("Error subscribing releve subscription (" + th.getMessage() + ")");
+          }
+        }
+        fail(ree);
+      }
+
+      wip.set(0);
+    }
+
+    @Override
+    public void run()
+    {
+      int missed = 1;
+      while (missed != 0)
+      {
+        drain();
+        missed = wip.addAndGet(-missed);
+      }
+    }
+
+    /**
+     * 
+     */
+    private void drain()
+    {
+      // Abonnement
+      if (!subscribed)
+      {
+        subscribed = true;
+        try
+        {
+          subscriber.onSubscribe(this);
+        }
+        catch (final Throwable th)
+        {
+          fail(th);
+          return;
+        }
+      }
+
+      // Resilie
+      if (cancelled)
+      {
+        incoming.clear();
+        pending.clear();
+        return;
+      }
+
+      // Demande invalide
+      if (error != null)
+      {
+        fail(error);
+        return;
+      }
+
+      try
+      {
+        // Nouveaux releves : filtrage et fusion
+        List<Releve> releves = incoming.poll();
+        while (releves != null)
+        {
+          for (final Releve releve : releves)
+          {
+            if (filter.accept(provider, releve))
+            {
+              pending.remove(releve.id);
+              pending.put(releve.id, releve);
+            }
+          }
+          releves = incoming.poll();
+        }
+
+        // Transmission selon la demande
+        while (!pending.isEmpty() && !cancelled && (demand.get() > 0))
+        {
+          if (demand.get() != Long.MAX_VALUE)
+          {
+            demand.decrementAndGet();
+          }
+          subscriber.onNext(nextBatch());
+        }
+      }
+      catch (final Throwable th)
+      {
+        fail(th);
+        return;
+      }
+
+      // Fin (les releves en attente sans demande sont abandonnes)
+      if (done && !cancelled)
+      {
+        cancelled = true;
+        pending.clear();
+        try
+        {
+          subscriber.onComplete();
+        }
+        catch (final Throwable th)
+        {
+          System.err.println("Error completing releve subscription (" + th.getMessage() + ")");
+        }
+      }
+    }
+
+    /**
+     * 
+     * @return les plus anciens releves en attente (au plus maxBatchSize)
+     */
+    private List<Releve> nextBatch()
+    {
+      final List<Releve> batch = new ArrayList<Releve>(Math.min(pending.size(), maxBatchSize));
+      final Iterator<Releve> iterator = pending.values().iterator();
+      while (iterator.hasNext() && (batch.size() < maxBatchSize))
+      {
+        batch.add(iterator.next());
+        iterator.remove();
+      }
+
+      return Collections.unmodifiableList(batch);
+    }
+
+    /**
+     * 
+     * @param th
+     */
+    private void fail(final Throwable th)
+    {
+      cancelled = true;
+      subscriptions.remove(this);
+      incoming.clear();
+      pending.clear();
+      try
+      {
+        subscriber.onError(th);
+      }
+      catch (final Throwable th2)
+      {
+        System.err.println("Error notifying releve subscription (" + th2.getMessage() + ")");
+      }
+    }
+  }
+
+  /**
+   * 
+   * @param provider le provider des releves (passe aux filtres)
+   * @param executor l'executor des notifications, null pour l'executor partage par defaut
+   */
+  public RelevePublisher(final BaliseProvider provider, final Executor executor)
+  {
+    this.provider = provider;
+    this.executor = executor;
+  }
+
+  /**
+   * 
+   * @return
+   */
+  Executor getExecutor()
+  {
+    return (executor == null ? DefaultExecutor.INSTANCE : executor);
+  }
+
+  /**
+   * 
+   * @param executor l'executor des notifications, null pour l'executor partage par defaut
+   */
+  public void setExecutor(final Executor executor)
+  {
+    this.executor = executor;
+  }
+
+  /**
+   * 
+   * @param filter null pour tous les releves
+   * @param subscriber
+   * @return
+   */
+  public ReleveSubscription subscribe(final ReleveFilter filter, final ReleveSubscriber subscriber)
+  {
+    return subscribe(filter, subscriber, DEFAULT_MAX_BATCH_SIZE);
+  }
+
+  /**
+   * Abonnement : onSubscribe() est emis par l'executor, puis les releves mis a jour a partir de maintenant selon la
+   * demande de l'abonne.
+   * 
+   * @param filter null pour tous les releves
+   * @param subscriber
+   * @param maxBatchSize nombre maximal de releves par lot
+   * @return
+   */
+  public ReleveSubscription subscribe(final ReleveFilter filter, final ReleveSubscriber subscriber, final int maxBatchSize)
+  {
+    if (maxBatchSize <= 0)
+    {
+      throw new IllegalArgumentException("Invalid batch size (" + maxBatchSize + ")");
+    }
+
+    final SubscriptionImpl subscription = new SubscriptionImpl(filter == null ? ReleveFilters.ALL : filter, subscriber, maxBatchSize);
+    subscriptions.add(subscription);
+    if (closed)
+    {
+      subscriptions.remove(subscription);
+      subscription.complete();
+    }
+    else
+    {
+      subscription.schedule();
+    }
+
+    return subscription;
+  }
+
+  /**
+   * Publication d'un lot de releves mis a jour (thread de mise a jour) : le lot est mis en file de chaque abonnement
+   * depuis le thread appelant, le drain de chaque abonnement n'etant lance que s'il n'est pas deja en cours.
+   * 
+   * @param releves
+   */
+  void publish(final List<Releve> releves)
+  {
+    if (releves.isEmpty() || subscriptions.isEmpty())
+    {
+      return;
+    }
+
+    final List<Releve> batch = Collections.unmodifiableList(releves);
+    for (final SubscriptionImpl subscription : subscriptions)
+    {
+      subscription.offer(batch);
+    }
+  }
+
+  /**
+   * 
+   * @return le nombre d'abonnements en cours
+   */
+  public int getSubscriptionCount()
+  {
+    return subscriptions.size();
+  }
+
+  /**
+   * Fermeture : onComplete() est emis a tous les abonnes, les abonnements suivants sont termines immediatement.
+   */
+  public void close()
+  {
+    closed = true;
+    for (final SubscriptionImpl subscription : subscriptions)
+    {
+      subscriptions.remove(subscription);
+      subscription.complete();
+    }
+  }
+}
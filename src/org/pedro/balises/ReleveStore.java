@@ -0,0 +1,781 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Stockage en colonnes des releves : chaque champ d'un {@link Releve} est conserve dans une colonne de primitifs (sur le
+ * tas ou hors du tas), indexee par un index dense de station.<br/>
+ * Les parcours d'une colonne (ex : toutes les stations avec ventMaxi > X) ne touchent ainsi aucun objet.<br/>
+ * Un seul thread de mise a jour, lectures concurrentes sans verrou : colonnes, identifiants et index des stations
+ * forment un etat publie par une ecriture volatile, remplace a l'agrandissement, par clear() et par replaceAll(). Une
+ * station deja presente est mise a jour en place sous un compteur de version par station (impair pendant l'ecriture) :
+ * copyTo(), getReleve() et getReleves() relisent une station modifiee pendant leur lecture, et ne renvoient donc
+ * jamais un releve a moitie mis a jour.
+ * 
+ * @author pedro.m
+ */
+public final class ReleveStore
+{
+  // Colonnes double
+  public static final int            VENT_MOYEN            = 0;
+  public static final int            VENT_MOYEN_TENDANCE   = 1;
+  public static final int            VENT_MINI             = 2;
+  public static final int            VENT_MINI_TENDANCE    = 3;
+  public static final int            VENT_MAXI             = 4;
+  public static final int            VENT_MAXI_TENDANCE    = 5;
+  public static final int            TEMPERATURE           = 6;
+  public static final int            POINT_ROSEE           = 7;
+  public static final int            HYDROMETRIE           = 8;
+  public static final int            PRESSION              = 9;
+  private static final int           NB_DOUBLES            = 10;
+
+  // Colonnes int
+  public static final int            DIRECTION_MOYENNE     = 0;
+  public static final int            DIRECTION_INSTANTANEE = 1;
+  public static final int            DIRECTION_VARIATION1  = 2;
+  public static final int            DIRECTION_VARIATION2  = 3;
+  public static final int            PLUIE                 = 4;
+  public static final int            NUAGES                = 5;
+  public static final int            PLAFOND_NUAGES        = 6;
+  public static final int            NUAGES_BOURGEONNANTS  = 7;
+  public static final int            HUMIDITE              = 8;
+  public static final int            LUMINOSITE            = 9;
+  private static final int           NB_INTS               = 10;
+
+  // Colonnes long (dates, CompactReleve.DATE_NULL si absente)
+  public static final int            DATE                  = 0;
+  public static final int            DATE_RELEVE_PRECEDENT = 1;
+  public static final int            DATE_HEURE_VENT_MAXI  = 2;
+  private static final int           NB_LONGS              = 3;
+
+  private static final int           DEFAULT_CAPACITY      = 64;
+
+  private final boolean              offHeap;
+  private volatile Columns           columns;
+
+  /**
+   * Etat publie du stock (colonnes, identifiants et index des stations) : un lecteur travaille sur un meme etat du
+   * debut a la fin de sa lecture. Seules les stations deja presentes y sont modifiees en place, sous leur compteur de
+   * version.
+   */
+  private final class Columns
+  {
+    final int                  capacity;
+    final String[]             ids;
+    final DoubleBuffer[]       doubles = new DoubleBuffer[NB_DOUBLES];
+    final IntBuffer[]          ints    = new IntBuffer[NB_INTS];
+    final LongBuffer[]         longs   = new LongBuffer[NB_LONGS];
+    final AtomicIntegerArray   versions;
+    final Map<String, Integer> indexes = new ConcurrentHashMap<String, Integer>();
+    volatile int               size;
+
+    /**
+     * 
+     * @param capacity
+     */
+    Columns(final int capacity)
+    {
+      this.capacity = capacity;
+      this.ids = new String[capacity];
+      this.versions = new AtomicIntegerArray(capacity);
+      for (int i = 0; i < NB_DOUBLES; i++)
+      {
+        doubles[i] = allocateDoubles(capacity);
+      }
+      for (int i = 0; i < NB_INTS; i++)
+      {
+        ints[i] = allocateInts(capacity);
+      }
+      for (int i = 0; i < NB_LONGS; i++)
+      {
+        longs[i] = allocateLongs(capacity);
+      }
+    }
+
+    /**
+     * 
+     * @param index
+     */
+    void checkIndex(final int index)
+    {
+      final int current = size;
+      if ((index < 0) || (index >= current))
+      {
+        throw new IndexOutOfBoundsException(index + " (size " + current + ")");
+      }
+    }
+  }
+
+  /**
+   * Vue "poids mouche" sur une station du stock : aucune copie, les valeurs sont lues dans les colonnes (une a une :
+   * {@link #copyTo(Releve)} pour une station coherente pendant une mise a jour).
+   */
+  public final class View
+  {
+    private Columns state;
+    private int     index = -1;
+
+    /**
+     * 
+     */
+    View()
+    {
+      super();
+    }
+
+    /**
+     * 
+     * @param inIndex
+     * @return
+     */
+    public View moveTo(final int inIndex)
+    {
+      final Columns current = columns;
+      current.checkIndex(inIndex);
+      this.state = current;
+      this.index = inIndex;
+      return this;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public int getIndex()
+    {
+      return index;
+    }
+
+    /**
+     * 
+     * @return
+     */
+    public String getId()
+    {
+      return state.ids[index];
+    }
+
+    /**
+     * 
+     * @param field
+     * @return
+     */
+    public double getDouble(final int field)
+    {
+      return state.doubles[field].get(index);
+    }
+
+    /**
+     * 
+     * @param field
+     * @return
+     */
+    public int getInt(final int field)
+    {
+      return state.ints[field].get(index);
+    }
+
+    /**
+     * 
+     * @param field
+     * @return
+     */
+    public long getLong(final int field)
+    {
+      return state.longs[field].get(index);
+    }
+
+    /**
+     * 
+     * @param releve
+     */
+    public void copyTo(final Releve releve)
+    {
+      read(state, index, releve);
+    }
+  }
+
+  /**
+   * 
+   * @param initialCapacity
+   * @param offHeap true pour des colonnes hors du tas (ByteBuffer directs)
+   */
+  public ReleveStore(final int initialCapacity, final boolean offHeap)
+  {
+    this.offHeap = offHeap;
+    this.columns = new Columns(Math.max(initialCapacity, DEFAULT_CAPACITY));
+  }
+
+  /**
+   * 
+   * @param count
+   * @param bytes
+   * @return
+   */
+  private ByteBuffer allocate(final int count, final int bytes)
+  {
+    return (offHeap ? ByteBuffer.allocateDirect(count * bytes).order(ByteOrder.nativeOrder()) : ByteBuffer.allocate(count * bytes));
+  }
+
+  /**
+   * 
+   * @param count
+   * @return
+   */
+  private DoubleBuffer allocateDoubles(final int count)
+  {
+    return (offHeap ? allocate(count, 8).asDoubleBuffer() : DoubleBuffer.allocate(count));
+  }
+
+  /**
+   * 
+   * @param count
+   * @return
+   */
+  private IntBuffer allocateInts(final int count)
+  {
+    return (offHeap ? allocate(count, 4).asIntBuffer() : IntBuffer.allocate(count));
+  }
+
+  /**
+   * 
+   * @param count
+   * @return
+   */
+  private LongBuffer allocateLongs(final int count)
+  {
+    return (offHeap ? allocate(count, 8).asLongBuffer() : LongBuffer.allocate(count));
+  }
+
+  /**
+   * Agrandissement : les colonnes sont copiees dans un nouvel etat, publie avant l'ajout de la station suivante (les
+   * lecteurs de l'ancien etat y lisent des valeurs qui ne changent plus).
+   * 
+   * @param current
+   * @return le nouvel etat
+   */
+  private Columns grow(final Columns current)
+  {
+    final Columns grown = new Columns(current.capacity << 1);
+    final int size = current.size;
+
+    System.arraycopy(current.ids, 0, grown.ids, 0, size);
+    for (int i = 0; i < NB_DOUBLES; i++)
+    {
+      for (int j = 0; j < size; j++)
+      {
+        grown.doubles[i].put(j, current.doubles[i].get(j));
+      }
+    }
+    for (int i = 0; i < NB_INTS; i++)
+    {
+      for (int j = 0; j < size; j++)
+      {
+        grown.ints[i].put(j, current.ints[i].get(j));
+      }
+    }
+    for (int i = 0; i < NB_LONGS; i++)
+    {
+      for (int j = 0; j < size; j++)
+      {
+        grown.longs[i].put(j, current.longs[i].get(j));
+      }
+    }
+    grown.indexes.putAll(current.indexes);
+    grown.size = size;
+
+    columns = grown;
+    return grown;
+  }
+
+  /**
+   * 
+   * @return
+   */
+  public boolean isOffHeap()
+  {
+    return offHeap;
+  }
+
+  /**
+   * 
+   * @return le nombre de stations
+   */
+  public int size()
+  {
+    return columns.size;
+  }
+
+  /**
+   * Vidage : un nouvel etat vide est publie (les lectures en cours se terminent sur l'ancien).
+   */
+  public void clear()
+  {
+    columns = new Columns(columns.capacity);
+  }
+
+  /**
+   * Remplacement de toutes les stations : le nouvel etat est rempli a part puis publie d'un bloc (les lecteurs ne
+   * voient jamais un stock vide ou partiel).
+   * 
+   * @param releves
+   */
+  public void replaceAll(final Collection<? extends Releve> releves)
+  {
+    final Columns replaced = new Columns(Math.max(columns.capacity, releves.size()));
+    for (final Releve releve : releves)
+    {
+      final Integer index = replaced.indexes.get(releve.id);
+      if (index == null)
+      {
+        append(replaced, releve);
+      }
+      else
+      {
+        write(replaced, index.intValue(), releve);
+      }
+    }
+
+    columns = replaced;
+  }
+
+  /**
+   * 
+   * @param id
+   * @return l'index de la station, -1 si absente (valable jusqu'au prochain clear() ou replaceAll())
+   */
+  public int indexOf(final String id)
+  {
+    final Integer index = columns.indexes.get(id);
+    return (index == null ? -1 : index.intValue());
+  }
+
+  /**
+   * 
+   * @param index
+   * @return
+   */
+  public String getId(final int index)
+  {
+    final Columns current = columns;
+    current.checkIndex(index);
+    return current.ids[index];
+  }
+
+  /**
+   * 
+   * @param date
+   * @return
+   */
+  private static long toMillis(final Date date)
+  {
+    return (date == null ? CompactReleve.DATE_NULL : date.getTime());
+  }
+
+  /**
+   * 
+   * @param millis
+   * @return
+   */
+  private static Date toDate(final long millis)
+  {
+    return (millis == CompactReleve.DATE_NULL ? null : new Date(millis));
+  }
+
+  /**
+   * Ajout ou mise a jour d'une station (par le seul thread de mise a jour).
+   * 
+   * @param releve
+   * @return l'index de la station
+   */
+  public int put(final Releve releve)
+  {
+    Columns current = columns;
+
+    // Mise a jour en place : version impaire pendant l'ecriture
+    final Integer index = current.indexes.get(releve.id);
+    if (index != null)
+    {
+      current.versions.incrementAndGet(index.intValue());
+      write(current, index.intValue(), releve);
+      current.versions.incrementAndGet(index.intValue());
+      return index.intValue();
+    }
+
+    // Nouvelle station
+    if (current.size == current.capacity)
+    {
+      current = grow(current);
+    }
+    return append(current, releve);
+  }
+
+  /**
+   * 
+   * @param releves
+   */
+  public void putAll(final Collection<? extends Releve> releves)
+  {
+    for (final Releve releve : releves)
+    {
+      put(releve);
+    }
+  }
+
+  /**
+   * Ajout d'une station : ecrite avant d'etre visible (par la taille, puis par l'index des stations).
+   * 
+   * @param target
+   * @param releve
+   * @return l'index de la station
+   */
+  private int append(final Columns target, final Releve releve)
+  {
+    final int index = target.size;
+    write(target, index, releve);
+    target.ids[index] = releve.id;
+    target.size = index + 1;
+    target.indexes.put(releve.id, Integer.valueOf(index));
+
+    return index;
+  }
+
+  /**
+   * 
+   * @param target
+   * @param index
+   * @param releve
+   */
+  private static void write(final Columns target, final int index, final Releve releve)
+  {
+    target.doubles[VENT_MOYEN].put(index, releve.ventMoyen);
+    target.doubles[VENT_MOYEN_TENDANCE].put(index, releve.ventMoyenTendance);
+    target.doubles[VENT_MINI].put(index, releve.ventMini);
+    target.doubles[VENT_MINI_TENDANCE].put(index, releve.ventMiniTendance);
+    target.doubles[VENT_MAXI].put(index, releve.ventMaxi);
+    target.doubles[VENT_MAXI_TENDANCE].put(index, releve.ventMaxiTendance);
+    target.doubles[TEMPERATURE].put(index, releve.temperature);
+    target.doubles[POINT_ROSEE].put(index, releve.pointRosee);
+    target.doubles[HYDROMETRIE].put(index, releve.hydrometrie);
+    target.doubles[PRESSION].put(index, releve.pression);
+
+    target.ints[DIRECTION_MOYENNE].put(index, releve.directionMoyenne);
+    target.ints[DIRECTION_INSTANTANEE].put(index, releve.directionInstantanee);
+    target.ints[DIRECTION_VARIATION1].put(index, releve.directionVentVariation1);
+    target.ints[DIRECTION_VARIATION2].put(index, releve.directionVentVariation2);
+    target.ints[PLUIE].put(index, releve.pluie);
+    target.ints[NUAGES].put(index, releve.nuages);
+    target.ints[PLAFOND_NUAGES].put(index, releve.plafondNuages);
+    target.ints[NUAGES_BOURGEONNANTS].put(index, releve.nuagesBourgeonnants);
+    target.ints[HUMIDITE].put(index, releve.humidite);
+    target.ints[LUMINOSITE].put(index, CompactReleve.encodeLuminosite(releve.luminosite));
+
+    target.longs[DATE].put(index, toMillis(releve.date));
+    target.longs[DATE_RELEVE_PRECEDENT].put(index, toMillis(releve.dateRelevePrecedent));
+    target.longs[DATE_HEURE_VENT_MAXI].put(index, toMillis(releve.dateHeureVentMaxi));
+  }
+
+  /**
+   * 
+   * @param index
+   * @param releve
+   */
+  public void copyTo(final int index, final Releve releve)
+  {
+    final Columns current = columns;
+    current.checkIndex(index);
+    read(current, index, releve);
+  }
+
+  /**
+   * Lecture coherente d'une station, sans verrou : relue tant qu'une mise a jour en place l'a modifiee pendant la
+   * lecture. La version est revalidee par compareAndSet() et non par une simple lecture volatile, qui n'empecherait pas
+   * les lectures des colonnes d'etre reordonnees apres elle.
+   * 
+   * @param source
+   * @param index
+   * @param releve
+   */
+  private static void read(final Columns source, final int index, final Releve releve)
+  {
+    for (;;)
+    {
+      final int version = source.versions.get(index);
+      if ((version & 1) == 0)
+      {
+        releve.setId(source.ids[index]);
+        releve.ventMoyen = source.doubles[VENT_MOYEN].get(index);
+        releve.ventMoyenTendance = source.doubles[VENT_MOYEN_TENDANCE].get(index);
+        releve.ventMini = source.doubles[VENT_MINI].get(index);
+        releve.ventMiniTendance = source.doubles[VENT_MINI_TENDANCE].get(index);
+        releve.ventMaxi = source.doubles[VENT_MAXI].get(index);
+        releve.ventMaxiTendance = source.doubles[VENT_MAXI_TENDANCE].get(index);
+        releve.temperature = source.doubles[TEMPERATURE].get(index);
+        releve.pointRosee = source.doubles[POINT_ROSEE].get(index);
+        releve.hydrometrie = source.doubles[HYDROMETRIE].get(index);
+        releve.pression = source.doubles[PRESSION].get(index);
+
+        releve.directionMoyenne = source.ints[DIRECTION_MOYENNE].get(index);
+        releve.directionInstantanee = source.ints[DIRECTION_INSTANTANEE].get(index);
+        releve.directionVentVariation1 = source.ints[DIRECTION_VARIATION1].get(index);
+        releve.directionVentVariation2 = source.ints[DIRECTION_VARIATION2].get(index);
+        releve.pluie = source.ints[PLUIE].get(index);
+        releve.nuages = source.ints[NUAGES].get(index);
+        releve.plafondNuages = source.ints[PLAFOND_NUAGES].get(index);
+        releve.nuagesBourgeonnants = source.ints[NUAGES_BOURGEONNANTS].get(index);
+        releve.humidite = source.ints[HUMIDITE].get(index);
+        final int luminosite = source.ints[LUMINOSITE].get(index);
+
+        final long date = source.longs[DATE].get(index);
+        final long dateRelevePrecedent = source.longs[DATE_RELEVE_PRECEDENT].get(index);
+        final long dateHeureVentMaxi = source.longs[DATE_HEURE_VENT_MAXI].get(index);
+
+        if (source.versions.compareAndSet(index, version, version))
+        {
+          // Decodage une fois la lecture validee
+          releve.luminosite = CompactReleve.decodeLuminosite(luminosite);
+          releve.date = toDate(date);
+          releve.dateRelevePrecedent = toDate(dateRelevePrecedent);
+          releve.dateHeureVentMaxi = toDate(dateHeureVentMaxi);
+          return;
+        }
+      }
+
+      Thread.yield();
+    }
+  }
+
+  /**
+   * 
+   * @param field
+   * @param index
+   * @return
+   */
+  public double getDouble(final int field, final int index)
+  {
+    final Columns current = columns;
+    current.checkIndex(index);
+    return current.doubles[field].get(index);
+  }
+
+  /**
+   * 
+   * @param field
+   * @param index
+   * @return
+   */
+  public int getInt(final int field, final int index)
+  {
+    final Columns current = columns;
+    current.checkIndex(index);
+    return current.ints[field].get(index);
+  }
+
+  /**
+   * 
+   * @param field
+   * @param index
+   * @return
+   */
+  public long getLong(final int field, final int index)
+  {
+    final Columns current = columns;
+    current.checkIndex(index);
+    return current.longs[field].get(index);
+  }
+
+  /**
+   * 
+   * @return une nouvelle vue (a repositionner par {@link View#moveTo(int)})
+   */
+  public View newView()
+  {
+    return new View();
+  }
+
+  /**
+   * Recherche des stations dont la valeur est strictement superieure au seuil (les valeurs absentes, NaN, sont ignorees).
+   * 
+   * @param field colonne double
+   * @param threshold
+   * @param result tableau recevant les index (taille >= size())
+   * @return le nombre d'index trouves
+   */
+  public int findGreaterThan(final int field, final double threshold, final int[] result)
+  {
+    final Columns current = columns;
+    final DoubleBuffer column = current.doubles[field];
+    final int size = Math.min(current.size, result.length);
+    int count = 0;
+    for (int i = 0; i < size; i++)
+    {
+      if (column.get(i) > threshold)
+      {
+        result[count++] = i;
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   * Recherche des stations dont la valeur est comprise entre min et max (inclus).
+   * 
+   * @param field colonne double
+   * @param min
+   * @param max
+   * @param result tableau recevant les index (taille >= size())
+   * @return le nombre d'index trouves
+   */
+  public int findBetween(final int field, final double min, final double max, final int[] result)
+  {
+    final Columns current = columns;
+    final DoubleBuffer column = current.doubles[field];
+    final int size = Math.min(current.size, result.length);
+    int count = 0;
+    for (int i = 0; i < size; i++)
+    {
+      final double value = column.get(i);
+      if ((value >= min) && (value <= max))
+      {
+        result[count++] = i;
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   * Recherche des stations dont le releve est posterieur a la date donnee.
+   * 
+   * @param millis
+   * @param result tableau recevant les index (taille >= size())
+   * @return le nombre d'index trouves
+   */
+  public int findUpdatedSince(final long millis, final int[] result)
+  {
+    final Columns current = columns;
+    final LongBuffer column = current.longs[DATE];
+    final int size = Math.min(current.size, result.length);
+    int count = 0;
+    for (int i = 0; i < size; i++)
+    {
+      if (column.get(i) > millis)
+      {
+        result[count++] = i;
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   * Collection des releves du stock : chaque element est un nouveau Releve (cree par factory.newReleve()). Un parcours
+   * lit l'etat publie a sa creation, et les stations presentes a ce moment.
+   * 
+   * @param factory
+   * @return
+   */
+  public Collection<Releve> getReleves(final BaliseProvider factory)
+  {
+    return new AbstractCollection<Releve>()
+    {
+      @Override
+      public Iterator<Releve> iterator()
+      {
+        final Columns state = columns;
+        final int size = state.size;
+        return new Iterator<Releve>()
+        {
+          private int next = 0;
+
+          @Override
+          public boolean hasNext()
+          {
+            return next < size;
+          }
+
+          @Override
+          public Releve next()
+          {
+            if (next >= size)
+            {
+              throw new NoSuchElementException();
+            }
+
+            final Releve releve = factory.newReleve();
+            read(state, next++, releve);
+            return releve;
+          }
+
+          @Override
+          public void remove()
+          {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+
+      @Override
+      public int size()
+      {
+        return columns.size;
+      }
+    };
+  }
+
+  /**
+   * 
+   * @param id
+   * @param factory
+   * @return un nouveau Releve pour la station, null si absente
+   */
+  public Releve getReleve(final String id, final BaliseProvider factory)
+  {
+    final Columns current = columns;
+    final Integer index = current.indexes.get(id);
+    if (index == null)
+    {
+      return null;
+    }
+
+    final Releve releve = factory.newReleve();
+    read(current, index.intValue(), releve);
+    return releve;
+  }
+}
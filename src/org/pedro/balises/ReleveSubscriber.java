@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises;
+
+import java.util.List;
+
+/**
+ * Abonne aux releves mis a jour d'un provider ({@link RelevePublisher}), sur le modele des Subscriber de Reactive
+ * Streams : rien n'est transmis sans demande ({@link ReleveSubscription#request(long)}), chaque demande unitaire
+ * correspondant a un lot de releves.<br/>
+ * Les notifications sont emises par l'executor du publisher, jamais par le thread d'analyse, et jamais simultanement
+ * pour un meme abonnement.
+ * 
+ * @author pedro.m
+ */
+public interface ReleveSubscriber
+{
+  /**
+   * 
+   * @param subscription
+   */
+  public void onSubscribe(final ReleveSubscription subscription);
+
+  /**
+   * 
+   * @param releves lot de releves mis a jour (derniere version de chacun, dans l'ordre des modifications)
+   */
+  public void onNext(final List<Releve> releves);
+
+  /**
+   * Fin de l'abonnement sur erreur (demande invalide, exception levee par onNext()).<br/>
+   * Si l'executor du publisher refuse la tache (RejectedExecutionException), cette notification est emise par le
+   * thread appelant.
+   * 
+   * @param throwable
+   */
+  public void onError(final Throwable throwable);
+
+  /**
+   * Fin de l'abonnement (fermeture du publisher).
+   */
+  public void onComplete();
+}
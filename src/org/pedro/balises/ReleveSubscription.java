@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises;
+
+/**
+ * Abonnement d'un {@link ReleveSubscriber}.
+ * 
+ * @author pedro.m
+ */
+public interface ReleveSubscription
+{
+  /**
+   * Demande de lots supplementaires.
+   * 
+   * @param n nombre de lots (> 0), Long.MAX_VALUE pour une demande illimitee
+   */
+  public void request(final long n);
+
+  /**
+   * Resiliation : plus aucune notification apres les eventuelles notifications en cours.
+   */
+  public void cancel();
+}
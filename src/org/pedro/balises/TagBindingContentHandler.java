@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+
+/**
+ * ContentHandler SAX generique : accumule le contenu texte des balises et delegue chaque ouverture/fermeture de balise
+ * au traitement enregistre dans une {@link TagBindings}.
+ * 
+ * @author pedro.m
+ */
+public abstract class TagBindingContentHandler<T> implements ContentHandler
+{
+  // Membres
+  protected final CharAccumulator currentString = new CharAccumulator();
+  private final TagBindings<T>    bindings;
+  private final boolean           logErrors;
+
+  /**
+   * 
+   * @param bindings
+   * @param logErrors true pour journaliser (et ignorer) les erreurs d'analyse des valeurs, false pour les propager
+   */
+  protected TagBindingContentHandler(final TagBindings<T> bindings, final boolean logErrors)
+  {
+    this.bindings = bindings;
+    this.logErrors = logErrors;
+  }
+
+  /**
+   * 
+   * @return la cible des traitements
+   */
+  protected abstract T getTarget();
+
+  /**
+   * 
+   * @param localName
+   * @param qName
+   * @return
+   */
+  private static String getFinalName(final String localName, final String qName)
+  {
+    return ((qName == null) || (qName.length() == 0) ? localName : qName);
+  }
+
+  @Override
+  public void characters(final char[] ch, final int start, final int length) throws SAXException
+  {
+    currentString.append(ch, start, length);
+  }
+
+  @Override
+  public void endElement(final String uri, final String localName, final String qName) throws SAXException
+  {
+    final String finalName = getFinalName(localName, qName);
+    final TagBindings.Binding<T> binding = bindings.get(finalName);
+    if (binding != null)
+    {
+      if (logErrors)
+      {
+        try
+        {
+          binding.end(getTarget(), currentString);
+        }
+        catch (final Throwable th)
+        {
+          System.err.println("Error parsing '" + currentString + "' for <" + finalName + "> (" + th.getClass().getSimpleName() + ")");
+          //th.printStackTrace(System.err);
+        }
+      }
+      else
+      {
+        try
+        {
+          binding.end(getTarget(), currentString);
+        }
+        catch (final RuntimeException re)
+        {
+          throw re;
+        }
+        catch (final Exception e)
+        {
+          throw new SAXException(e);
+        }
+      }
+    }
+
+    // RAZ
+    currentString.reset();
+  }
+
+  @Override
+  public void startDocument() throws SAXException
+  {
+    currentString.reset();
+  }
+
+  @Override
+  public void startElement(final String uri, final String localName, final String qName, final Attributes atts) throws SAXException
+  {
+    final TagBindings.Binding<T> binding = bindings.get(getFinalName(localName, qName));
+    if (binding != null)
+    {
+      try
+      {
+        binding.start(getTarget(), atts);
+      }
+      catch (final RuntimeException re)
+      {
+        throw re;
+      }
+      catch (final Exception e)
+      {
+        throw new SAXException(e);
+      }
+    }
+
+    // RAZ
+    currentString.reset();
+  }
+
+  @Override
+  public void startPrefixMapping(final String arg0, final String arg1) throws SAXException
+  {
+    // Nothing to do
+  }
+
+  @Override
+  public void endDocument() throws SAXException
+  {
+    // Nothing to do
+  }
+
+  @Override
+  public void endPrefixMapping(final String arg0) throws SAXException
+  {
+    // Nothing to do
+  }
+
+  @Override
+  public void ignorableWhitespace(final char[] ch, final int start, final int length) throws SAXException
+  {
+    // Nothing to do
+  }
+
+  @Override
+  public void processingInstruction(final String arg0, final String arg1) throws SAXException
+  {
+    // Nothing to do
+  }
+
+  @Override
+  public void setDocumentLocator(final Locator arg0)
+  {
+    // Nothing to do
+  }
+
+  @Override
+  public void skippedEntity(final String arg0) throws SAXException
+  {
+    // Nothing to do
+  }
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xml.sax.Attributes;
+
+/**
+ * Association declarative nom de balise XML -> traitement (ex : affectation d'un champ), enregistree une fois pour toutes
+ * par chaque provider.<br/>
+ * La resolution d'un nom de balise passe par une {@link TagTable} : son cout ne depend pas du nombre de balises
+ * enregistrees.
+ * 
+ * @author pedro.m
+ */
+public final class TagBindings<T>
+{
+  private final List<String>     tags     = new ArrayList<String>();
+  private final List<Binding<T>> bindings = new ArrayList<Binding<T>>();
+  private TagTable               table    = new TagTable();
+  private Binding<T>[]           byCode;
+
+  /**
+   * Traitement d'une balise.
+   * 
+   * @author pedro.m
+   */
+  public abstract static class Binding<T>
+  {
+    /**
+     * Ouverture de la balise.
+     * 
+     * @param target
+     * @param atts
+     * @throws Exception
+     */
+    public void start(final T target, final Attributes atts) throws Exception
+    {
+      // Nothing
+    }
+
+    /**
+     * Fermeture de la balise.
+     * 
+     * @param target
+     * @param text le contenu texte de la balise
+     * @throws Exception
+     */
+    public void end(final T target, final CharAccumulator text) throws Exception
+    {
+      // Nothing
+    }
+  }
+
+  /**
+   * Enregistrement du traitement d'une balise (a l'initialisation uniquement : la table est reconstruite a chaque appel).
+   * 
+   * @param tag
+   * @param binding
+   * @return this
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  public TagBindings<T> bind(final String tag, final Binding<T> binding)
+  {
+    // Ajout
+    tags.add(tag);
+    bindings.add(binding);
+
+    // Reconstruction
+    table = new TagTable(tags.toArray(new String[tags.size()]));
+    byCode = bindings.toArray(new Binding[bindings.size()]);
+
+    return this;
+  }
+
+  /**
+   * 
+   * @param name
+   * @return le traitement de la balise, null si elle n'est pas enregistree
+   */
+  public Binding<T> get(final CharSequence name)
+  {
+    final int code = table.get(name);
+    return (code == TagTable.UNKNOWN ? null : byCode[code]);
+  }
+}
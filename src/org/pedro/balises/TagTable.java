@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises;
+
+/**
+ * Table de hachage parfait (sans collision) d'un ensemble fixe de noms de balises XML vers leur code (index dans la
+ * liste donnee a la construction).<br/>
+ * La graine du hachage est cherchee a la construction : une recherche coute ensuite un calcul de hachage et une seule
+ * comparaison.<br/>
+ * La table peut etre insensible a la casse (ex : points cardinaux).
+ * 
+ * @author pedro.m
+ */
+public final class TagTable
+{
+  public static final int  UNKNOWN   = -1;
+
+  private static final int MAX_SEEDS = 10000;
+
+  private final String[]   keys;
+  private final int[]      codes;
+  private final int        mask;
+  private final int        seed;
+  private final boolean    ignoreCase;
+
+  /**
+   * 
+   * @param tags
+   */
+  public TagTable(final String... tags)
+  {
+    this(false, tags);
+  }
+
+  /**
+   * 
+   * @param ignoreCase true pour une table insensible a la casse
+   * @param tags
+   */
+  public TagTable(final boolean ignoreCase, final String... tags)
+  {
+    // Recherche d'une taille et d'une graine sans collision
+    int size = Integer.highestOneBit(Math.max(1, tags.length * 2 - 1)) << 1;
+    int candidate = 1;
+    String[] candidateKeys = tryFill(tags, size, candidate, ignoreCase);
+    while (candidateKeys == null)
+    {
+      candidate++;
+      if (candidate > MAX_SEEDS)
+      {
+        size <<= 1;
+        candidate = 1;
+      }
+      candidateKeys = tryFill(tags, size, candidate, ignoreCase);
+    }
+
+    // Codes
+    keys = candidateKeys;
+    codes = new int[size];
+    mask = size - 1;
+    seed = candidate;
+    this.ignoreCase = ignoreCase;
+    for (int i = 0; i < tags.length; i++)
+    {
+      codes[hash(tags[i], seed, ignoreCase) & mask] = i;
+    }
+  }
+
+  /**
+   * 
+   * @param tags
+   * @param size
+   * @param candidate
+   * @param inIgnoreCase
+   * @return les cles rangees, null en cas de collision
+   */
+  private static String[] tryFill(final String[] tags, final int size, final int candidate, final boolean inIgnoreCase)
+  {
+    final String[] candidateKeys = new String[size];
+    for (final String tag : tags)
+    {
+      final int index = hash(tag, candidate, inIgnoreCase) & (size - 1);
+      if (candidateKeys[index] != null)
+      {
+        if (inIgnoreCase ? candidateKeys[index].equalsIgnoreCase(tag) : candidateKeys[index].equals(tag))
+        {
+          throw new IllegalArgumentException("Duplicate tag (" + tag + ")");
+        }
+        return null;
+      }
+      candidateKeys[index] = tag;
+    }
+
+    return candidateKeys;
+  }
+
+  /**
+   * 
+   * @param name
+   * @param inSeed
+   * @param inIgnoreCase
+   * @return
+   */
+  private static int hash(final CharSequence name, final int inSeed, final boolean inIgnoreCase)
+  {
+    final int length = name.length();
+    int h = length;
+    for (int i = 0; i < length; i++)
+    {
+      h = h * inSeed + (inIgnoreCase ? fold(name.charAt(i)) : name.charAt(i));
+    }
+
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Repliement de casse (identique a celui de String.equalsIgnoreCase()).
+   * 
+   * @param c
+   * @return
+   */
+  private static char fold(final char c)
+  {
+    return Character.toLowerCase(Character.toUpperCase(c));
+  }
+
+  /**
+   * 
+   * @param name
+   * @return le code de la balise, UNKNOWN si elle n'est pas dans la table
+   */
+  public int get(final CharSequence name)
+  {
+    final int index = hash(name, seed, ignoreCase) & mask;
+    final String key = keys[index];
+    if ((key == null) || (key.length() != name.length()))
+    {
+      return UNKNOWN;
+    }
+    if (key != name)
+    {
+      for (int i = key.length() - 1; i >= 0; i--)
+      {
+        final char c = name.charAt(i);
+        if ((key.charAt(i) != c) && (!ignoreCase || (fold(key.charAt(i)) != fold(c))))
+        {
+          return UNKNOWN;
+        }
+      }
+    }
+
+    return codes[index];
+  }
+}
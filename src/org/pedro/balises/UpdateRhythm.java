@@ -0,0 +1,299 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ * 
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ * 
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises;
+
+/**
+ * Estimation du rythme de publication des releves d'un provider, pour programmer la scrutation juste apres l'arrivee
+ * attendue des nouvelles donnees.<br/>
+ * Observations :
+ * <ul>
+ * <li>les intervalles entre deux releves successifs d'une meme balise (date - date precedente),</li>
+ * <li>les dates de publication du flux annoncees par le provider (ex : lastupdate FFVL), prioritaires,</li>
+ * <li>le resultat de chaque requete (nouveaux releves ou non).</li>
+ * </ul>
+ * Un intervalle observe n'est fiable que si une requete sans nouveaute l'a precede : sinon des publications ont pu etre
+ * manquees, et l'estimation est au contraire reduite pour scruter plus tot la fois suivante.<br/>
+ * Toutes les dates sont exprimees dans le meme referentiel que les dates des releves (cf. {@link Utils#toUTC(long)}).
+ * 
+ * @author pedro.m
+ */
+public final class UpdateRhythm
+{
+  public static final long    MIN_DELAY       = 60000;
+
+  private static final long   MIN_INTERVAL    = 60000;
+  private static final long   MAX_INTERVAL    = 6 * 3600000;
+  private static final long   MIN_MARGIN      = 30000;
+  private static final int    LATE_DIVISOR    = 4;
+  private static final double ALPHA           = 0.2;
+  private static final double DECAY           = 0.97;
+
+  // Releves des balises
+  private final Average       dataInterval    = new Average();
+  private long                lastData        = -1;
+  private long                dataGap         = Long.MAX_VALUE;
+  private double              latency         = -1;
+
+  // Publications annoncees
+  private final Average       publishInterval = new Average();
+  private long                lastPublish     = -1;
+  private long                publishGap      = Long.MAX_VALUE;
+
+  // Requetes
+  private boolean             emptyPoll;
+
+  /**
+   * Moyenne mobile exponentielle d'un intervalle et de son ecart moyen.
+   * 
+   * @author pedro.m
+   */
+  private static final class Average
+  {
+    double mean      = -1;
+    double deviation = 0;
+
+    /**
+     * 
+     */
+    Average()
+    {
+      super();
+    }
+
+    /**
+     * 
+     * @param sample
+     * @param reliable false si des publications ont pu etre manquees (l'estimation est alors reduite)
+     */
+    void add(final long sample, final boolean reliable)
+    {
+      // Echantillon aberrant
+      if ((sample < MIN_INTERVAL) || (sample > MAX_INTERVAL))
+      {
+        return;
+      }
+
+      // Premier echantillon
+      if (mean < 0)
+      {
+        mean = sample;
+        return;
+      }
+
+      // Echantillon fiable
+      if (reliable)
+      {
+        deviation += ALPHA * (Math.abs(sample - mean) - deviation);
+        mean += ALPHA * (sample - mean);
+        return;
+      }
+
+      // Publications peut-etre manquees
+      mean = Math.max(MIN_INTERVAL, Math.min(sample, mean) * DECAY);
+    }
+
+    /**
+     * 
+     * @return la marge a prendre apres la date attendue
+     */
+    long getMargin()
+    {
+      return Math.max(MIN_MARGIN, Math.round(2 * deviation));
+    }
+
+    /**
+     * 
+     */
+    void clear()
+    {
+      mean = -1;
+      deviation = 0;
+    }
+  }
+
+  /**
+   * Nouveau releve d'une balise.
+   * 
+   * @param date date du releve
+   * @param previousDate date du releve precedent de la meme balise, -1 si inconnue
+   */
+  public synchronized void observeReleve(final long date, final long previousDate)
+  {
+    if (date > lastData)
+    {
+      lastData = date;
+    }
+    if ((previousDate >= 0) && (date - previousDate >= MIN_INTERVAL))
+    {
+      dataGap = Math.min(dataGap, date - previousDate);
+    }
+  }
+
+  /**
+   * Date de publication du flux annoncee par le provider.
+   * 
+   * @param date
+   */
+  public synchronized void observePublish(final long date)
+  {
+    if (date <= lastPublish)
+    {
+      return;
+    }
+
+    if (lastPublish >= 0)
+    {
+      publishGap = date - lastPublish;
+    }
+    lastPublish = date;
+  }
+
+  /**
+   * Fin d'une requete : prise en compte des observations faites depuis la precedente.
+   * 
+   * @param now date de la requete (meme referentiel que les releves)
+   * @param newReleves true si la requete a ramene de nouveaux releves
+   */
+  public synchronized void observePoll(final long now, final boolean newReleves)
+  {
+    // Aucune nouveaute
+    if (!newReleves)
+    {
+      emptyPoll = true;
+      return;
+    }
+
+    // Intervalles
+    if (dataGap != Long.MAX_VALUE)
+    {
+      dataInterval.add(dataGap, emptyPoll);
+    }
+    if (publishGap != Long.MAX_VALUE)
+    {
+      publishInterval.add(publishGap, emptyPoll);
+    }
+
+    // Delai de mise a disposition : fiable si encadre par une requete sans nouveaute, sinon reduit
+    if (lastData >= 0)
+    {
+      final long sample = Math.max(0, now - lastData);
+      if (latency < 0)
+      {
+        latency = sample;
+      }
+      else if (emptyPoll)
+      {
+        latency += ALPHA * (sample - latency);
+      }
+      else
+      {
+        latency = Math.min(sample, latency) * DECAY;
+      }
+    }
+
+    // RAZ
+    dataGap = Long.MAX_VALUE;
+    publishGap = Long.MAX_VALUE;
+    emptyPoll = false;
+  }
+
+  /**
+   * 
+   * @param defaultInterval
+   * @return l'intervalle de publication estime, defaultInterval si aucune observation
+   */
+  public synchronized long getExpectedInterval(final long defaultInterval)
+  {
+    if (publishInterval.mean > 0)
+    {
+      return Math.round(publishInterval.mean);
+    }
+    if (dataInterval.mean > 0)
+    {
+      return Math.round(dataInterval.mean);
+    }
+
+    return defaultInterval;
+  }
+
+  /**
+   * Delai avant la prochaine scrutation : juste apres la prochaine publication attendue, ou rapidement si elle est en
+   * retard.
+   * 
+   * @param now date courante (meme referentiel que les releves)
+   * @param defaultInterval intervalle a utiliser sans observation
+   * @return
+   */
+  public synchronized long getNextPollDelay(final long now, final long defaultInterval)
+  {
+    // Prochaine publication attendue
+    final long interval = getExpectedInterval(defaultInterval);
+    final long expected;
+    if ((lastPublish >= 0) && (publishInterval.mean > 0))
+    {
+      expected = lastPublish + interval + publishInterval.getMargin();
+    }
+    else if (lastData >= 0)
+    {
+      expected = lastData + interval + Math.max(0, Math.round(latency)) + dataInterval.getMargin();
+    }
+    else
+    {
+      return defaultInterval;
+    }
+
+    // En retard : nouvelle tentative rapprochee
+    final long delay = expected - now;
+    if (delay <= 0)
+    {
+      return Math.max(MIN_DELAY, Math.min(interval / LATE_DIVISOR, 2 * getMargin()));
+    }
+
+    return Math.max(MIN_DELAY, Math.min(delay, 2 * interval));
+  }
+
+  /**
+   * 
+   * @return
+   */
+  private long getMargin()
+  {
+    return ((lastPublish >= 0) && (publishInterval.mean > 0) ? publishInterval.getMargin() : dataInterval.getMargin());
+  }
+
+  /**
+   * RAZ des observations
+   */
+  public synchronized void clear()
+  {
+    dataInterval.clear();
+    lastData = -1;
+    dataGap = Long.MAX_VALUE;
+    latency = -1;
+    publishInterval.clear();
+    lastPublish = -1;
+    publishGap = Long.MAX_VALUE;
+    emptyPoll = false;
+  }
+}
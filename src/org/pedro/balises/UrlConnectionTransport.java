@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Transport par {@link URLConnection}.<br/>
+ * Les connexions HTTP sont reutilisees (keep-alive) par le JDK des lors que les flux sont lus jusqu'au bout puis fermes.
+ * <br/>
+ * Avec nbThreads > 0, les ouvertures et taches asynchrones sont executees par un pool de threads borne : un seul thread
+ * de scrutation peut ainsi piloter les mises a jour de nombreux providers en parallele. Sinon elles sont executees dans
+ * le thread appelant.
+ * 
+ * @author pedro.m
+ */
+public final class UrlConnectionTransport implements FeedTransport
+{
+  public static final UrlConnectionTransport DEFAULT     = new UrlConnectionTransport(Utils.CONNECT_TIMEOUT, Utils.READ_TIMEOUT, 0);
+
+  private static final String                THREAD_NAME = "FeedTransport-";
+
+  private final int                          connectTimeout;
+  private final int                          readTimeout;
+  private final ExecutorService              executor;
+
+  /**
+   * 
+   * @param connectTimeout
+   * @param readTimeout
+   * @param nbThreads taille du pool pour les appels asynchrones, 0 pour les executer dans le thread appelant
+   */
+  public UrlConnectionTransport(final int connectTimeout, final int readTimeout, final int nbThreads)
+  {
+    this.connectTimeout = connectTimeout;
+    this.readTimeout = readTimeout;
+    this.executor = (nbThreads > 0 ? Executors.newFixedThreadPool(nbThreads, new DaemonThreadFactory(THREAD_NAME)) : null);
+  }
+
+  @Override
+  public InputStream open(final String url, final Map<String, String> requestProperties, final FeedValidators validators, final boolean conditional) throws IOException
+  {
+    // Connexion
+    final URLConnection cnx = new URL(url).openConnection();
+    cnx.setConnectTimeout(connectTimeout);
+    cnx.setReadTimeout(readTimeout);
+    if (requestProperties != null)
+    {
+      for (final Map.Entry<String, String> entry : requestProperties.entrySet())
+      {
+        cnx.setRequestProperty(entry.getKey(), entry.getValue());
+      }
+    }
+
+    // Sans validateurs
+    if (validators == null)
+    {
+      return cnx.getInputStream();
+    }
+
+    // Requete conditionnelle
+    validators.prepare(cnx, conditional);
+    if (validators.isNotModified(cnx))
+    {
+      return null;
+    }
+
+    return cnx.getInputStream();
+  }
+
+  @Override
+  public Future<InputStream> openAsync(final String url, final Map<String, String> requestProperties, final FeedValidators validators, final boolean conditional)
+  {
+    return submit(new Callable<InputStream>()
+    {
+      @Override
+      public InputStream call() throws IOException
+      {
+        return open(url, requestProperties, validators, conditional);
+      }
+    });
+  }
+
+  @Override
+  public <T> Future<T> submit(final Callable<T> task)
+  {
+    // Pool
+    if (executor != null)
+    {
+      return executor.submit(task);
+    }
+
+    // Thread appelant
+    final FutureTask<T> future = new FutureTask<T>(task);
+    future.run();
+    return future;
+  }
+
+  @Override
+  public void shutdown()
+  {
+    if (executor != null)
+    {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * 
+   * @return
+   */
+  public int getConnectTimeout()
+  {
+    return connectTimeout;
+  }
+
+  /**
+   * 
+   * @return
+   */
+  public int getReadTimeout()
+  {
+    return readTimeout;
+  }
+}
@@ -23,12 +23,10 @@
  ******************************************************************************/
 package org.pedro.balises;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.net.URL;
-import java.net.URLConnection;
-import java.util.Calendar;
+import java.nio.charset.Charset;
 import java.util.Date;
 import java.util.TimeZone;
 
@@ -38,19 +36,24 @@ import java.util.TimeZone;
  */
 public abstract class Utils
 {
-  private static final String   STRING_DEUX_POINTS  = ":";
+  private static final String          STRING_DEUX_POINTS  = ":";
 
-  private static final TimeZone localTimeZone       = TimeZone.getDefault();
+  private static final TimeZone        localTimeZone       = TimeZone.getDefault();
+  private static final ZoneOffsetTable localOffsets        = ZoneOffsetTable.getTable(localTimeZone);
 
-  public static final int       READ_BUFFER_SIZE    = 1024;
-  public static final int       CONNECT_TIMEOUT     = 10000;
-  public static final int       READ_TIMEOUT        = 10000;
+  public static final int              READ_BUFFER_SIZE    = 1024;
+  public static final int              GZIP_BUFFER_SIZE    = 8192;
+  public static final int              CONNECT_TIMEOUT     = 10000;
+  public static final int              READ_TIMEOUT        = 10000;
 
-  private static final String   STRING_BOOLEAN_TRUE = "true";
-  private static final String   STRING_BOOLEAN_VRAI = "vrai";
-  public static final int       BOOLEAN_NULL        = -1;
-  public static final int       BOOLEAN_TRUE        = 1;
-  public static final int       BOOLEAN_FALSE       = 0;
+  private static final String          STRING_BOOLEAN_TRUE = "true";
+  private static final String          STRING_BOOLEAN_VRAI = "vrai";
+  public static final int              BOOLEAN_NULL        = -1;
+  public static final int              BOOLEAN_TRUE        = 1;
+  public static final int              BOOLEAN_FALSE       = 0;
+
+  private static final int             MAX_FAST_DIGITS     = 15;
+  private static final double[]        POWERS_OF_TEN       = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15 };
 
   /**
    * 
@@ -88,14 +91,7 @@ public abstract class Utils
    */
   public static void toUTC(final Date date, final TimeZone sourceTimeZone)
   {
-    // Decalage dans le fuseau horaire UTC
-    final Calendar cal = Calendar.getInstance();
-    cal.setTime(date);
-    final int sourceOffset = sourceTimeZone.getOffset(cal.getTimeInMillis());
-    cal.add(Calendar.MILLISECOND, -sourceOffset);
-
-    // Fin
-    date.setTime(cal.getTime().getTime());
+    date.setTime(toUTC(date.getTime(), sourceTimeZone));
   }
 
   /**
@@ -104,7 +100,7 @@ public abstract class Utils
    */
   public static void toUTC(final Date date)
   {
-    toUTC(date, localTimeZone);
+    date.setTime(toUTC(date.getTime()));
   }
 
   /**
@@ -113,9 +109,20 @@ public abstract class Utils
    * @param sourceTimeZone
    */
   public static long toUTC(final long millis, final TimeZone sourceTimeZone)
+  {
+    return toUTC(millis, ZoneOffsetTable.getTable(sourceTimeZone));
+  }
+
+  /**
+   * 
+   * @param millis
+   * @param sourceOffsets
+   * @return
+   */
+  public static long toUTC(final long millis, final ZoneOffsetTable sourceOffsets)
   {
     // Decalage dans le fuseau horaire UTC
-    final int sourceOffset = sourceTimeZone.getOffset(millis);
+    final int sourceOffset = sourceOffsets.getOffset(millis);
 
     return millis - sourceOffset;
   }
@@ -127,7 +134,7 @@ public abstract class Utils
    */
   public static long toUTC(final long millis)
   {
-    return toUTC(millis, localTimeZone);
+    return toUTC(millis, localOffsets);
   }
 
   /**
@@ -137,14 +144,7 @@ public abstract class Utils
    */
   public static void fromUTC(final Date date, final TimeZone destTimeZone)
   {
-    // Decalage dans le fuseau horaire UTC
-    final Calendar cal = Calendar.getInstance();
-    cal.setTime(date);
-    final int sourceOffset = destTimeZone.getOffset(cal.getTimeInMillis());
-    cal.add(Calendar.MILLISECOND, sourceOffset);
-
-    // Fin
-    date.setTime(cal.getTime().getTime());
+    date.setTime(fromUTC(date.getTime(), destTimeZone));
   }
 
   /**
@@ -153,7 +153,7 @@ public abstract class Utils
    */
   public static void fromUTC(final Date date)
   {
-    fromUTC(date, localTimeZone);
+    date.setTime(fromUTC(date.getTime()));
   }
 
   /**
@@ -163,10 +163,21 @@ public abstract class Utils
    */
   public static long fromUTC(final long millis, final TimeZone sourceTimeZone)
   {
-    // Decalage dans le fuseau horaire UTC
-    final int sourceOffset = sourceTimeZone.getOffset(millis);
+    return fromUTC(millis, ZoneOffsetTable.getTable(sourceTimeZone));
+  }
 
-    return millis + sourceOffset;
+  /**
+   * 
+   * @param millis
+   * @param destOffsets
+   * @return
+   */
+  public static long fromUTC(final long millis, final ZoneOffsetTable destOffsets)
+  {
+    // Decalage depuis le fuseau horaire UTC
+    final int destOffset = destOffsets.getOffset(millis);
+
+    return millis + destOffset;
   }
 
   /**
@@ -176,7 +187,7 @@ public abstract class Utils
    */
   public static long fromUTC(final long millis)
   {
-    return fromUTC(millis, localTimeZone);
+    return fromUTC(millis, localOffsets);
   }
 
   /**
@@ -188,18 +199,9 @@ public abstract class Utils
    */
   public static void decalageHoraire(final Date date, final TimeZone sourceTimeZone, final TimeZone destTimeZone)
   {
-    // Decalage dans le fuseau horaire UTC
-    final Calendar cal = Calendar.getInstance();
-    cal.setTime(date);
-    final int sourceOffset = sourceTimeZone.getOffset(cal.getTimeInMillis());
-    cal.add(Calendar.MILLISECOND, -sourceOffset);
-
-    // Decalage dans le fuseau horaire du terminal
-    final int localOffset = destTimeZone.getOffset(cal.getTimeInMillis());
-    cal.add(Calendar.MILLISECOND, localOffset);
-
-    // Fin
-    date.setTime(cal.getTime().getTime());
+    // Decalage dans le fuseau horaire UTC, puis dans le fuseau horaire du terminal
+    final long utc = toUTC(date.getTime(), sourceTimeZone);
+    date.setTime(fromUTC(utc, destTimeZone));
   }
 
   /**
@@ -282,6 +284,270 @@ public abstract class Utils
     return Integer.parseInt(text, 10);
   }
 
+  /**
+   * Analyse d'un entier depuis un tableau de caracteres, sans creation de chaine.<br/>
+   * Une valeur vide ou non renseignee ("--") renvoie Integer.MIN_VALUE.
+   * 
+   * @param chars
+   * @param offset
+   * @param length
+   * @return
+   */
+  public static int parsePrimitiveInteger(final char[] chars, final int offset, final int length)
+  {
+    // Suppression des espaces
+    final int start = trimStart(chars, offset, offset + length);
+    final int end = trimEnd(chars, start, offset + length);
+    if (isValeurAbsente(chars, start, end))
+    {
+      return Integer.MIN_VALUE;
+    }
+
+    return parseInteger(chars, start, end);
+  }
+
+  /**
+   * Analyse d'un decimal depuis un tableau de caracteres, sans creation de chaine.<br/>
+   * Le separateur decimal peut etre le point ou la virgule. Une valeur vide ou non renseignee ("--", "--.-") renvoie NaN.
+   * 
+   * @param chars
+   * @param offset
+   * @param length
+   * @return
+   */
+  public static double parsePrimitiveDouble(final char[] chars, final int offset, final int length)
+  {
+    // Suppression des espaces
+    final int start = trimStart(chars, offset, offset + length);
+    final int end = trimEnd(chars, start, offset + length);
+    if (isValeurAbsente(chars, start, end))
+    {
+      return Double.NaN;
+    }
+
+    // Signe
+    int index = start;
+    final boolean negative = (chars[index] == '-');
+    if (negative || (chars[index] == '+'))
+    {
+      index++;
+    }
+
+    // Mantisse (resultat exact tant qu'elle tient sur 15 chiffres significatifs)
+    long mantissa = 0;
+    int digits = 0;
+    int decimals = 0;
+    boolean separator = false;
+    boolean digitFound = false;
+    for (; index < end; index++)
+    {
+      final char c = chars[index];
+      if ((c >= '0') && (c <= '9'))
+      {
+        if (digits >= MAX_FAST_DIGITS)
+        {
+          return parseDoubleStandard(chars, start, end);
+        }
+        mantissa = mantissa * 10 + (c - '0');
+        digitFound = true;
+        if (mantissa != 0)
+        {
+          digits++;
+        }
+        if (separator)
+        {
+          decimals++;
+        }
+      }
+      else if (((c == '.') || (c == ',')) && !separator)
+      {
+        separator = true;
+      }
+      else
+      {
+        // Exposant, infini...
+        return parseDoubleStandard(chars, start, end);
+      }
+    }
+
+    if (!digitFound)
+    {
+      throw new NumberFormatException(new String(chars, start, end - start));
+    }
+    if (decimals >= POWERS_OF_TEN.length)
+    {
+      return parseDoubleStandard(chars, start, end);
+    }
+
+    final double value = mantissa / POWERS_OF_TEN[decimals];
+    return (negative ? -value : value);
+  }
+
+  /**
+   * Analyse d'un booleen depuis un tableau de caracteres, sans creation de chaine.
+   * 
+   * @param chars
+   * @param offset
+   * @param length
+   * @return
+   */
+  public static int parsePrimitiveBoolean(final char[] chars, final int offset, final int length)
+  {
+    // Suppression des espaces
+    final int start = trimStart(chars, offset, offset + length);
+    final int end = trimEnd(chars, start, offset + length);
+    if (isValeurAbsente(chars, start, end))
+    {
+      return BOOLEAN_NULL;
+    }
+
+    if (equalsIgnoreCase(chars, start, end, STRING_BOOLEAN_TRUE) || equalsIgnoreCase(chars, start, end, STRING_BOOLEAN_VRAI))
+    {
+      return BOOLEAN_TRUE;
+    }
+
+    return parseInteger(chars, start, end);
+  }
+
+  /**
+   * 
+   * @param chars
+   * @param start
+   * @param end
+   * @return
+   */
+  private static int parseInteger(final char[] chars, final int start, final int end)
+  {
+    // Signe
+    int index = start;
+    final boolean negative = (chars[index] == '-');
+    if (negative || (chars[index] == '+'))
+    {
+      index++;
+    }
+    if (index >= end)
+    {
+      throw new NumberFormatException(new String(chars, start, end - start));
+    }
+
+    // Chiffres
+    final long limit = (negative ? -(long)Integer.MIN_VALUE : Integer.MAX_VALUE);
+    long value = 0;
+    for (; index < end; index++)
+    {
+      final int digit = chars[index] - '0';
+      if ((digit < 0) || (digit > 9))
+      {
+        throw new NumberFormatException(new String(chars, start, end - start));
+      }
+      value = value * 10 + digit;
+      if (value > limit)
+      {
+        throw new NumberFormatException(new String(chars, start, end - start));
+      }
+    }
+
+    return (int)(negative ? -value : value);
+  }
+
+  /**
+   * 
+   * @param chars
+   * @param start
+   * @param end
+   * @return
+   */
+  private static double parseDoubleStandard(final char[] chars, final int start, final int end)
+  {
+    return Double.parseDouble(new String(chars, start, end - start).replace(',', '.'));
+  }
+
+  /**
+   * Valeur vide ou non renseignee (uniquement des tirets et separateurs : "--", "--.-"...)
+   * 
+   * @param chars
+   * @param start
+   * @param end
+   * @return
+   */
+  private static boolean isValeurAbsente(final char[] chars, final int start, final int end)
+  {
+    for (int i = start; i < end; i++)
+    {
+      final char c = chars[i];
+      if ((c != '-') && (c != '.') && (c != ','))
+      {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * 
+   * @param chars
+   * @param start
+   * @param end
+   * @return
+   */
+  private static int trimStart(final char[] chars, final int start, final int end)
+  {
+    int index = start;
+    while ((index < end) && (chars[index] <= ' '))
+    {
+      index++;
+    }
+
+    return index;
+  }
+
+  /**
+   * 
+   * @param chars
+   * @param start
+   * @param end
+   * @return
+   */
+  private static int trimEnd(final char[] chars, final int start, final int end)
+  {
+    int index = end;
+    while ((index > start) && (chars[index - 1] <= ' '))
+    {
+      index--;
+    }
+
+    return index;
+  }
+
+  /**
+   * 
+   * @param chars
+   * @param start
+   * @param end
+   * @param string
+   * @return
+   */
+  private static boolean equalsIgnoreCase(final char[] chars, final int start, final int end, final String string)
+  {
+    if (end - start != string.length())
+    {
+      return false;
+    }
+
+    for (int i = start; i < end; i++)
+    {
+      final char c = chars[i];
+      final char s = string.charAt(i - start);
+      if ((c != s) && (Character.toLowerCase(c) != Character.toLowerCase(s)))
+      {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
   /**
    * 
    * @param degres
@@ -365,45 +631,73 @@ public abstract class Utils
    * @throws IOException
    */
   public static int readData(final URL url, final String encoding, final StringBuilder buffer) throws IOException
+  {
+    return readData(UrlConnectionTransport.DEFAULT, url, encoding, buffer);
+  }
+
+  /**
+   * 
+   * @param transport
+   * @param url
+   * @param encoding
+   * @param buffer
+   * @return
+   * @throws IOException
+   */
+  public static int readData(final FeedTransport transport, final URL url, final String encoding, final StringBuilder buffer) throws IOException
   {
     // Initialisations
-    URLConnection cnx = null;
-    InputStream is = null;
-    int total = 0;
+    final Charset charset = getCharset(encoding);
+    FeedReader reader = null;
 
     try
     {
       // Connexion
-      cnx = url.openConnection();
-      cnx.setConnectTimeout(CONNECT_TIMEOUT);
-      cnx.setReadTimeout(READ_TIMEOUT);
-      cnx.connect();
-
-      // InputStream
-      is = new BufferedInputStream(cnx.getInputStream());
-
-      // Lecture
-      final byte[] buf = new byte[READ_BUFFER_SIZE];
-      int read = is.read(buf);
-      while (read > 0)
+      reader = new FeedReader(transport.open(url.toString(), null, null, false), charset, READ_BUFFER_SIZE, false);
+
+      // Lecture (decodage incremental : pas de coupure des caracteres multi-octets)
+      final char[] buf = new char[READ_BUFFER_SIZE];
+      int read = reader.read(buf);
+      while (read >= 0)
       {
-        final String chaine = (encoding == null ? new String(buf, 0, read) : new String(buf, 0, read, encoding));
-        buffer.append(chaine);
-        total += read;
-        read = is.read(buf);
+        buffer.append(buf, 0, read);
+        read = reader.read(buf);
       }
 
-      return total;
+      return (int)reader.getByteCount();
     }
     finally
     {
-      if (is != null)
+      if (reader != null)
       {
-        is.close();
+        reader.close();
       }
     }
   }
 
+  /**
+   * 
+   * @param encoding
+   * @return
+   * @throws UnsupportedEncodingException
+   */
+  private static Charset getCharset(final String encoding) throws UnsupportedEncodingException
+  {
+    if (encoding == null)
+    {
+      return Charset.defaultCharset();
+    }
+
+    try
+    {
+      return Charset.forName(encoding);
+    }
+    catch (final IllegalArgumentException iae)
+    {
+      throw new UnsupportedEncodingException(encoding);
+    }
+  }
+
   /**
    * 
    * @param chaine
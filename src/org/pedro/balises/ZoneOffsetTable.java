@@ -0,0 +1,219 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Table precalculee des decalages horaires d'un fuseau, sur une fenetre glissante d'annees autour de la date courante.<br/>
+ * La recherche du decalage est une simple recherche dichotomique sur des long, sans verrou ni allocation. En dehors de la
+ * fenetre, le decalage est demande au TimeZone.
+ * 
+ * @author pedro.m
+ */
+public final class ZoneOffsetTable
+{
+  private static final long                                   MILLIS_HEURE  = 3600 * 1000;
+  private static final long                                   MILLIS_JOUR   = 24 * MILLIS_HEURE;
+  private static final long                                   MILLIS_ANNEE  = 365 * MILLIS_JOUR;
+  private static final long                                   ANNEES_AVANT  = 5 * MILLIS_ANNEE;
+  private static final long                                   ANNEES_APRES  = 5 * MILLIS_ANNEE;
+  private static final long                                   MARGE_BASCULE = MILLIS_ANNEE;
+  private static final long                                   PAS_RECHERCHE = 6 * MILLIS_HEURE;
+
+  private static final ConcurrentMap<String, ZoneOffsetTable> tables        = new ConcurrentHashMap<String, ZoneOffsetTable>();
+
+  private final TimeZone                                      timeZone;
+  private volatile Window                                     window;
+
+  /**
+   * Fenetre de decalages (immuable)
+   */
+  private static final class Window
+  {
+    final long   start;
+    final long   end;
+    final long[] transitions;
+    final int[]  offsets;
+
+    /**
+     * 
+     * @param start
+     * @param end
+     * @param transitions
+     * @param offsets
+     */
+    Window(final long start, final long end, final long[] transitions, final int[] offsets)
+    {
+      this.start = start;
+      this.end = end;
+      this.transitions = transitions;
+      this.offsets = offsets;
+    }
+  }
+
+  /**
+   * 
+   * @param timeZone
+   */
+  private ZoneOffsetTable(final TimeZone timeZone)
+  {
+    this.timeZone = (TimeZone)timeZone.clone();
+    this.window = computeWindow(this.timeZone, System.currentTimeMillis());
+  }
+
+  /**
+   * 
+   * @param timeZone
+   * @return la table partagee du fuseau horaire
+   */
+  public static ZoneOffsetTable getTable(final TimeZone timeZone)
+  {
+    final String id = timeZone.getID();
+    final ZoneOffsetTable table = tables.get(id);
+    if ((table != null) && table.timeZone.hasSameRules(timeZone))
+    {
+      return table;
+    }
+
+    // Creation (un fuseau personnalise de meme ID remplace la table precedente)
+    final ZoneOffsetTable newTable = new ZoneOffsetTable(timeZone);
+    tables.put(id, newTable);
+
+    return newTable;
+  }
+
+  /**
+   * 
+   * @return
+   */
+  public TimeZone getTimeZone()
+  {
+    return (TimeZone)timeZone.clone();
+  }
+
+  /**
+   * 
+   * @return
+   */
+  public int getRawOffset()
+  {
+    return timeZone.getRawOffset();
+  }
+
+  /**
+   * Equivalent de TimeZone.getOffset(long).
+   * 
+   * @param millis
+   * @return
+   */
+  public int getOffset(final long millis)
+  {
+    Window current = window;
+    if ((millis < current.start) || (millis >= current.end))
+    {
+      // Fenetre perimee ?
+      final long now = System.currentTimeMillis();
+      if ((now < current.start + MARGE_BASCULE) || (now >= current.end - MARGE_BASCULE))
+      {
+        current = computeWindow(timeZone, now);
+        window = current;
+      }
+
+      // Hors fenetre
+      if ((millis < current.start) || (millis >= current.end))
+      {
+        return timeZone.getOffset(millis);
+      }
+    }
+
+    // Recherche
+    final int index = Arrays.binarySearch(current.transitions, millis);
+    return current.offsets[index >= 0 ? index : -index - 2];
+  }
+
+  /**
+   * 
+   * @param zone
+   * @param now
+   * @return
+   */
+  private static Window computeWindow(final TimeZone zone, final long now)
+  {
+    // Initialisations
+    final long start = now - ANNEES_AVANT;
+    final long end = now + ANNEES_APRES;
+    final int maxTransitions = (int)((end - start) / PAS_RECHERCHE) + 1;
+    long[] transitions = new long[16];
+    int[] offsets = new int[16];
+    int count = 0;
+
+    // Parcours de la fenetre par pas, puis recherche dichotomique de chaque changement de decalage
+    int offset = zone.getOffset(start);
+    transitions[count] = start;
+    offsets[count] = offset;
+    count++;
+    long previous = start;
+    while (previous < end - 1)
+    {
+      final long probe = Math.min(previous + PAS_RECHERCHE, end - 1);
+      final int probeOffset = zone.getOffset(probe);
+      if (probeOffset != offset)
+      {
+        // Premier instant avec le nouveau decalage
+        long low = previous;
+        long high = probe;
+        while (high - low > 1)
+        {
+          final long middle = (low + high) >>> 1;
+          if (zone.getOffset(middle) == offset)
+          {
+            low = middle;
+          }
+          else
+          {
+            high = middle;
+          }
+        }
+
+        // Ajout
+        if (count == transitions.length)
+        {
+          transitions = Arrays.copyOf(transitions, Math.min(count << 1, maxTransitions));
+          offsets = Arrays.copyOf(offsets, transitions.length);
+        }
+        transitions[count] = high;
+        offset = zone.getOffset(high);
+        offsets[count] = offset;
+        count++;
+      }
+      previous = probe;
+    }
+
+    return new Window(start, end, Arrays.copyOf(transitions, count), Arrays.copyOf(offsets, count));
+  }
+}
@@ -27,185 +27,187 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.pedro.balises.Balise;
+import org.pedro.balises.CharAccumulator;
+import org.pedro.balises.TagBindingContentHandler;
+import org.pedro.balises.TagBindings;
 import org.pedro.balises.Utils;
 import org.xml.sax.Attributes;
-import org.xml.sax.ContentHandler;
-import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
 
 /**
  * 
  * @author pedro.m
  */
-public final class BaliseFfvlContentHandler implements ContentHandler
+public final class BaliseFfvlContentHandler extends TagBindingContentHandler<BaliseFfvlContentHandler>
 {
   // Constantes
-  private static final String       STRING_VIDE              = "";
-  private static final String       BALISE_TAG               = "balise";
-  private static final String       ID_BALISE_TAG            = "idBalise";
-  private static final String       NOM_TAG                  = "nom";
-  private static final String       ALTITUDE_TAG             = "altitude";
-  private static final String       ALTITUDE_VALUE_ATT       = "value";
-  private static final String       COORD_TAG                = "coord";
-  private static final String       COORD_LATITUDE_ATT       = "lat";
-  private static final String       COORD_LONGITUDE_ATT      = "lon";
-  private static final String       DEPARTEMENT_TAG          = "departement";
-  private static final String       DEPARTEMENT_VALUE_ATT    = "value";
-  private static final String       DESCRIPTION_TAG          = "description";
-  private static final String       REMARQUES_TAG            = "remarques";
-  private static final String       URL_TAG                  = "url";
-  private static final String       URL_VALUE_ATT            = "value";
-  private static final String       URL_HISTORIQUE_TAG       = "urlHisto";
-  private static final String       URL_HISTORIQUE_VALUE_ATT = "value";
-  private static final String       ACTIVE_TAG               = "active";
-  private static final String       FOR_KYTE_TAG             = "forKyte";
-  private static final String       BOOLEAN_ONE              = "1";
+  private static final String                                BALISE_TAG               = "balise";
+  private static final String                                ID_BALISE_TAG            = "idBalise";
+  private static final String                                NOM_TAG                  = "nom";
+  private static final String                                ALTITUDE_TAG             = "altitude";
+  private static final String                                ALTITUDE_VALUE_ATT       = "value";
+  private static final String                                COORD_TAG                = "coord";
+  private static final String                                COORD_LATITUDE_ATT       = "lat";
+  private static final String                                COORD_LONGITUDE_ATT      = "lon";
+  private static final String                                DEPARTEMENT_TAG          = "departement";
+  private static final String                                DEPARTEMENT_VALUE_ATT    = "value";
+  private static final String                                DESCRIPTION_TAG          = "description";
+  private static final String                                REMARQUES_TAG            = "remarques";
+  private static final String                                URL_TAG                  = "url";
+  private static final String                                URL_VALUE_ATT            = "value";
+  private static final String                                URL_HISTORIQUE_TAG       = "urlHisto";
+  private static final String                                URL_HISTORIQUE_VALUE_ATT = "value";
+  private static final String                                ACTIVE_TAG               = "active";
+  private static final String                                FOR_KYTE_TAG             = "forKyte";
+  private static final String                                BOOLEAN_ONE              = "1";
+  private static final TagBindings<BaliseFfvlContentHandler> BINDINGS                 = new TagBindings<BaliseFfvlContentHandler>();
 
   // Membres
-  private final Map<String, Balise> balises                  = new HashMap<String, Balise>();
-  private BaliseFfvl                balise;
-  private String                    currentString            = STRING_VIDE;
+  private Map<String, Balise>                                balises                  = new HashMap<String, Balise>();
+  private BaliseFfvl                                         balise;
 
-  /**
-   * Recuperation de la liste des balises
-   * 
-   * @return
-   */
-  public Map<String, Balise> getBalises()
-  {
-    return balises;
-  }
-
-  @Override
-  public void characters(final char[] ch, final int start, final int length) throws SAXException
-  {
-    currentString += new String(ch, start, length);
-  }
-
-  @Override
-  public void endElement(final String uri, final String localName, final String qName) throws SAXException
+  static
   {
-    String finalName = qName;
-    if ((finalName == null) || (finalName.length() == 0))
-    {
-      finalName = localName;
-    }
-
-    if (ID_BALISE_TAG.equals(finalName))
+    BINDINGS.bind(BALISE_TAG, new TagBindings.Binding<BaliseFfvlContentHandler>()
     {
-      balise.setId(currentString);
-      balises.put(currentString, balise);
-    }
-    else if (NOM_TAG.equals(finalName))
+      @Override
+      public void start(final BaliseFfvlContentHandler handler, final Attributes atts)
+      {
+        handler.balise = new BaliseFfvl();
+      }
+    });
+
+    BINDINGS.bind(ID_BALISE_TAG, new TagBindings.Binding<BaliseFfvlContentHandler>()
     {
-      balise.nom = currentString;
-    }
-    else if (DESCRIPTION_TAG.equals(finalName))
+      @Override
+      public void end(final BaliseFfvlContentHandler handler, final CharAccumulator text)
+      {
+        handler.balise.setId(text.toString());
+        handler.balises.put(handler.balise.id, handler.balise);
+      }
+    });
+
+    BINDINGS.bind(NOM_TAG, new TagBindings.Binding<BaliseFfvlContentHandler>()
     {
-      balise.description = currentString;
-    }
-    else if (REMARQUES_TAG.equals(finalName))
+      @Override
+      public void end(final BaliseFfvlContentHandler handler, final CharAccumulator text)
+      {
+        handler.balise.nom = text.toString();
+      }
+    });
+
+    BINDINGS.bind(ALTITUDE_TAG, new TagBindings.Binding<BaliseFfvlContentHandler>()
     {
-      balise.commentaire = currentString;
-    }
-    else if (ACTIVE_TAG.equals(finalName))
+      @Override
+      public void start(final BaliseFfvlContentHandler handler, final Attributes atts)
+      {
+        handler.balise.altitude = Utils.parsePrimitiveInteger(atts.getValue(ALTITUDE_VALUE_ATT));
+      }
+    });
+
+    BINDINGS.bind(COORD_TAG, new TagBindings.Binding<BaliseFfvlContentHandler>()
     {
-      balise.active = Utils.parsePrimitiveBoolean(currentString);
-    }
-    else if (FOR_KYTE_TAG.equals(finalName))
+      @Override
+      public void start(final BaliseFfvlContentHandler handler, final Attributes atts)
+      {
+        handler.balise.latitude = Utils.parsePrimitiveDouble(atts.getValue(COORD_LATITUDE_ATT));
+        handler.balise.longitude = Utils.parsePrimitiveDouble(atts.getValue(COORD_LONGITUDE_ATT));
+      }
+    });
+
+    BINDINGS.bind(DEPARTEMENT_TAG, new TagBindings.Binding<BaliseFfvlContentHandler>()
     {
-      balise.kite = Boolean.valueOf(BOOLEAN_ONE.equals(currentString));
-    }
-
-    // RAZ
-    currentString = STRING_VIDE;
-  }
-
-  @Override
-  public void startDocument() throws SAXException
-  {
-    balises.clear();
-    currentString = STRING_VIDE;
-  }
-
-  @Override
-  public void startElement(final String uri, final String localName, final String qName, final Attributes atts) throws SAXException
-  {
-    String finalName = qName;
-    if ((finalName == null) || (finalName.length() == 0))
+      @Override
+      public void start(final BaliseFfvlContentHandler handler, final Attributes atts)
+      {
+        handler.balise.departement = atts.getValue(DEPARTEMENT_VALUE_ATT);
+      }
+    });
+
+    BINDINGS.bind(DESCRIPTION_TAG, new TagBindings.Binding<BaliseFfvlContentHandler>()
     {
-      finalName = localName;
-    }
-
-    if (BALISE_TAG.equals(finalName))
+      @Override
+      public void end(final BaliseFfvlContentHandler handler, final CharAccumulator text)
+      {
+        handler.balise.description = text.toString();
+      }
+    });
+
+    BINDINGS.bind(REMARQUES_TAG, new TagBindings.Binding<BaliseFfvlContentHandler>()
     {
-      balise = new BaliseFfvl();
-    }
-    else if (ALTITUDE_TAG.equals(finalName))
+      @Override
+      public void end(final BaliseFfvlContentHandler handler, final CharAccumulator text)
+      {
+        handler.balise.commentaire = text.toString();
+      }
+    });
+
+    BINDINGS.bind(URL_TAG, new TagBindings.Binding<BaliseFfvlContentHandler>()
     {
-      balise.altitude = Utils.parsePrimitiveInteger(atts.getValue(ALTITUDE_VALUE_ATT));
-    }
-    else if (COORD_TAG.equals(finalName))
+      @Override
+      public void start(final BaliseFfvlContentHandler handler, final Attributes atts)
+      {
+        handler.balise.urlDetail = atts.getValue(URL_VALUE_ATT);
+      }
+    });
+
+    BINDINGS.bind(URL_HISTORIQUE_TAG, new TagBindings.Binding<BaliseFfvlContentHandler>()
     {
-      balise.latitude = Utils.parsePrimitiveDouble(atts.getValue(COORD_LATITUDE_ATT));
-      balise.longitude = Utils.parsePrimitiveDouble(atts.getValue(COORD_LONGITUDE_ATT));
-    }
-    else if (DEPARTEMENT_TAG.equals(finalName))
+      @Override
+      public void start(final BaliseFfvlContentHandler handler, final Attributes atts)
+      {
+        handler.balise.urlHistorique = atts.getValue(URL_HISTORIQUE_VALUE_ATT);
+      }
+    });
+
+    BINDINGS.bind(ACTIVE_TAG, new TagBindings.Binding<BaliseFfvlContentHandler>()
     {
-      balise.departement = atts.getValue(DEPARTEMENT_VALUE_ATT);
-    }
-    else if (URL_TAG.equals(finalName))
+      @Override
+      public void end(final BaliseFfvlContentHandler handler, final CharAccumulator text)
+      {
+        handler.balise.active = text.parsePrimitiveBoolean();
+      }
+    });
+
+    BINDINGS.bind(FOR_KYTE_TAG, new TagBindings.Binding<BaliseFfvlContentHandler>()
     {
-      balise.urlDetail = atts.getValue(URL_VALUE_ATT);
-    }
-    else if (URL_HISTORIQUE_TAG.equals(finalName))
-    {
-      balise.urlHistorique = atts.getValue(URL_HISTORIQUE_VALUE_ATT);
-    }
-
-    // RAZ
-    currentString = STRING_VIDE;
-  }
-
-  @Override
-  public void startPrefixMapping(final String arg0, final String arg1) throws SAXException
-  {
-    // Nothing to do
-  }
-
-  @Override
-  public void endDocument() throws SAXException
-  {
-    // Nothing to do
-  }
-
-  @Override
-  public void endPrefixMapping(final String arg0) throws SAXException
-  {
-    // Nothing to do
+      @Override
+      public void end(final BaliseFfvlContentHandler handler, final CharAccumulator text)
+      {
+        handler.balise.kite = Boolean.valueOf(text.contentEquals(BOOLEAN_ONE));
+      }
+    });
   }
 
-  @Override
-  public void ignorableWhitespace(final char[] ch, final int start, final int length) throws SAXException
+  /**
+   * 
+   */
+  public BaliseFfvlContentHandler()
   {
-    // Nothing to do
+    super(BINDINGS, false);
   }
 
-  @Override
-  public void processingInstruction(final String arg0, final String arg1) throws SAXException
+  /**
+   * Recuperation de la liste des balises
+   * 
+   * @return
+   */
+  public Map<String, Balise> getBalises()
   {
-    // Nothing to do
+    return balises;
   }
 
   @Override
-  public void setDocumentLocator(final Locator arg0)
+  protected BaliseFfvlContentHandler getTarget()
   {
-    // Nothing to do
+    return this;
   }
 
   @Override
-  public void skippedEntity(final String arg0) throws SAXException
+  public void startDocument() throws SAXException
   {
-    // Nothing to do
+    // Nouvelle map : celle de l'analyse precedente appartient desormais a l'appelant
+    balises = new HashMap<String, Balise>();
+    super.startDocument();
   }
 }
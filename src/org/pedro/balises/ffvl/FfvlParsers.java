@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises.ffvl;
+
+import org.pedro.balises.ParserPool;
+import org.xml.sax.XMLReader;
+
+/**
+ * Jeu d'analyseurs des flux FFVL, emprunte a {@link #POOL} le temps d'une analyse.
+ * 
+ * @author pedro.m
+ */
+final class FfvlParsers
+{
+  static final ParserPool<FfvlParsers> POOL              = new Pool();
+
+  final XMLReader                      reader            = ParserPool.newXMLReader();
+  final BaliseFfvlContentHandler       baliseHandler     = new BaliseFfvlContentHandler();
+  final ReleveFfvlContentHandler       releveHandler     = new ReleveFfvlContentHandler();
+  final LastUpdateFfvlContentHandler   lastUpdateHandler = new LastUpdateFfvlContentHandler();
+  private ReleveFfvlStaxParser         releveStaxParser;
+
+  /**
+   * 
+   */
+  private FfvlParsers()
+  {
+    super();
+  }
+
+  /**
+   * 
+   * @author pedro.m
+   */
+  private static final class Pool extends ParserPool<FfvlParsers>
+  {
+    /**
+     * 
+     */
+    Pool()
+    {
+      super();
+    }
+
+    @Override
+    protected FfvlParsers create()
+    {
+      return new FfvlParsers();
+    }
+  }
+
+  /**
+   * 
+   * @return l'analyseur StAX des releves (cree au premier appel)
+   */
+  ReleveFfvlStaxParser getReleveStaxParser()
+  {
+    if (releveStaxParser == null)
+    {
+      releveStaxParser = new ReleveFfvlStaxParser();
+    }
+
+    return releveStaxParser;
+  }
+}
@@ -35,13 +35,12 @@ import java.util.Map;
 import java.util.TimeZone;
 import java.util.zip.GZIPInputStream;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
-
 import org.pedro.balises.AbstractBaliseProvider;
 import org.pedro.balises.Balise;
+import org.pedro.balises.FeedTransport;
+import org.pedro.balises.FeedValidators;
 import org.pedro.balises.Releve;
+import org.pedro.balises.UrlConnectionTransport;
 import org.pedro.balises.Utils;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
@@ -53,46 +52,45 @@ import org.xml.sax.XMLReader;
  */
 public class FfvlProvider extends AbstractBaliseProvider
 {
-  protected static final String              URL_FFVL_KEY            = "ffvlKey";
-  public static final String                 URL_FFVL_KEY_GROUP      = "\\{" + URL_FFVL_KEY + "\\}";
+  protected static final String            URL_FFVL_KEY            = "ffvlKey";
+  public static final String               URL_FFVL_KEY_GROUP      = "\\{" + URL_FFVL_KEY + "\\}";
 
   //private static final String                URL_BALISES             = "file:C:/Temp/balise_list.xml";
   //private static final String                URL_BALISES             = "http://www.balisemeteo.com/xml/{" + URL_FFVL_KEY + "}/balise_list.xml";
-  private static final String                URL_BALISES             = "http://data.ffvl.fr/xml/{" + URL_FFVL_KEY + "}/meteo/balise_list.xml";
+  private static final String              URL_BALISES             = "http://data.ffvl.fr/xml/{" + URL_FFVL_KEY + "}/meteo/balise_list.xml";
 
   //private static final String                URL_RELEVES             = "file:C:/Temp/relevemeteo-20110721.xml";
   //private static final String                URL_RELEVES             = "http://www.balisemeteo.com/xml/{" + URL_FFVL_KEY + "}/relevemeteo.xml";
-  protected static final String              URL_RELEVES             = "http://data.ffvl.fr/xml/{" + URL_FFVL_KEY + "}/meteo/relevemeteo.xml";
+  protected static final String            URL_RELEVES             = "http://data.ffvl.fr/xml/{" + URL_FFVL_KEY + "}/meteo/relevemeteo.xml";
 
-  public static final String                 URL_LAST_UPDATE         = "http://data.ffvl.fr/xml/{" + URL_FFVL_KEY + "}/lastupdate.xml";
+  public static final String               URL_LAST_UPDATE         = "http://data.ffvl.fr/xml/{" + URL_FFVL_KEY + "}/lastupdate.xml";
 
-  public static final String                 URL_INFOS               = "http://data.ffvl.fr/xml/{" + URL_FFVL_KEY + "}/infos/infos.xml";
+  public static final String               URL_INFOS               = "http://data.ffvl.fr/xml/{" + URL_FFVL_KEY + "}/infos/infos.xml";
 
-  private static final String                SUFFIXE_COMPRESSION     = ".gz";
+  private static final String              SUFFIXE_COMPRESSION     = ".gz";
 
-  private static final String                URL_BALISE_ID_KEY       = "idBalise";
-  private static final String                URL_BALISE_ID_KEY_GROUP = "\\{" + URL_BALISE_ID_KEY + "\\}";
-  private static final String                URL_DETAIL_BALISE       = "http://www.balisemeteo.com/balise.php?idBalise={" + URL_BALISE_ID_KEY + "}";
-  private static final String                URL_HISTORIQUE_BALISE   = "http://www.balisemeteo.com/balise_histo.php?idBalise={" + URL_BALISE_ID_KEY + "}";
+  private static final String              URL_BALISE_ID_KEY       = "idBalise";
+  private static final String              URL_BALISE_ID_KEY_GROUP = "\\{" + URL_BALISE_ID_KEY + "\\}";
+  private static final String              URL_DETAIL_BALISE       = "http://www.balisemeteo.com/balise.php?idBalise={" + URL_BALISE_ID_KEY + "}";
+  private static final String              URL_HISTORIQUE_BALISE   = "http://www.balisemeteo.com/balise_histo.php?idBalise={" + URL_BALISE_ID_KEY + "}";
 
-  private static final List<String>          COUNTRIES               = new ArrayList<String>();
+  private static final List<String>        COUNTRIES               = new ArrayList<String>();
 
   // Fuseaux hoaires
-  private static final String                TIME_ZONE_ID            = "Europe/Paris";
-  public static final TimeZone               sourceTimeZone          = TimeZone.getTimeZone(TIME_ZONE_ID);
+  private static final String              TIME_ZONE_ID            = "Europe/Paris";
+  public static final TimeZone             sourceTimeZone          = TimeZone.getTimeZone(TIME_ZONE_ID);
 
-  private final SAXParserFactory             factory;
-  private final SAXParser                    parser;
-  private final BaliseFfvlContentHandler     baliseHandler;
-  protected final ReleveFfvlContentHandler   releveHandler;
-  private final LastUpdateFfvlContentHandler lastUpdateHandler;
+  // Analyseurs : partages entre les instances (cf. FfvlParsers), sauf handler de releves specifique
+  protected final ReleveFfvlContentHandler releveHandler;
+  private final boolean                    sharedReleveHandler;
+  private volatile boolean                 staxReleveParser;
 
-  protected final String                     ffvlKey;
-  private final boolean                      useZippedData;
+  protected final String                   ffvlKey;
+  private final boolean                    useZippedData;
 
-  private boolean                            balisesUpdateDateCalled = false;
-  private boolean                            lastUpdateUpdateDatesReturn;
-  protected final Map<String, Long>          updateDates             = new HashMap<String, Long>();
+  private boolean                          balisesUpdateDateCalled = false;
+  private boolean                          lastUpdateUpdateDatesReturn;
+  protected final Map<String, Long>        updateDates             = new HashMap<String, Long>();
 
   /**
    * 
@@ -111,7 +109,7 @@ public class FfvlProvider extends AbstractBaliseProvider
    */
   public FfvlProvider(final String name, final String country, final String ffvlKey, final boolean useZippedData)
   {
-    this(name, country, ffvlKey, useZippedData, new ReleveFfvlContentHandler());
+    this(name, country, ffvlKey, useZippedData, null);
   }
 
   /**
@@ -120,7 +118,8 @@ public class FfvlProvider extends AbstractBaliseProvider
    * @param country
    * @param ffvlKey
    * @param useZippedData
-   * @param releveHandler
+   * @param releveHandler handler specifique des releves (ses analyses sont alors serialisees), null pour les handlers
+   *          partages (le champ releveHandler recoit alors un handler dedie, non utilise pour les analyses)
    */
   protected FfvlProvider(final String name, final String country, final String ffvlKey, final boolean useZippedData, final ReleveFfvlContentHandler releveHandler)
   {
@@ -129,24 +128,10 @@ public class FfvlProvider extends AbstractBaliseProvider
     this.ffvlKey = ffvlKey;
     this.useZippedData = useZippedData;
 
-    // Initialisation SAX
-    try
-    {
-      factory = SAXParserFactory.newInstance();
-      parser = factory.newSAXParser();
-      baliseHandler = new BaliseFfvlContentHandler();
-      this.releveHandler = releveHandler;
-      releveHandler.setListener(this);
-      lastUpdateHandler = new LastUpdateFfvlContentHandler();
-    }
-    catch (final SAXException se)
-    {
-      throw new RuntimeException(se);
-    }
-    catch (final ParserConfigurationException pce)
-    {
-      throw new RuntimeException(pce);
-    }
+    // Handler des releves (jamais null : sans handler specifique, un handler dedie est garde pour les sous-classes)
+    this.sharedReleveHandler = (releveHandler == null);
+    this.releveHandler = (sharedReleveHandler ? new ReleveFfvlContentHandler() : releveHandler);
+    this.releveHandler.setListener(this);
   }
 
   @Override
@@ -194,18 +179,31 @@ public class FfvlProvider extends AbstractBaliseProvider
     // Initialisations
     boolean updated = false;
     InputStream input = null;
+    final String finalUrl = URL_LAST_UPDATE.replaceAll(URL_FFVL_KEY_GROUP, ffvlKey);
 
     try
     {
-      final String finalUrl = URL_LAST_UPDATE.replaceAll(URL_FFVL_KEY_GROUP, ffvlKey);
-      input = getUnzippedInputStream(finalUrl);
+      input = getFeedInputStream(finalUrl, !updateDates.isEmpty());
+
+      // Non modifie : les dates connues restent valables
+      if (input == null)
+      {
+        return true;
+      }
+
       final Map<String, Long> newUpdateDates = parseUpdateDatesMap(new InputSource(input));
 
       // Tout est OK
       updateDates.clear();
       updateDates.putAll(newUpdateDates);
+      getUpdateRhythm().observePublish(getUpdateDate(LastUpdateFfvlContentHandler.RELEVES_KEY));
       updated = true;
     }
+    catch (final IOException ioe)
+    {
+      clearFeedValidators(finalUrl);
+      throw ioe;
+    }
     finally
     {
       if (input != null)
@@ -225,24 +223,38 @@ public class FfvlProvider extends AbstractBaliseProvider
    */
   protected Map<String, Long> parseUpdateDatesMap(final InputSource source) throws IOException
   {
+    final FfvlParsers parsers = FfvlParsers.POOL.acquire();
     try
     {
       // Analyse XML
-      final XMLReader reader = parser.getXMLReader();
-      reader.setContentHandler(lastUpdateHandler);
-      reader.parse(source);
+      parsers.reader.setContentHandler(parsers.lastUpdateHandler);
+      parsers.reader.parse(source);
 
       // Stockage
-      return lastUpdateHandler.getUpdateDates();
+      return parsers.lastUpdateHandler.getUpdateDates();
     }
     catch (final SAXException se)
     {
-      final IOException ioe = new IOException(se.getMessage());
-      ioe.setStackTrace(se.getStackTrace());
-      throw ioe;
+      throw toIOException(se);
+    }
+    finally
+    {
+      FfvlParsers.POOL.release(parsers);
     }
   }
 
+  /**
+   * 
+   * @param se
+   * @return
+   */
+  private static IOException toIOException(final SAXException se)
+  {
+    final IOException ioe = new IOException(se.getMessage());
+    ioe.setStackTrace(se.getStackTrace());
+    return ioe;
+  }
+
   /**
    * 
    * @param key
@@ -262,12 +274,35 @@ public class FfvlProvider extends AbstractBaliseProvider
   /**
    * 
    * @param url
-   * @return
+   * @param conditional
+   * @return le flux, null si le serveur a repondu 304 (Not Modified)
    * @throws IOException
    */
-  private InputStream getUnzippedInputStream(final String url) throws IOException
+  private InputStream getFeedInputStream(final String url, final boolean conditional) throws IOException
+  {
+    return getUnzippedInputStream(url, useZippedData, getFeedTransport(), getFeedValidators(), conditional);
+  }
+
+  /**
+   * Abandon des validateurs du flux, quand son contenu n'a pas pu etre exploite : le prochain telechargement de ce
+   * flux ne sera pas conditionnel.
+   * 
+   * @param url
+   */
+  private void clearFeedValidators(final String url)
   {
-    return getUnzippedInputStream(url, useZippedData);
+    getFeedValidators().clear(getFinalUrl(url, useZippedData));
+  }
+
+  /**
+   * 
+   * @param url
+   * @param inUseZippedData
+   * @return l'URL effectivement demandee (donnees compressees ou pas)
+   */
+  private static String getFinalUrl(final String url, final boolean inUseZippedData)
+  {
+    return (inUseZippedData ? url + SUFFIXE_COMPRESSION : url);
   }
 
   /**
@@ -279,27 +314,32 @@ public class FfvlProvider extends AbstractBaliseProvider
    */
   public static InputStream getUnzippedInputStream(final String url, final boolean inUseZippedData) throws IOException
   {
-    // Initialisations
-    InputStream retour = null;
+    return getUnzippedInputStream(url, inUseZippedData, UrlConnectionTransport.DEFAULT, null, false);
+  }
 
+  /**
+   * 
+   * @param url
+   * @param inUseZippedData
+   * @param transport
+   * @param validators validateurs HTTP, null pour une requete non conditionnelle
+   * @param conditional
+   * @return le flux, null si le serveur a repondu 304 (Not Modified)
+   * @throws IOException
+   */
+  public static InputStream getUnzippedInputStream(final String url, final boolean inUseZippedData, final FeedTransport transport, final FeedValidators validators, final boolean conditional) throws IOException
+  {
     // Donnees compressees ou pas ?
-    if (inUseZippedData)
-    {
-      final URLConnection cnx = new URL(url + SUFFIXE_COMPRESSION).openConnection();
-      cnx.setRequestProperty(REQUEST_PROPERTY_ACCEPT_ENCODING, REQUEST_PROPERTY_ACCEPT_ENCODING_IDENTITY);
-      cnx.setConnectTimeout(Utils.CONNECT_TIMEOUT);
-      cnx.setReadTimeout(Utils.READ_TIMEOUT);
-      retour = new GZIPInputStream(cnx.getInputStream());
-    }
-    else
+    final String finalUrl = getFinalUrl(url, inUseZippedData);
+    final InputStream input = transport.open(finalUrl, inUseZippedData ? ZIPPED_REQUEST_PROPERTIES : null, validators, conditional);
+
+    // Non modifie
+    if (input == null)
     {
-      final URLConnection cnx = new URL(url).openConnection();
-      cnx.setConnectTimeout(Utils.CONNECT_TIMEOUT);
-      cnx.setReadTimeout(Utils.READ_TIMEOUT);
-      retour = cnx.getInputStream();
+      return null;
     }
 
-    return retour;
+    return (inUseZippedData ? new GZIPInputStream(input, Utils.GZIP_BUFFER_SIZE) : input);
   }
 
   @Override
@@ -314,17 +354,29 @@ public class FfvlProvider extends AbstractBaliseProvider
     // Initialisations
     boolean updated = false;
     InputStream input = null;
+    final String finalUrl = URL_BALISES.replaceAll(URL_FFVL_KEY_GROUP, ffvlKey);
 
     try
     {
-      final String finalUrl = URL_BALISES.replaceAll(URL_FFVL_KEY_GROUP, ffvlKey);
-      input = getUnzippedInputStream(finalUrl);
+      input = getFeedInputStream(finalUrl, !getBalisesMap().isEmpty());
+
+      // Non modifie
+      if (input == null)
+      {
+        return false;
+      }
+
       final Map<String, Balise> newBalises = parseBalisesMap(new InputSource(input));
 
       // Tout est OK
       setBalisesMap(newBalises);
       updated = true;
     }
+    catch (final IOException ioe)
+    {
+      clearFeedValidators(finalUrl);
+      throw ioe;
+    }
     finally
     {
       if (input != null)
@@ -342,23 +394,25 @@ public class FfvlProvider extends AbstractBaliseProvider
    * @return
    * @throws IOException
    */
-  private Map<String, Balise> parseBalisesMap(final InputSource source) throws IOException
+  protected Map<String, Balise> parseBalisesMap(final InputSource source) throws IOException
   {
+    final FfvlParsers parsers = FfvlParsers.POOL.acquire();
     try
     {
       // Analyse XML
-      final XMLReader reader = parser.getXMLReader();
-      reader.setContentHandler(baliseHandler);
-      reader.parse(source);
+      parsers.reader.setContentHandler(parsers.baliseHandler);
+      parsers.reader.parse(source);
 
       // Stockage
-      return baliseHandler.getBalises();
+      return parsers.baliseHandler.getBalises();
     }
     catch (final SAXException se)
     {
-      final IOException ioe = new IOException(se.getMessage());
-      ioe.setStackTrace(se.getStackTrace());
-      throw ioe;
+      throw toIOException(se);
+    }
+    finally
+    {
+      FfvlParsers.POOL.release(parsers);
     }
   }
 
@@ -395,14 +449,26 @@ public class FfvlProvider extends AbstractBaliseProvider
   {
     // Initialisations
     InputStream input = null;
+    final String finalUrl = URL_RELEVES.replaceAll(URL_FFVL_KEY_GROUP, ffvlKey);
 
     try
     {
       updatedReleves.clear();
-      final String finalUrl = URL_RELEVES.replaceAll(URL_FFVL_KEY_GROUP, ffvlKey);
-      input = getUnzippedInputStream(finalUrl);
+      input = getFeedInputStream(finalUrl, hasReleves());
+
+      // Non modifie
+      if (input == null)
+      {
+        return false;
+      }
+
       parseReleves(new InputSource(input));
     }
+    catch (final IOException ioe)
+    {
+      clearFeedValidators(finalUrl);
+      throw ioe;
+    }
     finally
     {
       if (input != null)
@@ -414,25 +480,116 @@ public class FfvlProvider extends AbstractBaliseProvider
     return !updatedReleves.isEmpty();
   }
 
+  /**
+   * Choix du moteur d'analyse des releves : StAX ({@link ReleveFfvlStaxParser}) ou SAX (par defaut, avec le
+   * releveHandler).
+   * 
+   * @param stax
+   */
+  public void setStaxReleveParser(final boolean stax)
+  {
+    staxReleveParser = stax;
+  }
+
+  /**
+   * 
+   * @return
+   */
+  public boolean isStaxReleveParser()
+  {
+    return staxReleveParser;
+  }
+
   /**
    * 
    * @param source
    * @throws IOException
    */
   protected void parseReleves(final InputSource source) throws IOException
+  {
+    final FfvlParsers parsers = FfvlParsers.POOL.acquire();
+    try
+    {
+      // StAX
+      if (staxReleveParser)
+      {
+        parseRelevesStax(parsers.getReleveStaxParser(), source);
+      }
+
+      // SAX, handler specifique
+      else if (!sharedReleveHandler)
+      {
+        synchronized (releveHandler)
+        {
+          parseRelevesSax(parsers.reader, releveHandler, source);
+        }
+      }
+
+      // SAX, handler partage
+      else
+      {
+        parsers.releveHandler.setListener(this);
+        try
+        {
+          parseRelevesSax(parsers.reader, parsers.releveHandler, source);
+        }
+        finally
+        {
+          parsers.releveHandler.setListener(null);
+        }
+      }
+    }
+    finally
+    {
+      FfvlParsers.POOL.release(parsers);
+      publishReleves();
+    }
+  }
+
+  /**
+   * 
+   * @param staxParser
+   * @param source
+   * @throws IOException
+   */
+  private void parseRelevesStax(final ReleveFfvlStaxParser staxParser, final InputSource source) throws IOException
+  {
+    staxParser.setListener(this);
+    try
+    {
+      if (source.getCharacterStream() != null)
+      {
+        staxParser.parse(source.getCharacterStream());
+      }
+      else
+      {
+        staxParser.parse(source.getByteStream());
+      }
+    }
+    finally
+    {
+      staxParser.setListener(null);
+    }
+  }
+
+  /**
+   * 
+   * @param reader
+   * @param handler
+   * @param source
+   * @throws IOException
+   */
+  private static void parseRelevesSax(final XMLReader reader, final ReleveFfvlContentHandler handler, final InputSource source) throws IOException
   {
     try
     {
       // Analyse XML
-      final XMLReader reader = parser.getXMLReader();
-      reader.setContentHandler(releveHandler);
+      reader.setContentHandler(handler);
       reader.parse(source);
     }
     catch (final SAXException se)
     {
-      final IOException ioe = new IOException(se.getMessage());
-      ioe.setStackTrace(se.getStackTrace());
-      throw ioe;
+      throw toIOException(se);
     }
   }
 
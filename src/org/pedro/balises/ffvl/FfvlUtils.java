@@ -23,13 +23,13 @@
  ******************************************************************************/
 package org.pedro.balises.ffvl;
 
-import java.text.DateFormat;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.TimeZone;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.pedro.balises.FeedDateParser;
 import org.pedro.balises.Utils;
 
 /**
@@ -38,14 +38,16 @@ import org.pedro.balises.Utils;
  */
 public abstract class FfvlUtils
 {
-  private static final Pattern    GPS_PATTERN              = Pattern.compile("([\\d\\.\\,]+)\\D+([\\d\\.\\,]+)\\D+([\\d\\.\\,]+)\\D*([NnSs])\\D*([\\d\\.\\,]+)\\D+([\\d\\.\\,]+)\\D+([\\d\\.\\,]+)\\D*([OoWwEe])\\D*");
-  private static final Pattern    GPS_DECIMAL_PATTERN      = Pattern.compile("([\\d\\.\\,]+)\\D*([NnSs])\\D*([\\d\\.\\,]+)\\D*([OoWwEe])\\D*");
-  private static final Pattern    GPS_SEMI_DECIMAL_PATTERN = Pattern.compile("([NnSs])([\\d\\.\\,]+)\\D+([\\d\\.\\,]+)\\D+([OoWwEe])([\\d\\.\\,]+)\\D+([\\d\\.\\,]+)\\D*");
-  private static final DateFormat DATE_FORMAT              = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-  private static final String     VIRGULE                  = ",";
-  private static final String     POINT                    = ".";
-  private static final String     NORD                     = "n";
-  private static final String     EST                      = "e";
+  private static final Pattern        GPS_PATTERN              = Pattern.compile("([\\d\\.\\,]+)\\D+([\\d\\.\\,]+)\\D+([\\d\\.\\,]+)\\D*([NnSs])\\D*([\\d\\.\\,]+)\\D+([\\d\\.\\,]+)\\D+([\\d\\.\\,]+)\\D*([OoWwEe])\\D*");
+  private static final Pattern        GPS_DECIMAL_PATTERN      = Pattern.compile("([\\d\\.\\,]+)\\D*([NnSs])\\D*([\\d\\.\\,]+)\\D*([OoWwEe])\\D*");
+  private static final Pattern        GPS_SEMI_DECIMAL_PATTERN = Pattern.compile("([NnSs])([\\d\\.\\,]+)\\D+([\\d\\.\\,]+)\\D+([OoWwEe])([\\d\\.\\,]+)\\D+([\\d\\.\\,]+)\\D*");
+  private static final String         DATE_PATTERN             = "yyyy-MM-dd HH:mm:ss";
+  public static final FeedDateParser  DATE_PARSER              = new FeedDateParser(DATE_PATTERN, FfvlProvider.sourceTimeZone);
+  private static final FeedDateParser LOCAL_DATE_PARSER        = new FeedDateParser(DATE_PATTERN, TimeZone.getDefault());
+  private static final String         VIRGULE                  = ",";
+  private static final String         POINT                    = ".";
+  private static final String         NORD                     = "n";
+  private static final String         EST                      = "e";
 
   /**
    * 
@@ -164,6 +166,19 @@ public abstract class FfvlUtils
       return null;
     }
 
-    return DATE_FORMAT.parse(text);
+    return new Date(LOCAL_DATE_PARSER.parse(text));
+  }
+
+  /**
+   * Analyse d'une date FFVL, directement decalee dans le fuseau horaire UTC (equivalent de parseDate() suivi de
+   * Utils.toUTC(date, FfvlProvider.sourceTimeZone)).
+   * 
+   * @param text
+   * @return
+   * @throws ParseException
+   */
+  public static long parseUTCDate(final CharSequence text) throws ParseException
+  {
+    return Utils.toUTC(DATE_PARSER.parse(text));
   }
 }
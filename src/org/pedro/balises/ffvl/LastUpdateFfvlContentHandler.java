@@ -23,13 +23,9 @@
  ******************************************************************************/
 package org.pedro.balises.ffvl;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.pedro.balises.Utils;
 import org.xml.sax.Attributes;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.Locator;
@@ -41,23 +37,22 @@ import org.xml.sax.SAXException;
  */
 public final class LastUpdateFfvlContentHandler implements ContentHandler
 {
-  public static final String      INFOS_KEY         = "infos";
-  public static final String      DECOLLAGES_KEY    = "decollages";
-  public static final String      ATTERRISSAGES_KEY = "atterrissages";
-  public static final String      BALISES_KEY       = "balises";
-  public static final String      RELEVES_KEY       = "releves_meteo";
-  public static final String      SPOTS_KEY         = "spots_kite";
-
-  private static final DateFormat DATE_FORMAT       = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-  private static final String     INFOS_TAG         = INFOS_KEY;
-  private static final String     DECOLLAGES_TAG    = DECOLLAGES_KEY;
-  private static final String     ATTERRISSAGES_TAG = ATTERRISSAGES_KEY;
-  private static final String     BALISES_TAG       = BALISES_KEY;
-  private static final String     RELEVES_TAG       = RELEVES_KEY;
-  private static final String     SPOTS_TAG         = SPOTS_KEY;
-  private static final String     VALUE_ATT         = "value";
-
-  private final Map<String, Long> updateDates       = new HashMap<String, Long>();
+  public static final String  INFOS_KEY         = "infos";
+  public static final String  DECOLLAGES_KEY    = "decollages";
+  public static final String  ATTERRISSAGES_KEY = "atterrissages";
+  public static final String  BALISES_KEY       = "balises";
+  public static final String  RELEVES_KEY       = "releves_meteo";
+  public static final String  SPOTS_KEY         = "spots_kite";
+
+  private static final String INFOS_TAG         = INFOS_KEY;
+  private static final String DECOLLAGES_TAG    = DECOLLAGES_KEY;
+  private static final String ATTERRISSAGES_TAG = ATTERRISSAGES_KEY;
+  private static final String BALISES_TAG       = BALISES_KEY;
+  private static final String RELEVES_TAG       = RELEVES_KEY;
+  private static final String SPOTS_TAG         = SPOTS_KEY;
+  private static final String VALUE_ATT         = "value";
+
+  private Map<String, Long>   updateDates       = new HashMap<String, Long>();
 
   /**
    * 
@@ -83,7 +78,8 @@ public final class LastUpdateFfvlContentHandler implements ContentHandler
   @Override
   public void startDocument() throws SAXException
   {
-    updateDates.clear();
+    // Une map par analyse
+    updateDates = new HashMap<String, Long>();
   }
 
   @Override
@@ -102,14 +98,8 @@ public final class LastUpdateFfvlContentHandler implements ContentHandler
     {
       try
       {
-        // Analyse date
-        final Date date = DATE_FORMAT.parse(valueString);
-
-        // Decalage dans le fuseau horaire UTC
-        Utils.toUTC(date, FfvlProvider.sourceTimeZone);
-
-        // Timestamp final
-        timestamp = Long.valueOf(date.getTime());
+        // Analyse date et decalage dans le fuseau horaire UTC
+        timestamp = Long.valueOf(FfvlUtils.parseUTCDate(valueString));
       }
       catch (final Throwable th)
       {
@@ -23,205 +23,179 @@
  ******************************************************************************/
 package org.pedro.balises.ffvl;
 
+import java.text.ParseException;
+import java.util.Date;
+
+import org.pedro.balises.CharAccumulator;
 import org.pedro.balises.Releve;
 import org.pedro.balises.ReleveParserListener;
-import org.pedro.balises.Utils;
+import org.pedro.balises.TagBindingContentHandler;
+import org.pedro.balises.TagBindings;
 import org.xml.sax.Attributes;
-import org.xml.sax.ContentHandler;
-import org.xml.sax.Locator;
-import org.xml.sax.SAXException;
 
 /**
  * 
  * @author pedro.m
  */
-public class ReleveFfvlContentHandler implements ContentHandler
+public class ReleveFfvlContentHandler extends TagBindingContentHandler<ReleveFfvlContentHandler>
 {
   // Constantes
-  private static final String    STRING_VIDE        = "";
-  private static final String    RELEVE_TAG         = "releve";
-  private static final String    ID_BALISE_TAG      = "idbalise";
-  private static final String    DATE_TAG           = "date";
-  private static final String    VITESSE_MOY_TAG    = "vitesseVentMoy";
-  private static final String    VITESSE_MAX_TAG    = "vitesseVentMax";
-  private static final String    VITESSE_MIN_TAG    = "vitesseVentMin";
-  private static final String    DIRECTION_MOY_TAG  = "directVentMoy";
-  private static final String    DIRECTION_INST_TAG = "directVentInst";
-  private static final String    TEMPERATURE_TAG    = "temperature";
-  private static final String    HYDROMETRIE_TAG    = "hydrometrie";
-  private static final String    PRESSION_TAG       = "pression";
-  private static final String    LUMINOSITE_TAG     = "luminosite";
+  private static final String                                RELEVE_TAG         = "releve";
+  private static final String                                ID_BALISE_TAG      = "idbalise";
+  private static final String                                DATE_TAG           = "date";
+  private static final String                                VITESSE_MOY_TAG    = "vitesseVentMoy";
+  private static final String                                VITESSE_MAX_TAG    = "vitesseVentMax";
+  private static final String                                VITESSE_MIN_TAG    = "vitesseVentMin";
+  private static final String                                DIRECTION_MOY_TAG  = "directVentMoy";
+  private static final String                                DIRECTION_INST_TAG = "directVentInst";
+  private static final String                                TEMPERATURE_TAG    = "temperature";
+  private static final String                                HYDROMETRIE_TAG    = "hydrometrie";
+  private static final String                                PRESSION_TAG       = "pression";
+  private static final String                                LUMINOSITE_TAG     = "luminosite";
+  private static final TagBindings<ReleveFfvlContentHandler> BINDINGS           = new TagBindings<ReleveFfvlContentHandler>();
 
   // Membres
-  protected final Releve         releve             = new Releve();
-  protected String               currentString      = STRING_VIDE;
-  protected ReleveParserListener listener;
-
-  /**
-   * 
-   * @param listener
-   */
-  protected void setListener(final ReleveParserListener listener)
-  {
-    this.listener = listener;
-  }
+  protected final Releve                                     releve             = new Releve();
+  protected ReleveParserListener                             listener;
 
-  @Override
-  public void characters(final char[] ch, final int start, final int length) throws SAXException
+  static
   {
-    currentString += new String(ch, start, length);
-  }
-
-  @Override
-  public void endElement(final String uri, final String localName, final String qName) throws SAXException
-  {
-    String finalName = qName;
-    if ((finalName == null) || (finalName.length() == 0))
-    {
-      finalName = localName;
-    }
-
-    try
+    BINDINGS.bind(RELEVE_TAG, new TagBindings.Binding<ReleveFfvlContentHandler>()
     {
-      if (RELEVE_TAG.equals(finalName))
+      @Override
+      public void start(final ReleveFfvlContentHandler handler, final Attributes atts)
       {
-        listener.onReleveParsed(releve);
+        handler.releve.clear();
       }
 
-      else if (ID_BALISE_TAG.equals(finalName))
+      @Override
+      public void end(final ReleveFfvlContentHandler handler, final CharAccumulator text)
       {
-        releve.setId(currentString);
+        handler.listener.onReleveParsed(handler.releve);
       }
+    });
 
-      else if (DATE_TAG.equals(finalName))
+    BINDINGS.bind(ID_BALISE_TAG, new TagBindings.Binding<ReleveFfvlContentHandler>()
+    {
+      @Override
+      public void end(final ReleveFfvlContentHandler handler, final CharAccumulator text)
       {
-        releve.date = FfvlUtils.parseDate(currentString);
-
-        // Decalage dans le fuseau horaire UTC
-        if (releve.date != null)
-        {
-          Utils.toUTC(releve.date, FfvlProvider.sourceTimeZone);
-        }
+        handler.releve.setId(text.toCachedString());
       }
+    });
 
-      else if (VITESSE_MOY_TAG.equals(finalName))
+    BINDINGS.bind(DATE_TAG, new TagBindings.Binding<ReleveFfvlContentHandler>()
+    {
+      @Override
+      public void end(final ReleveFfvlContentHandler handler, final CharAccumulator text) throws ParseException
       {
-        releve.ventMoyen = Utils.parsePrimitiveDouble(currentString);
+        // Analyse et decalage dans le fuseau horaire UTC
+        handler.releve.date = (text.isBlank() ? null : new Date(FfvlUtils.parseUTCDate(text)));
       }
+    });
 
-      else if (VITESSE_MAX_TAG.equals(finalName))
+    BINDINGS.bind(VITESSE_MOY_TAG, new TagBindings.Binding<ReleveFfvlContentHandler>()
+    {
+      @Override
+      public void end(final ReleveFfvlContentHandler handler, final CharAccumulator text)
       {
-        releve.ventMaxi = Utils.parsePrimitiveDouble(currentString);
+        handler.releve.ventMoyen = text.parsePrimitiveDouble();
       }
+    });
 
-      else if (VITESSE_MIN_TAG.equals(finalName))
+    BINDINGS.bind(VITESSE_MAX_TAG, new TagBindings.Binding<ReleveFfvlContentHandler>()
+    {
+      @Override
+      public void end(final ReleveFfvlContentHandler handler, final CharAccumulator text)
       {
-        releve.ventMini = Utils.parsePrimitiveDouble(currentString);
+        handler.releve.ventMaxi = text.parsePrimitiveDouble();
       }
+    });
 
-      else if (DIRECTION_MOY_TAG.equals(finalName))
+    BINDINGS.bind(VITESSE_MIN_TAG, new TagBindings.Binding<ReleveFfvlContentHandler>()
+    {
+      @Override
+      public void end(final ReleveFfvlContentHandler handler, final CharAccumulator text)
       {
-        releve.directionMoyenne = Utils.parsePrimitiveInteger(currentString);
+        handler.releve.ventMini = text.parsePrimitiveDouble();
       }
+    });
 
-      else if (DIRECTION_INST_TAG.equals(finalName))
+    BINDINGS.bind(DIRECTION_MOY_TAG, new TagBindings.Binding<ReleveFfvlContentHandler>()
+    {
+      @Override
+      public void end(final ReleveFfvlContentHandler handler, final CharAccumulator text)
       {
-        releve.directionInstantanee = Utils.parsePrimitiveInteger(currentString);
+        handler.releve.directionMoyenne = text.parsePrimitiveInteger();
       }
+    });
 
-      else if (TEMPERATURE_TAG.equals(finalName))
+    BINDINGS.bind(DIRECTION_INST_TAG, new TagBindings.Binding<ReleveFfvlContentHandler>()
+    {
+      @Override
+      public void end(final ReleveFfvlContentHandler handler, final CharAccumulator text)
       {
-        releve.temperature = Utils.parsePrimitiveDouble(currentString);
+        handler.releve.directionInstantanee = text.parsePrimitiveInteger();
       }
+    });
 
-      else if (HYDROMETRIE_TAG.equals(finalName))
+    BINDINGS.bind(TEMPERATURE_TAG, new TagBindings.Binding<ReleveFfvlContentHandler>()
+    {
+      @Override
+      public void end(final ReleveFfvlContentHandler handler, final CharAccumulator text)
       {
-        releve.hydrometrie = Utils.parsePrimitiveDouble(currentString);
+        handler.releve.temperature = text.parsePrimitiveDouble();
       }
+    });
 
-      else if (PRESSION_TAG.equals(finalName))
+    BINDINGS.bind(HYDROMETRIE_TAG, new TagBindings.Binding<ReleveFfvlContentHandler>()
+    {
+      @Override
+      public void end(final ReleveFfvlContentHandler handler, final CharAccumulator text)
       {
-        releve.pression = Utils.parsePrimitiveDouble(currentString);
+        handler.releve.hydrometrie = text.parsePrimitiveDouble();
       }
+    });
 
-      else if (LUMINOSITE_TAG.equals(finalName))
+    BINDINGS.bind(PRESSION_TAG, new TagBindings.Binding<ReleveFfvlContentHandler>()
+    {
+      @Override
+      public void end(final ReleveFfvlContentHandler handler, final CharAccumulator text)
       {
-        releve.luminosite = Utils.isStringVide(currentString) ? null : currentString;
+        handler.releve.pression = text.parsePrimitiveDouble();
       }
-    }
-    catch (final Throwable th)
-    {
-      System.err.println("Error parsing '" + currentString + "' for <" + finalName + "> (" + th.getClass().getSimpleName() + ")");
-      //th.printStackTrace(System.err);
-    }
-
-    // RAZ
-    currentString = STRING_VIDE;
-  }
-
-  @Override
-  public void startDocument() throws SAXException
-  {
-    currentString = STRING_VIDE;
-  }
+    });
 
-  @Override
-  public void startElement(final String uri, final String localName, final String qName, final Attributes atts) throws SAXException
-  {
-    String finalName = qName;
-    if ((finalName == null) || (finalName.length() == 0))
+    BINDINGS.bind(LUMINOSITE_TAG, new TagBindings.Binding<ReleveFfvlContentHandler>()
     {
-      finalName = localName;
-    }
-
-    if (RELEVE_TAG.equals(finalName))
-    {
-      releve.clear();
-    }
-
-    // RAZ
-    currentString = STRING_VIDE;
-  }
-
-  @Override
-  public void startPrefixMapping(final String arg0, final String arg1) throws SAXException
-  {
-    // Nothing to do
-  }
-
-  @Override
-  public void endDocument() throws SAXException
-  {
-    // Nothing to do
-  }
-
-  @Override
-  public void endPrefixMapping(final String arg0) throws SAXException
-  {
-    // Nothing to do
-  }
-
-  @Override
-  public void ignorableWhitespace(final char[] ch, final int start, final int length) throws SAXException
-  {
-    // Nothing to do
+      @Override
+      public void end(final ReleveFfvlContentHandler handler, final CharAccumulator text)
+      {
+        handler.releve.luminosite = text.isBlank() ? null : text.toCachedString();
+      }
+    });
   }
 
-  @Override
-  public void processingInstruction(final String arg0, final String arg1) throws SAXException
+  /**
+   * 
+   */
+  public ReleveFfvlContentHandler()
   {
-    // Nothing to do
+    super(BINDINGS, true);
   }
 
-  @Override
-  public void setDocumentLocator(final Locator arg0)
+  /**
+   * 
+   * @param listener
+   */
+  protected void setListener(final ReleveParserListener listener)
   {
-    // Nothing to do
+    this.listener = listener;
   }
 
   @Override
-  public void skippedEntity(final String arg0) throws SAXException
+  protected ReleveFfvlContentHandler getTarget()
   {
-    // Nothing to do
+    return this;
   }
 }
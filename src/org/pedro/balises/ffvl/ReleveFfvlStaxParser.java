@@ -0,0 +1,263 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises.ffvl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Date;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.pedro.balises.CharAccumulator;
+import org.pedro.balises.Releve;
+import org.pedro.balises.ReleveParserListener;
+import org.pedro.balises.TagTable;
+
+/**
+ * Analyse StAX (pull) du flux des releves FFVL, alternative a {@link ReleveFfvlContentHandler}.<br/>
+ * Les noms de balises sont resolus par une {@link TagTable} (hachage parfait) et les valeurs ecrites directement dans
+ * le Releve reutilise ; les resultats sont identiques a ceux de l'analyse SAX.
+ * 
+ * @author pedro.m
+ */
+public class ReleveFfvlStaxParser
+{
+  // Balises (l'ordre donne les codes)
+  private static final int        RELEVE         = 0;
+  private static final int        ID_BALISE      = 1;
+  private static final int        DATE           = 2;
+  private static final int        VITESSE_MOY    = 3;
+  private static final int        VITESSE_MAX    = 4;
+  private static final int        VITESSE_MIN    = 5;
+  private static final int        DIRECTION_MOY  = 6;
+  private static final int        DIRECTION_INST = 7;
+  private static final int        TEMPERATURE    = 8;
+  private static final int        HYDROMETRIE    = 9;
+  private static final int        PRESSION       = 10;
+  private static final int        LUMINOSITE     = 11;
+  private static final TagTable   TAGS           = new TagTable("releve", "idbalise", "date", "vitesseVentMoy", "vitesseVentMax", "vitesseVentMin", "directVentMoy", "directVentInst", "temperature", "hydrometrie", "pression", "luminosite");
+
+  // Membres
+  private final XMLInputFactory   factory;
+  protected final Releve          releve         = new Releve();
+  protected final CharAccumulator currentString  = new CharAccumulator();
+  private char[]                  textBuffer     = new char[64];
+  protected ReleveParserListener  listener;
+
+  /**
+   * 
+   */
+  public ReleveFfvlStaxParser()
+  {
+    factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+  }
+
+  /**
+   * 
+   * @param listener
+   */
+  protected void setListener(final ReleveParserListener listener)
+  {
+    this.listener = listener;
+  }
+
+  /**
+   * 
+   * @param input
+   * @throws IOException
+   */
+  public void parse(final InputStream input) throws IOException
+  {
+    try
+    {
+      parse(factory.createXMLStreamReader(input));
+    }
+    catch (final XMLStreamException xse)
+    {
+      throw toIOException(xse);
+    }
+  }
+
+  /**
+   * 
+   * @param input
+   * @throws IOException
+   */
+  public void parse(final Reader input) throws IOException
+  {
+    try
+    {
+      parse(factory.createXMLStreamReader(input));
+    }
+    catch (final XMLStreamException xse)
+    {
+      throw toIOException(xse);
+    }
+  }
+
+  /**
+   * 
+   * @param xse
+   * @return
+   */
+  private static IOException toIOException(final XMLStreamException xse)
+  {
+    final IOException ioe = new IOException(xse.getMessage());
+    ioe.setStackTrace(xse.getStackTrace());
+    return ioe;
+  }
+
+  /**
+   * 
+   * @param reader
+   * @throws XMLStreamException
+   */
+  private void parse(final XMLStreamReader reader) throws XMLStreamException
+  {
+    try
+    {
+      currentString.reset();
+      while (reader.hasNext())
+      {
+        switch (reader.next())
+        {
+          case XMLStreamConstants.START_ELEMENT:
+            if (TAGS.get(reader.getLocalName()) == RELEVE)
+            {
+              releve.clear();
+            }
+            currentString.reset();
+            break;
+
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.CDATA:
+            appendText(reader);
+            break;
+
+          case XMLStreamConstants.END_ELEMENT:
+            onEndElement(reader.getLocalName());
+            currentString.reset();
+            break;
+
+          default:
+            break;
+        }
+      }
+    }
+    finally
+    {
+      reader.close();
+    }
+  }
+
+  /**
+   * 
+   * @param reader
+   * @throws XMLStreamException
+   */
+  private void appendText(final XMLStreamReader reader) throws XMLStreamException
+  {
+    final int length = reader.getTextLength();
+    if (length > textBuffer.length)
+    {
+      textBuffer = new char[Math.max(length, textBuffer.length << 1)];
+    }
+    reader.getTextCharacters(0, textBuffer, 0, length);
+    currentString.append(textBuffer, 0, length);
+  }
+
+  /**
+   * 
+   * @param name
+   */
+  private void onEndElement(final String name)
+  {
+    try
+    {
+      switch (TAGS.get(name))
+      {
+        case RELEVE:
+          listener.onReleveParsed(releve);
+          break;
+
+        case ID_BALISE:
+          releve.setId(currentString.toCachedString());
+          break;
+
+        case DATE:
+          // Analyse et decalage dans le fuseau horaire UTC
+          releve.date = (currentString.isBlank() ? null : new Date(FfvlUtils.parseUTCDate(currentString)));
+          break;
+
+        case VITESSE_MOY:
+          releve.ventMoyen = currentString.parsePrimitiveDouble();
+          break;
+
+        case VITESSE_MAX:
+          releve.ventMaxi = currentString.parsePrimitiveDouble();
+          break;
+
+        case VITESSE_MIN:
+          releve.ventMini = currentString.parsePrimitiveDouble();
+          break;
+
+        case DIRECTION_MOY:
+          releve.directionMoyenne = currentString.parsePrimitiveInteger();
+          break;
+
+        case DIRECTION_INST:
+          releve.directionInstantanee = currentString.parsePrimitiveInteger();
+          break;
+
+        case TEMPERATURE:
+          releve.temperature = currentString.parsePrimitiveDouble();
+          break;
+
+        case HYDROMETRIE:
+          releve.hydrometrie = currentString.parsePrimitiveDouble();
+          break;
+
+        case PRESSION:
+          releve.pression = currentString.parsePrimitiveDouble();
+          break;
+
+        case LUMINOSITE:
+          releve.luminosite = currentString.isBlank() ? null : currentString.toCachedString();
+          break;
+
+        default:
+          break;
+      }
+    }
+    catch (final Throwable th)
+    {
+      System.err.println("Error parsing '" + currentString + "' for <" + name + "> (" + th.getClass().getSimpleName() + ")");
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises.history;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Lecture d'un flux de bits (poids fort en premier) ecrit par {@link BitWriter}.
+ * 
+ * @author pedro.m
+ */
+final class BitReader
+{
+  private final ByteBuffer buffer;
+  private final int        offset;
+  private final int        bitLimit;
+  private int              bitPosition;
+
+  /**
+   * 
+   * @param buffer
+   * @param offset position du premier octet dans le buffer
+   * @param byteLength
+   */
+  BitReader(final ByteBuffer buffer, final int offset, final int byteLength)
+  {
+    this.buffer = buffer;
+    this.offset = offset;
+    this.bitLimit = byteLength << 3;
+  }
+
+  /**
+   * 
+   * @return
+   */
+  boolean readBit()
+  {
+    return readBits(1) != 0;
+  }
+
+  /**
+   * 
+   * @param nbBits nombre de bits a lire (0 a 64)
+   * @return
+   */
+  long readBits(final int nbBits)
+  {
+    if (bitPosition + nbBits > bitLimit)
+    {
+      throw new IllegalStateException("End of block reached (" + bitPosition + " + " + nbBits + " > " + bitLimit + ")");
+    }
+
+    long value = 0;
+    int remaining = nbBits;
+    while (remaining > 0)
+    {
+      final int available = 8 - (bitPosition & 7);
+      final int taken = Math.min(available, remaining);
+      final int current = buffer.get(offset + (bitPosition >>> 3)) & 0xFF;
+      final int bits = (current >>> (available - taken)) & ((1 << taken) - 1);
+      value = (value << taken) | bits;
+      bitPosition += taken;
+      remaining -= taken;
+    }
+
+    return value;
+  }
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises.history;
+
+/**
+ * Ecriture d'un flux de bits (poids fort en premier).
+ * 
+ * @author pedro.m
+ */
+final class BitWriter
+{
+  private static final int DEFAULT_CAPACITY = 64;
+
+  private byte[]           bytes            = new byte[DEFAULT_CAPACITY];
+  private int              bitLength;
+
+  /**
+   * 
+   * @param bit
+   */
+  void writeBit(final boolean bit)
+  {
+    writeBits(bit ? 1 : 0, 1);
+  }
+
+  /**
+   * 
+   * @param value
+   * @param nbBits nombre de bits de poids faible de value a ecrire (0 a 64)
+   */
+  void writeBits(final long value, final int nbBits)
+  {
+    ensureCapacity(bitLength + nbBits);
+
+    int remaining = nbBits;
+    while (remaining > 0)
+    {
+      final int free = 8 - (bitLength & 7);
+      final int taken = Math.min(free, remaining);
+      final int bits = (int)(value >>> (remaining - taken)) & ((1 << taken) - 1);
+      bytes[bitLength >>> 3] |= (byte)(bits << (free - taken));
+      bitLength += taken;
+      remaining -= taken;
+    }
+  }
+
+  /**
+   * 
+   * @param nbBits
+   */
+  private void ensureCapacity(final int nbBits)
+  {
+    final int needed = (nbBits + 7) >>> 3;
+    if (needed > bytes.length)
+    {
+      final byte[] newBytes = new byte[Math.max(needed, bytes.length << 1)];
+      System.arraycopy(bytes, 0, newBytes, 0, bytes.length);
+      bytes = newBytes;
+    }
+  }
+
+  /**
+   * 
+   * @return
+   */
+  int getBitLength()
+  {
+    return bitLength;
+  }
+
+  /**
+   * 
+   * @return
+   */
+  int getByteLength()
+  {
+    return (bitLength + 7) >>> 3;
+  }
+
+  /**
+   * 
+   * @return le buffer interne (getByteLength() octets significatifs)
+   */
+  byte[] getBytes()
+  {
+    return bytes;
+  }
+
+  /**
+   * 
+   */
+  void reset()
+  {
+    final int byteLength = getByteLength();
+    for (int i = 0; i < byteLength; i++)
+    {
+      bytes[i] = 0;
+    }
+    bitLength = 0;
+  }
+}
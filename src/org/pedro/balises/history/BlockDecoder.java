@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises.history;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodage d'un bloc ecrit par {@link BlockEncoder}.
+ * 
+ * @author pedro.m
+ */
+final class BlockDecoder
+{
+  private final BitReader reader;
+  private final int       count;
+  private final int       nbValues;
+  private int             read;
+  private long            timestamp;
+  private long            lastDelta;
+  private final long[]    lastBits;
+  private final int[]     lastLeading;
+  private final int[]     lastTrailing;
+  private final double[]  values;
+
+  /**
+   * 
+   * @param buffer
+   * @param offset
+   * @param byteLength
+   * @param count nombre de points du bloc
+   * @param nbValues
+   */
+  BlockDecoder(final ByteBuffer buffer, final int offset, final int byteLength, final int count, final int nbValues)
+  {
+    this.reader = new BitReader(buffer, offset, byteLength);
+    this.count = count;
+    this.nbValues = nbValues;
+    this.lastBits = new long[nbValues];
+    this.lastLeading = new int[nbValues];
+    this.lastTrailing = new int[nbValues];
+    this.values = new double[nbValues];
+  }
+
+  /**
+   * 
+   * @return false si le bloc est termine
+   */
+  boolean next()
+  {
+    if (read >= count)
+    {
+      return false;
+    }
+
+    // Timestamp
+    if (read == 0)
+    {
+      timestamp = reader.readBits(64);
+    }
+    else
+    {
+      lastDelta += readDeltaOfDelta();
+      timestamp += lastDelta;
+    }
+
+    // Valeurs
+    for (int i = 0; i < nbValues; i++)
+    {
+      if (read == 0)
+      {
+        lastBits[i] = reader.readBits(64);
+      }
+      else
+      {
+        lastBits[i] ^= readXor(i);
+      }
+      values[i] = Double.longBitsToDouble(lastBits[i]);
+    }
+
+    read++;
+    return true;
+  }
+
+  /**
+   * 
+   * @return
+   */
+  private long readDeltaOfDelta()
+  {
+    if (!reader.readBit())
+    {
+      return 0;
+    }
+    if (!reader.readBit())
+    {
+      return signExtend(reader.readBits(7), 7);
+    }
+    if (!reader.readBit())
+    {
+      return signExtend(reader.readBits(9), 9);
+    }
+    if (!reader.readBit())
+    {
+      return signExtend(reader.readBits(12), 12);
+    }
+
+    return reader.readBits(64);
+  }
+
+  /**
+   * 
+   * @param value
+   * @param nbBits
+   * @return
+   */
+  private static long signExtend(final long value, final int nbBits)
+  {
+    final int shift = 64 - nbBits;
+    return (value << shift) >> shift;
+  }
+
+  /**
+   * 
+   * @param index
+   * @return
+   */
+  private long readXor(final int index)
+  {
+    // Valeur identique
+    if (!reader.readBit())
+    {
+      return 0;
+    }
+
+    // Meme fenetre que la valeur precedente
+    if (!reader.readBit())
+    {
+      return reader.readBits(64 - lastLeading[index] - lastTrailing[index]) << lastTrailing[index];
+    }
+
+    // Nouvelle fenetre
+    final int leading = (int)reader.readBits(5);
+    int significant = (int)reader.readBits(6);
+    if (significant == 0)
+    {
+      significant = 64;
+    }
+    final int trailing = 64 - leading - significant;
+    lastLeading[index] = leading;
+    lastTrailing[index] = trailing;
+
+    return reader.readBits(significant) << trailing;
+  }
+
+  /**
+   * 
+   * @return
+   */
+  long getTimestamp()
+  {
+    return timestamp;
+  }
+
+  /**
+   * 
+   * @param index
+   * @return
+   */
+  double getValue(final int index)
+  {
+    return values[index];
+  }
+}
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises.history;
+
+/**
+ * Encodage d'un bloc de points (timestamp + valeurs) d'une station, a la maniere de Gorilla :<br/>
+ * - timestamps : delta de delta, sur 1 a 68 bits (les plages de 7 a 12 bits visent des timestamps en secondes : un
+ * ecart de quelques minutes sur le pas habituel d'une station)<br/>
+ * - valeurs : XOR avec la valeur precedente, seuls les bits significatifs sont ecrits
+ * 
+ * @author pedro.m
+ */
+final class BlockEncoder
+{
+  private final int       nbValues;
+  private final BitWriter writer = new BitWriter();
+  private int             count;
+  private long            firstTimestamp;
+  private long            lastTimestamp;
+  private long            lastDelta;
+  private final long[]    lastBits;
+  private final int[]     lastLeading;
+  private final int[]     lastTrailing;
+
+  /**
+   * 
+   * @param nbValues
+   */
+  BlockEncoder(final int nbValues)
+  {
+    this.nbValues = nbValues;
+    this.lastBits = new long[nbValues];
+    this.lastLeading = new int[nbValues];
+    this.lastTrailing = new int[nbValues];
+  }
+
+  /**
+   * 
+   * @param timestamp
+   * @param values
+   */
+  void append(final long timestamp, final double[] values)
+  {
+    // Timestamp
+    if (count == 0)
+    {
+      writer.writeBits(timestamp, 64);
+      firstTimestamp = timestamp;
+    }
+    else
+    {
+      final long delta = timestamp - lastTimestamp;
+      writeDeltaOfDelta(delta - lastDelta);
+      lastDelta = delta;
+    }
+    lastTimestamp = timestamp;
+
+    // Valeurs
+    for (int i = 0; i < nbValues; i++)
+    {
+      final long bits = Double.doubleToRawLongBits(values[i]);
+      if (count == 0)
+      {
+        writer.writeBits(bits, 64);
+        lastLeading[i] = -1;
+      }
+      else
+      {
+        writeXor(i, bits ^ lastBits[i]);
+      }
+      lastBits[i] = bits;
+    }
+
+    count++;
+  }
+
+  /**
+   * 
+   * @param dod
+   */
+  private void writeDeltaOfDelta(final long dod)
+  {
+    if (dod == 0)
+    {
+      writer.writeBits(0, 1);
+    }
+    else if ((dod >= -64) && (dod <= 63))
+    {
+      writer.writeBits(0x2, 2);
+      writer.writeBits(dod, 7);
+    }
+    else if ((dod >= -256) && (dod <= 255))
+    {
+      writer.writeBits(0x6, 3);
+      writer.writeBits(dod, 9);
+    }
+    else if ((dod >= -2048) && (dod <= 2047))
+    {
+      writer.writeBits(0xE, 4);
+      writer.writeBits(dod, 12);
+    }
+    else
+    {
+      writer.writeBits(0xF, 4);
+      writer.writeBits(dod, 64);
+    }
+  }
+
+  /**
+   * 
+   * @param index
+   * @param xor
+   */
+  private void writeXor(final int index, final long xor)
+  {
+    // Valeur identique
+    if (xor == 0)
+    {
+      writer.writeBits(0, 1);
+      return;
+    }
+    writer.writeBits(1, 1);
+
+    // Bits significatifs dans la meme fenetre que la valeur precedente
+    final int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+    final int trailing = Long.numberOfTrailingZeros(xor);
+    if ((lastLeading[index] >= 0) && (leading >= lastLeading[index]) && (trailing >= lastTrailing[index]))
+    {
+      writer.writeBits(0, 1);
+      writer.writeBits(xor >>> lastTrailing[index], 64 - lastLeading[index] - lastTrailing[index]);
+      return;
+    }
+
+    // Nouvelle fenetre
+    final int significant = 64 - leading - trailing;
+    writer.writeBits(1, 1);
+    writer.writeBits(leading, 5);
+    writer.writeBits(significant == 64 ? 0 : significant, 6);
+    writer.writeBits(xor >>> trailing, significant);
+    lastLeading[index] = leading;
+    lastTrailing[index] = trailing;
+  }
+
+  /**
+   * 
+   * @return
+   */
+  int getCount()
+  {
+    return count;
+  }
+
+  /**
+   * 
+   * @return
+   */
+  long getFirstTimestamp()
+  {
+    return firstTimestamp;
+  }
+
+  /**
+   * 
+   * @return
+   */
+  long getLastTimestamp()
+  {
+    return lastTimestamp;
+  }
+
+  /**
+   * 
+   * @return
+   */
+  BitWriter getWriter()
+  {
+    return writer;
+  }
+
+  /**
+   * 
+   */
+  void reset()
+  {
+    writer.reset();
+    count = 0;
+    lastDelta = 0;
+  }
+}
@@ -0,0 +1,615 @@
+/*******************************************************************************
+ * BalisesLib is Copyright 2012 by Pedro M.
+ * 
+ * This file is part of BalisesLib.
+ *
+ * BalisesLib is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * BalisesLib is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ * 
+ * Commercial Distribution License
+ * If you would like to distribute BalisesLib (or portions thereof) under a
+ * license other than the "GNU Lesser General Public License, version 3", please
+ * contact Pedro M (pedro.pub@free.fr).
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BalisesLib. If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.pedro.balises.history;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.pedro.balises.Releve;
+
+/**
+ * Historique local des releves, par station, en ajout seul.<br/>
+ * Les points d'une station sont compresses par blocs (delta de delta pour les timestamps, XOR pour les valeurs, cf
+ * {@link BlockEncoder}, timestamps a la seconde). Les blocs termines sont ajoutes a des fichiers segments, relus par
+ * memory-mapping.<br/>
+ * Le bloc en cours de chaque station reste en memoire jusqu'a ce qu'il soit plein, ou jusqu'a {@link #flush()} :
+ * {@link #flushIfDue()}, appele par les providers a chaque publication de releves, borne ainsi la perte en cas d'arret
+ * brutal a l'intervalle de flush (sans reduire les blocs a quelques points).
+ * 
+ * @author pedro.m
+ */
+public final class ReleveHistory
+{
+  // Valeurs historisees
+  public static final int             VENT_MOYEN             = 0;
+  public static final int             VENT_MINI              = 1;
+  public static final int             VENT_MAXI              = 2;
+  public static final int             DIRECTION_MOYENNE      = 3;
+  public static final int             DIRECTION_INSTANTANEE  = 4;
+  public static final int             TEMPERATURE            = 5;
+  public static final int             POINT_ROSEE            = 6;
+  public static final int             HYDROMETRIE            = 7;
+  public static final int             PRESSION               = 8;
+  public static final int             HUMIDITE               = 9;
+  private static final int            NB_VALUES              = 10;
+
+  private static final long           MILLIS_SECONDE         = 1000;
+  private static final long           MILLIS_HEURE           = 3600 * MILLIS_SECONDE;
+  public static final long            DEFAULT_FLUSH_INTERVAL = 3600 * MILLIS_SECONDE;
+  private static final int            DEFAULT_BLOCK_SIZE     = 144;
+  private static final int            DEFAULT_SEGMENT_SIZE   = 4 * 1024 * 1024;
+  private static final String         SEGMENT_PREFIX         = "history-";
+  private static final String         SEGMENT_SUFFIX         = ".seg";
+  private static final int            RECORD_MAGIC           = 0x52484232;                    // "RHB2" (secondes)
+  private static final int            RECORD_MAGIC_MILLIS    = 0x52484231;                    // "RHB1" (millisecondes)
+  private static final Charset        CHARSET                = Charset.forName("UTF-8");
+
+  private final File                  directory;
+  private final int                   blockSize;
+  private final int                   segmentSize;
+  private final Map<String, Station>  stations               = new HashMap<String, Station>();
+  private final List<Segment>         segments               = new ArrayList<Segment>();
+  private final double[]              values                 = new double[NB_VALUES];
+  private final ByteArrayOutputStream recordBuffer           = new ByteArrayOutputStream();
+  private FileOutputStream            output;
+  private long                        flushInterval          = DEFAULT_FLUSH_INTERVAL;
+  private long                        lastFlush              = System.currentTimeMillis();
+
+  /**
+   * Fichier segment
+   */
+  private static final class Segment
+  {
+    final File        file;
+    MappedByteBuffer buffer;
+
+    /**
+     * 
+     * @param file
+     */
+    Segment(final File file)
+    {
+      this.file = file;
+    }
+
+    /**
+     * 
+     * @param neededLength
+     * @return le segment mappe en memoire (au moins neededLength octets)
+     * @throws IOException
+     */
+    ByteBuffer map(final long neededLength) throws IOException
+    {
+      if ((buffer == null) || (buffer.capacity() < neededLength))
+      {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+          buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+        finally
+        {
+          raf.close();
+        }
+      }
+
+      return buffer;
+    }
+  }
+
+  /**
+   * Bloc termine
+   */
+  private static final class Block
+  {
+    final int  segment;
+    final int  offset;
+    final int  length;
+    final int  count;
+    final long firstTimestamp;
+    final long lastTimestamp;
+    final long unit;
+
+    /**
+     * 
+     * @param segment
+     * @param offset
+     * @param length
+     * @param count
+     * @param firstTimestamp (millisecondes)
+     * @param lastTimestamp (millisecondes)
+     * @param unit millisecondes par unite des timestamps encodes dans le bloc
+     */
+    Block(final int segment, final int offset, final int length, final int count, final long firstTimestamp, final long lastTimestamp, final long unit)
+    {
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+      this.count = count;
+      this.firstTimestamp = firstTimestamp;
+      this.lastTimestamp = lastTimestamp;
+      this.unit = unit;
+    }
+  }
+
+  /**
+   * Historique d'une station
+   */
+  private static final class Station
+  {
+    final List<Block> blocks        = new ArrayList<Block>();
+    BlockEncoder      current;
+    long              lastTimestamp = Long.MIN_VALUE;
+  }
+
+  /**
+   * 
+   * @param directory repertoire des segments (cree si besoin)
+   * @throws IOException
+   */
+  public ReleveHistory(final File directory) throws IOException
+  {
+    this(directory, DEFAULT_BLOCK_SIZE, DEFAULT_SEGMENT_SIZE);
+  }
+
+  /**
+   * 
+   * @param directory repertoire des segments (cree si besoin)
+   * @param blockSize nombre de points par bloc
+   * @param segmentSize taille (octets) au dela de laquelle un nouveau segment est commence
+   * @throws IOException
+   */
+  public ReleveHistory(final File directory, final int blockSize, final int segmentSize) throws IOException
+  {
+    this.directory = directory;
+    this.blockSize = blockSize;
+    this.segmentSize = segmentSize;
+
+    if (!directory.isDirectory() && !directory.mkdirs())
+    {
+      throw new IOException("Unable to create history directory " + directory);
+    }
+
+    loadSegments();
+  }
+
+  /**
+   * Lecture de l'index des segments existants
+   * 
+   * @throws IOException
+   */
+  private void loadSegments() throws IOException
+  {
+    final File[] files = directory.listFiles(new FilenameFilter()
+    {
+      @Override
+      public boolean accept(final File dir, final String name)
+      {
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+      }
+    });
+    if (files == null)
+    {
+      return;
+    }
+    Arrays.sort(files);
+
+    for (final File file : files)
+    {
+      final Segment segment = new Segment(file);
+      final int segmentIndex = segments.size();
+      segments.add(segment);
+
+      final ByteBuffer buffer = segment.map(0);
+      int position = 0;
+      while (position + 4 <= buffer.capacity())
+      {
+        final int recordStart = position;
+        try
+        {
+          position = readRecordHeader(buffer, position, segmentIndex);
+        }
+        catch (final RuntimeException re)
+        {
+          // Enregistrement tronque (arret brutal pendant l'ecriture) : ignore
+          System.err.println("History segment " + file.getName() + " truncated at " + recordStart);
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * 
+   * @param buffer
+   * @param position
+   * @param segmentIndex
+   * @return la position de l'enregistrement suivant
+   */
+  private int readRecordHeader(final ByteBuffer buffer, final int position, final int segmentIndex)
+  {
+    int index = position;
+    final int magic = buffer.getInt(index);
+    if ((magic != RECORD_MAGIC) && (magic != RECORD_MAGIC_MILLIS))
+    {
+      throw new IllegalStateException("Bad record magic");
+    }
+    index += 4;
+
+    // Id
+    final int idLength = buffer.getShort(index) & 0xFFFF;
+    index += 2;
+    final byte[] idBytes = new byte[idLength];
+    for (int i = 0; i < idLength; i++)
+    {
+      idBytes[i] = buffer.get(index + i);
+    }
+    index += idLength;
+    final String id = new String(idBytes, CHARSET);
+
+    // Bloc
+    final long firstTimestamp = buffer.getLong(index);
+    final long lastTimestamp = buffer.getLong(index + 8);
+    final int count = buffer.getInt(index + 16);
+    final int length = buffer.getInt(index + 20);
+    index += 24;
+    if (index + length > buffer.capacity())
+    {
+      throw new IllegalStateException("Truncated block");
+    }
+
+    final Station station = getStation(id);
+    station.blocks.add(new Block(segmentIndex, index, length, count, firstTimestamp, lastTimestamp, magic == RECORD_MAGIC ? MILLIS_SECONDE : 1));
+    station.lastTimestamp = Math.max(station.lastTimestamp, lastTimestamp);
+
+    return index + length;
+  }
+
+  /**
+   * 
+   * @param id
+   * @return
+   */
+  private Station getStation(final String id)
+  {
+    Station station = stations.get(id);
+    if (station == null)
+    {
+      station = new Station();
+      stations.put(id, station);
+    }
+
+    return station;
+  }
+
+  /**
+   * Ajout d'un releve a l'historique de sa station, date tronquee a la seconde (ignore si non posterieur au dernier
+   * point connu).
+   * 
+   * @param releve
+   * @throws IOException
+   */
+  public synchronized void append(final Releve releve) throws IOException
+  {
+    if ((releve.id == null) || (releve.date == null))
+    {
+      return;
+    }
+
+    final Station station = getStation(releve.id);
+    final long timestamp = releve.date.getTime() / MILLIS_SECONDE * MILLIS_SECONDE;
+    if (timestamp <= station.lastTimestamp)
+    {
+      return;
+    }
+
+    // Valeurs
+    values[VENT_MOYEN] = releve.ventMoyen;
+    values[VENT_MINI] = releve.ventMini;
+    values[VENT_MAXI] = releve.ventMaxi;
+    values[DIRECTION_MOYENNE] = toDouble(releve.directionMoyenne);
+    values[DIRECTION_INSTANTANEE] = toDouble(releve.directionInstantanee);
+    values[TEMPERATURE] = releve.temperature;
+    values[POINT_ROSEE] = releve.pointRosee;
+    values[HYDROMETRIE] = releve.hydrometrie;
+    values[PRESSION] = releve.pression;
+    values[HUMIDITE] = toDouble(releve.humidite);
+
+    // Ajout au bloc courant
+    if (station.current == null)
+    {
+      station.current = new BlockEncoder(NB_VALUES);
+    }
+    station.current.append(timestamp / MILLIS_SECONDE, values);
+    station.lastTimestamp = timestamp;
+
+    // Bloc plein
+    if (station.current.getCount() >= blockSize)
+    {
+      writeBlock(releve.id, station);
+    }
+  }
+
+  /**
+   * 
+   * @param value
+   * @return
+   */
+  private static double toDouble(final int value)
+  {
+    return (value == Integer.MIN_VALUE ? Double.NaN : value);
+  }
+
+  /**
+   * 
+   * @param value
+   * @return
+   */
+  private static int toInt(final double value)
+  {
+    return (Double.isNaN(value) ? Integer.MIN_VALUE : (int)value);
+  }
+
+  /**
+   * Ecriture du bloc courant de la station dans le segment courant
+   * 
+   * @param id
+   * @param station
+   * @throws IOException
+   */
+  private void writeBlock(final String id, final Station station) throws IOException
+  {
+    final BlockEncoder encoder = station.current;
+    if ((encoder == null) || (encoder.getCount() == 0))
+    {
+      return;
+    }
+
+    // Segment courant
+    if ((output == null) || (output.getChannel().position() >= segmentSize))
+    {
+      openNewSegment();
+    }
+    final int segmentIndex = segments.size() - 1;
+
+    // Enregistrement
+    final byte[] idBytes = id.getBytes(CHARSET);
+    final int length = encoder.getWriter().getByteLength();
+    recordBuffer.reset();
+    final DataOutputStream dos = new DataOutputStream(recordBuffer);
+    dos.writeInt(RECORD_MAGIC);
+    dos.writeShort(idBytes.length);
+    dos.write(idBytes);
+    dos.writeLong(encoder.getFirstTimestamp() * MILLIS_SECONDE);
+    dos.writeLong(encoder.getLastTimestamp() * MILLIS_SECONDE);
+    dos.writeInt(encoder.getCount());
+    dos.writeInt(length);
+    dos.write(encoder.getWriter().getBytes(), 0, length);
+    dos.flush();
+
+    // Ecriture
+    final int offset = (int)output.getChannel().position() + recordBuffer.size() - length;
+    recordBuffer.writeTo(output);
+    output.flush();
+
+    // Index
+    station.blocks.add(new Block(segmentIndex, offset, length, encoder.getCount(), encoder.getFirstTimestamp() * MILLIS_SECONDE, encoder.getLastTimestamp() * MILLIS_SECONDE, MILLIS_SECONDE));
+    encoder.reset();
+  }
+
+  /**
+   * 
+   * @throws IOException
+   */
+  private void openNewSegment() throws IOException
+  {
+    if (output != null)
+    {
+      output.close();
+    }
+
+    final File file = new File(directory, SEGMENT_PREFIX + String.format("%08d", Integer.valueOf(segments.size())) + SEGMENT_SUFFIX);
+    output = new FileOutputStream(file, true);
+    segments.add(new Segment(file));
+  }
+
+  /**
+   * Ecriture des blocs en cours de toutes les stations.
+   * 
+   * @throws IOException
+   */
+  public synchronized void flush() throws IOException
+  {
+    lastFlush = System.currentTimeMillis();
+    for (final Map.Entry<String, Station> entry : stations.entrySet())
+    {
+      writeBlock(entry.getKey(), entry.getValue());
+    }
+  }
+
+  /**
+   * Ecriture des blocs en cours si le dernier flush date de plus de l'intervalle de flush.
+   * 
+   * @return true si les blocs ont ete ecrits
+   * @throws IOException
+   */
+  public synchronized boolean flushIfDue() throws IOException
+  {
+    if (System.currentTimeMillis() - lastFlush < flushInterval)
+    {
+      return false;
+    }
+
+    flush();
+    return true;
+  }
+
+  /**
+   * 
+   * @param flushInterval duree (ms) au dela de laquelle {@link #flushIfDue()} ecrit les blocs en cours
+   */
+  public synchronized void setFlushInterval(final long flushInterval)
+  {
+    this.flushInterval = flushInterval;
+  }
+
+  /**
+   * 
+   * @throws IOException
+   */
+  public synchronized void close() throws IOException
+  {
+    flush();
+    if (output != null)
+    {
+      output.close();
+      output = null;
+    }
+  }
+
+  /**
+   * 
+   * @param id
+   * @return le timestamp du dernier point de la station, -1 si aucun
+   */
+  public synchronized long getLastTimestamp(final String id)
+  {
+    final Station station = stations.get(id);
+    return ((station == null) || (station.lastTimestamp == Long.MIN_VALUE) ? -1 : station.lastTimestamp);
+  }
+
+  /**
+   * Releves des dernieres heures de la station (par rapport a son dernier point).
+   * 
+   * @param id
+   * @param hours
+   * @return
+   * @throws IOException
+   */
+  public List<Releve> getLastHours(final String id, final int hours) throws IOException
+  {
+    final long last = getLastTimestamp(id);
+    if (last < 0)
+    {
+      return new ArrayList<Releve>();
+    }
+
+    return getReleves(id, last - hours * MILLIS_HEURE, last);
+  }
+
+  /**
+   * Releves de la station entre deux dates (incluses), par ordre chronologique.
+   * 
+   * @param id
+   * @param from
+   * @param to
+   * @return
+   * @throws IOException
+   */
+  public synchronized List<Releve> getReleves(final String id, final long from, final long to) throws IOException
+  {
+    final List<Releve> retour = new ArrayList<Releve>();
+    final Station station = stations.get(id);
+    if (station == null)
+    {
+      return retour;
+    }
+
+    // Blocs termines
+    for (final Block block : station.blocks)
+    {
+      if ((block.lastTimestamp >= from) && (block.firstTimestamp <= to))
+      {
+        final ByteBuffer buffer = segments.get(block.segment).map(block.offset + block.length);
+        decode(id, new BlockDecoder(buffer, block.offset, block.length, block.count, NB_VALUES), block.unit, from, to, retour);
+      }
+    }
+
+    // Bloc en cours
+    final BlockEncoder current = station.current;
+    if ((current != null) && (current.getCount() > 0) && (current.getLastTimestamp() * MILLIS_SECONDE >= from) && (current.getFirstTimestamp() * MILLIS_SECONDE <= to))
+    {
+      final BitWriter writer = current.getWriter();
+      final ByteBuffer buffer = ByteBuffer.wrap(writer.getBytes(), 0, writer.getByteLength());
+      decode(id, new BlockDecoder(buffer, 0, writer.getByteLength(), current.getCount(), NB_VALUES), MILLIS_SECONDE, from, to, retour);
+    }
+
+    return retour;
+  }
+
+  /**
+   * 
+   * @param id
+   * @param decoder
+   * @param unit millisecondes par unite des timestamps du bloc
+   * @param from
+   * @param to
+   * @param releves
+   */
+  private static void decode(final String id, final BlockDecoder decoder, final long unit, final long from, final long to, final List<Releve> releves)
+  {
+    while (decoder.next())
+    {
+      final long timestamp = decoder.getTimestamp() * unit;
+      if (timestamp > to)
+      {
+        return;
+      }
+      if (timestamp < from)
+      {
+        continue;
+      }
+
+      final Releve releve = new Releve();
+      releve.setId(id);
+      releve.date = new Date(timestamp);
+      releve.ventMoyen = decoder.getValue(VENT_MOYEN);
+      releve.ventMini = decoder.getValue(VENT_MINI);
+      releve.ventMaxi = decoder.getValue(VENT_MAXI);
+      releve.directionMoyenne = toInt(decoder.getValue(DIRECTION_MOYENNE));
+      releve.directionInstantanee = toInt(decoder.getValue(DIRECTION_INSTANTANEE));
+      releve.temperature = decoder.getValue(TEMPERATURE);
+      releve.pointRosee = decoder.getValue(POINT_ROSEE);
+      releve.hydrometrie = decoder.getValue(HYDROMETRIE);
+      releve.pression = decoder.getValue(PRESSION);
+      releve.humidite = toInt(decoder.getValue(HUMIDITE));
+      releves.add(releve);
+    }
+  }
+}
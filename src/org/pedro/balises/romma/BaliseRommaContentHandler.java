@@ -27,147 +27,114 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.pedro.balises.Balise;
+import org.pedro.balises.CharAccumulator;
+import org.pedro.balises.TagBindingContentHandler;
+import org.pedro.balises.TagBindings;
 import org.pedro.balises.Utils;
 import org.xml.sax.Attributes;
-import org.xml.sax.ContentHandler;
-import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
 
 /**
  * 
  * @author pedro.m
  */
-public final class BaliseRommaContentHandler implements ContentHandler
+public final class BaliseRommaContentHandler extends TagBindingContentHandler<BaliseRommaContentHandler>
 {
   // Constantes
-  private static final String       STRING_VIDE         = "";
-  private static final String       STATION_TAG         = "station";
-  private static final String       STATION_ID_TAG      = "stationID";
-  private static final String       LIEU_TAG            = "lieu";
-  private static final String       ALTITUDE_TAG        = "altitude";
-  private static final String       ALTITUDE_VALUE_ATT  = "value";
-  private static final String       COORD_TAG           = "coord";
-  private static final String       COORD_LATITUDE_ATT  = "lat";
-  private static final String       COORD_LONGITUDE_ATT = "lon";
+  private static final String                                 STATION_TAG         = "station";
+  private static final String                                 STATION_ID_TAG      = "stationID";
+  private static final String                                 LIEU_TAG            = "lieu";
+  private static final String                                 ALTITUDE_TAG        = "altitude";
+  private static final String                                 ALTITUDE_VALUE_ATT  = "value";
+  private static final String                                 COORD_TAG           = "coord";
+  private static final String                                 COORD_LATITUDE_ATT  = "lat";
+  private static final String                                 COORD_LONGITUDE_ATT = "lon";
+  private static final TagBindings<BaliseRommaContentHandler> BINDINGS            = new TagBindings<BaliseRommaContentHandler>();
 
   // Membres
-  private final Map<String, Balise> balises             = new HashMap<String, Balise>();
-  private Balise                    balise;
-  private String                    currentString       = STRING_VIDE;
+  private Map<String, Balise>                                 balises             = new HashMap<String, Balise>();
+  private Balise                                              balise;
 
-  /**
-   * Recuperation de la liste des balises
-   * 
-   * @return
-   */
-  public Map<String, Balise> getBalises()
-  {
-    return balises;
-  }
-
-  @Override
-  public void characters(final char[] ch, final int start, final int length) throws SAXException
-  {
-    currentString += new String(ch, start, length);
-  }
-
-  @Override
-  public void endElement(final String uri, final String localName, final String qName) throws SAXException
+  static
   {
-    String finalName = qName;
-    if ((finalName == null) || (finalName.length() == 0))
-    {
-      finalName = localName;
-    }
-
-    if (STATION_ID_TAG.equals(finalName))
+    BINDINGS.bind(STATION_TAG, new TagBindings.Binding<BaliseRommaContentHandler>()
     {
-      balise.setId(currentString);
-      balises.put(currentString, balise);
-    }
-    else if (LIEU_TAG.equals(finalName))
+      @Override
+      public void start(final BaliseRommaContentHandler handler, final Attributes atts)
+      {
+        handler.balise = new Balise();
+        handler.balise.active = Utils.BOOLEAN_TRUE;
+      }
+    });
+
+    BINDINGS.bind(STATION_ID_TAG, new TagBindings.Binding<BaliseRommaContentHandler>()
     {
-      balise.nom = currentString;
-    }
-
-    // RAZ
-    currentString = STRING_VIDE;
-  }
-
-  @Override
-  public void startDocument() throws SAXException
-  {
-    balises.clear();
-    currentString = STRING_VIDE;
-  }
-
-  @Override
-  public void startElement(final String uri, final String localName, final String qName, final Attributes atts) throws SAXException
-  {
-    String finalName = qName;
-    if ((finalName == null) || (finalName.length() == 0))
+      @Override
+      public void end(final BaliseRommaContentHandler handler, final CharAccumulator text)
+      {
+        handler.balise.setId(text.toString());
+        handler.balises.put(handler.balise.id, handler.balise);
+      }
+    });
+
+    BINDINGS.bind(LIEU_TAG, new TagBindings.Binding<BaliseRommaContentHandler>()
     {
-      finalName = localName;
-    }
-
-    if (STATION_TAG.equals(finalName))
+      @Override
+      public void end(final BaliseRommaContentHandler handler, final CharAccumulator text)
+      {
+        handler.balise.nom = text.toString();
+      }
+    });
+
+    BINDINGS.bind(COORD_TAG, new TagBindings.Binding<BaliseRommaContentHandler>()
     {
-      balise = new Balise();
-      balise.active = Utils.BOOLEAN_TRUE;
-    }
-    else if (COORD_TAG.equals(finalName))
+      @Override
+      public void start(final BaliseRommaContentHandler handler, final Attributes atts)
+      {
+        handler.balise.latitude = Utils.parsePrimitiveDouble(atts.getValue(COORD_LATITUDE_ATT));
+        handler.balise.longitude = Utils.parsePrimitiveDouble(atts.getValue(COORD_LONGITUDE_ATT));
+      }
+    });
+
+    BINDINGS.bind(ALTITUDE_TAG, new TagBindings.Binding<BaliseRommaContentHandler>()
     {
-      balise.latitude = Utils.parsePrimitiveDouble(atts.getValue(COORD_LATITUDE_ATT));
-      balise.longitude = Utils.parsePrimitiveDouble(atts.getValue(COORD_LONGITUDE_ATT));
-    }
-    else if (ALTITUDE_TAG.equals(finalName))
-    {
-      balise.altitude = Utils.parsePrimitiveInteger(atts.getValue(ALTITUDE_VALUE_ATT));
-    }
-
-    // RAZ
-    currentString = STRING_VIDE;
-  }
-
-  @Override
-  public void startPrefixMapping(final String arg0, final String arg1) throws SAXException
-  {
-    // Nothing to do
-  }
-
-  @Override
-  public void endDocument() throws SAXException
-  {
-    // Nothing to do
-  }
-
-  @Override
-  public void endPrefixMapping(final String arg0) throws SAXException
-  {
-    // Nothing to do
+      @Override
+      public void start(final BaliseRommaContentHandler handler, final Attributes atts)
+      {
+        handler.balise.altitude = Utils.parsePrimitiveInteger(atts.getValue(ALTITUDE_VALUE_ATT));
+      }
+    });
   }
 
-  @Override
-  public void ignorableWhitespace(final char[] ch, final int start, final int length) throws SAXException
+  /**
+   * 
+   */
+  public BaliseRommaContentHandler()
   {
-    // Nothing to do
+    super(BINDINGS, false);
   }
 
-  @Override
-  public void processingInstruction(final String arg0, final String arg1) throws SAXException
+  /**
+   * Recuperation de la liste des balises
+   * 
+   * @return
+   */
+  public Map<String, Balise> getBalises()
   {
-    // Nothing to do
+    return balises;
   }
 
   @Override
-  public void setDocumentLocator(final Locator arg0)
+  protected BaliseRommaContentHandler getTarget()
   {
-    // Nothing to do
+    return this;
   }
 
   @Override
-  public void skippedEntity(final String arg0) throws SAXException
+  public void startDocument() throws SAXException
   {
-    // Nothing to do
+    // RAZ (la map precedente a ete transmise au provider)
+    balises = new HashMap<String, Balise>();
+    super.startDocument();
   }
 }
@@ -23,317 +23,207 @@
  ******************************************************************************/
 package org.pedro.balises.romma;
 
-import java.text.DateFormat;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.regex.Pattern;
+import java.util.Date;
 
+import org.pedro.balises.CharAccumulator;
+import org.pedro.balises.FeedDateParser;
 import org.pedro.balises.Releve;
 import org.pedro.balises.ReleveParserListener;
+import org.pedro.balises.TagBindingContentHandler;
+import org.pedro.balises.TagBindings;
+import org.pedro.balises.TagTable;
 import org.pedro.balises.Utils;
 import org.xml.sax.Attributes;
-import org.xml.sax.ContentHandler;
-import org.xml.sax.Locator;
-import org.xml.sax.SAXException;
 
 /**
  * 
  * @author pedro.m
  */
-public class ReleveRommaContentHandler implements ContentHandler
+public class ReleveRommaContentHandler extends TagBindingContentHandler<ReleveRommaContentHandler>
 {
   // Directions
-  private static final String       DIR_N                          = "N";
-  private static final String       DIR_NNE                        = "NNE";
-  private static final String       DIR_NE                         = "NE";
-  private static final String       DIR_ENE                        = "ENE";
-  private static final String       DIR_E                          = "E";
-  private static final String       DIR_ESE                        = "ESE";
-  private static final String       DIR_SE                         = "SE";
-  private static final String       DIR_SSE                        = "SSE";
-  private static final String       DIR_S                          = "S";
-  private static final String       DIR_SSO                        = "SSO";
-  private static final String       DIR_SO                         = "SO";
-  private static final String       DIR_OSO                        = "OSO";
-  private static final String       DIR_O                          = "O";
-  private static final String       DIR_ONO                        = "ONO";
-  private static final String       DIR_NO                         = "NO";
-  private static final String       DIR_NNO                        = "NNO";
+  private static final String                                 DIR_N                          = "N";
+  private static final String                                 DIR_NNE                        = "NNE";
+  private static final String                                 DIR_NE                         = "NE";
+  private static final String                                 DIR_ENE                        = "ENE";
+  private static final String                                 DIR_E                          = "E";
+  private static final String                                 DIR_ESE                        = "ESE";
+  private static final String                                 DIR_SE                         = "SE";
+  private static final String                                 DIR_SSE                        = "SSE";
+  private static final String                                 DIR_S                          = "S";
+  private static final String                                 DIR_SSO                        = "SSO";
+  private static final String                                 DIR_SO                         = "SO";
+  private static final String                                 DIR_OSO                        = "OSO";
+  private static final String                                 DIR_O                          = "O";
+  private static final String                                 DIR_ONO                        = "ONO";
+  private static final String                                 DIR_NO                         = "NO";
+  private static final String                                 DIR_NNO                        = "NNO";
+  private static final TagTable                               DIRECTIONS                     = new TagTable(true, DIR_N, DIR_NNE, DIR_NE, DIR_ENE, DIR_E, DIR_ESE, DIR_SE, DIR_SSE, DIR_S, DIR_SSO, DIR_SO, DIR_OSO, DIR_O, DIR_ONO, DIR_NO, DIR_NNO);
+  private static final int[]                                  DIRECTION_DEGRES               = { 0, 22, 45, 67, 90, 112, 135, 157, 180, 202, 225, 247, 270, 292, 315, 337 };
 
   // Constantes
-  private static final char         CHAR_SPACE                     = ' ';
-  protected static final String     STRING_MOINS_MOINS             = "--";
-  protected static final String     STRING_MOINS_MOINS_POINT_MOINS = "--.-";
-  private static final String       STRING_VIDE                    = "";
-  private static final String       RELEVE_TAG                     = "releve";
-  private static final String       STATION_ID_TAG                 = "stationID";
-  private static final String       DATE_TAG                       = "date";
-  private static final String       VITESSE_MOY_TAG                = "vitesseVentMoy10min";
-  private static final String       DIRECTION_TAG                  = "directionVentInst";
-  private static final String       TEMPERATURE_TAG                = "temperature";
-  private static final String       RAFALE_MAXI_TAG                = "RafaleMaxi";
-  private static final Pattern      RAFALE_MAXI_HEURE_PATTERN      = Pattern.compile("\\d+:\\d+");
-  private static final String       RAFALE_MAXI_HEURE_TAG          = "RafaleMaxiHeure";
-  protected static final DateFormat RELEVE_DATE_FORMAT             = new SimpleDateFormat("dd-MM-yyyy HH:mm");
-  private static final DateFormat   RAFALE_MAXI_DATE_FORMAT        = new SimpleDateFormat("dd-MM-yyyy");
-  private static final DateFormat   RAFALE_MAXI_DATE_HEURE_FORMAT  = new SimpleDateFormat("dd-MM-yyyy HH:mm");
+  protected static final String                               STRING_MOINS_MOINS             = "--";
+  protected static final String                               STRING_MOINS_MOINS_POINT_MOINS = "--.-";
+  private static final String                                 RELEVE_TAG                     = "releve";
+  private static final String                                 STATION_ID_TAG                 = "stationID";
+  private static final String                                 DATE_TAG                       = "date";
+  private static final String                                 VITESSE_MOY_TAG                = "vitesseVentMoy10min";
+  private static final String                                 DIRECTION_TAG                  = "directionVentInst";
+  private static final String                                 TEMPERATURE_TAG                = "temperature";
+  private static final String                                 RAFALE_MAXI_TAG                = "RafaleMaxi";
+  private static final String                                 RAFALE_MAXI_HEURE_TAG          = "RafaleMaxiHeure";
+  protected static final FeedDateParser                       RELEVE_DATE_PARSER             = new FeedDateParser("dd-MM-yyyy HH:mm", XmlRommaProvider.sourceTimeZone);
+  private static final TagBindings<ReleveRommaContentHandler> BINDINGS                       = new TagBindings<ReleveRommaContentHandler>();
 
   // Membres
-  protected final StringBuilder     rafaleMaxiBuilder              = new StringBuilder();
-  protected final Releve            releve                         = new Releve();
-  protected String                  heureRafaleMaxi                = null;
-  protected String                  currentString                  = STRING_VIDE;
-  protected ReleveParserListener    listener;
+  protected final Releve                                      releve                         = new Releve();
+  protected long                                              dateReleveLocale               = -1;
+  protected long                                              heureRafaleMaxi                = -1;
+  protected ReleveParserListener                              listener;
 
-  /**
-   * 
-   * @param listener
-   */
-  protected void setListener(final ReleveParserListener listener)
-  {
-    this.listener = listener;
-  }
-
-  @Override
-  public void characters(final char[] ch, final int start, final int length) throws SAXException
-  {
-    currentString += new String(ch, start, length);
-  }
-
-  @Override
-  public void endElement(final String uri, final String localName, final String qName) throws SAXException
+  static
   {
-    String finalName = qName;
-    if ((finalName == null) || (finalName.length() == 0))
+    BINDINGS.bind(RELEVE_TAG, new TagBindings.Binding<ReleveRommaContentHandler>()
     {
-      finalName = localName;
-    }
-
-    try
-    {
-      if (RELEVE_TAG.equals(finalName))
+      @Override
+      public void start(final ReleveRommaContentHandler handler, final Attributes atts)
       {
-        // Calcul de la date/heure du vent max
-        if ((releve.date != null) && (heureRafaleMaxi != null))
-        {
-          rafaleMaxiBuilder.setLength(0);
-          rafaleMaxiBuilder.append(RAFALE_MAXI_DATE_FORMAT.format(releve.date));
-          rafaleMaxiBuilder.append(CHAR_SPACE);
-          rafaleMaxiBuilder.append(heureRafaleMaxi);
-          try
-          {
-            // Analyse date/heure
-            releve.dateHeureVentMaxi = RAFALE_MAXI_DATE_HEURE_FORMAT.parse(rafaleMaxiBuilder.toString());
-
-            // Decalage dans le fuseau horaire UTC
-            Utils.toUTC(releve.dateHeureVentMaxi, XmlRommaProvider.sourceTimeZone);
-
-            // Decalage a la veille si heure de la rafale apres le releve
-            if (releve.date.getTime() < releve.dateHeureVentMaxi.getTime())
-            {
-              releve.dateHeureVentMaxi.setTime(releve.dateHeureVentMaxi.getTime() - 86400);
-            }
-          }
-          catch (final ParseException pe)
-          {
-            // Impossible de calculer la date de la rafale maxi => effacement de la rafale
-            releve.ventMaxi = Double.NaN;
-            pe.printStackTrace(System.err);
-          }
-        }
-
-        // Notification
-        listener.onReleveParsed(releve);
+        handler.releve.clear();
+        handler.dateReleveLocale = -1;
+        handler.heureRafaleMaxi = -1;
       }
 
-      else if (STATION_ID_TAG.equals(finalName))
+      @Override
+      public void end(final ReleveRommaContentHandler handler, final CharAccumulator text)
       {
-        releve.setId(currentString);
+        handler.onReleveEnd();
       }
+    });
 
-      else if (DATE_TAG.equals(finalName))
+    BINDINGS.bind(STATION_ID_TAG, new TagBindings.Binding<ReleveRommaContentHandler>()
+    {
+      @Override
+      public void end(final ReleveRommaContentHandler handler, final CharAccumulator text)
       {
-        releve.date = RELEVE_DATE_FORMAT.parse(currentString);
-
-        // Decalage dans le fuseau horaire UTC
-        Utils.toUTC(releve.date, XmlRommaProvider.sourceTimeZone);
+        handler.releve.setId(text.toCachedString());
       }
+    });
 
-      else if (VITESSE_MOY_TAG.equals(finalName))
+    BINDINGS.bind(DATE_TAG, new TagBindings.Binding<ReleveRommaContentHandler>()
+    {
+      @Override
+      public void end(final ReleveRommaContentHandler handler, final CharAccumulator text) throws ParseException
       {
-        releve.ventMoyen = (STRING_MOINS_MOINS.equals(currentString) || STRING_MOINS_MOINS_POINT_MOINS.equals(currentString) ? Double.NaN : Utils.parsePrimitiveDouble(currentString));
+        // Analyse et decalage dans le fuseau horaire UTC
+        handler.dateReleveLocale = RELEVE_DATE_PARSER.parseWall(text);
+        handler.releve.date = new Date(Utils.toUTC(RELEVE_DATE_PARSER.parse(text)));
       }
+    });
 
-      else if (DIRECTION_TAG.equals(finalName))
+    BINDINGS.bind(VITESSE_MOY_TAG, new TagBindings.Binding<ReleveRommaContentHandler>()
+    {
+      @Override
+      public void end(final ReleveRommaContentHandler handler, final CharAccumulator text)
       {
-        final int direction = parseDirection(currentString);
-        releve.directionMoyenne = (direction < 0 ? Integer.MIN_VALUE : direction);
+        handler.releve.ventMoyen = text.parsePrimitiveDouble();
       }
+    });
 
-      else if (TEMPERATURE_TAG.equals(finalName))
+    BINDINGS.bind(DIRECTION_TAG, new TagBindings.Binding<ReleveRommaContentHandler>()
+    {
+      @Override
+      public void end(final ReleveRommaContentHandler handler, final CharAccumulator text)
       {
-        releve.temperature = (STRING_MOINS_MOINS.equals(currentString) || STRING_MOINS_MOINS_POINT_MOINS.equals(currentString) ? Double.NaN : Utils.parsePrimitiveDouble(currentString));
+        final int direction = parseDirection(text);
+        handler.releve.directionMoyenne = (direction < 0 ? Integer.MIN_VALUE : direction);
       }
+    });
 
-      else if (RAFALE_MAXI_TAG.equals(finalName))
+    BINDINGS.bind(TEMPERATURE_TAG, new TagBindings.Binding<ReleveRommaContentHandler>()
+    {
+      @Override
+      public void end(final ReleveRommaContentHandler handler, final CharAccumulator text)
       {
-        releve.ventMaxi = (STRING_MOINS_MOINS.equals(currentString) || STRING_MOINS_MOINS_POINT_MOINS.equals(currentString) ? Double.NaN : Utils.parsePrimitiveDouble(currentString));
+        handler.releve.temperature = text.parsePrimitiveDouble();
       }
+    });
 
-      else if (RAFALE_MAXI_HEURE_TAG.equals(finalName))
+    BINDINGS.bind(RAFALE_MAXI_TAG, new TagBindings.Binding<ReleveRommaContentHandler>()
+    {
+      @Override
+      public void end(final ReleveRommaContentHandler handler, final CharAccumulator text)
       {
-        heureRafaleMaxi = (RAFALE_MAXI_HEURE_PATTERN.matcher(currentString).matches() ? currentString : null);
+        handler.releve.ventMaxi = text.parsePrimitiveDouble();
       }
-    }
-    catch (final Throwable th)
-    {
-      System.err.println("Error parsing '" + currentString + "' for <" + finalName + "> (" + th.getClass().getSimpleName() + ")");
-      //th.printStackTrace(System.err);
-    }
+    });
 
-    // RAZ
-    currentString = STRING_VIDE;
+    BINDINGS.bind(RAFALE_MAXI_HEURE_TAG, new TagBindings.Binding<ReleveRommaContentHandler>()
+    {
+      @Override
+      public void end(final ReleveRommaContentHandler handler, final CharAccumulator text)
+      {
+        handler.heureRafaleMaxi = FeedDateParser.parseHeureMinute(text);
+      }
+    });
   }
 
   /**
    * 
-   * @param direction
-   * @return
    */
-  private static int parseDirection(final String direction)
-  {
-    if (DIR_N.equalsIgnoreCase(direction))
-    {
-      return 0;
-    }
-    else if (DIR_NNE.equalsIgnoreCase(direction))
-    {
-      return 22;
-    }
-    else if (DIR_NE.equalsIgnoreCase(direction))
-    {
-      return 45;
-    }
-    else if (DIR_ENE.equalsIgnoreCase(direction))
-    {
-      return 67;
-    }
-    else if (DIR_E.equalsIgnoreCase(direction))
-    {
-      return 90;
-    }
-    else if (DIR_ESE.equalsIgnoreCase(direction))
-    {
-      return 112;
-    }
-    else if (DIR_SE.equalsIgnoreCase(direction))
-    {
-      return 135;
-    }
-    else if (DIR_SSE.equalsIgnoreCase(direction))
-    {
-      return 157;
-    }
-    else if (DIR_S.equalsIgnoreCase(direction))
-    {
-      return 180;
-    }
-    else if (DIR_SSO.equalsIgnoreCase(direction))
-    {
-      return 202;
-    }
-    else if (DIR_SO.equalsIgnoreCase(direction))
-    {
-      return 225;
-    }
-    else if (DIR_OSO.equalsIgnoreCase(direction))
-    {
-      return 247;
-    }
-    else if (DIR_O.equalsIgnoreCase(direction))
-    {
-      return 270;
-    }
-    else if (DIR_ONO.equalsIgnoreCase(direction))
-    {
-      return 292;
-    }
-    else if (DIR_NO.equalsIgnoreCase(direction))
-    {
-      return 315;
-    }
-    else if (DIR_NNO.equalsIgnoreCase(direction))
-    {
-      return 337;
-    }
-
-    return -1;
-  }
-
-  @Override
-  public void startDocument() throws SAXException
+  public ReleveRommaContentHandler()
   {
-    currentString = STRING_VIDE;
-  }
-
-  @Override
-  public void startElement(final String uri, final String localName, final String qName, final Attributes atts) throws SAXException
-  {
-    String finalName = qName;
-    if ((finalName == null) || (finalName.length() == 0))
-    {
-      finalName = localName;
-    }
-
-    if (RELEVE_TAG.equals(finalName))
-    {
-      releve.clear();
-      heureRafaleMaxi = null;
-    }
-
-    // RAZ
-    currentString = STRING_VIDE;
+    super(BINDINGS, true);
   }
 
-  @Override
-  public void startPrefixMapping(final String arg0, final String arg1) throws SAXException
+  /**
+   * 
+   * @param listener
+   */
+  protected void setListener(final ReleveParserListener listener)
   {
-    // Nothing to do
+    this.listener = listener;
   }
 
   @Override
-  public void endDocument() throws SAXException
+  protected ReleveRommaContentHandler getTarget()
   {
-    // Nothing to do
+    return this;
   }
 
-  @Override
-  public void endPrefixMapping(final String arg0) throws SAXException
+  /**
+   * 
+   */
+  private void onReleveEnd()
   {
-    // Nothing to do
-  }
+    // Calcul de la date/heure du vent max
+    if ((releve.date != null) && (dateReleveLocale >= 0) && (heureRafaleMaxi >= 0))
+    {
+      // Heure de la rafale le jour du releve (heure locale)
+      long dateRafaleLocale = dateReleveLocale - (dateReleveLocale % FeedDateParser.MILLIS_JOUR) + heureRafaleMaxi;
 
-  @Override
-  public void ignorableWhitespace(final char[] ch, final int start, final int length) throws SAXException
-  {
-    // Nothing to do
-  }
+      // Decalage a la veille si heure de la rafale apres le releve
+      if (dateRafaleLocale > dateReleveLocale)
+      {
+        dateRafaleLocale -= FeedDateParser.MILLIS_JOUR;
+      }
 
-  @Override
-  public void processingInstruction(final String arg0, final String arg1) throws SAXException
-  {
-    // Nothing to do
-  }
+      // Decalage dans le fuseau horaire UTC
+      releve.dateHeureVentMaxi = new Date(Utils.toUTC(RELEVE_DATE_PARSER.toInstant(dateRafaleLocale)));
+    }
 
-  @Override
-  public void setDocumentLocator(final Locator arg0)
-  {
-    // Nothing to do
+    // Notification
+    listener.onReleveParsed(releve);
   }
 
-  @Override
-  public void skippedEntity(final String arg0) throws SAXException
+  /**
+   * 
+   * @param direction
+   * @return
+   */
+  private static int parseDirection(final CharAccumulator direction)
   {
-    // Nothing to do
+    final int code = DIRECTIONS.get(direction);
+    return (code == TagTable.UNKNOWN ? -1 : DIRECTION_DEGRES[code]);
   }
 }
@@ -34,13 +34,12 @@ import java.util.Map;
 import java.util.TimeZone;
 import java.util.zip.GZIPInputStream;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
-
 import org.pedro.balises.AbstractBaliseProvider;
 import org.pedro.balises.Balise;
+import org.pedro.balises.FeedTransport;
+import org.pedro.balises.FeedValidators;
 import org.pedro.balises.Releve;
+import org.pedro.balises.UrlConnectionTransport;
 import org.pedro.balises.Utils;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
@@ -77,9 +76,7 @@ public class XmlRommaProvider extends AbstractBaliseProvider
   private static final String             TIME_ZONE_ID            = "Europe/Paris";
   protected static final TimeZone         sourceTimeZone          = TimeZone.getTimeZone(TIME_ZONE_ID);
 
-  private final SAXParserFactory          factory;
-  private final SAXParser                 parser;
-  private final BaliseRommaContentHandler baliseHandler;
+  // Analyseurs : partages entre les instances (cf. RommaParsers), sauf handler de releves specifique
   private final ReleveRommaContentHandler releveHandler;
 
   protected final String                  rommaKey;
@@ -102,7 +99,7 @@ public class XmlRommaProvider extends AbstractBaliseProvider
    */
   public XmlRommaProvider(final String name, final String country, final String rommaKey, final boolean useZippedData)
   {
-    this(name, country, rommaKey, useZippedData, new ReleveRommaContentHandler());
+    this(name, country, rommaKey, useZippedData, null);
   }
 
   /**
@@ -111,7 +108,8 @@ public class XmlRommaProvider extends AbstractBaliseProvider
    * @param country
    * @param rommaKey
    * @param useZippedData
-   * @param releveHandler
+   * @param releveHandler handler specifique des releves (ses analyses sont alors serialisees), null pour les handlers
+   *          partages
    */
   protected XmlRommaProvider(final String name, final String country, final String rommaKey, final boolean useZippedData, final ReleveRommaContentHandler releveHandler)
   {
@@ -120,23 +118,12 @@ public class XmlRommaProvider extends AbstractBaliseProvider
     this.rommaKey = rommaKey;
     this.useZippedData = useZippedData;
 
-    // Initialisation SAX
-    try
+    // Handler specifique
+    this.releveHandler = releveHandler;
+    if (releveHandler != null)
     {
-      factory = SAXParserFactory.newInstance();
-      parser = factory.newSAXParser();
-      baliseHandler = new BaliseRommaContentHandler();
-      this.releveHandler = releveHandler;
       releveHandler.setListener(this);
     }
-    catch (final SAXException se)
-    {
-      throw new RuntimeException(se);
-    }
-    catch (final ParserConfigurationException pce)
-    {
-      throw new RuntimeException(pce);
-    }
   }
 
   @Override
@@ -174,12 +161,35 @@ public class XmlRommaProvider extends AbstractBaliseProvider
   /**
    * 
    * @param url
-   * @return
+   * @param conditional
+   * @return le flux, null si le serveur a repondu 304 (Not Modified)
    * @throws IOException
    */
-  private InputStream getUnzippedInputStream(final String url) throws IOException
+  private InputStream getFeedInputStream(final String url, final boolean conditional) throws IOException
+  {
+    return getUnzippedInputStream(url, useZippedData, getFeedTransport(), getFeedValidators(), conditional);
+  }
+
+  /**
+   * Abandon des validateurs du flux, quand son contenu n'a pas pu etre exploite : le prochain telechargement de ce
+   * flux ne sera pas conditionnel.
+   * 
+   * @param url
+   */
+  private void clearFeedValidators(final String url)
   {
-    return getUnzippedInputStream(url, useZippedData);
+    getFeedValidators().clear(getFinalUrl(url, useZippedData));
+  }
+
+  /**
+   * 
+   * @param url
+   * @param inUseZippedData
+   * @return l'URL effectivement demandee (donnees compressees ou pas)
+   */
+  private static String getFinalUrl(final String url, final boolean inUseZippedData)
+  {
+    return url.replaceAll(URL_GZIP_KEY_GROUP, inUseZippedData ? SUFFIXE_COMPRESSION : CHAINE_VIDE);
   }
 
   /**
@@ -191,29 +201,32 @@ public class XmlRommaProvider extends AbstractBaliseProvider
    */
   public static InputStream getUnzippedInputStream(final String url, final boolean inUseZippedData) throws IOException
   {
-    // Initialisations
-    InputStream retour = null;
+    return getUnzippedInputStream(url, inUseZippedData, UrlConnectionTransport.DEFAULT, null, false);
+  }
 
+  /**
+   * 
+   * @param url
+   * @param inUseZippedData
+   * @param transport
+   * @param validators validateurs HTTP, null pour une requete non conditionnelle
+   * @param conditional
+   * @return le flux, null si le serveur a repondu 304 (Not Modified)
+   * @throws IOException
+   */
+  public static InputStream getUnzippedInputStream(final String url, final boolean inUseZippedData, final FeedTransport transport, final FeedValidators validators, final boolean conditional) throws IOException
+  {
     // Donnees compressees ou pas ?
-    if (inUseZippedData)
-    {
-      final String finalUrl = url.replaceAll(URL_GZIP_KEY_GROUP, SUFFIXE_COMPRESSION);
-      final URLConnection cnx = new URL(finalUrl).openConnection();
-      cnx.setRequestProperty(REQUEST_PROPERTY_ACCEPT_ENCODING, REQUEST_PROPERTY_ACCEPT_ENCODING_IDENTITY);
-      cnx.setConnectTimeout(Utils.CONNECT_TIMEOUT);
-      cnx.setReadTimeout(Utils.READ_TIMEOUT);
-      retour = new GZIPInputStream(cnx.getInputStream());
-    }
-    else
+    final String finalUrl = getFinalUrl(url, inUseZippedData);
+    final InputStream input = transport.open(finalUrl, inUseZippedData ? ZIPPED_REQUEST_PROPERTIES : null, validators, conditional);
+
+    // Non modifie
+    if (input == null)
     {
-      final String finalUrl = url.replaceAll(URL_GZIP_KEY_GROUP, CHAINE_VIDE);
-      final URLConnection cnx = new URL(finalUrl).openConnection();
-      cnx.setConnectTimeout(Utils.CONNECT_TIMEOUT);
-      cnx.setReadTimeout(Utils.READ_TIMEOUT);
-      retour = cnx.getInputStream();
+      return null;
     }
 
-    return retour;
+    return (inUseZippedData ? new GZIPInputStream(input, Utils.GZIP_BUFFER_SIZE) : input);
   }
 
   @Override
@@ -228,17 +241,29 @@ public class XmlRommaProvider extends AbstractBaliseProvider
     // Initialisations
     boolean updated = false;
     InputStream input = null;
+    final String finalUrl = URL_BALISES.replaceAll(URL_ROMMA_KEY_GROUP, rommaKey);
 
     try
     {
-      final String finalUrl = URL_BALISES.replaceAll(URL_ROMMA_KEY_GROUP, rommaKey);
-      input = getUnzippedInputStream(finalUrl);
+      input = getFeedInputStream(finalUrl, !getBalisesMap().isEmpty());
+
+      // Non modifie
+      if (input == null)
+      {
+        return false;
+      }
+
       final Map<String, Balise> newBalises = parseBalisesMap(new InputSource(input));
 
       // Tout est OK
       setBalisesMap(newBalises);
       updated = true;
     }
+    catch (final IOException ioe)
+    {
+      clearFeedValidators(finalUrl);
+      throw ioe;
+    }
     finally
     {
       if (input != null)
@@ -256,26 +281,40 @@ public class XmlRommaProvider extends AbstractBaliseProvider
    * @return
    * @throws IOException
    */
-  private Map<String, Balise> parseBalisesMap(final InputSource source) throws IOException
+  protected Map<String, Balise> parseBalisesMap(final InputSource source) throws IOException
   {
+    final RommaParsers parsers = RommaParsers.POOL.acquire();
     try
     {
       // Analyse XML
-      final XMLReader reader = parser.getXMLReader();
-      reader.setContentHandler(baliseHandler);
-      reader.parse(source);
+      parsers.reader.setContentHandler(parsers.baliseHandler);
+      parsers.reader.parse(source);
 
       // Stockage
-      return baliseHandler.getBalises();
+      return parsers.baliseHandler.getBalises();
     }
     catch (final SAXException se)
     {
-      final IOException ioe = new IOException(se.getMessage());
-      ioe.setStackTrace(se.getStackTrace());
-      throw ioe;
+      throw toIOException(se);
+    }
+    finally
+    {
+      RommaParsers.POOL.release(parsers);
     }
   }
 
+  /**
+   * 
+   * @param se
+   * @return
+   */
+  private static IOException toIOException(final SAXException se)
+  {
+    final IOException ioe = new IOException(se.getMessage());
+    ioe.setStackTrace(se.getStackTrace());
+    return ioe;
+  }
+
   @Override
   public String getBaliseDetailUrl(final String id)
   {
@@ -305,14 +344,26 @@ public class XmlRommaProvider extends AbstractBaliseProvider
   {
     // Initialisations
     InputStream input = null;
+    final String finalUrl = URL_RELEVES.replaceAll(URL_ROMMA_KEY_GROUP, rommaKey);
 
     try
     {
       updatedReleves.clear();
-      final String finalUrl = URL_RELEVES.replaceAll(URL_ROMMA_KEY_GROUP, rommaKey);
-      input = getUnzippedInputStream(finalUrl);
+      input = getFeedInputStream(finalUrl, hasReleves());
+
+      // Non modifie
+      if (input == null)
+      {
+        return false;
+      }
+
       parseReleves(new InputSource(input));
     }
+    catch (final IOException ioe)
+    {
+      clearFeedValidators(finalUrl);
+      throw ioe;
+    }
     finally
     {
       if (input != null)
@@ -330,19 +381,58 @@ public class XmlRommaProvider extends AbstractBaliseProvider
    * @throws IOException
    */
   protected void parseReleves(final InputSource source) throws IOException
+  {
+    final RommaParsers parsers = RommaParsers.POOL.acquire();
+    try
+    {
+      // Handler specifique
+      if (releveHandler != null)
+      {
+        synchronized (releveHandler)
+        {
+          parseReleves(parsers.reader, releveHandler, source);
+        }
+      }
+
+      // Handler partage
+      else
+      {
+        parsers.releveHandler.setListener(this);
+        try
+        {
+          parseReleves(parsers.reader, parsers.releveHandler, source);
+        }
+        finally
+        {
+          parsers.releveHandler.setListener(null);
+        }
+      }
+    }
+    finally
+    {
+      RommaParsers.POOL.release(parsers);
+      publishReleves();
+    }
+  }
+
+  /**
+   * 
+   * @param reader
+   * @param handler
+   * @param source
+   * @throws IOException
+   */
+  private static void parseReleves(final XMLReader reader, final ReleveRommaContentHandler handler, final InputSource source) throws IOException
   {
     try
     {
       // Analyse XML
-      final XMLReader reader = parser.getXMLReader();
-      reader.setContentHandler(releveHandler);
+      reader.setContentHandler(handler);
       reader.parse(source);
     }
     catch (final SAXException se)
     {
-      final IOException ioe = new IOException(se.getMessage());
-      ioe.setStackTrace(se.getStackTrace());
-      throw ioe;
+      throw toIOException(se);
     }
   }
 